@@ -26,8 +26,8 @@ import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
 import edu.cmu.cs.dickerson.kpd.structure.VertexAltruist;
 import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
-import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+import edu.cmu.cs.dickerson.kpd.structure.alg.IncrementalCycleIndex;
 
 /*
  * Class written by Rachel Freedman, Duke University, summer 2017.
@@ -110,6 +110,7 @@ public class EthicalDriver {
 				ExponentialArrivalDistribution m = new ExponentialArrivalDistribution(1.0/EXPECTED_PAIRS, rArrivalM);
 				ExponentialArrivalDistribution a = new ExponentialArrivalDistribution(1.0/EXPECTED_ALTRUISTS, rArrivalA);
 				Pool pool = new Pool(Edge.class);									
+				IncrementalCycleIndex cycleIndex = new IncrementalCycleIndex(pool, CYCLE_CAP, 0, true);
 				ArrayList<Cycle> matches = new ArrayList<Cycle>();			
 
 				// Record parameters for this set of runs
@@ -171,9 +172,7 @@ public class EthicalDriver {
 							rm.add(v);
 						}
 					}
-					for(VertexPair v : rm){
-						pool.removeVertex(v);
-					}
+					pool.removeAllVertices(rm);
 					// Remove all altruists that run out of patience
 					Iterator<VertexAltruist> aiter = pool.getAltruists().iterator();
 					ArrayList<VertexAltruist> toRemove = new ArrayList<VertexAltruist>();
@@ -246,9 +245,10 @@ public class EthicalDriver {
 					if (DEBUG) { printPool(pool, false); }
 
 					// Match the vertex pairs in the pool
-					CycleGenerator cg = new CycleGenerator(pool);
-					List<Cycle> cycles = cg.generateCyclesAndChains(CYCLE_CAP, 0, true);
-					CycleMembership membership = new CycleMembership(pool, cycles);
+					// Only cycles through this period's arrivals need to be generated
+					cycleIndex.sync();
+					List<Cycle> cycles = cycleIndex.getCycles();
+					CycleMembership membership = cycleIndex.getMembership();
 
 					try{
 						EthicalCPLEXSolver s = new EthicalCPLEXSolver(pool, cycles, membership);
@@ -412,6 +412,7 @@ public class EthicalDriver {
 				ExponentialArrivalDistribution m = new ExponentialArrivalDistribution(1.0/EXPECTED_PAIRS, rArrivalM);
 				ExponentialArrivalDistribution a = new ExponentialArrivalDistribution(1.0/EXPECTED_ALTRUISTS, rArrivalA);
 				Pool pool = new Pool(Edge.class);									
+				IncrementalCycleIndex cycleIndex = new IncrementalCycleIndex(pool, CYCLE_CAP, 0, true);
 				ArrayList<Cycle> matches = new ArrayList<Cycle>();			
 
 				// Record parameters for this set of runs
@@ -476,9 +477,7 @@ public class EthicalDriver {
 							rm.add(v);
 						}
 					}
-					for(VertexPair v : rm){
-						pool.removeVertex(v);
-					}
+					pool.removeAllVertices(rm);
 					// Remove all altruists that run out of patience
 					Iterator<VertexAltruist> aiter = pool.getAltruists().iterator();
 					ArrayList<VertexAltruist> toRemove = new ArrayList<VertexAltruist>();
@@ -551,9 +550,10 @@ public class EthicalDriver {
 					if (DEBUG) { printPool(pool, false); }
 
 					// Match the vertex pairs in the pool
-					CycleGenerator cg = new CycleGenerator(pool);
-					List<Cycle> cycles = cg.generateCyclesAndChains(CYCLE_CAP, 0, true);
-					CycleMembership membership = new CycleMembership(pool, cycles);
+					// Only cycles through this period's arrivals need to be generated
+					cycleIndex.sync();
+					List<Cycle> cycles = cycleIndex.getCycles();
+					CycleMembership membership = cycleIndex.getMembership();
 
 					try{
 						EthicalCPLEXSolver s = new EthicalCPLEXSolver(pool, cycles, membership);
@@ -718,6 +718,7 @@ public class EthicalDriver {
 				ExponentialArrivalDistribution m = new ExponentialArrivalDistribution(1.0/EXPECTED_PAIRS, rArrivalM);
 				ExponentialArrivalDistribution a = new ExponentialArrivalDistribution(1.0/EXPECTED_ALTRUISTS, rArrivalA);
 				Pool pool = new Pool(Edge.class);									
+				IncrementalCycleIndex cycleIndex = new IncrementalCycleIndex(pool, CYCLE_CAP, 0, true);
 				ArrayList<Cycle> matches = new ArrayList<Cycle>();			
 
 				// Record parameters for this set of runs
@@ -790,9 +791,7 @@ public class EthicalDriver {
 							rm.add(v);
 						}
 					}
-					for(VertexPair v : rm){
-						pool.removeVertex(v);
-					}
+					pool.removeAllVertices(rm);
 					// Remove all altruists that run out of patience
 					Iterator<VertexAltruist> aiter = pool.getAltruists().iterator();
 					ArrayList<VertexAltruist> toRemove = new ArrayList<VertexAltruist>();
@@ -865,9 +864,10 @@ public class EthicalDriver {
 					if (DEBUG) { printPool(pool, false); }
 
 					// Match the vertex pairs in the pool
-					CycleGenerator cg = new CycleGenerator(pool);
-					List<Cycle> cycles = cg.generateCyclesAndChains(CYCLE_CAP, 0, true);
-					CycleMembership membership = new CycleMembership(pool, cycles);
+					// Only cycles through this period's arrivals need to be generated
+					cycleIndex.sync();
+					List<Cycle> cycles = cycleIndex.getCycles();
+					CycleMembership membership = cycleIndex.getMembership();
 
 					try{
 						EthicalCPLEXSolver s = new EthicalCPLEXSolver(pool, cycles, membership);
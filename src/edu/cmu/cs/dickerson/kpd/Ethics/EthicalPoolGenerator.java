@@ -261,6 +261,7 @@ public class EthicalPoolGenerator extends PoolGenerator {
 
 		// Only add the incompatible pairs to the pool
 		Pool pool = new Pool(Edge.class);
+		pool.setImplicitAltruistEdges(implicitAltruistEdges);
 		for(EthicalVertexPair pair : incompatiblePairs) {
 			pool.addPair(pair);	
 		}
@@ -293,8 +294,10 @@ public class EthicalPoolGenerator extends PoolGenerator {
 				}
 				
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				Edge dummy = pool.addEdge(patientPair, alt);
-				pool.setEdgeWeight(dummy, 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					Edge dummy = pool.addEdge(patientPair, alt);
+					pool.setEdgeWeight(dummy, 0.0);
+				}
 			}
 		}
 
@@ -333,7 +336,9 @@ public class EthicalPoolGenerator extends PoolGenerator {
 					pool.setEdgeWeight(pool.addEdge(altO, vN), weight);
 				}
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				pool.setEdgeWeight(pool.addEdge(vN, altO), 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					pool.setEdgeWeight(pool.addEdge(vN, altO), 0.0);
+				}
 			}
 		}
 		
@@ -347,7 +352,9 @@ public class EthicalPoolGenerator extends PoolGenerator {
 				}
 				
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				pool.setEdgeWeight(pool.addEdge(v, altN), 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					pool.setEdgeWeight(pool.addEdge(v, altN), 0.0);
+				}
 			}
 		}
 		
@@ -387,7 +394,9 @@ public class EthicalPoolGenerator extends PoolGenerator {
 					pool.setEdgeWeight(pool.addEdge(altO, vN), weight);
 				}
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				pool.setEdgeWeight(pool.addEdge(vN, altO), 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					pool.setEdgeWeight(pool.addEdge(vN, altO), 0.0);
+				}
 			}
 		}
 		
@@ -402,7 +411,9 @@ public class EthicalPoolGenerator extends PoolGenerator {
 				}
 				
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				pool.setEdgeWeight(pool.addEdge(v, altN), 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					pool.setEdgeWeight(pool.addEdge(v, altN), 0.0);
+				}
 			}
 		}
 		
@@ -92,6 +92,9 @@ public class DriverApprox {
 		// Upper bound on number of chains sampled per altruist in some heuristics
 		int chainSamplesPerAltruist = 256;
 
+		// Skip the full enumeration (and exact solves) on pools with more cycles and chains than this
+		long maxColumnsForFullEnumeration = 20000000L;
+
 		// Store output
 		String path = "approx_" + System.currentTimeMillis() + ".csv";
 		DriverApproxOutput out = null;
@@ -152,7 +155,10 @@ public class DriverApprox {
 
 						List<Cycle> cycles = null;
 						CycleMembership membership = null;
-						if(graphSize <= 250) {//Integer.MAX_VALUE) {
+						// Count (cheaply) before generating, so huge cycle/chain sets go straight to the packers
+						boolean fullEnumerationFits = graphSize <= 250 &&  //Integer.MAX_VALUE
+								new CycleGenerator(pool).countCyclesAndChains(cycleCap, chainCap, maxColumnsForFullEnumeration, Long.MAX_VALUE).isCompleted();
+						if(fullEnumerationFits) {
 							// Generate all cycles in pool
 							long startCycleGen = System.nanoTime();
 							CycleGenerator cg = new CycleGenerator(pool);
@@ -17,7 +17,6 @@ import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
 import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
-import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
 import edu.cmu.cs.dickerson.kpd.structure.generator.PoolGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.real.UNOSLoader;
@@ -107,12 +106,7 @@ public class DriverBitwise {
 			double highlySensitizedThresh = 0.8;   // UNOS data is explicitly marked as highly or not highly sensitized   
 
 			// Split pairs into highly- and not highly-sensitized patients 
-			Set<Vertex> highV = new HashSet<Vertex>();
-			for(VertexPair pair : pool.getPairs()) {
-				if(pair.getPatientCPRA() >= highlySensitizedThresh) {
-					highV.add(pair);
-				}
-			}
+			Set<Vertex> highV = new HashSet<Vertex>(pool.getPairsWithCPRAAtLeast(highlySensitizedThresh));
 
 			// TODO
 			// Remove once we make the IP faster!
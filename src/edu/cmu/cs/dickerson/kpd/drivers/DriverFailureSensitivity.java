@@ -20,6 +20,7 @@ import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleCache;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
 import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
@@ -46,7 +47,19 @@ public class DriverFailureSensitivity {
 	// Experiment significance parameters
 	private int numReps;
 
-	public DriverFailureSensitivity() { 
+	// Cycles and chains depend only on pool structure, so enumerate each pool once and reweight
+	// (null unless a cache directory is given; nothing ever cleans that directory up)
+	private CycleCache cycleCache;
+
+	public DriverFailureSensitivity() {
+		this(null);
+	}
+
+	/**
+	 * @param cycleCacheDir directory to cache enumerated cycles and chains in, across
+	 *   runs, or null to always enumerate
+	 */
+	public DriverFailureSensitivity(File cycleCacheDir) { 
 
 		// Invariant parameters
 		this.cycleCap = 3;
@@ -85,6 +98,8 @@ public class DriverFailureSensitivity {
 
 		// Number of repetitions for each parameter vector
 		this.numReps = 50;
+
+		this.cycleCache = (null == cycleCacheDir) ? null : new CycleCache(cycleCacheDir);
 	}
 
 	public void run() {
@@ -165,6 +180,7 @@ public class DriverFailureSensitivity {
 							try {
 								// Solve the failure-aware objective using the wrong failure rates on edges
 								CycleGenerator cg = new CycleGenerator(pool);
+								cg.setCycleCache(cycleCache);
 								List<Cycle> cycles = cg.generateCyclesAndChains(cycleCap, chainCap, true);
 								Solution sol = (new CycleFormulationCPLEXSolver(
 										pool, 
@@ -222,6 +238,7 @@ public class DriverFailureSensitivity {
 	}
 
 	public static void main(String[] args) {
-		(new DriverFailureSensitivity()).run();
+		// Optional argument: a cycle cache directory (e.g., CycleCache.getDefaultDirectory())
+		(new DriverFailureSensitivity(args.length > 0 ? new File(args[0]) : null)).run();
 	}
 }
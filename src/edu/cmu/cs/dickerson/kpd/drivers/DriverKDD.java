@@ -11,7 +11,6 @@ import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
-import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
 import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
 import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil.ProbabilityDistribution;
 import edu.cmu.cs.dickerson.kpd.structure.generator.UNOSGenerator;
@@ -98,15 +97,7 @@ public class DriverKDD {
 	 * @return
 	 */
 	public static Set<Vertex> getMarginalizedVertices(Pool ethicalPool) {
-		Set<Vertex> marginalized = new HashSet<Vertex>();
-		for(VertexPair pair : ethicalPool.getPairs()) {
-			if(null==pair.getUnderlyingPair()) { continue; }
-			UNOSRecipient r = pair.getUnderlyingPair().getRecipient();
-			if(r.highlySensitized || r.age < 18) {
-				marginalized.add(pair);
-			}
-		}
-		return marginalized;
+		return new HashSet<Vertex>(ethicalPool.getMarginalizedPairs());
 	}
 
 	/**
@@ -85,9 +85,7 @@ public class DriverThesis {
 					rm.add(v);
 				}
 			}
-			for(VertexPair v : rm){
-				pool.removeVertex(v);
-			}
+			pool.removeAllVertices(rm);
 			// Remove all altruists that run out of patience
 			Iterator<VertexAltruist> aiter = pool.getAltruists().iterator();
 			ArrayList<VertexAltruist> toRemove = new ArrayList<VertexAltruist>();
@@ -190,9 +190,7 @@ public class CompetitiveDynamicSimulator extends DynamicSimulator {
 					}
 				}
 				
-				for(Vertex v : verticesToRemove) {
-					pool.removeVertex(v);
-				}
+				pool.removeAllVertices(verticesToRemove);
 				
 			}  // end of expiring vertices matching loop
 
@@ -235,9 +233,7 @@ public class CompetitiveDynamicSimulator extends DynamicSimulator {
 					Set<Vertex> matchedVerts = Cycle.getConstituentVertices(matchedCycle, pool);
 					o_totalMatched += matchedVerts.size();
 					o_totalGreedyMatched += matchedVerts.size();
-					for(Vertex v : matchedVerts) {
-						pool.removeVertex(v);
-					}
+					pool.removeAllVertices(matchedVerts);
 				}
 			}
 
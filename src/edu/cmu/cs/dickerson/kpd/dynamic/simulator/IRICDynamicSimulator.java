@@ -1,8 +1,10 @@
 package edu.cmu.cs.dickerson.kpd.dynamic.simulator;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -101,19 +103,21 @@ public class IRICDynamicSimulator extends DynamicSimulator {
 			
 			// Remove any expired vertices, track ones that are about to die
 			Set<Vertex> dieNextRoundVerts = new HashSet<Vertex>();
+			List<Vertex> expiredVerts = new ArrayList<Vertex>();
 			for(Hospital h : hospitals) {
 				Iterator<Vertex> hvIt = h.getPublicAndPrivateVertices().iterator();
 				while(hvIt.hasNext()) {
 					Vertex v = hvIt.next();
 					int vertAge = timeIdx - h.getVertexInfo().get(v).entranceTime;
 					if(vertAge >= h.getVertexInfo().get(v).lifeExpectancy) {
-						pool.removeVertex(v);  // delete the vertex from the full pool
+						expiredVerts.add(v);  // delete the vertex from the full pool (below)
 						hvIt.remove();  // delete vertex from hospital's private list
 					} else if(vertAge+1 == h.getVertexInfo().get(v).lifeExpectancy) {
 						dieNextRoundVerts.add(v);
 					}
 				}
 			}
+			pool.removeAllVertices(expiredVerts);
 			
 			// Evolve pool and run the IRIC Mechanism on it
 			IRSolution sol = tick(pool, dieNextRoundVerts);
@@ -22,7 +22,6 @@ import edu.cmu.cs.dickerson.kpd.solver.solution.SolutionUtils;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
-import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
 import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
@@ -149,12 +148,7 @@ public class DriverUNOS {
 							IOUtil.dPrintln("---: a* = " + alphaStarVal + ", looking at UNOS file: " + matchRunID);
 
 							// Split pairs into highly- and not highly-sensitized patients 
-							Set<Vertex> highV = new HashSet<Vertex>();
-							for(VertexPair pair : pool.getPairs()) {
-								if(pair.getPatientCPRA() >= highlySensitizedThresh) {
-									highV.add(pair);
-								}
-							}
+							Set<Vertex> highV = new HashSet<Vertex>(pool.getPairsWithCPRAAtLeast(highlySensitizedThresh));
 							eOut.set(Col.HIGHLY_SENSITIZED_COUNT, highV.size());
 
 							// Set weights of edges targeting non-highly-sensitized patients to 1.0, and
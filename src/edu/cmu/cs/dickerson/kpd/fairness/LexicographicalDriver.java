@@ -18,7 +18,6 @@ import edu.cmu.cs.dickerson.kpd.solver.solution.SolutionUtils;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
-import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
 import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
@@ -123,12 +122,7 @@ public class LexicographicalDriver {
 									CycleMembership membership = new CycleMembership(pool, cycles);
 
 									// Split pairs into highly- and not highly-sensitized patients 
-									Set<Vertex> highV = new HashSet<Vertex>();
-									for(VertexPair pair : pool.getPairs()) {
-										if(pair.getPatientCPRA() >= highlySensitizedThresh) {
-											highV.add(pair);
-										}
-									}
+									Set<Vertex> highV = new HashSet<Vertex>(pool.getPairsWithCPRAAtLeast(highlySensitizedThresh));
 									eOut.set(Col.HIGHLY_SENSITIZED_COUNT, highV.size());
 
 									// Solve the model
@@ -122,14 +122,14 @@ public class FairnessCPLEXSolver extends CPLEXSolver {
 			// \sum_{cycles c containing v} decVar_c <=1   \forall v
 			for(Vertex v : pool.vertexSet()) {
 				
-				Set<Integer> cycleColIDs = membership.getMembershipSet(v);
-				if(null == cycleColIDs || cycleColIDs.isEmpty()) {
+				int vIdx = membership.indexOf(v);
+				if(vIdx < 0 || membership.getStart(vIdx) == membership.getEnd(vIdx)) {
 					continue;
 				}
 				
 				IloLinearNumExpr sum = cplex.linearNumExpr(); 
-				for(Integer cycleColID : cycleColIDs) {
-					sum.addTerm(1.0, x[cycleColID]);
+				for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+					sum.addTerm(1.0, x[membership.getColumnAt(pos)]);
 				}
 				cplex.addLe(sum, 1.0);
 			}
@@ -181,14 +181,14 @@ public class FairnessCPLEXSolver extends CPLEXSolver {
 			// \sum_{cycles c containing v} decVar_c <=1   \forall v
 			for(Vertex v : pool.vertexSet()) {
 				
-				Set<Integer> cycleColIDs = membership.getMembershipSet(v);
-				if(null == cycleColIDs || cycleColIDs.isEmpty()) {
+				int vIdx = membership.indexOf(v);
+				if(vIdx < 0 || membership.getStart(vIdx) == membership.getEnd(vIdx)) {
 					continue;
 				}
 				
 				IloLinearNumExpr sum = cplex.linearNumExpr(); 
-				for(Integer cycleColID : cycleColIDs) {
-					sum.addTerm(1.0, x[cycleColID]);
+				for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+					sum.addTerm(1.0, x[membership.getColumnAt(pos)]);
 				}
 				cplex.addLe(sum, 1.0);
 			}
@@ -20,6 +20,7 @@ import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleCache;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
 import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
@@ -59,7 +60,19 @@ public class DriverRematch {
 	private int numReps;
 	private boolean onlyPlotMaxRematch;
 
-	public DriverRematch() { 
+	// Cycles and chains depend only on pool structure, so enumerate each pool once and reweight
+	// (null unless a cache directory is given; nothing ever cleans that directory up)
+	private CycleCache cycleCache;
+
+	public DriverRematch() {
+		this(null);
+	}
+
+	/**
+	 * @param cycleCacheDir directory to cache enumerated cycles and chains in, across
+	 *   runs, or null to always enumerate
+	 */
+	public DriverRematch(File cycleCacheDir) { 
 
 		// Invariant parameters
 		this.cycleCap = 3;
@@ -113,6 +126,8 @@ public class DriverRematch {
 
 		// Number of repetitions for each parameter vector
 		this.numReps = 100;
+
+		this.cycleCache = (null == cycleCacheDir) ? null : new CycleCache(cycleCacheDir);
 		
 		// Shared constants over all the rematch run types
 		RematchStrat.init(cycleCap, numPairs, numAlts, maxAvgEdgesPerVertex, rematchType, onlyPlotMaxRematch);
@@ -202,12 +217,13 @@ public class DriverRematch {
 								for(Map.Entry<Edge, Boolean> entry : edgeFailedMap.entrySet()) {
 									Edge e = entry.getKey();
 									Boolean failed = entry.getValue();
-									e.setFailureProbability(failed ? 1.0 : 0.0);
+									pool.setEdgeFailureProbability(e, failed ? 1.0 : 0.0);
 								}
 
 								try {
 									// All we care about is the value of the prescient solution; solve and scrap everything else
 									CycleGenerator cg = new CycleGenerator(pool);
+									cg.setCycleCache(cycleCache);
 									List<Cycle> cycles = cg.generateCyclesAndChains(cycleCap, chainCap, true);
 									Solution oracleSolution = (new CycleFormulationCPLEXSolver(
 											pool, 
@@ -219,8 +235,9 @@ public class DriverRematch {
 									cycles = null; cg = null;
 
 									// Reset the pool's edges to their failure probabilities, not failure statuses
-									RematchUtil.resetPoolEdgeTestsToUnknown(edgeFailureRateMap);
+									RematchUtil.resetPoolEdgeTestsToUnknown(pool, edgeFailureRateMap);
 									cg = new CycleGenerator(pool);
+									cg.setCycleCache(cycleCache);
 									cycles = cg.generateCyclesAndChains(cycleCap, chainCap, true);
 									
 									// Run the EC-15 experiments 
@@ -234,8 +251,9 @@ public class DriverRematch {
 
 									
 									// Reset the pool's edges to their failure probabilities, not failure statuses	
-									RematchUtil.resetPoolEdgeTestsToUnknown(edgeFailureRateMap);
+									RematchUtil.resetPoolEdgeTestsToUnknown(pool, edgeFailureRateMap);
 									cg = new CycleGenerator(pool);
+									cg.setCycleCache(cycleCache);
 									cycles = cg.generateCyclesAndChains(cycleCap, chainCap, true);
 									
 									// Now call the AAAI solver for this same pool + edge results, record in AAAI file							
@@ -281,6 +299,7 @@ public class DriverRematch {
 	}
 
 	public static void main(String[] args) {
-		(new DriverRematch()).run();
+		// Optional argument: a cycle cache directory (e.g., CycleCache.getDefaultDirectory())
+		(new DriverRematch(args.length > 0 ? new File(args[0]) : null)).run();
 	}
 }
@@ -81,14 +81,14 @@ public class RematchBatchCPLEXSolver extends RematchCPLEXSolver {
 			// \sum_{cycles c containing v} decVar_c <=1   \forall v
 			for(Vertex v : pool.vertexSet()) {
 
-				Set<Integer> cycleColIDs = membership.getMembershipSet(v);
-				if(null == cycleColIDs || cycleColIDs.isEmpty()) {
+				int vIdx = membership.indexOf(v);
+				if(vIdx < 0 || membership.getStart(vIdx) == membership.getEnd(vIdx)) {
 					continue;
 				}
 
 				IloLinearNumExpr sum = cplex.linearNumExpr(); 
-				for(Integer cycleColID : cycleColIDs) {
-					sum.addTerm(1.0, x[cycleColID]);
+				for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+					sum.addTerm(1.0, x[membership.getColumnAt(pos)]);
 				}
 				cplex.addLe(sum, 1.0);
 			}
@@ -144,7 +144,7 @@ public class RematchBatchCPLEXSolver extends RematchCPLEXSolver {
 
 						// Test all edges in the last matching, update failure probabilities to determinisim
 						for(Edge e : edgesInLastMatch) {
-							e.setFailureProbability( edgeFailedMap.get(e) ? 1.0 : 0.0 );
+							pool.setEdgeFailureProbability(e, edgeFailedMap.get(e) ? 1.0 : 0.0);
 						}
 
 						// Update utilities for each of the possibly partially-tested cycles and chains
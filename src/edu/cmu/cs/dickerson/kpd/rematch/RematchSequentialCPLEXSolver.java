@@ -88,14 +88,14 @@ public class RematchSequentialCPLEXSolver extends RematchCPLEXSolver {
 			// \sum_{cycles c containing v} decVar_c <=1   \forall v
 			for(Vertex v : pool.vertexSet()) {
 
-				Set<Integer> cycleColIDs = membership.getMembershipSet(v);
-				if(null == cycleColIDs || cycleColIDs.isEmpty()) {
+				int vIdx = membership.indexOf(v);
+				if(vIdx < 0 || membership.getStart(vIdx) == membership.getEnd(vIdx)) {
 					continue;
 				}
 
 				IloLinearNumExpr sum = cplex.linearNumExpr(); 
-				for(Integer cycleColID : cycleColIDs) {
-					sum.addTerm(1.0, x[cycleColID]);
+				for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+					sum.addTerm(1.0, x[membership.getColumnAt(pos)]);
 				}
 				cplex.addLe(sum, 1.0);
 			}
@@ -169,13 +169,11 @@ public class RematchSequentialCPLEXSolver extends RematchCPLEXSolver {
 			edgeExistsSet.add(currEdge);
 			double existsObj = getObjectiveWithAdjustedCoefficients(edgeExistsSet, edgeNoExistsSet);
 			edgeExistsSet.remove(currEdge);
-			currEdge.setFailureProbability(edgeFailureProb);
 			
 			// See what our expected utility would be without this edge existing
 			edgeNoExistsSet.add(currEdge);
 			double notExistsObj = getObjectiveWithAdjustedCoefficients(edgeExistsSet, edgeNoExistsSet);
 			edgeNoExistsSet.remove(currEdge);
-			currEdge.setFailureProbability(edgeFailureProb);
 			
 			// If the weighted expected utility of testing this edge is better than
 			// the incumbent, store this edge and its objective
@@ -197,7 +195,9 @@ public class RematchSequentialCPLEXSolver extends RematchCPLEXSolver {
 	 * Assuming a partially-built model (i.e., initialized CPLEX, have an objective,
 	 * have a constraint matrix, etc), adjusts the coefficients in the objective to
 	 * reflect either successfully tested edges (success prob = 1.0) or unsuccessfully
-	 * tested edges (success prob = 0.0) -- all the constraints are still valid otherwise
+	 * tested edges (success prob = 0.0) -- all the constraints are still valid otherwise.
+	 * Tested edges are overridden during the utility calculation only; the pool's Edge
+	 * objects are never modified, so the pool can be shared with other readers.
 	 * @param edgeExistsSet set of edges that have been tested and exist (possibly empty)
 	 * @param edgeNoExistsSet set of edges that have been tested and don't exist (possibly empty)
 	 * @return the expected utility of the failure-aware matching conditioned on those edges
@@ -208,20 +208,21 @@ public class RematchSequentialCPLEXSolver extends RematchCPLEXSolver {
 	private double getObjectiveWithAdjustedCoefficients(Set<Edge> edgeExistsSet, Set<Edge> edgeNoExistsSet) throws SolverException, IloException {
 
 		// Reweight the coefficients on cycle and chain variables based on edge tests
+		Map<Edge, Double> testedFailureProbs = new HashMap<Edge, Double>();
 		for(Edge e : edgeExistsSet) {
-			e.setFailureProbability(0.0);
+			testedFailureProbs.put(e, 0.0);
 		}
 		for(Edge e : edgeNoExistsSet) {
-			e.setFailureProbability(1.0);
+			testedFailureProbs.put(e, 1.0);
 		}
 
 		// Update utilities for each of the possibly partially-tested cycles and chains
 		int cycleIdx = 0;
 		for(Cycle c : cycles) {
 			if(Cycle.isAChain(c, pool)) {
-				weights[cycleIdx++] = FailureProbabilityUtil.calculateDiscountedChainUtility(c, pool, pool.vertexSet());
+				weights[cycleIdx++] = FailureProbabilityUtil.calculateDiscountedChainUtility(c, pool, pool.vertexSet(), false, testedFailureProbs);
 			} else {
-				weights[cycleIdx++] = FailureProbabilityUtil.calculateDiscountedCycleUtility(c, pool, pool.vertexSet());
+				weights[cycleIdx++] = FailureProbabilityUtil.calculateDiscountedCycleUtility(c, pool, pool.vertexSet(), false, testedFailureProbs);
 			}
 		}
 		
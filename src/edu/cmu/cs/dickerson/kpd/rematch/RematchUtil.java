@@ -18,7 +18,11 @@ public final class RematchUtil {
 	 * probability to 0.0 (=failed) or 1.0 (=succeeded), this method returns that
 	 * failure probability to its originally-generated value in [0.0, 1.0]
 	 * @param edgeFailureRateMap map of Edge -> original failure rate
+	 * @deprecated writes the edges behind the pool's back, so the pool's version,
+	 *   change listeners, frozen versions and incremental cycle indexes don't see the
+	 *   resets; use {@link #resetPoolEdgeTestsToUnknown(Pool, Map)}
 	 */
+	@Deprecated
 	public static void resetPoolEdgeTestsToUnknown(Map<Edge, Double> edgeFailureRateMap) {
 		// Reset the pool's edges to their failure probabilities, not failure statuses
 		for(Map.Entry<Edge, Double> entry : edgeFailureRateMap.entrySet()) {
@@ -26,6 +30,19 @@ public final class RematchUtil {
 		}
 	}
 
+	/**
+	 * If we previously "tested" an edge and set its failure probability to 0.0 (=failed)
+	 * or 1.0 (=succeeded), returns it to its originally-generated value, through the
+	 * pool so its version and change listeners see the update
+	 * @param pool pool containing the edges
+	 * @param edgeFailureRateMap map of Edge -> original failure rate
+	 */
+	public static void resetPoolEdgeTestsToUnknown(Pool pool, Map<Edge, Double> edgeFailureRateMap) {
+		for(Map.Entry<Edge, Double> entry : edgeFailureRateMap.entrySet()) {
+			pool.setEdgeFailureProbability(entry.getKey(), entry.getValue());
+		}
+	}
+
 	
 	/**
 	 * Given a recommended matching, simulates that matching on the omniscient
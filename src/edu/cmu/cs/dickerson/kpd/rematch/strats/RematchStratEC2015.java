@@ -72,7 +72,7 @@ public class RematchStratEC2015 extends RematchStrat {
 		Map<Integer, Set<Edge>> edgesToTestMap = solver.solve(maxNumRematches, rematchType, edgeFailedMap, maxAvgEdgesPerVertex);
 
 		// Some of the rematchers change edge failure probabilities; reset here
-		RematchUtil.resetPoolEdgeTestsToUnknown(edgeFailureRateMap);
+		RematchUtil.resetPoolEdgeTestsToUnknown(pool, edgeFailureRateMap);
 
 		// Keep track of how many incoming edges to each vertex have been checked
 		Map<Vertex, Set<Edge>> perVertexEdgeTested = new HashMap<Vertex, Set<Edge>>();
@@ -118,7 +118,7 @@ public class RematchStratEC2015 extends RematchStrat {
 				Vertex dst = pool.getEdgeTarget(e);
 				// If the destination vertex has remaining credits for testing edges, test this edge
 				if(perVertexEdgeTested.get(dst).size() < hardMaxPerVertex) {
-					e.setFailureProbability( edgeFailedMap.get(e) ? 1.0 : 0.0);
+					pool.setEdgeFailureProbability(e, edgeFailedMap.get(e) ? 1.0 : 0.0);
 					perVertexEdgeTested.get(dst).add(e);
 				}
 			}
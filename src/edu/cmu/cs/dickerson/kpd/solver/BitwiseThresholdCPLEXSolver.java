@@ -9,6 +9,7 @@ import java.util.Date;
 import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
 import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
 import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.AdjacencyBitMatrix;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 
 public class BitwiseThresholdCPLEXSolver  extends CPLEXSolver {
@@ -52,7 +53,7 @@ public class BitwiseThresholdCPLEXSolver  extends CPLEXSolver {
 
 
 			// Determine which edges exist and which don't (ignoring stuff like self and dummy edges)
-			boolean[][] edgeExists = pool.getDenseAdjacencyMatrix();
+			AdjacencyBitMatrix edgeExists = pool.getAdjacencyBitMatrix();
 
 			// Only the xi decision variables matter in the objective; for any 
 			// other column, set weight to zero.  For xi columns that are not
@@ -79,7 +80,7 @@ public class BitwiseThresholdCPLEXSolver  extends CPLEXSolver {
 				for(int v_i=0; v_i<n; v_i++) {
 					for(int v_j=0; v_j<n; v_j++) {
 						if(v_i != v_j) {
-							if(edgeExists[v_i][v_j]) {						
+							if(edgeExists.get(v_i, v_j)) {						
 								for(int rho=0; rho<k; rho++) {
 									weights[getBitConflictIdx(v_i, v_j, rho)] = -1.0;
 								}
@@ -140,7 +141,7 @@ public class BitwiseThresholdCPLEXSolver  extends CPLEXSolver {
 				for(int v_j=0; v_j<n; v_j++) {
 					if(v_i != v_j) {
 						// Write constraints based on whether or not an edge is in the edge set
-						if(edgeExists[v_i][v_j]) {
+						if(edgeExists.get(v_i, v_j)) {
 							// \forall (v_i,v_j) in E,    \sum_rho c_{ij}^rho \leq t + (k-t)xi_{ij} 
 							IloLinearNumExpr sumUpper = cplex.linearNumExpr(); 
 							for(int rho=0; rho<k; rho++) {
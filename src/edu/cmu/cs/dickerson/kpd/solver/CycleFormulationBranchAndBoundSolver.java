@@ -0,0 +1,688 @@
+package edu.cmu.cs.dickerson.kpd.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
+import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleColumnIndex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+
+/**
+ * Exact solver for the cycle formulation IP -- maximize the weight of a set of
+ * vertex-disjoint cycles and chains -- by branch and bound, in plain Java.  Same
+ * inputs and output as {@link CycleFormulationCPLEXSolver}, but needs no CPLEX
+ * install, and keeps no static state, so any number can run at once.
+ *
+ * Each node branches on one still-matchable vertex: either it's covered by one of
+ * the cycles through it that are still legal, or it's left unmatched.  A vertex's
+ * cycles form a clique -- at most one can be used -- so covering it rules out the
+ * rest.  Nodes are pruned by the Lagrangian relaxation of the vertex constraints,
+ * whose best value is the LP relaxation's; the multipliers are found by subgradient
+ * steps at the root and carried down the tree, where a few more steps per node
+ * suffice.  They also steer the search: the branching vertex is the one the
+ * relaxation most overuses, children are tried in order of reduced weight, and a
+ * greedy packing by reduced weight at the root gives the first good incumbent.  With
+ * integer weights (e.g., one per transplant) bounds are rounded down.
+ *
+ * setMaxCPUThreads splits the top of the tree into subtrees searched in parallel
+ * against a shared incumbent (0, the default, is one thread per processor);
+ * setMaxSolveSeconds stops early with the best matching found so far (check
+ * isProvenOptimal); setRelativeMipGap prunes nodes that can't beat the incumbent
+ * by more than that fraction.
+ *
+ * @author John P. Dickerson
+ */
+public class CycleFormulationBranchAndBoundSolver extends Solver {
+
+	private static final double EPS = 1e-9;
+	private static final double INTEGRALITY_TOLERANCE = 1e-6;
+	// Split the tree until there are at least this many subtrees per thread
+	private static final int TASKS_PER_THREAD = 8;
+	// Subgradient steps: at most this many at the root and at other nodes, halving the step after this many without improvement
+	private static final int ROOT_ITERATIONS = 2000;
+	private static final int ROOT_STALL_ITERATIONS = 20;
+	private static final int NODE_ITERATIONS = 30;
+	private static final int NODE_STALL_ITERATIONS = 10;
+	private static final double INITIAL_STEP_SCALE = 1.0;
+	// Check the clock only every so often
+	private static final int CLOCK_CHECK_INTERVAL = 256;
+
+	private final CycleMembership membership;
+	protected List<Cycle> cycles;
+
+	// Columns (cycles) and their vertices, as membership vertex indices
+	private int numCols;
+	private int numVertices;
+	private double[] weights;
+	private int[] colOffsets;
+	private int[] colVertices;
+	private int[] vertexOffsets;
+	private int[] vertexColumns;
+	// If every weight is an integer, so is every matching's, and bounds can be rounded down
+	private boolean integralWeights;
+
+	// Shared by all search threads
+	private volatile double incumbentValue;
+	private int[] incumbent;
+	private final Object incumbentLock = new Object();
+	private volatile boolean stopped;
+	private long deadlineNanos;
+	private final AtomicLong numNodes = new AtomicLong(0);
+
+	// Results of the last solve
+	private boolean provenOptimal = false;
+	private double upperBound = 0.0;
+
+	public CycleFormulationBranchAndBoundSolver(Pool pool, List<Cycle> cycles, CycleMembership membership) {
+		super(pool);
+		this.cycles = cycles;
+		this.membership = membership;
+	}
+
+	public Solution solve() throws SolverException {
+
+		IOUtil.dPrintln(getClass().getSimpleName(), "Solving cycle formulation IP by branch and bound.");
+		long solveStartTime = System.nanoTime();
+
+		// If no cycles, return 0-value empty solution
+		if(cycles.size() == 0) {
+			provenOptimal = true;
+			upperBound = 0.0;
+			return new Solution(0,0,new HashSet<Cycle>());
+		}
+		index();
+
+		int numThreads = (maxCPUThreads > 0) ? maxCPUThreads : Runtime.getRuntime().availableProcessors();
+		deadlineNanos = (maxSolveSeconds > 0) ? solveStartTime + (long) (maxSolveSeconds * 1e9) : Long.MAX_VALUE;
+		stopped = false;
+		numNodes.set(0);
+
+		// Start from a greedy matching, heaviest cycles first
+		Search root = new Search();
+		setGreedyIncumbent(root);
+		root.initMultipliers();
+		upperBound = root.bound(ROOT_ITERATIONS, ROOT_STALL_ITERATIONS);
+		root.completeGreedily();
+		if(integralWeights) {
+			upperBound = Math.floor(upperBound + INTEGRALITY_TOLERANCE);
+		}
+
+		if(numThreads <= 1) {
+			root.run();
+		} else {
+			runInParallel(root, numThreads);
+		}
+		provenOptimal = !stopped;
+		if(provenOptimal && relativeMipGap <= 0.0) {
+			upperBound = incumbentValue;
+		}
+
+		long solveTime = System.nanoTime() - solveStartTime;
+		Solution sol = new Solution();
+		double objVal = 0.0;
+		for(int col : incumbent) {
+			sol.addMatchedCycle(cycles.get(col));
+			objVal += weights[col];
+		}
+		sol.setObjectiveValue(objVal);
+		sol.setSolveTime(solveTime);
+
+		IOUtil.dPrintln(getClass().getSimpleName(), (provenOptimal ? "Solved IP!" : "Out of time.") + "  Objective value: " + objVal + " (bound " + upperBound + "), nodes: " + numNodes.get() + ", time: " + (solveTime / 1000000000.0));
+		IOUtil.dPrintln(getClass().getSimpleName(), "Number of cycles in matching: " + sol.getMatching().size());
+		return sol;
+	}
+
+	/**
+	 * Copies the membership into flat arrays, plus each column's vertices, and the weights
+	 */
+	private void index() {
+		CycleColumnIndex index = new CycleColumnIndex(membership);
+		if(index.getNumColumns() != cycles.size()) {
+			throw new IllegalArgumentException("Membership has " + index.getNumColumns() + " columns, but there are " + cycles.size() + " cycles.");
+		}
+		numCols = index.getNumColumns();
+		numVertices = index.getNumVertices();
+		colOffsets = index.getColumnOffsets();
+		colVertices = index.getColumnVertices();
+		vertexOffsets = index.getVertexOffsets();
+		vertexColumns = index.getVertexColumns();
+		weights = new double[numCols];
+		integralWeights = true;
+		for(int col=0; col<numCols; col++) {
+			weights[col] = cycles.get(col).getWeight();
+			integralWeights &= (weights[col] == Math.rint(weights[col]));
+		}
+	}
+
+	private void setGreedyIncumbent(Search root) {
+		Integer[] order = new Integer[numCols];
+		for(int col=0; col<numCols; col++) {
+			order[col] = col;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(weights[b], weights[a]);
+			}
+		});
+		boolean[] used = new boolean[numVertices];
+		List<Integer> greedy = new ArrayList<Integer>();
+		double value = 0.0;
+		for(int col : order) {
+			if(!root.isLegal(col)) { continue; }
+			boolean free = true;
+			for(int pos=colOffsets[col]; pos<colOffsets[col+1] && free; pos++) {
+				free = !used[colVertices[pos]];
+			}
+			if(free) {
+				for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+					used[colVertices[pos]] = true;
+				}
+				greedy.add(col);
+				value += weights[col];
+			}
+		}
+		incumbent = new int[greedy.size()];
+		for(int i=0; i<incumbent.length; i++) {
+			incumbent[i] = greedy.get(i);
+		}
+		incumbentValue = value;
+	}
+
+	private void offerIncumbent(int[] cols, int length, double value) {
+		if(value <= incumbentValue + EPS) { return; }
+		synchronized(incumbentLock) {
+			if(value > incumbentValue + EPS) {
+				incumbent = Arrays.copyOf(cols, length);
+				incumbentValue = value;
+			}
+		}
+	}
+
+	/**
+	 * @return nodes whose value plus bound don't exceed this can't improve enough on the incumbent
+	 */
+	private double pruneThreshold() {
+		double incumbent = incumbentValue;
+		double threshold = incumbent + Math.max(EPS, relativeMipGap * Math.abs(incumbent));
+		if(integralWeights) {
+			// Nothing strictly between the incumbent and the next integer is achievable
+			threshold = Math.max(threshold, incumbent + 1.0 - INTEGRALITY_TOLERANCE);
+		}
+		return threshold;
+	}
+
+	/**
+	 * Expands the top of the tree breadth-first until there are enough subtrees to
+	 * keep every thread busy, then has the threads claim and search them.  A subtree
+	 * is just the path of decisions from the root (see Search.apply), so the frontier
+	 * costs O(depth) per subtree; each thread copies the root state once and replays
+	 * the path of every subtree it claims.
+	 */
+	private void runInParallel(final Search root, int numThreads) throws SolverException {
+
+		List<int[]> frontier = new ArrayList<int[]>();
+		frontier.add(new int[0]);
+		while(!frontier.isEmpty() && frontier.size() < TASKS_PER_THREAD*numThreads) {
+			List<int[]> next = new ArrayList<int[]>();
+			for(int[] path : frontier) {
+				if(stopped || System.nanoTime() > deadlineNanos) {
+					stopped = true;
+					return;
+				}
+				root.expandInto(path, next);
+			}
+			frontier = next;
+		}
+		final List<int[]> tasks = frontier;
+		if(tasks.isEmpty()) {
+			return;
+		}
+		numThreads = Math.min(numThreads, tasks.size());
+		IOUtil.dPrintln(getClass().getSimpleName(), "Searching " + tasks.size() + " subtrees on " + numThreads + " threads.");
+
+		final AtomicInteger nextTask = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(numThreads);
+			for(int threadIdx=0; threadIdx<numThreads; threadIdx++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						Search search = new Search(root);
+						int taskIdx;
+						while((taskIdx = nextTask.getAndIncrement()) < tasks.size()) {
+							search.run(tasks.get(taskIdx));
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SolverException("Interrupted during branch and bound.");
+				} catch(ExecutionException e) {
+					Throwable cause = e.getCause();
+					if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if(cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new SolverException("Branch and bound failed: " + cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * One thread's search state: which vertices are closed (covered, or left
+	 * unmatched), and for each column how many of its vertices are closed -- a column
+	 * is legal iff none are -- all undone on backtrack.  The index arrays are the
+	 * solver's, shared read-only by every thread.
+	 */
+	private final class Search {
+		private final int[] numClosed;   // per column; weightless columns start at 1, so are never legal
+		private final int[] numLegal;    // per vertex: number of legal columns through it
+		private final int[] chosen;
+		private int numChosen = 0;
+		private double value = 0.0;
+		private long nodes = 0;
+
+		// Lagrange multipliers, carried from node to node, and scratch for bound()
+		private final double[] lambda;
+		private final double[] subgradient;
+		private int branchVertex;
+
+		Search() {
+			numClosed = new int[numCols];
+			numLegal = new int[numVertices];
+			chosen = new int[numVertices];
+			lambda = new double[numVertices];
+			subgradient = new double[numVertices];
+			for(int col=0; col<numCols; col++) {
+				if(weights[col] <= EPS || colOffsets[col] == colOffsets[col+1]) {
+					numClosed[col] = 1;
+				} else {
+					for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+						numLegal[colVertices[pos]]++;
+					}
+				}
+			}
+		}
+
+		Search(Search other) {
+			numClosed = other.numClosed.clone();
+			numLegal = other.numLegal.clone();
+			chosen = other.chosen.clone();
+			numChosen = other.numChosen;
+			value = other.value;
+			lambda = other.lambda.clone();
+			subgradient = new double[numVertices];
+		}
+
+		boolean isLegal(int col) {
+			return 0 == numClosed[col];
+		}
+
+		void close(int vIdx) {
+			for(int pos=vertexOffsets[vIdx]; pos<vertexOffsets[vIdx+1]; pos++) {
+				int col = vertexColumns[pos];
+				if(0 == numClosed[col]++) {
+					for(int cPos=colOffsets[col]; cPos<colOffsets[col+1]; cPos++) {
+						numLegal[colVertices[cPos]]--;
+					}
+				}
+			}
+		}
+
+		void reopen(int vIdx) {
+			for(int pos=vertexOffsets[vIdx+1]-1; pos>=vertexOffsets[vIdx]; pos--) {
+				int col = vertexColumns[pos];
+				if(0 == --numClosed[col]) {
+					for(int cPos=colOffsets[col]; cPos<colOffsets[col+1]; cPos++) {
+						numLegal[colVertices[cPos]]++;
+					}
+				}
+			}
+		}
+
+		void take(int col) {
+			chosen[numChosen++] = col;
+			value += weights[col];
+			for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+				close(colVertices[pos]);
+			}
+		}
+
+		void untake(int col) {
+			for(int pos=colOffsets[col+1]-1; pos>=colOffsets[col]; pos--) {
+				reopen(colVertices[pos]);
+			}
+			value -= weights[col];
+			numChosen--;
+		}
+
+		/**
+		 * Lagrangian bound: relaxing each open vertex's constraint with a multiplier
+		 * lambda_v >= 0 leaves sum_v lambda_v + sum_{legal c} max(0, w_c - sum_{v in c} lambda_v),
+		 * an upper bound on what the legal columns can still add for any lambda.  Takes
+		 * Polyak subgradient steps toward the pruning threshold, starting from the
+		 * multipliers the parent left, and stops as soon as the node can be pruned.
+		 *
+		 * Also sets branchVertex to the matchable vertex in the most columns with positive
+		 * reduced weight (fewest legal columns on ties), or -1 if nothing is left to match
+		 * @param maxIters subgradient steps to take at most
+		 * @return the smallest bound seen
+		 */
+		double bound(int maxIters, int stallIters) {
+			double target = pruneThreshold() - value;
+			double best = Double.POSITIVE_INFINITY;
+			double stepScale = INITIAL_STEP_SCALE;
+			int sinceImproved = 0;
+			for(int iter=0; ; iter++) {
+				double lagrangian = lagrangian();
+				if(lagrangian < best - EPS) {
+					best = lagrangian;
+					sinceImproved = 0;
+				} else if(++sinceImproved >= stallIters) {
+					stepScale /= 2.0;
+					sinceImproved = 0;
+				}
+				if(best <= target || iter >= maxIters) { break; }
+
+				// Project the subgradient onto lambda >= 0
+				double norm = 0.0;
+				for(int vIdx=0; vIdx<numVertices; vIdx++) {
+					if(lambda[vIdx] <= 0.0 && subgradient[vIdx] > 0.0) {
+						subgradient[vIdx] = 0.0;
+					}
+					norm += subgradient[vIdx] * subgradient[vIdx];
+				}
+				if(norm <= 0.0) { break; }   // lambda is optimal for this node's LP
+				double step = stepScale * (lagrangian - target) / norm;
+				for(int vIdx=0; vIdx<numVertices; vIdx++) {
+					lambda[vIdx] = Math.max(0.0, lambda[vIdx] - step * subgradient[vIdx]);
+				}
+			}
+
+			// Branch where the relaxation most overuses a vertex
+			branchVertex = -1;
+			lagrangian();
+			for(int vIdx=0; vIdx<numVertices; vIdx++) {
+				if(numLegal[vIdx] > 0 && (branchVertex < 0 || subgradient[vIdx] < subgradient[branchVertex]
+						|| (subgradient[vIdx] == subgradient[branchVertex] && numLegal[vIdx] < numLegal[branchVertex]))) {
+					branchVertex = vIdx;
+				}
+			}
+			return (branchVertex < 0) ? 0.0 : best;
+		}
+
+		/**
+		 * @return the Lagrangian at the current multipliers; fills subgradient
+		 */
+		private double lagrangian() {
+			double total = 0.0;
+			for(int vIdx=0; vIdx<numVertices; vIdx++) {
+				if(numLegal[vIdx] > 0) {
+					total += lambda[vIdx];
+					subgradient[vIdx] = 1.0;
+				} else {
+					subgradient[vIdx] = 0.0;
+				}
+			}
+			for(int col=0; col<numCols; col++) {
+				if(0 != numClosed[col]) { continue; }
+				double reducedWeight = weights[col];
+				for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+					reducedWeight -= lambda[colVertices[pos]];
+				}
+				if(reducedWeight > 0.0) {
+					total += reducedWeight;
+					for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+						subgradient[colVertices[pos]] -= 1.0;
+					}
+				}
+			}
+			return total;
+		}
+
+		/**
+		 * Starts the multipliers at lambda_v = max_{c through v} w_c/|c|, where every
+		 * column's reduced weight is zero, so the Lagrangian is just their sum
+		 */
+		void initMultipliers() {
+			for(int vIdx=0; vIdx<numVertices; vIdx++) {
+				for(int pos=vertexOffsets[vIdx]; pos<vertexOffsets[vIdx+1]; pos++) {
+					int col = vertexColumns[pos];
+					if(0 == numClosed[col]) {
+						lambda[vIdx] = Math.max(lambda[vIdx], weights[col] / (colOffsets[col+1] - colOffsets[col]));
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return legal columns through vIdx, largest reduced weight (under the current multipliers) first
+		 */
+		int[] legalColumns(int vIdx) {
+			int[] cols = new int[numLegal[vIdx]];
+			double[] keys = new double[cols.length];
+			int n = 0;
+			for(int pos=vertexOffsets[vIdx]; pos<vertexOffsets[vIdx+1]; pos++) {
+				int col = vertexColumns[pos];
+				if(0 == numClosed[col]) {
+					// Insertion sort; a vertex is in few legal columns by the time we branch on it
+					double key = reducedWeight(col);
+					int i = n++;
+					while(i > 0 && keys[i-1] < key) {
+						cols[i] = cols[i-1];
+						keys[i] = keys[i-1];
+						i--;
+					}
+					cols[i] = col;
+					keys[i] = key;
+				}
+			}
+			return cols;
+		}
+
+		private double reducedWeight(int col) {
+			double reducedWeight = weights[col];
+			for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+				reducedWeight -= lambda[colVertices[pos]];
+			}
+			return reducedWeight;
+		}
+
+		/**
+		 * Lagrangian heuristic: completes the chosen columns greedily with legal
+		 * columns in order of reduced weight, and offers the result as an incumbent
+		 */
+		void completeGreedily() {
+			int numLegalCols = 0;
+			for(int col=0; col<numCols; col++) {
+				if(0 == numClosed[col]) { numLegalCols++; }
+			}
+			Integer[] order = new Integer[numLegalCols];
+			final double[] keys = new double[numCols];
+			numLegalCols = 0;
+			for(int col=0; col<numCols; col++) {
+				if(0 == numClosed[col]) {
+					order[numLegalCols++] = col;
+					keys[col] = reducedWeight(col);
+				}
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int cmp = Double.compare(keys[b], keys[a]);
+					return (0 != cmp) ? cmp : Double.compare(weights[b], weights[a]);
+				}
+			});
+
+			boolean[] used = new boolean[numVertices];
+			int[] packed = Arrays.copyOf(chosen, numVertices);
+			int numPacked = numChosen;
+			double packedValue = value;
+			for(int col : order) {
+				boolean free = true;
+				for(int pos=colOffsets[col]; pos<colOffsets[col+1] && free; pos++) {
+					free = !used[colVertices[pos]];
+				}
+				if(free) {
+					for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+						used[colVertices[pos]] = true;
+					}
+					packed[numPacked++] = col;
+					packedValue += weights[col];
+				}
+			}
+			offerIncumbent(packed, numPacked, packedValue);
+		}
+
+		/**
+		 * Depth-first search of the subtree below this state
+		 */
+		void run() {
+			search();
+			numNodes.addAndGet(nodes);
+			nodes = 0;
+		}
+
+		/**
+		 * Depth-first search of the subtree at the end of path; leaves this state as it found it
+		 */
+		void run(int[] path) {
+			apply(path);
+			run();
+			undo(path);
+		}
+
+		/**
+		 * Replays a path of decisions from this state: col >= 0 takes column col, and
+		 * -1-vIdx leaves vertex vIdx unmatched
+		 */
+		private void apply(int[] path) {
+			for(int decision : path) {
+				if(decision >= 0) {
+					take(decision);
+				} else {
+					close(-1-decision);
+				}
+			}
+		}
+
+		private void undo(int[] path) {
+			for(int i=path.length-1; i>=0; i--) {
+				if(path[i] >= 0) {
+					untake(path[i]);
+				} else {
+					reopen(-1-path[i]);
+				}
+			}
+		}
+
+		private void search() {
+			if(stopped || pruneThreshold() > upperBound) { return; }
+			if(++nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > deadlineNanos) {
+				stopped = true;
+				return;
+			}
+
+			double bound = bound(NODE_ITERATIONS, NODE_STALL_ITERATIONS);
+			if(branchVertex < 0) {
+				offerIncumbent(chosen, numChosen, value);
+				return;
+			}
+			if(value + bound <= pruneThreshold()) {
+				return;
+			}
+
+			// Cover the branch vertex with each of its legal columns, or leave it unmatched
+			int vIdx = branchVertex;
+			for(int col : legalColumns(vIdx)) {
+				take(col);
+				search();
+				untake(col);
+			}
+			close(vIdx);
+			search();
+			reopen(vIdx);
+		}
+
+		/**
+		 * Adds the paths to the children (not pruned) of the node at the end of path to
+		 * out; records the incumbent if that node is a leaf.  Leaves this state as it found it
+		 */
+		void expandInto(int[] path, List<int[]> out) {
+			apply(path);
+			nodes++;
+			double bound = bound(NODE_ITERATIONS, NODE_STALL_ITERATIONS);
+			if(branchVertex < 0) {
+				offerIncumbent(chosen, numChosen, value);
+			} else if(value + bound > pruneThreshold()) {
+				int vIdx = branchVertex;
+				for(int col : legalColumns(vIdx)) {
+					out.add(extend(path, col));
+				}
+				out.add(extend(path, -1-vIdx));
+			}
+			undo(path);
+			numNodes.addAndGet(nodes);
+			nodes = 0;
+		}
+
+		private int[] extend(int[] path, int decision) {
+			int[] child = Arrays.copyOf(path, path.length+1);
+			child[path.length] = decision;
+			return child;
+		}
+	}
+
+	/**
+	 * @return true if the last solve finished (didn't run out of time), so its matching is optimal (within the relative gap)
+	 */
+	public boolean isProvenOptimal() {
+		return provenOptimal;
+	}
+
+	/**
+	 * @return upper bound on the optimal objective from the last solve (equal to the
+	 *   objective if proven optimal with no gap; otherwise the root LP dual bound)
+	 */
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	/**
+	 * @return number of branch-and-bound nodes explored in the last solve
+	 */
+	public long getNumNodes() {
+		return numNodes.get();
+	}
+
+	@Override
+	public String getID() {
+		return "Cycle Formulation Branch and Bound Solver";
+	}
+
+}
@@ -0,0 +1,446 @@
+package edu.cmu.cs.dickerson.kpd.solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.helper.Pair;
+import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
+import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleColumnIndex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+
+/**
+ * Solves the LP relaxation of the cycle formulation -- max w.x s.t. sum_{c through v}
+ * x_c <= 1 for every vertex v, 0 <= x <= 1 -- in plain Java, to within a relative
+ * gap, for the same {@code Pair<Solution, Map<Integer, Double>>} as
+ * {@link CycleFormulationLPRelaxCPLEXSolver}: the Solution's objective is the value
+ * of a feasible (near-optimal) fractional x, and the map is column index -> x_c.
+ * getDualBound is an upper bound on the LP's optimum.
+ *
+ * Works on the dual, over vertex prices y >= 0: adding (eps/2)||x||^2 to the primal
+ * makes the dual sum_v y_v + sum_c phi_eps(w_c - sum_{v in c} y_v) smooth, with
+ * gradient 1 - sum_{c through v} x_c(y), where x_c(y) = clip((w_c - sum y)/eps, 0, 1).
+ * It's minimized by accelerated projected gradient with backtracking, halving eps
+ * whenever progress stalls.  At every y, sum_v y_v + sum_c max(0, w_c - sum_{v in c} y_v)
+ * is a valid bound; every few iterations x(y) is made feasible by scaling each column
+ * down by its most overloaded vertex.  Each iteration is a pass over the columns
+ * and a pass over the membership's vertex ranges, both split across
+ * setMaxCPUThreads threads (0, the default, is one per processor).
+ * setMaxSolveSeconds caps the solve, returning the best x found so far, and
+ * setRelativeMipGap sets the relative gap to stop at (1e-3 by default here).
+ *
+ * @author John P. Dickerson
+ */
+public class CycleFormulationLPRelaxSolver extends Solver {
+
+	private static final double DEFAULT_RELATIVE_GAP = 1e-3;
+	private static final int MAX_ITERATIONS = 20000;
+	// Make the primal feasible and check the gap this often
+	private static final int CHECK_INTERVAL = 10;
+	// Smoothing starts at this fraction of the largest weight, and stops shrinking at the smaller one
+	private static final double INITIAL_SMOOTHING = 0.5;
+	private static final double MIN_SMOOTHING = 1e-5;
+	// Halve the smoothing if the smoothed dual improved by less than this (relative) since the last check
+	private static final double STALL_TOLERANCE = 1e-4;
+	// Don't split passes finer than this many membership entries per thread
+	private static final int MIN_ENTRIES_PER_THREAD = 1<<14;
+
+	private final CycleMembership membership;
+	protected List<Cycle> cycles;
+
+	// Results of the last solve
+	private double dualBound = 0.0;
+	private int numIterations = 0;
+
+	// Set up per solve: columns (cycles) and their vertices, as membership vertex indices (see CycleColumnIndex)
+	private int numCols;
+	private int numVertices;
+	private double[] weights;
+	private int[] colOffsets;
+	private int[] colVertices;
+	private int[] vertexOffsets;
+	private int[] vertexColumns;
+	private ExecutorService executor;
+	private int[] colChunks;
+	private int[] vertexChunks;
+	private double[] chunkSumA;
+	private double[] chunkSumB;
+
+	public CycleFormulationLPRelaxSolver(Pool pool, List<Cycle> cycles, CycleMembership membership) {
+		super(pool);
+		this.cycles = cycles;
+		this.membership = membership;
+		// A first-order method rarely closes the gap entirely, so don't default to Solver's exact 0
+		this.relativeMipGap = DEFAULT_RELATIVE_GAP;
+	}
+
+	/**
+	 * Solves the root LP relaxation of the cycle formulation kidney exchange IP
+	 * @return Basic solution (objective: value of the returned x) and a Map cycle index -> respective value in LP solve
+	 * @throws SolverException if interrupted, or a pass fails
+	 */
+	public Pair<Solution, Map<Integer, Double>> solve() throws SolverException {
+
+		IOUtil.dPrintln(getClass().getSimpleName(), "Solving cycle formulation LP.");
+		long solveStartTime = System.nanoTime();
+
+		// If no cycles, return 0-value empty solution
+		if(cycles.size() == 0) {
+			dualBound = 0.0;
+			numIterations = 0;
+			return new Pair<Solution, Map<Integer, Double>>(new Solution(0,0,new HashSet<Cycle>()), new HashMap<Integer, Double>());
+		}
+		index();
+
+		int numThreads = (maxCPUThreads > 0) ? maxCPUThreads : Runtime.getRuntime().availableProcessors();
+		numThreads = Math.max(1, Math.min(numThreads, colOffsets[numCols] / MIN_ENTRIES_PER_THREAD));
+		colChunks = chunk(colOffsets, numCols, numThreads);
+		vertexChunks = chunk(vertexOffsets, numVertices, numThreads);
+		chunkSumA = new double[numThreads];
+		chunkSumB = new double[numThreads];
+		executor = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads) : null;
+
+		double[] x;
+		double primalValue;
+		try {
+			x = new double[numCols];
+			primalValue = minimizeDual(x, solveStartTime);
+		} finally {
+			if(null != executor) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+
+		long solveTime = System.nanoTime() - solveStartTime;
+		Solution sol = new Solution();
+		sol.setObjectiveValue(primalValue);
+		sol.setSolveTime(solveTime);
+
+		Map<Integer, Double> cycleMap = new HashMap<Integer, Double>();
+		for(int cIdx=0; cIdx<x.length; cIdx++) {
+			cycleMap.put(cIdx, x[cIdx]);
+		}
+		IOUtil.dPrintln(getClass().getSimpleName(), "Solved LP!  Objective value: " + primalValue + " (dual bound " + dualBound + "), iterations: " + numIterations + ", threads: " + numThreads + ", time: " + (solveTime / 1000000000.0));
+		weights = null;
+		colOffsets = colVertices = vertexOffsets = vertexColumns = null;
+		return new Pair<Solution, Map<Integer, Double>>(sol, cycleMap);
+	}
+
+	/**
+	 * Copies the membership into flat arrays, plus each column's vertices, and the weights
+	 */
+	private void index() {
+		CycleColumnIndex index = new CycleColumnIndex(membership);
+		if(index.getNumColumns() != cycles.size()) {
+			throw new IllegalArgumentException("Membership has " + index.getNumColumns() + " columns, but there are " + cycles.size() + " cycles.");
+		}
+		numCols = index.getNumColumns();
+		numVertices = index.getNumVertices();
+		colOffsets = index.getColumnOffsets();
+		colVertices = index.getColumnVertices();
+		vertexOffsets = index.getVertexOffsets();
+		vertexColumns = index.getVertexColumns();
+		weights = new double[numCols];
+		for(int col=0; col<numCols; col++) {
+			weights[col] = cycles.get(col).getWeight();
+		}
+	}
+
+	/**
+	 * Splits [0, numItems) into numChunks contiguous ranges with about equal numbers of entries
+	 * @return chunk k is [bounds[k], bounds[k+1])
+	 */
+	private static int[] chunk(int[] offsets, int numItems, int numChunks) {
+		int[] bounds = new int[numChunks+1];
+		long numEntries = offsets[numItems];
+		int item = 0;
+		for(int k=1; k<numChunks; k++) {
+			long target = numEntries * k / numChunks;
+			while(item < numItems && offsets[item] < target) { item++; }
+			bounds[k] = item;
+		}
+		bounds[numChunks] = numItems;
+		return bounds;
+	}
+
+	/**
+	 * Accelerated projected gradient on the smoothed dual
+	 * @param bestX filled with the best feasible primal found
+	 * @return its value
+	 */
+	private double minimizeDual(double[] bestX, long solveStartTime) throws SolverException {
+
+		long deadlineNanos = (maxSolveSeconds > 0) ? solveStartTime + (long) (maxSolveSeconds * 1e9) : Long.MAX_VALUE;
+
+		// Start from y_v = max_c w_c/|c|, which prices every column out, and step size about 1/Lipschitz
+		double maxWeight = 0.0;
+		int maxLength = 1;
+		double[] y = new double[numVertices];
+		for(int col=0; col<numCols; col++) {
+			int length = colOffsets[col+1] - colOffsets[col];
+			maxWeight = Math.max(maxWeight, weights[col]);
+			maxLength = Math.max(maxLength, length);
+			for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+				int vIdx = colVertices[pos];
+				y[vIdx] = Math.max(y[vIdx], weights[col] / length);
+			}
+		}
+		dualBound = 0.0;
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			dualBound += y[vIdx];
+		}
+		numIterations = 0;
+		if(maxWeight <= 0.0) {
+			return 0.0;    // Nothing is worth packing
+		}
+
+		double eps = INITIAL_SMOOTHING * maxWeight;
+		double minEps = MIN_SMOOTHING * maxWeight;
+		double step = eps / maxLength;
+
+		double[] yPrev = y.clone();
+		double[] z = new double[numVertices];
+		double[] yNext = new double[numVertices];
+		double[] gradZ = new double[numVertices];
+		double[] gradNext = new double[numVertices];
+		double[] x = new double[numCols];
+		double[] scaled = new double[numCols];
+
+		double bestPrimal = 0.0;
+		double theta = 1.0;
+		double fY = evaluate(y, eps, x, gradNext);
+		double fAtLastCheck = fY;
+
+		while(numIterations < MAX_ITERATIONS) {
+			numIterations++;
+
+			// Extrapolate, then take a projected gradient step, backtracking until the quadratic model holds
+			double thetaNext = (1.0 + Math.sqrt(1.0 + 4.0*theta*theta)) / 2.0;
+			double momentum = (theta - 1.0) / thetaNext;
+			for(int vIdx=0; vIdx<numVertices; vIdx++) {
+				z[vIdx] = Math.max(0.0, y[vIdx] + momentum * (y[vIdx] - yPrev[vIdx]));
+			}
+			double fZ = evaluate(z, eps, x, gradZ);
+			double fNext;
+			while(true) {
+				double decrease = 0.0, distSq = 0.0;
+				for(int vIdx=0; vIdx<numVertices; vIdx++) {
+					yNext[vIdx] = Math.max(0.0, z[vIdx] - step * gradZ[vIdx]);
+					double d = yNext[vIdx] - z[vIdx];
+					decrease += gradZ[vIdx] * d;
+					distSq += d * d;
+				}
+				fNext = evaluate(yNext, eps, x, gradNext);
+				if(fNext <= fZ + decrease + distSq / (2.0 * step) + 1e-12 * Math.abs(fZ) || step < 1e-16) {
+					break;
+				}
+				step /= 2.0;
+			}
+			step *= 1.2;
+
+			// Restart the momentum if the step went uphill
+			if(fNext > fY) {
+				theta = 1.0;
+			} else {
+				theta = thetaNext;
+			}
+			double[] swap = yPrev; yPrev = y; y = yNext; yNext = swap;
+			fY = fNext;
+
+			if(numIterations % CHECK_INTERVAL == 0) {
+				// x (and the loads in gradNext) are at y
+				double primal = scaleToFeasible(x, gradNext, scaled);
+				if(primal > bestPrimal) {
+					bestPrimal = primal;
+					System.arraycopy(scaled, 0, bestX, 0, scaled.length);
+				}
+				if(dualBound - bestPrimal <= relativeMipGap * Math.abs(dualBound) || System.nanoTime() > deadlineNanos) {
+					break;
+				}
+				if(eps > minEps && fAtLastCheck - fY <= STALL_TOLERANCE * Math.abs(fY)) {
+					// Smoothed problem's nearly solved; sharpen it, and start the momentum over
+					eps = Math.max(minEps, eps / 2.0);
+					step /= 2.0;
+					theta = 1.0;
+					System.arraycopy(y, 0, yPrev, 0, numVertices);
+					fY = evaluate(y, eps, x, gradNext);
+				}
+				fAtLastCheck = fY;
+			}
+		}
+		return bestPrimal;
+	}
+
+	/**
+	 * Sets x to x(point), grad to the smoothed dual's gradient at point, and lowers
+	 * dualBound to the Lagrangian at point if smaller
+	 * @return smoothed dual at point
+	 */
+	private double evaluate(final double[] point, final double eps, final double[] x, final double[] grad) throws SolverException {
+
+		// Columns: x_c, the smoothing term, and the Lagrangian's excess
+		runChunks(colChunks, new Pass() {
+			@Override
+			void run(int chunkIdx, int from, int to) {
+				double smoothed = 0.0, excess = 0.0;
+				for(int col=from; col<to; col++) {
+					double r = weights[col];
+					for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+						r -= point[colVertices[pos]];
+					}
+					if(r <= 0.0) {
+						x[col] = 0.0;
+					} else if(r >= eps) {
+						x[col] = 1.0;
+						smoothed += r - eps/2.0;
+						excess += r;
+					} else {
+						x[col] = r / eps;
+						smoothed += r*r / (2.0*eps);
+						excess += r;
+					}
+				}
+				chunkSumA[chunkIdx] = smoothed;
+				chunkSumB[chunkIdx] = excess;
+			}
+		});
+		double smoothed = 0.0, excess = 0.0;
+		for(int k=0; k<chunkSumA.length; k++) {
+			smoothed += chunkSumA[k];
+			excess += chunkSumB[k];
+		}
+
+		// Vertices: gradient is one minus the load
+		runChunks(vertexChunks, new Pass() {
+			@Override
+			void run(int chunkIdx, int from, int to) {
+				double priceSum = 0.0;
+				for(int vIdx=from; vIdx<to; vIdx++) {
+					double load = 0.0;
+					for(int pos=vertexOffsets[vIdx]; pos<vertexOffsets[vIdx+1]; pos++) {
+						load += x[vertexColumns[pos]];
+					}
+					grad[vIdx] = 1.0 - load;
+					priceSum += point[vIdx];
+				}
+				chunkSumA[chunkIdx] = priceSum;
+			}
+		});
+		double priceSum = 0.0;
+		for(int k=0; k<chunkSumA.length; k++) {
+			priceSum += chunkSumA[k];
+		}
+
+		dualBound = Math.min(dualBound, priceSum + excess);
+		return priceSum + smoothed;
+	}
+
+	/**
+	 * Divides each x_c by the largest load (if over 1) among its vertices
+	 * @param grad one minus each vertex's load under x
+	 * @return weight of the scaled x
+	 */
+	private double scaleToFeasible(final double[] x, final double[] grad, final double[] scaled) throws SolverException {
+		runChunks(colChunks, new Pass() {
+			@Override
+			void run(int chunkIdx, int from, int to) {
+				double value = 0.0;
+				for(int col=from; col<to; col++) {
+					if(x[col] <= 0.0) {
+						scaled[col] = 0.0;
+						continue;
+					}
+					double maxLoad = 1.0;
+					for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+						maxLoad = Math.max(maxLoad, 1.0 - grad[colVertices[pos]]);
+					}
+					scaled[col] = x[col] / maxLoad;
+					value += weights[col] * scaled[col];
+				}
+				chunkSumA[chunkIdx] = value;
+			}
+		});
+		double value = 0.0;
+		for(int k=0; k<chunkSumA.length; k++) {
+			value += chunkSumA[k];
+		}
+		return value;
+	}
+
+	/**
+	 * A pass over one chunk of columns or vertices
+	 */
+	private static abstract class Pass {
+		abstract void run(int chunkIdx, int from, int to);
+	}
+
+	private void runChunks(final int[] chunks, final Pass pass) throws SolverException {
+		int numChunks = chunks.length - 1;
+		if(null == executor) {
+			for(int k=0; k<numChunks; k++) {
+				pass.run(k, chunks[k], chunks[k+1]);
+			}
+			return;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numChunks);
+		for(int k=0; k<numChunks; k++) {
+			final int chunkIdx = k;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					pass.run(chunkIdx, chunks[chunkIdx], chunks[chunkIdx+1]);
+					return null;
+				}
+			});
+		}
+		try {
+			for(Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SolverException("Interrupted during LP solve.");
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new SolverException("LP solve failed: " + cause);
+		}
+	}
+
+	/**
+	 * @return upper bound on the LP optimum from the last solve
+	 */
+	public double getDualBound() {
+		return dualBound;
+	}
+
+	/**
+	 * @return gradient iterations taken in the last solve
+	 */
+	public int getNumIterations() {
+		return numIterations;
+	}
+
+	@Override
+	public String getID() {
+		return "Cycle LP Relax Solver";
+	}
+
+}
@@ -0,0 +1,144 @@
+package edu.cmu.cs.dickerson.kpd.solver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
+import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+import edu.cmu.cs.dickerson.kpd.structure.alg.PoolDecomposition;
+
+/**
+ * Solves the cycle formulation one independent component at a time (see
+ * {@link PoolDecomposition}).  Each component becomes its own sub-Pool; cycles
+ * and chains are generated on it, handed to a {@link ComponentSolver} (an IP
+ * solver, a greedy packer, ...), and the per-component Solutions are merged.
+ * Components are solved concurrently on up to maxCPUThreads threads (0 means
+ * one per available processor).
+ *
+ * Sub-Pools share this pool's Vertex and Edge objects, so the merged matching
+ * refers to the original pool's edges.
+ *
+ * @author John P. Dickerson
+ */
+public class DecompositionSolver extends Solver {
+
+	/**
+	 * Solves a single component; called concurrently from several threads, so
+	 * implementations must not share mutable state across calls
+	 */
+	public static interface ComponentSolver {
+		public Solution solve(Pool componentPool, List<Cycle> cycles, CycleMembership membership) throws SolverException;
+	}
+
+	private final int maxCycleSize;
+	private final int maxChainSize;
+	private final boolean usingFailureProbabilities;
+	private PoolDecomposition decomposition = null;
+
+	public DecompositionSolver(Pool pool, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities) {
+		super(pool);
+		this.maxCycleSize = maxCycleSize;
+		this.maxChainSize = maxChainSize;
+		this.usingFailureProbabilities = usingFailureProbabilities;
+	}
+
+	/**
+	 * @return the decomposition used by the last call to solve (null before then)
+	 */
+	public PoolDecomposition getDecomposition() {
+		return decomposition;
+	}
+
+	public Solution solve(final ComponentSolver componentSolver) throws SolverException {
+
+		long start = System.nanoTime();
+		decomposition = new PoolDecomposition(pool, maxCycleSize, maxChainSize);
+		List<List<Vertex>> components = decomposition.getComponents();
+
+		int numThreads = (maxCPUThreads > 0) ? maxCPUThreads : Runtime.getRuntime().availableProcessors();
+		numThreads = Math.max(1, Math.min(numThreads, components.size()));
+		IOUtil.dPrintln(getClass().getSimpleName(), "Solving " + components.size() + " components on " + numThreads + " threads.");
+
+		Solution merged = new Solution();
+		if(components.isEmpty()) {
+			merged.setSolveTime(System.nanoTime() - start);
+			return merged;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Solution>> futures = new ArrayList<Future<Solution>>(components.size());
+			for(final List<Vertex> component : components) {
+				futures.add(executor.submit(new Callable<Solution>() {
+					@Override
+					public Solution call() throws SolverException {
+						return solveComponent(component, componentSolver);
+					}
+				}));
+			}
+
+			// Merge in component order, so the result doesn't depend on thread scheduling
+			for(Future<Solution> future : futures) {
+				Solution sol = getOrRethrow(future);
+				if(null == sol) { continue; }
+				if(null != sol.getMatching()) {
+					merged.getMatching().addAll(sol.getMatching());
+				}
+				merged.setObjectiveValue(merged.getObjectiveValue() + sol.getObjectiveValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		merged.setSolveTime(System.nanoTime() - start);
+		return merged;
+	}
+
+	private Solution solveComponent(List<Vertex> component, ComponentSolver componentSolver) throws SolverException {
+		Set<Vertex> subsetV = new HashSet<Vertex>(component);
+		Pool subPool = pool.makeSubPool(subsetV);
+		List<Cycle> cycles = new CycleGenerator(subPool).generateCyclesAndChains(maxCycleSize, maxChainSize, usingFailureProbabilities);
+		if(cycles.isEmpty()) {
+			return null;
+		}
+		CycleMembership membership = new CycleMembership(subPool, cycles);
+		return componentSolver.solve(subPool, cycles, membership);
+	}
+
+	private static Solution getOrRethrow(Future<Solution> future) throws SolverException {
+		try {
+			return future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SolverException("Interrupted while waiting for a component solve.");
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof SolverException) {
+				throw (SolverException) cause;
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new SolverException("Component solve failed: " + cause);
+		}
+	}
+
+	@Override
+	public String getID() {
+		return "Decomposition";
+	}
+}
@@ -1,34 +1,73 @@
 package edu.cmu.cs.dickerson.kpd.solver.approx;
 
 import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
 
+/**
+ * Samples random chains from altruists.  Walks a {@link PoolSnapshot} of the pool,
+ * retaken whenever the pool's version has changed since the last sample, so edits
+ * to the pool (made through Pool's methods) are picked up.  Pass a seeded Random
+ * for reproducible samples.
+ */
 public class ChainSampler {
 
 	private Pool pool;
+	private PoolSnapshot snapshot;
+	private long snapshotVersion;
 	private boolean addInfiniteTailUtility = false;
 	private double infiniteTailFailureProb = 0.5;
+	private Random random;
+
+	// Scratch space reused across samples: inPath[v]==pathStamp iff v is in the current chain
+	private int[] inPath;
+	private int pathStamp = 0;
+	private int[] candidateEdges;
 	
 	public ChainSampler(Pool pool) {
-		this(pool, false, 0.5);
+		this(pool, new Random());
+	}
+
+	public ChainSampler(Pool pool, Random random) {
+		this(pool, false, 0.5, random);
 	}
 	
 	public ChainSampler(Pool pool, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+		this(pool, addInfiniteTailUtility, infiniteTailFailureProb, new Random());
+	}
+
+	public ChainSampler(Pool pool, boolean addInfiniteTailUtility, double infiniteTailFailureProb, Random random) {
 		if(addInfiniteTailUtility && (infiniteTailFailureProb <= 0.0 || infiniteTailFailureProb >= 1.0)) { throw new IllegalArgumentException("infiniteFailureProb must be in (0,1); your value=" + infiniteTailFailureProb); }
+		if(null == random) { throw new IllegalArgumentException("Random cannot be null."); }
 		
 		this.pool = pool;
+		this.random = random;
 		this.addInfiniteTailUtility = addInfiniteTailUtility;
 		this.infiniteTailFailureProb = infiniteTailFailureProb;
+		takeSnapshot();
+	}
+
+	/**
+	 * Snapshots the pool and sizes the scratch space to it
+	 */
+	private void takeSnapshot() {
+		this.snapshot = new PoolSnapshot(pool);
+		this.snapshotVersion = pool.getVersion();
+		this.pathStamp = 0;
+		this.inPath = new int[snapshot.getNumVertices()];
+		int maxOutDegree = 0;
+		for(int vIdx=0; vIdx<snapshot.getNumVertices(); vIdx++) {
+			maxOutDegree = Math.max(maxOutDegree, snapshot.getOutDegree(vIdx));
+		}
+		this.candidateEdges = new int[maxOutDegree];
 	}
 	
 	/**
@@ -46,71 +85,102 @@ public class ChainSampler {
 		if(null==alt) { throw new IllegalArgumentException("Altruist cannot be null."); }
 		if(null==matchedVerts) { throw new IllegalArgumentException("Set of matched vertices cannot be null."); }
 		if(maxChainSize < 2) { throw new IllegalArgumentException("Cannot sample chains if maxChainSize<2 (maxChainSize=" + maxChainSize); }
-		if(pool.outgoingEdgesOf(alt).size() < 1) { throw new IllegalArgumentException("Altruist " + alt + " has no outgoing edges.  Cannot call sampleAChain."); }
+		if(pool.getVersion() != snapshotVersion) { takeSnapshot(); }
+		if(snapshot.indexOf(alt) < 0) { throw new IllegalArgumentException("Altruist " + alt + " is not in the pool."); }
+		if(snapshot.getOutDegree(snapshot.indexOf(alt)) < 1) { throw new IllegalArgumentException("Altruist " + alt + " has no outgoing edges.  Cannot call sampleAChain."); }
 
 		// Accumulate our chain's edges
 		Deque<Edge> path = new ArrayDeque<Edge>();
-		Set<Vertex> inPath = new HashSet<Vertex>();
+		if(++pathStamp == 0) {
+			// Stamp wrapped around; clear so stale entries can't look like "in path"
+			Arrays.fill(inPath, 0);
+			pathStamp = 1;
+		}
 
 		double pathSuccProb = 1.0;
 		double discountedPathWeight = 0.0;
 		double rawPathWeight = 0.0;
 
-		Vertex currentV = alt;
+		final int altIdx = snapshot.indexOf(alt);
+		int currentIdx = altIdx;
 		do {
 
-			List<Edge> shuffledOut = new ArrayList<Edge>(pool.outgoingEdgesOf(currentV));
-			Collections.shuffle(shuffledOut);
-			Edge nextE = null;
-			for(Edge edge : shuffledOut) {
+			// Draw out-edges uniformly at random without replacement until we hit a legal
+			// one; same distribution as shuffling the whole neighborhood, but stops early
+			int outStart = snapshot.getOutStart(currentIdx);
+			int numCandidates = snapshot.getOutDegree(currentIdx);
+			for(int i=0; i<numCandidates; i++) {
+				candidateEdges[i] = outStart + i;
+			}
+			int nextE = -1;
+			while(numCandidates > 0) {
+				int pick = random.nextInt(numCandidates);
+				int edge = candidateEdges[pick];
+				candidateEdges[pick] = candidateEdges[--numCandidates];
 
-				Vertex candidateV = pool.getEdgeTarget(edge);
+				int candidateIdx = snapshot.getEdgeTarget(edge);
 
-				// If this neighbor has already been matched (or is in our chain), skip
-				if(matchedVerts.contains(candidateV) || inPath.contains(candidateV)) { continue; }
 				// If this neighbor is an altruist, skip
-				if(candidateV.isAltruist()) { continue; }
+				if(snapshot.isAltruist(candidateIdx)) { continue; }
+				// If this neighbor has already been matched (or is in our chain), skip
+				if(inPath[candidateIdx] == pathStamp || matchedVerts.contains(snapshot.getVertex(candidateIdx))) { continue; }
 				// We've sampled a legal next step
 				nextE = edge;
 				break;
 			}
 
 			// If we're at the chain cap or if there are no legal next hops, end the chain
-			if(path.size() >= maxChainSize - 1 || null==nextE) {
+			Edge nextEdge;
+			int nextIdx;
+			double failureProb, edgeWeight;
+			if(path.size() >= maxChainSize - 1 || -1==nextE) {
 				
 				// If we're at the last step of the chain due to a chain cap, or if no vertices
 				// are both neighbors of this vertex AND unmatched, then try to hop back to the
 				// starting altruist
-				nextE = pool.getEdge(currentV, alt);
-				if(null==nextE) {
+				nextE = snapshot.findEdge(currentIdx, altIdx);
+				if(-1 != nextE) {
+					nextEdge = snapshot.getEdge(nextE);
+					failureProb = snapshot.getEdgeFailureProbability(nextE);
+				} else if(snapshot.hasImplicitAltruistEdges() && !snapshot.isAltruist(currentIdx)) {
+					// Implicit dummy edges are infallible and carry no weight
+					nextEdge = snapshot.getImplicitAltruistEdge(currentIdx, altIdx);
+					failureProb = 0.0;
+				} else {
 					return null;
 					//throw new RuntimeException("Starting with altruist " + alt + ", found a vertex that did not connect (dummy edge or otherwise) back to the altruist.\n" +
 					//		"Vertex: " + currentV + ", neighbors: " + pool.outgoingEdgesOf(currentV));
 				}
+				nextIdx = altIdx;
+				edgeWeight = 0.0;  // unused; chain ends here
+			} else {
+				nextEdge = snapshot.getEdge(nextE);
+				nextIdx = snapshot.getEdgeTarget(nextE);
+				failureProb = snapshot.getEdgeFailureProbability(nextE);
+				edgeWeight = snapshot.getEdgeWeight(nextE);
 			}
 
 
-			path.push(nextE);
-			Vertex nextV = pool.getEdgeTarget(nextE);		
-			inPath.add(nextV);
+			path.push(nextEdge);
+			inPath[nextIdx] = pathStamp;
 
 			// If we're ending the chain, make a formal Cycle and return
-			if(nextV.isAltruist() && nextV.equals(alt)) {
+			if(nextIdx == altIdx) {
 
 				// Add the discounted weight from this chain executing in its entirety
-				discountedPathWeight += ((1.0-nextE.getFailureProbability())*pathSuccProb*rawPathWeight);
+				discountedPathWeight += ((1.0-failureProb)*pathSuccProb*rawPathWeight);
 				break;
 
 			} else {
 				// Add discounted utility of chain goings to EXACTLY this edge and then failing (so \sum weights * \prod success * (1-failure of this edge))
-				discountedPathWeight += (rawPathWeight*pathSuccProb*nextE.getFailureProbability());
+				discountedPathWeight += (rawPathWeight*pathSuccProb*failureProb);
 				// Probability of chain executing to very end (and maybe continuing)
-				pathSuccProb *= (1.0 - nextE.getFailureProbability());
+				pathSuccProb *= (1.0 - failureProb);
 				// We assume the chain gets this far, add edge to raw weight
-				rawPathWeight += pool.getEdgeWeight(nextE);
+				rawPathWeight += edgeWeight;
 
 				// We've hopped!
-				currentV = nextV;
+				currentIdx = nextIdx;
 			}
 
 		} while(true);
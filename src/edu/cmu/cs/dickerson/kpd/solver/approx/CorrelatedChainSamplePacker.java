@@ -21,6 +21,10 @@ public class CorrelatedChainSamplePacker extends Packer {
 	private int maxChainSize;
 	private boolean usingFailureProbabilities;
 
+	// 2- and 3-cycles are indexed once, as a base; each pack appends only its sampled chains
+	private List<Cycle> allCyclesForLP = null;
+	private CycleMembership cycleMembershipForLP = null;
+
 	public CorrelatedChainSamplePacker(Pool pool, List<Cycle> reducedCycles, int chainSamplesPerAltruist, int maxChainSize, boolean usingFailureProbabilities) {
 		this.pool = pool;
 		this.reducedCycles = reducedCycles;
@@ -64,11 +68,18 @@ public class CorrelatedChainSamplePacker extends Packer {
 		
 		IOUtil.dPrintln("Sampled " + sampledChains.size() + " chains (expected " + (pool.getAltruists().size()*chainSamplesPerAltruist) + ")");
 		
-		// Make a new CycleMembership list for the LP solve.  This is needlessly heavyweight (we could just update the
-		// the CycleMembership and list of Cycles passed in), but we're running repeated experiments so no go.  Remove in practice.
-		List<Cycle> allCyclesForLP = new ArrayList<Cycle>(reducedCycles);
-		allCyclesForLP.addAll(sampledChains);
-		CycleMembership cycleMembershipForLP = new CycleMembership(pool, allCyclesForLP);
+		// Drop last pack's sampled chains and append this pack's to the (unchanged) 2- and 3-cycles
+		if(null == cycleMembershipForLP) {
+			allCyclesForLP = new ArrayList<Cycle>(reducedCycles);
+			cycleMembershipForLP = new CycleMembership(pool, reducedCycles);
+			cycleMembershipForLP.freezeBase();
+		}
+		allCyclesForLP.subList(reducedCycles.size(), allCyclesForLP.size()).clear();
+		cycleMembershipForLP.resetToBase();
+		for(Cycle chain : sampledChains) {
+			allCyclesForLP.add(chain);
+			cycleMembershipForLP.addCycle(chain);
+		}
 				
 		// Now solve the LP relaxation on all 2-, 3-cycles and the sampled chains
 		CycleLPRelaxationPacker cyclePacker = new CycleLPRelaxationPacker(pool, allCyclesForLP, cycleMembershipForLP, true);		
@@ -13,12 +13,14 @@ import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
 import edu.cmu.cs.dickerson.kpd.helper.MapUtil;
 import edu.cmu.cs.dickerson.kpd.helper.Pair;
 import edu.cmu.cs.dickerson.kpd.solver.CycleFormulationLPRelaxCPLEXSolver;
+import edu.cmu.cs.dickerson.kpd.solver.CycleFormulationLPRelaxSolver;
 import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
 import edu.cmu.cs.dickerson.kpd.solver.exception.SolverRuntimeException;
 import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleConflictGraph;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
 
 public class CycleLPRelaxationPacker extends Packer {
@@ -33,10 +35,42 @@ public class CycleLPRelaxationPacker extends Packer {
 	
 	private boolean isInitialized = false;
 
+	// If false, get LP values from the built-in (pure-Java, approximate) LP solver instead of CPLEX
+	private final boolean useCPLEXLP;
+
+	// If non-null, test packability by blocked columns instead of vertex sets
+	private CycleConflictGraph conflicts = null;
+
 	public CycleLPRelaxationPacker(Pool pool, List<Cycle> cycles, CycleMembership membership, boolean doInitialization) {
+		this(pool, cycles, membership, doInitialization, true);
+	}
+
+	/**
+	 * @param pool
+	 * @param cycles
+	 * @param membership
+	 * @param doInitialization
+	 * @param useCPLEXLP false to solve the LP relaxation with the built-in CycleFormulationLPRelaxSolver instead of CPLEX
+	 */
+	public CycleLPRelaxationPacker(Pool pool, List<Cycle> cycles, CycleMembership membership, boolean doInitialization, boolean useCPLEXLP) {
 		this.pool = pool;
 		this.cycles = cycles;
 		this.membership = membership;
+		this.useCPLEXLP = useCPLEXLP;
+		if(doInitialization) { init(); }
+	}
+
+	/**
+	 * Same LP rounding, but uses precomputed conflicts (built from the membership for
+	 * cycles) to decide which cycles are still legal to pack
+	 */
+	public CycleLPRelaxationPacker(Pool pool, List<Cycle> cycles, CycleConflictGraph conflicts, boolean doInitialization) {
+		this(pool, cycles, conflicts, doInitialization, true);
+	}
+
+	public CycleLPRelaxationPacker(Pool pool, List<Cycle> cycles, CycleConflictGraph conflicts, boolean doInitialization, boolean useCPLEXLP) {
+		this(pool, cycles, conflicts.getMembership(), false, useCPLEXLP);
+		this.conflicts = conflicts;
 		if(doInitialization) { init(); }
 	}
 
@@ -47,9 +81,13 @@ public class CycleLPRelaxationPacker extends Packer {
 
 		IOUtil.dPrintln(this.getClass().getSimpleName(), "Doing one-time heavyweight LP relaxation initialization");
 
-		CycleFormulationLPRelaxCPLEXSolver solver = new CycleFormulationLPRelaxCPLEXSolver(this.pool, this.cycles, this.membership);
 		try {
-			Pair<Solution, Map<Integer,Double>> solPair = solver.solve();
+			Pair<Solution, Map<Integer,Double>> solPair;
+			if(useCPLEXLP) {
+				solPair = new CycleFormulationLPRelaxCPLEXSolver(this.pool, this.cycles, this.membership).solve();
+			} else {
+				solPair = new CycleFormulationLPRelaxSolver(this.pool, this.cycles, this.membership).solve();
+			}
 			this.lpObjVal = solPair.getLeft().getObjectiveValue();
 			// Sort CycleIdx->Weight in reverse order by value (higher weights first)
 			this.sortedIndex = MapUtil.sortByValue( solPair.getRight(), true);
@@ -72,36 +110,34 @@ public class CycleLPRelaxationPacker extends Packer {
 		// Pack cycles
 		long start = System.nanoTime();
 
-		// Keep track of which vertices are in the matching so far
+		// Keep track of which vertices (or, with conflicts, which columns) the matching so far rules out
 		Set<Vertex> matchedVerts = new HashSet<Vertex>();
+		boolean[] blocked = (null != conflicts) ? new boolean[conflicts.getNumCycles()] : null;
 
 		// Iterate from highest to lowest weight cycle in the set,
 		// shuffling little chunks at a time to add some randomization
-		List<Cycle> cycleSubList = new ArrayList<Cycle>();
+		List<Integer> colSubList = new ArrayList<Integer>();
 		int cycleSubListMaxSize = 10;
-
 		for(Iterator<Integer> fullCycleIt = sortedIndex.keySet().iterator(); fullCycleIt.hasNext(); ) {
 
 			// Index into full cycle list, add this next cycle to list
-			cycleSubList.add( cycles.get(fullCycleIt.next()) );
+			colSubList.add(fullCycleIt.next());
 
 			// Every K cycles (or, if we're at the end, fewer than K cycles), pack
-			if(cycleSubList.size() >= cycleSubListMaxSize || !fullCycleIt.hasNext()) {
-
-				Collections.shuffle(cycleSubList);
-				for(Cycle cycle : cycleSubList) {
-					Set<Vertex> cVerts = Cycle.getConstituentVertices(cycle, pool);
+			if(colSubList.size() >= cycleSubListMaxSize || !fullCycleIt.hasNext()) {
 
+				Collections.shuffle(colSubList);
+				for(int col : colSubList) {
 					// If no vertices in this cycle are matched, it's legal to add; add it
-					if(Collections.disjoint(cVerts, matchedVerts)) {
-						matchedVerts.addAll(cVerts);
+					if(matchIfLegal(col, matchedVerts, blocked)) {
+						Cycle cycle = cycles.get(col);
 						objVal += cycle.getWeight();
 						matching.add(cycle);
 					}
 				}
-				cycleSubList.clear();
+				colSubList.clear();
 			}
-			
+
 			// If we hit the upper bound, break out
 			if(objVal >= upperBound) {
 				break;
@@ -127,4 +163,21 @@ public class CycleLPRelaxationPacker extends Packer {
 		sol.setSolveTime(totalTime);
 		return sol;
 	}
+
+	/**
+	 * If column col shares no vertex with the matching so far, marks its vertices as
+	 * matched: by blocking its conflicts if we have a conflict graph, else in matchedVerts
+	 * @return true if col was legal to add
+	 */
+	private boolean matchIfLegal(int col, Set<Vertex> matchedVerts, boolean[] blocked) {
+		if(null != conflicts) {
+			if(blocked[col]) { return false; }
+			conflicts.block(col, blocked);
+			return true;
+		}
+		Set<Vertex> cVerts = Cycle.getConstituentVertices(cycles.get(col), pool);
+		if(!Collections.disjoint(cVerts, matchedVerts)) { return false; }
+		matchedVerts.addAll(cVerts);
+		return true;
+	}
 }
@@ -10,11 +10,16 @@ import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleConflictGraph;
 
 public class CycleShufflePacker extends Packer {
 
 	private List<Cycle> cycles;
 	private Pool pool;
+
+	// If non-null, shuffle column IDs (not cycles) and test packability by blocked columns
+	private CycleConflictGraph conflicts = null;
+	private List<Integer> colOrder = null;
 	
 	public CycleShufflePacker(Pool pool, List<Cycle> cycles) {
 		this.pool = pool;
@@ -22,6 +27,21 @@ public class CycleShufflePacker extends Packer {
 		// queries will be incorrect
 		this.cycles = new ArrayList<Cycle>(cycles);
 	}
+
+	/**
+	 * @param pool
+	 * @param cycles column i is cycles.get(i); not modified
+	 * @param conflicts precomputed conflicts between those columns
+	 */
+	public CycleShufflePacker(Pool pool, List<Cycle> cycles, CycleConflictGraph conflicts) {
+		this.pool = pool;
+		this.cycles = cycles;
+		this.conflicts = conflicts;
+		this.colOrder = new ArrayList<Integer>(conflicts.getNumCycles());
+		for(int col=0; col<conflicts.getNumCycles(); col++) {
+			colOrder.add(col);
+		}
+	}
 	
 	@Override
 	public Solution pack(double upperBound) {
@@ -31,6 +51,24 @@ public class CycleShufflePacker extends Packer {
 		// Pack cycles
 		long start = System.nanoTime();
 
+		if(null != conflicts) {
+			// Packing a cycle blocks every cycle that shares a vertex with it
+			boolean[] blocked = new boolean[conflicts.getNumCycles()];
+			Collections.shuffle(colOrder);
+			for(int col : colOrder) {
+				if(!blocked[col]) {
+					conflicts.block(col, blocked);
+					Cycle cycle = cycles.get(col);
+					objVal += cycle.getWeight();
+					matching.add(cycle);
+				}
+				if(objVal >= upperBound) {
+					break;
+				}
+			}
+			return makeSolution(matching, objVal, System.nanoTime() - start);
+		}
+
 		// Keep track of which vertices are in the matching so far
 		Set<Vertex> matchedVerts = new HashSet<Vertex>();
 
@@ -57,7 +95,10 @@ public class CycleShufflePacker extends Packer {
 		long end = System.nanoTime();
 		long totalTime = end - start;
 
+		return makeSolution(matching, objVal, totalTime);
+	}
 
+	private static Solution makeSolution(Set<Cycle> matching, double objVal, long totalTime) {
 		// Construct formal matching, return
 		Solution sol = new Solution();
 		sol.setMatching(matching);
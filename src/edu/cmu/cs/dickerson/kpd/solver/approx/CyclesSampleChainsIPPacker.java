@@ -30,6 +30,10 @@ public class CyclesSampleChainsIPPacker extends Packer {
 	private int maxChainSize;
 	private boolean usingFailureProbabilities;
 
+	// 2- and 3-cycles are indexed once, as a base; each pack appends only its sampled chains
+	private List<Cycle> allCyclesForIP = null;
+	private CycleMembership cycleMembershipForIP = null;
+
 	public CyclesSampleChainsIPPacker(Pool pool, List<Cycle> reducedCycles, int chainSamplesPerAltruist, int maxChainSize, boolean usingFailureProbabilities) {
 		this.pool = pool;
 		this.reducedCycles = reducedCycles;
@@ -63,11 +67,18 @@ public class CyclesSampleChainsIPPacker extends Packer {
 			}
 		}
 		
-		// Make a new CycleMembership list for the IP solve.  This is needlessly heavyweight (we could just update the
-		// the CycleMembership and list of Cycles passed in), but we're running repeated experiments so no go.  Remove in practice.
-		List<Cycle> allCyclesForIP = new ArrayList<Cycle>(reducedCycles);
-		allCyclesForIP.addAll(sampledChains);
-		CycleMembership cycleMembershipForIP = new CycleMembership(pool, allCyclesForIP);
+		// Drop last pack's sampled chains and append this pack's to the (unchanged) 2- and 3-cycles
+		if(null == cycleMembershipForIP) {
+			allCyclesForIP = new ArrayList<Cycle>(reducedCycles);
+			cycleMembershipForIP = new CycleMembership(pool, reducedCycles);
+			cycleMembershipForIP.freezeBase();
+		}
+		allCyclesForIP.subList(reducedCycles.size(), allCyclesForIP.size()).clear();
+		cycleMembershipForIP.resetToBase();
+		for(Cycle chain : sampledChains) {
+			allCyclesForIP.add(chain);
+			cycleMembershipForIP.addCycle(chain);
+		}
 		
 		// IP solve on reduced cycle+chain set
 		Solution sol = null;
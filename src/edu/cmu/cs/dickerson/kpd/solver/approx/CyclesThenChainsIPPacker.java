@@ -26,6 +26,10 @@ public class CyclesThenChainsIPPacker extends Packer {
 	private ChainSampler chainSampler = null;
 	private boolean isInitialized = false;
 
+	// Shares reducedMembership's index as a base; each pack appends only its sampled chains
+	private List<Cycle> allCyclesForIP = null;
+	private CycleMembership cycleMembershipForIP = null;
+
 	public CyclesThenChainsIPPacker(Pool pool, List<Cycle> reducedCycles, CycleMembership reducedMembership, int chainSamplesPerAltruist, boolean doInitialization, int maxChainSize, boolean usingFailureProbabilities) {
 		this.pool = pool;
 		this.reducedCycles = reducedCycles;
@@ -74,10 +78,17 @@ public class CyclesThenChainsIPPacker extends Packer {
 			}
 		}
 		
-		// Add sampled chains to 2- and 3-cycles, recompute membership
-		List<Cycle> allCyclesForIP = new ArrayList<Cycle>(reducedCycles);
-		allCyclesForIP.addAll(sampledChains);
-		CycleMembership cycleMembershipForIP = new CycleMembership(pool, allCyclesForIP);
+		// Add sampled chains to 2- and 3-cycles, without re-indexing the cycles
+		if(null == cycleMembershipForIP) {
+			allCyclesForIP = new ArrayList<Cycle>(reducedCycles);
+			cycleMembershipForIP = new CycleMembership(reducedMembership);
+		}
+		allCyclesForIP.subList(reducedCycles.size(), allCyclesForIP.size()).clear();
+		cycleMembershipForIP.resetToBase();
+		for(Cycle chain : sampledChains) {
+			allCyclesForIP.add(chain);
+			cycleMembershipForIP.addCycle(chain);
+		}
 		
 		// IP solve on reduced cycle+chain set
 		Solution sol = null;
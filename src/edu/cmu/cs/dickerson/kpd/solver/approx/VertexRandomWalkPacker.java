@@ -129,7 +129,7 @@ public class VertexRandomWalkPacker extends Packer {
 				if(candidateV.isAltruist() && !candidateV.equals(alt)) { continue; }
 
 				// Never want to sample vertices that are not in any cycles (no chance of matching)
-				double cycleCount = membership.getMembershipSet(candidateV).size();
+				double cycleCount = membership.getNumMemberships(candidateV);
 				if(cycleCount == 0) { continue; }
 
 				// Not worrying about overflow for now, since we won't be using this on big |cycle| counts
@@ -138,6 +138,15 @@ public class VertexRandomWalkPacker extends Packer {
 
 			}
 
+			// If dummy edges back to altruists are implicit, the hop back to alt is a candidate
+			// as well; represent it as null so we only create the Edge if we actually sample it
+			if(pool.hasImplicitAltruistEdges() && !currentV.isAltruist() && !matchedVerts.contains(alt)) {
+				double cycleCount = membership.getNumMemberships(alt);
+				if(cycleCount > 0) {
+					neighborSet.add((double) cycles.size() / cycleCount, null);
+				}
+			}
+
 			// Get our next hop in the chain, based on the weights computed above
 			Edge nextE = null;
 			if(path.size() >= maxChainSize - 1 || neighborSet.size() < 1) {
@@ -153,6 +162,9 @@ public class VertexRandomWalkPacker extends Packer {
 				}
 			} else {
 				nextE = neighborSet.sampleWithoutReplacement();
+				if(null==nextE) {
+					nextE = pool.getEdge(currentV, alt);
+				}
 			}
 
 
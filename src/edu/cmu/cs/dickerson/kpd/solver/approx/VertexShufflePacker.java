@@ -11,6 +11,7 @@ import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleConflictGraph;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
 
 public class VertexShufflePacker extends Packer {
@@ -19,6 +20,7 @@ public class VertexShufflePacker extends Packer {
 	private CycleMembership membership;
 	private List<Cycle> cycles;
 	private Set<Vertex> forbiddenVerts;
+	private CycleConflictGraph conflicts = null;   // if non-null, test packability by blocked columns instead of vertex sets
 	
 	public enum ShuffleType { UNIFORM_RANDOM, INVERSE_PROP_CYCLE_COUNT };
 	private ShuffleType shuffleType;
@@ -34,6 +36,15 @@ public class VertexShufflePacker extends Packer {
 	public VertexShufflePacker(Pool pool, List<Cycle> cycles, CycleMembership membership, ShuffleType shuffleType) {
 		this(pool, cycles, membership, shuffleType, new HashSet<Vertex>());
 	}
+
+	/**
+	 * Packs the same way, but uses precomputed conflicts (built from membership) to
+	 * decide which cycles are still legal to pack
+	 */
+	public VertexShufflePacker(Pool pool, List<Cycle> cycles, CycleConflictGraph conflicts, ShuffleType shuffleType, Set<Vertex> forbiddenVerts) {
+		this(pool, cycles, conflicts.getMembership(), shuffleType, forbiddenVerts);
+		this.conflicts = conflicts;
+	}
 	
 	private List<Vertex> shuffleVertices() {
 		List<Vertex> vertices = null;
@@ -54,7 +65,7 @@ public class VertexShufflePacker extends Packer {
 				if(forbiddenVerts.contains(v)) { continue; }
 				
 				// Never want to sample vertices that are not in any cycles (no chance of matching)
-				double cycleCount = membership.getMembershipSet(v).size();
+				double cycleCount = membership.getNumMemberships(v);
 				if(cycleCount == 0) { continue; }
 				
 				// Not worrying about overflow for now, since we won't be using this on big |cycle| counts
@@ -74,6 +85,10 @@ public class VertexShufflePacker extends Packer {
 		Set<Cycle> matching = new HashSet<Cycle>();
 		double objVal = 0.0;
 
+		if(null != conflicts) {
+			return packWithConflicts(upperBound);
+		}
+
 		// Keep track of which vertices are in the matching so far
 		Set<Vertex> matchedVerts = new HashSet<Vertex>();
 		// Count any forbidden vertices as already being matched
@@ -93,11 +108,11 @@ public class VertexShufflePacker extends Packer {
 			}
 			
 			// Find the first cycle that contains this vertex and is legal to pack, and pack it
-			List<Integer> cycleIdxs = new ArrayList<Integer>( membership.getMembershipSet(v) );
-			for(Integer cycleIdx : cycleIdxs) {
+			int vIdx = membership.indexOf(v);
+			for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
 				
 				// Index into full cycle set
-				Cycle cycle = cycles.get(cycleIdx);
+				Cycle cycle = cycles.get(membership.getColumnAt(pos));
 				Set<Vertex> cVerts = Cycle.getConstituentVertices(cycle, pool);
 
 				// If no vertices in this cycle are matched, it's legal to add; add it
@@ -126,4 +141,58 @@ public class VertexShufflePacker extends Packer {
 		return sol;
 	}
 
+
+	/**
+	 * Same packing order and rule as pack, but a cycle is legal iff it isn't blocked,
+	 * and packing a cycle blocks all of its conflicts
+	 */
+	private Solution packWithConflicts(double upperBound) {
+
+		Set<Cycle> matching = new HashSet<Cycle>();
+		double objVal = 0.0;
+
+		long start = System.nanoTime();
+
+		// Cycles through forbidden vertices are never legal
+		boolean[] blocked = new boolean[conflicts.getNumCycles()];
+		for(Vertex v : forbiddenVerts) {
+			int vIdx = membership.indexOf(v);
+			if(vIdx < 0) { continue; }
+			for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+				blocked[membership.getColumnAt(pos)] = true;
+			}
+		}
+
+		// Shuffle vertices according to ShuffleType parameter
+		List<Vertex> vertices = shuffleVertices();
+
+		// Pack vertices; once a vertex is matched, all of its cycles are blocked
+		for(Vertex v : vertices) {
+			int vIdx = membership.indexOf(v);
+			for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+				int cycleIdx = membership.getColumnAt(pos);
+				if(!blocked[cycleIdx]) {
+					conflicts.block(cycleIdx, blocked);
+					Cycle cycle = cycles.get(cycleIdx);
+					objVal += cycle.getWeight();
+					matching.add(cycle);
+				}
+
+				// If we hit the upper bound, break out
+				if(objVal >= upperBound) {
+					break;
+				}
+			}
+		}
+
+		long end = System.nanoTime();
+		long totalTime = end - start;
+
+		// Construct formal matching, return
+		Solution sol = new Solution();
+		sol.setMatching(matching);
+		sol.setObjectiveValue(objVal);
+		sol.setSolveTime(totalTime);
+		return sol;
+	}
 }
@@ -0,0 +1,271 @@
+package edu.cmu.cs.dickerson.kpd.structure;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.structure.types.BloodType;
+
+/**
+ * Versioned binary pool format, for pools that are generated once and reloaded
+ * many times.  The file is a fixed header followed by column arrays, all
+ * big-endian:
+ *
+ * <pre>
+ * int    magic (0x4B504442, "KPDB")
+ * int    format version (currently 1)
+ * int    flags (bit 0: pair->altruist dummy edges are implicit)
+ * int    |V|
+ * int    |E|
+ * int    vertex ID            [|V|]
+ * double patient CPRA         [|V|]   (0 for altruists)
+ * byte   vertex flags         [|V|]   (bit 0: altruist, bit 1: wife patient, bit 2: compatible)
+ * byte   patient ABO ordinal  [|V|]   (-1 for altruists)
+ * byte   donor ABO ordinal    [|V|]
+ * int    out-edge offsets     [|V|+1] (CSR; edges of vertex i are [off[i], off[i+1]))
+ * int    edge target index    [|E|]
+ * double edge weight          [|E|]
+ * double edge failure prob.   [|E|]
+ * </pre>
+ *
+ * Vertex and edge order are those of the {@link PoolSnapshot} that was written.
+ * Reading memory-maps the file and bulk-copies each column; nothing is parsed
+ * per edge, and Edge objects are only created when asked for.  Only the
+ * simulated vertex attributes above are stored -- underlying UNOS pair data is
+ * not, so write UNOS-derived pools with writeToUNOSKPDFile instead.
+ *
+ * @author John P. Dickerson
+ */
+public class BinaryPoolFile {
+
+	public static final int MAGIC = 0x4B504442;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 5 * 4;
+	private static final int FLAG_IMPLICIT_ALTRUIST_EDGES = 1;
+	private static final byte VFLAG_ALTRUIST = 1;
+	private static final byte VFLAG_WIFE = 2;
+	private static final byte VFLAG_COMPATIBLE = 4;
+
+	private BinaryPoolFile() {}
+
+	private static long fileSize(int numVertices, int numEdges) {
+		return HEADER_BYTES
+				+ 4L*numVertices + 8L*numVertices + 3L*numVertices
+				+ 4L*(numVertices+1)
+				+ 4L*numEdges + 8L*numEdges + 8L*numEdges;
+	}
+
+	public static void write(Pool pool, File file) throws IOException {
+		write(new PoolSnapshot(pool), file);
+	}
+
+	public static void write(PoolSnapshot snapshot, File file) throws IOException {
+
+		final int n = snapshot.getNumVertices();
+		final int m = snapshot.getNumEdges();
+		long size = fileSize(n, m);
+		if(size > Integer.MAX_VALUE) {
+			throw new IOException("Pool too large for a single mapped region (" + size + " bytes)");
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buf.order(ByteOrder.BIG_ENDIAN);
+
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(snapshot.hasImplicitAltruistEdges() ? FLAG_IMPLICIT_ALTRUIST_EDGES : 0);
+			buf.putInt(n);
+			buf.putInt(m);
+
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				buf.putInt(snapshot.getVertexID(vIdx));
+			}
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				Vertex v = snapshot.getVertex(vIdx);
+				buf.putDouble(v.isAltruist() ? 0.0 : ((VertexPair) v).getPatientCPRA());
+			}
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				Vertex v = snapshot.getVertex(vIdx);
+				byte flags = 0;
+				if(v.isAltruist()) {
+					flags |= VFLAG_ALTRUIST;
+				} else {
+					VertexPair vp = (VertexPair) v;
+					if(vp.isWifePatient()) { flags |= VFLAG_WIFE; }
+					if(vp.isCompatible()) { flags |= VFLAG_COMPATIBLE; }
+				}
+				buf.put(flags);
+			}
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				Vertex v = snapshot.getVertex(vIdx);
+				buf.put(v.isAltruist() ? (byte) -1 : bloodTypeToByte(((VertexPair) v).getBloodTypePatient()));
+			}
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				Vertex v = snapshot.getVertex(vIdx);
+				BloodType btDonor = v.isAltruist() ? ((VertexAltruist) v).getBloodTypeDonor() : ((VertexPair) v).getBloodTypeDonor();
+				buf.put(bloodTypeToByte(btDonor));
+			}
+
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				buf.putInt(snapshot.getOutStart(vIdx));
+			}
+			buf.putInt(m);
+			for(int eIdx=0; eIdx<m; eIdx++) {
+				buf.putInt(snapshot.getEdgeTarget(eIdx));
+			}
+			for(int eIdx=0; eIdx<m; eIdx++) {
+				buf.putDouble(snapshot.getEdgeWeight(eIdx));
+			}
+			for(int eIdx=0; eIdx<m; eIdx++) {
+				buf.putDouble(snapshot.getEdgeFailureProbability(eIdx));
+			}
+			buf.force();
+		} finally {
+			IOUtil.closeIgnoreExceptions(raf);
+		}
+		IOUtil.dPrintln("BinaryPoolFile", "Wrote |V|=" + n + ", |E|=" + m + " to " + file);
+	}
+
+	/**
+	 * Memory-maps a binary pool file and returns it as a read-only snapshot with no
+	 * backing Pool; call toPool() on the result if you need a mutable Pool
+	 * @param file
+	 * @return
+	 * @throws IOException if the file is truncated or not a (supported) binary pool file
+	 */
+	public static PoolSnapshot read(File file) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if(size < HEADER_BYTES) {
+				throw new IOException(file + " is too short to be a binary pool file");
+			}
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buf.order(ByteOrder.BIG_ENDIAN);
+
+			if(buf.getInt() != MAGIC) {
+				throw new IOException(file + " is not a binary pool file (bad magic number)");
+			}
+			int version = buf.getInt();
+			if(version != VERSION) {
+				throw new IOException(file + " has binary pool format version " + version + "; only version " + VERSION + " is supported");
+			}
+			int flags = buf.getInt();
+			final int n = buf.getInt();
+			final int m = buf.getInt();
+			if(n < 0 || m < 0 || size != fileSize(n, m)) {
+				throw new IOException(file + " is truncated or corrupt (|V|=" + n + ", |E|=" + m + ", " + size + " bytes)");
+			}
+
+			int[] ids = new int[n];
+			double[] cpra = new double[n];
+			byte[] vFlags = new byte[n];
+			byte[] btPatient = new byte[n];
+			byte[] btDonor = new byte[n];
+			buf.asIntBuffer().get(ids);
+			skip(buf, 4*n);
+			buf.asDoubleBuffer().get(cpra);
+			skip(buf, 8*n);
+			buf.get(vFlags);
+			buf.get(btPatient);
+			buf.get(btDonor);
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				if(!isBloodTypeByte(btPatient[vIdx]) || !isBloodTypeByte(btDonor[vIdx])) {
+					throw new IOException(file + " has an out-of-range blood type at vertex " + vIdx);
+				}
+			}
+
+			PoolSnapshot.Parts parts = new PoolSnapshot.Parts();
+			parts.implicitAltruistEdges = (flags & FLAG_IMPLICIT_ALTRUIST_EDGES) != 0;
+			parts.numVertices = n;
+			parts.numEdges = m;
+			parts.outOffsets = new int[n+1];
+			parts.edgeTargets = new int[m];
+			parts.edgeWeights = new double[m];
+			parts.edgeFailureProbabilities = new double[m];
+			parts.edges = null;   // created lazily by the snapshot
+
+			buf.asIntBuffer().get(parts.outOffsets);
+			skip(buf, 4*(n+1));
+			buf.asIntBuffer().get(parts.edgeTargets);
+			skip(buf, 4*m);
+			buf.asDoubleBuffer().get(parts.edgeWeights);
+			skip(buf, 8*m);
+			buf.asDoubleBuffer().get(parts.edgeFailureProbabilities);
+
+			if(parts.outOffsets[0] != 0 || parts.outOffsets[n] != m) {
+				throw new IOException(file + " has inconsistent edge offsets");
+			}
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				if(parts.outOffsets[vIdx] > parts.outOffsets[vIdx+1]) {
+					throw new IOException(file + " has inconsistent edge offsets");
+				}
+			}
+			for(int eIdx=0; eIdx<m; eIdx++) {
+				if(parts.edgeTargets[eIdx] < 0 || parts.edgeTargets[eIdx] >= n) {
+					throw new IOException(file + " has an out-of-range edge target at edge " + eIdx);
+				}
+			}
+
+			parts.vertices = new Vertex[n];
+			Map<Vertex, Integer> vertexIndex = new HashMap<Vertex, Integer>(2*n);
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				Vertex v;
+				if((vFlags[vIdx] & VFLAG_ALTRUIST) != 0) {
+					v = new VertexAltruist(ids[vIdx], byteToBloodType(btDonor[vIdx]));
+				} else {
+					v = new VertexPair(ids[vIdx],
+							byteToBloodType(btPatient[vIdx]),
+							byteToBloodType(btDonor[vIdx]),
+							(vFlags[vIdx] & VFLAG_WIFE) != 0,
+							cpra[vIdx],
+							(vFlags[vIdx] & VFLAG_COMPATIBLE) != 0);
+				}
+				parts.vertices[vIdx] = v;
+				vertexIndex.put(v, vIdx);
+			}
+			parts.vertexIndex = vertexIndex;
+
+			IOUtil.dPrintln("BinaryPoolFile", "Read |V|=" + n + ", |E|=" + m + " from " + file);
+			return new PoolSnapshot(parts);
+		} finally {
+			IOUtil.closeIgnoreExceptions(raf);
+		}
+	}
+
+	/**
+	 * Typed views (asIntBuffer, ...) don't advance the parent buffer
+	 */
+	private static void skip(ByteBuffer buf, int numBytes) {
+		buf.position(buf.position() + numBytes);
+	}
+
+	private static byte bloodTypeToByte(BloodType bt) {
+		return null == bt ? (byte) -1 : (byte) bt.ordinal();
+	}
+
+	/**
+	 * @return true if b is -1 (no blood type) or a BloodType ordinal
+	 */
+	private static boolean isBloodTypeByte(byte b) {
+		return b >= -1 && b < BloodType.values().length;
+	}
+
+	private static BloodType byteToBloodType(byte b) {
+		return b < 0 ? null : BloodType.values()[b];
+	}
+}
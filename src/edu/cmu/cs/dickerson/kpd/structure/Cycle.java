@@ -22,6 +22,17 @@ public class Cycle {
 		return new Cycle(edgesCopy, weight);
 	}
 
+	/**
+	 * Like makeCycle, but takes ownership of edges instead of copying them; callers
+	 * must not modify the list afterwards
+	 * @param edges
+	 * @param weight
+	 * @return
+	 */
+	public static Cycle wrapEdges(List<Edge> edges, double weight) {
+		return new Cycle(edges, weight);
+	}
+
 	public double getWeight() {
 		return weight;
 	}
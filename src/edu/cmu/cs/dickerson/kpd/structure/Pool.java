@@ -2,7 +2,9 @@ package edu.cmu.cs.dickerson.kpd.structure;
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -10,12 +12,18 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jgrapht.graph.DefaultDirectedWeightedGraph;
+import org.jgrapht.graph.EdgeSetFactory;
 
 import edu.cmu.cs.dickerson.kpd.drivers.DriverKDD;
 import edu.cmu.cs.dickerson.kpd.structure.real.UNOSDonor;
@@ -31,8 +39,30 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 	private SortedSet<VertexAltruist> altruists;
 	private Object object_ref;
 
+	// Blood type, CPRA and marginalized-vertex lookups, maintained on every vertex add/remove
+	private final PoolIndex index = new PoolIndex();
+
+	// If true, every pair has an implicit 0-weight, infallible dummy edge back to every
+	// altruist; these edges are not stored in the graph (see setImplicitAltruistEdges)
+	private boolean implicitAltruistEdges = false;
+
+	// Every mutation bumps the version and is reported to registered listeners
+	private long version = 0L;
+	private transient List<PoolChangeListener> listeners = null;
+
+	// Frozen pools (see PoolVersion) reject every mutation
+	private boolean readOnly = false;
+	// Latest frozen version handed out by freeze(); reused until the pool changes
+	private transient volatile PoolVersion frozenVersion = null;
+
+	// Non-null only while removeAllVertices is tearing down edges (see EdgeList)
+	private transient Set<Edge> batchRemovedEdges = null;
+	private transient List<EdgeList> batchDirtyLists = null;
+
 	public Pool(Class<? extends Edge> edgeClass) {
 		super(edgeClass);
+		// Must be set before any vertex is added
+		setEdgeSetFactory(new EdgeListFactory());
 		pairs = new TreeSet<VertexPair>();
 		altruists = new TreeSet<VertexAltruist>();
 		object_ref = new Object();
@@ -47,34 +77,529 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 		}
 	}
 
+	/**
+	 * Toggles whether pair->altruist dummy edges are implicit.  When implicit, the
+	 * graph stores no edges into altruists; instead, any pair may end a chain by
+	 * returning to any altruist along a 0-weight, 0-failure-probability edge that is
+	 * only created (see getEdge) when a chain actually uses it.  This saves
+	 * O(|pairs|*|altruists|) Edge objects.
+	 * 
+	 * Turning this on REMOVES all existing pair->altruist edges from the pool (their
+	 * weights, if nonzero, are lost); turning it off materializes a fresh 0-weight
+	 * dummy edge from every pair to every altruist.
+	 * @param implicitAltruistEdges
+	 */
+	public void setImplicitAltruistEdges(boolean implicitAltruistEdges) {
+		checkWritable();
+		if(this.implicitAltruistEdges == implicitAltruistEdges) { return; }
+
+		if(implicitAltruistEdges) {
+			List<Edge> dummyEdges = new ArrayList<Edge>();
+			for(VertexAltruist alt : altruists) {
+				for(Edge e : super.incomingEdgesOf(alt)) {
+					if(!super.getEdgeSource(e).isAltruist()) {
+						dummyEdges.add(e);
+					}
+				}
+			}
+			this.removeAllEdges(dummyEdges);
+			this.implicitAltruistEdges = true;
+		} else {
+			this.implicitAltruistEdges = false;
+			for(VertexPair pair : pairs) {
+				for(VertexAltruist alt : altruists) {
+					if(!super.containsEdge(pair, alt)) {
+						this.setEdgeWeight(this.addEdge(pair, alt), 0.0);
+					}
+				}
+			}
+		}
+	}
+
+	public boolean hasImplicitAltruistEdges() {
+		return implicitAltruistEdges;
+	}
+
+	/**
+	 * @return hash of the pool's vertices and edges (but not edge weights or failure
+	 *   probabilities); see PoolSnapshot.getStructuralFingerprint
+	 */
+	public String getStructuralFingerprint() {
+		return new PoolSnapshot(this).getStructuralFingerprint();
+	}
+
+	/**
+	 * @param e
+	 * @return true if e is an implicit pair->altruist edge (not stored in any pool)
+	 */
+	public static boolean isImplicitAltruistEdge(Edge e) {
+		return e instanceof ImplicitAltruistEdge;
+	}
+
+	/**
+	 * Implicit pair->altruist edges are created on demand and are equal iff their
+	 * endpoints are equal, so the same implicit edge can be recreated by (and shared
+	 * between) a pool, its subpools, and snapshots of either
+	 */
+	static Edge makeImplicitAltruistEdge(Vertex pair, Vertex alt) {
+		return new ImplicitAltruistEdge(pair, alt);
+	}
+
+	private boolean hasImplicitEdge(Vertex src, Vertex tgt) {
+		return implicitAltruistEdges
+				&& null != src && null != tgt
+				&& !src.isAltruist() && tgt.isAltruist()
+				&& containsVertex(src) && containsVertex(tgt);
+	}
+
+	@Override
+	public Edge getEdge(Vertex src, Vertex tgt) {
+		if(hasImplicitEdge(src, tgt)) {
+			return makeImplicitAltruistEdge(src, tgt);
+		}
+		return super.getEdge(src, tgt);
+	}
+
+	@Override
+	public boolean containsEdge(Vertex src, Vertex tgt) {
+		return hasImplicitEdge(src, tgt) || super.containsEdge(src, tgt);
+	}
+
+	@Override
+	public boolean containsEdge(Edge e) {
+		if(e instanceof ImplicitAltruistEdge) {
+			ImplicitAltruistEdge ie = (ImplicitAltruistEdge) e;
+			return hasImplicitEdge(ie.src, ie.tgt);
+		}
+		return super.containsEdge(e);
+	}
+
+	@Override
+	public Edge addEdge(Vertex src, Vertex tgt) {
+		checkWritable();
+		checkNotImplicitAltruistEdge(src, tgt);
+		Edge e = super.addEdge(src, tgt);
+		if(null != e) {
+			fireEdgeEvent(PoolChangeEvent.Type.EDGE_ADDED, e, src, tgt);
+		}
+		return e;
+	}
+
+	@Override
+	public boolean addEdge(Vertex src, Vertex tgt, Edge e) {
+		checkWritable();
+		checkNotImplicitAltruistEdge(src, tgt);
+		boolean added = super.addEdge(src, tgt, e);
+		if(added) {
+			fireEdgeEvent(PoolChangeEvent.Type.EDGE_ADDED, e, src, tgt);
+		}
+		return added;
+	}
+
+	private void checkNotImplicitAltruistEdge(Vertex src, Vertex tgt) {
+		if(implicitAltruistEdges && null != src && null != tgt && !src.isAltruist() && tgt.isAltruist()) {
+			throw new IllegalArgumentException("Pool has implicit altruist edges; cannot add explicit edge from pair " + src + " to altruist " + tgt);
+		}
+	}
+
+	@Override
+	public boolean removeEdge(Edge e) {
+		checkWritable();
+		if(e instanceof ImplicitAltruistEdge) { return false; }  // can't remove implicit edges
+		if(!super.containsEdge(e)) { return false; }
+		Vertex src = super.getEdgeSource(e);
+		Vertex tgt = super.getEdgeTarget(e);
+		super.removeEdge(e);
+		fireEdgeEvent(PoolChangeEvent.Type.EDGE_REMOVED, e, src, tgt);
+		return true;
+	}
+
+	@Override
+	public Edge removeEdge(Vertex src, Vertex tgt) {
+		// Stored edges only; also routes through removeEdge(Edge) so listeners are told
+		Edge e = super.getEdge(src, tgt);
+		if(null != e) {
+			removeEdge(e);
+		}
+		return e;
+	}
+
+	@Override
+	public Vertex getEdgeSource(Edge e) {
+		if(e instanceof ImplicitAltruistEdge) { return ((ImplicitAltruistEdge) e).src; }
+		return super.getEdgeSource(e);
+	}
+
+	@Override
+	public Vertex getEdgeTarget(Edge e) {
+		if(e instanceof ImplicitAltruistEdge) { return ((ImplicitAltruistEdge) e).tgt; }
+		return super.getEdgeTarget(e);
+	}
+
+	@Override
+	public double getEdgeWeight(Edge e) {
+		if(e instanceof ImplicitAltruistEdge) { return 0.0; }
+		return super.getEdgeWeight(e);
+	}
+
+	@Override
+	public void setEdgeWeight(Edge e, double weight) {
+		checkWritable();
+		if(e instanceof ImplicitAltruistEdge) { throw new IllegalArgumentException("Cannot set weight of implicit altruist edge " + e); }
+		double oldWeight = super.getEdgeWeight(e);
+		super.setEdgeWeight(e, weight);
+		if(oldWeight != weight) {
+			fireEdgeValueEvent(PoolChangeEvent.Type.EDGE_WEIGHT_CHANGED, e, oldWeight, weight);
+		}
+	}
+
+	/**
+	 * Sets the failure probability of an edge in this pool.  Prefer this to calling
+	 * Edge.setFailureProbability directly, since the pool can only report changes
+	 * (and bump its version) when they go through the pool.
+	 * @param e
+	 * @param failureProbability
+	 */
+	public void setEdgeFailureProbability(Edge e, double failureProbability) {
+		checkWritable();
+		double oldFailureProbability = e.getFailureProbability();
+		e.setFailureProbability(failureProbability);
+		if(oldFailureProbability != failureProbability) {
+			fireEdgeValueEvent(PoolChangeEvent.Type.EDGE_FAILURE_PROBABILITY_CHANGED, e, oldFailureProbability, failureProbability);
+		}
+	}
+
+	/**
+	 * @return this pool's version, which strictly increases with every change to the
+	 *   pool's vertices, edges, edge weights, or (pool-set) edge failure probabilities
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns an immutable version of this pool as it is right now.  Versions are
+	 * copy-on-write: as long as the pool doesn't change, every call returns the same
+	 * (already built) version, and the first call after a change builds a new one.
+	 * A version never sees later changes to this pool, so it can be handed to
+	 * solvers and packers on other threads while this pool keeps evolving.
+	 *
+	 * Like every other Pool mutator, call this from the thread that writes the pool.
+	 * Edge failure probabilities changed behind the pool's back (Edge.setFailureProbability
+	 * instead of setEdgeFailureProbability) don't bump the version, so aren't noticed.
+	 * @return
+	 */
+	public PoolVersion freeze() {
+		PoolVersion frozen = frozenVersion;
+		if(null == frozen || frozen.getVersion() != version) {
+			frozen = new PoolVersion(this);
+			frozenVersion = frozen;
+		}
+		return frozen;
+	}
+
+	/**
+	 * @return true if this pool is a frozen {@link PoolVersion} view and cannot be changed
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	void makeReadOnly() {
+		this.readOnly = true;
+	}
+
+	private void checkWritable() {
+		if(readOnly) {
+			throw new UnsupportedOperationException("Pool is a frozen version and cannot be modified; make changes to the live pool and freeze() it again.");
+		}
+	}
+
+	/**
+	 * Registers a listener to be told about every subsequent change to this pool.
+	 * Note that subpools share Edge objects with their parents, so changing an edge's
+	 * weight through a subpool is only reported to the subpool's listeners.
+	 * @param listener
+	 */
+	public void addPoolChangeListener(PoolChangeListener listener) {
+		if(null == listeners) {
+			listeners = new CopyOnWriteArrayList<PoolChangeListener>();
+		}
+		listeners.add(listener);
+	}
+
+	public boolean removePoolChangeListener(PoolChangeListener listener) {
+		return null != listeners && listeners.remove(listener);
+	}
+
+	private void fire(PoolChangeEvent event) {
+		for(PoolChangeListener listener : listeners) {
+			listener.poolChanged(event);
+		}
+	}
+
+	private boolean hasListeners() {
+		return null != listeners && !listeners.isEmpty();
+	}
+
+	private void fireVertexEvent(PoolChangeEvent.Type type, Vertex v) {
+		version++;
+		if(hasListeners()) {
+			fire(PoolChangeEvent.makeVertexEvent(type, version, v));
+		}
+	}
+
+	private void fireEdgeEvent(PoolChangeEvent.Type type, Edge e, Vertex src, Vertex tgt) {
+		version++;
+		if(hasListeners()) {
+			fire(PoolChangeEvent.makeEdgeEvent(type, version, e, src, tgt));
+		}
+	}
+
+	private void fireEdgeValueEvent(PoolChangeEvent.Type type, Edge e, double oldValue, double newValue) {
+		version++;
+		if(hasListeners()) {
+			fire(PoolChangeEvent.makeEdgeValueEvent(type, version, e, super.getEdgeSource(e), super.getEdgeTarget(e), oldValue, newValue));
+		}
+	}
+
+	private static final class ImplicitAltruistEdge extends Edge {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Vertex src;
+		private final Vertex tgt;
+
+		private ImplicitAltruistEdge(Vertex src, Vertex tgt) {
+			this.src = src;
+			this.tgt = tgt;
+		}
+
+		@Override
+		public void setFailureProbability(double failureProbability) {
+			if(failureProbability != 0.0) { throw new IllegalArgumentException("Implicit altruist edges are infallible."); }
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * src.hashCode() + tgt.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ImplicitAltruistEdge)) {
+				return false;
+			}
+			ImplicitAltruistEdge other = (ImplicitAltruistEdge) obj;
+			return src.equals(other.src) && tgt.equals(other.tgt);
+		}
+
+		@Override
+		public String toString() {
+			return "(" + src + " : " + tgt + ")";
+		}
+	}
+
 	@Override
 	public boolean removeVertex(Vertex v) {
-		if(v.isAltruist()) { altruists.remove(v); }
-		else {	pairs.remove(v); }
-		return super.removeVertex(v);
+		checkWritable();
+		if(v.isAltruist()) {
+			if(altruists.remove(v)) { index.removeAltruist((VertexAltruist) v); }
+		} else {
+			if(pairs.remove(v)) { index.removePair((VertexPair) v); }
+		}
+		// Incident edges are removed (and reported) one by one through removeEdge(Edge)
+		boolean removed = super.removeVertex(v);
+		if(removed) {
+			fireVertexEvent(PoolChangeEvent.Type.VERTEX_REMOVED, v);
+		}
+		return removed;
 	}
 
+	/**
+	 * Bulk removal.  Incident edges are marked dead as a batch: each per-vertex edge
+	 * list touched by the batch is compacted once, in a single sweep, at the end --
+	 * rather than shifting a surviving neighbor's list once per removed edge (with
+	 * explicit dummy edges, every altruist's incoming list once per removed pair).
+	 * Listeners get the same events as a loop of removeVertex calls, but in a
+	 * different order: every EDGE_REMOVED event first, then one VERTEX_REMOVED event
+	 * per removed vertex, in the order the vertices were passed in.
+	 */
 	@Override
 	public boolean removeAllVertices(Collection<? extends Vertex> vertices) {
-		boolean changed = false;
+		checkWritable();
+
+		// Deduplicate and drop vertices that aren't in the pool
+		Set<Vertex> dead = new LinkedHashSet<Vertex>();
 		for(Vertex v : vertices) {
-			changed |= this.removeVertex(v);
+			if(super.containsVertex(v)) { dead.add(v); }
+		}
+		if(dead.isEmpty()) { return false; }
+
+		for(Vertex v : dead) {
+			if(v.isAltruist()) {
+				if(altruists.remove(v)) { index.removeAltruist((VertexAltruist) v); }
+			} else {
+				if(pairs.remove(v)) { index.removePair((VertexPair) v); }
+			}
+		}
+
+		batchRemovedEdges = Collections.newSetFromMap(new IdentityHashMap<Edge, Boolean>());
+		batchDirtyLists = new ArrayList<EdgeList>();
+		try {
+			for(Vertex v : dead) {
+				for(Edge e : new ArrayList<Edge>(super.edgesOf(v))) {
+					if(batchRemovedEdges.add(e)) {
+						removeEdge(e);
+					}
+				}
+			}
+		} finally {
+			for(EdgeList list : batchDirtyLists) {
+				list.compact(batchRemovedEdges);
+			}
+			batchRemovedEdges = null;
+			batchDirtyLists = null;
+		}
+
+		// Every dead vertex is now edge-free, so this is just a map removal
+		for(Vertex v : dead) {
+			super.removeVertex(v);
+			fireVertexEvent(PoolChangeEvent.Type.VERTEX_REMOVED, v);
+		}
+		return true;
+	}
+
+	/**
+	 * Per-vertex incoming/outgoing edge list; array-backed (like JGraphT's default)
+	 * so iteration and getEdge scans stay fast.  Inside a removeAllVertices batch,
+	 * removals are only counted, and the list is compacted once when the batch ends.
+	 */
+	private final class EdgeList extends AbstractSet<Edge> {
+
+		private Edge[] items = new Edge[2];
+		private int size = 0;
+		private boolean dirty = false;
+
+		@Override
+		public boolean add(Edge e) {
+			if(size == items.length) {
+				items = Arrays.copyOf(items, 2*size);
+			}
+			items[size++] = e;
+			return true;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if(null != batchRemovedEdges) {
+				// Pool only ever removes edges it knows are incident; defer the actual removal
+				if(!dirty) {
+					dirty = true;
+					batchDirtyLists.add(this);
+				}
+				return true;
+			}
+			for(int idx=0; idx<size; idx++) {
+				if(items[idx] == o) {
+					removeAt(idx);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void removeAt(int idx) {
+			System.arraycopy(items, idx+1, items, idx, size-idx-1);
+			items[--size] = null;
+		}
+
+		void compact(Set<Edge> removed) {
+			int keep = 0;
+			for(int idx=0; idx<size; idx++) {
+				if(!removed.contains(items[idx])) {
+					items[keep++] = items[idx];
+				}
+			}
+			for(int idx=keep; idx<size; idx++) {
+				items[idx] = null;
+			}
+			size = keep;
+			dirty = false;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			for(int idx=0; idx<size; idx++) {
+				if(items[idx] == o) { return true; }
+			}
+			return false;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Edge> iterator() {
+			return new Iterator<Edge>() {
+				private int next = 0;
+				private int last = -1;
+
+				@Override
+				public boolean hasNext() {
+					return next < size;
+				}
+
+				@Override
+				public Edge next() {
+					if(next >= size) { throw new NoSuchElementException(); }
+					last = next;
+					return items[next++];
+				}
+
+				@Override
+				public void remove() {
+					if(last < 0) { throw new IllegalStateException(); }
+					removeAt(last);
+					next = last;
+					last = -1;
+				}
+			};
+		}
+	}
+
+	private class EdgeListFactory implements EdgeSetFactory<Vertex, Edge>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Set<Edge> createEdgeSet(Vertex vertex) {
+			return new EdgeList();
 		}
-		return changed;
 	}
 
 	public boolean addPair(VertexPair pair) {
+		checkWritable();
 		boolean newVert = super.addVertex(pair);
 		if(newVert) {
 			pairs.add(pair);
+			index.addPair(pair);
+			fireVertexEvent(PoolChangeEvent.Type.VERTEX_ADDED, pair);
 		}
 		return newVert;
 	}
 
 	public boolean addAltruist(VertexAltruist alt) {
+		checkWritable();
 		boolean newVert = super.addVertex(alt);
 		if(newVert) {
 			altruists.add(alt);
+			index.addAltruist(alt);
+			fireVertexEvent(PoolChangeEvent.Type.VERTEX_ADDED, alt);
 		}
 		return newVert;
 	}
@@ -114,41 +639,99 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 		return "< (" + getNumPairs() + ", " + getNumAltruists() + "), " + super.edgeSet().size() + " >";
 	}
 
-	public Set<VertexPair> getPairsOfType(BloodType btPatient, BloodType btDonor) {
+	/**
+	 * @param btPatient
+	 * @param btDonor
+	 * @return read-only, ID-sorted view of the pairs with this (patient, donor) blood type
+	 */
+	public SortedSet<VertexPair> getPairsOfType(BloodType btPatient, BloodType btDonor) {
+		return index.getPairsOfType(btPatient, btDonor);
+	}
 
-		Set<VertexPair> vSet = new HashSet<VertexPair>();
-		for(VertexPair pair : pairs) {
-			if(pair.getBloodTypePatient().equals(btPatient) && pair.getBloodTypePatient().equals(btDonor)) {
-				vSet.add(pair);
-			}
+	/**
+	 * @param btPatient
+	 * @return pairs whose patient has this blood type, regardless of donor blood type
+	 */
+	public SortedSet<VertexPair> getPairsWithPatientType(BloodType btPatient) {
+		SortedSet<VertexPair> vSet = new TreeSet<VertexPair>();
+		for(BloodType btDonor : BloodType.values()) {
+			vSet.addAll(index.getPairsOfType(btPatient, btDonor));
 		}
-
 		return vSet;
 	}
 
-	public Pool makeSubPool(Set<Vertex> subsetV) {
-
-		// TODO Look into subgraph-ing in JGraphT library; not sure about backing sets, so playing it safe now
-		//DirectedWeightedSubgraph<Vertex, Edge> subGraph = new DirectedWeightedSubgraph<Vertex, Edge>(this, subsetV, null);
+	/**
+	 * @param btDonor
+	 * @return read-only, ID-sorted view of the altruists with this blood type
+	 */
+	public SortedSet<VertexAltruist> getAltruistsOfType(BloodType btDonor) {
+		return index.getAltruistsOfType(btDonor);
+	}
 
-		// Add all legal vertices to new pool
-		Pool subPool = new Pool(Edge.class);
-		for(Vertex v : subsetV) {
-			if(this.containsVertex(v)) {
-				subPool.addVertex(v);
-			}
+	/**
+	 * Changes a pair's blood types, keeping this pool's blood type index consistent.
+	 * Use this instead of the VertexPair setters once the pair is in the pool.
+	 * @param pair
+	 * @param btPatient
+	 * @param btDonor
+	 */
+	public void setPairBloodTypes(VertexPair pair, BloodType btPatient, BloodType btDonor) {
+		checkWritable();
+		BloodType oldPatient = pair.getBloodTypePatient();
+		BloodType oldDonor = pair.getBloodTypeDonor();
+		pair.setBloodTypePatient(btPatient);
+		pair.setBloodTypeDonor(btDonor);
+		if(pairs.contains(pair)) {
+			index.retypePair(pair, oldPatient, oldDonor);
 		}
+	}
 
-		// Add all legal edges to new pool
-		for(Vertex src : subPool.vertexSet()) {
-			for(Vertex sink : subPool.vertexSet()) {
-				if(this.containsEdge(src, sink)) {
-					subPool.addEdge(src, sink, this.getEdge(src, sink));
-				}
-			}
+	/**
+	 * CPRA is bucketed into {@value PoolIndex#NUM_CPRA_BUCKETS} equal-width buckets over [0,1]
+	 * @param bucket
+	 * @return read-only, ID-sorted view of the pairs in that CPRA bucket
+	 */
+	public SortedSet<VertexPair> getPairsInCPRABucket(int bucket) {
+		if(bucket < 0 || bucket >= PoolIndex.NUM_CPRA_BUCKETS) {
+			throw new IllegalArgumentException("CPRA bucket must be in [0," + PoolIndex.NUM_CPRA_BUCKETS + "); got " + bucket);
 		}
+		return index.getPairsInCPRABucket(bucket);
+	}
+
+	public static int getNumCPRABuckets() {
+		return PoolIndex.NUM_CPRA_BUCKETS;
+	}
+
+	/**
+	 * The set for each threshold is built once and then kept up to date as pairs are
+	 * added and removed, so keep the number of distinct thresholds asked for small.
+	 * @param cpraThreshold
+	 * @return read-only, ID-sorted view of the pairs whose patient CPRA is at least cpraThreshold
+	 */
+	public SortedSet<VertexPair> getPairsWithCPRAAtLeast(double cpraThreshold) {
+		return index.getPairsWithCPRAAtLeast(cpraThreshold);
+	}
+
+	/**
+	 * @return read-only, ID-sorted view of the pairs whose UNOS candidate is
+	 *   highly-sensitized or below the age of 18 (see DriverKDD.getMarginalizedVertices)
+	 */
+	public SortedSet<VertexPair> getMarginalizedPairs() {
+		return index.getMarginalizedPairs();
+	}
 
-		return subPool;
+	/**
+	 * Copies the subgraph induced by subsetV (ignoring vertices not in this pool) into
+	 * a new Pool that shares this pool's Vertex and Edge objects.  Runs in time linear
+	 * in |subsetV| plus the number of out-edges of subsetV, rather than probing every
+	 * ordered pair of vertices.  If you only need to enumerate cycles on the subgraph,
+	 * use a {@link PoolSnapshot#PoolSnapshot(Pool, java.util.Collection)} view instead
+	 * and skip the copy entirely.
+	 * @param subsetV
+	 * @return
+	 */
+	public Pool makeSubPool(Set<Vertex> subsetV) {
+		return new PoolSnapshot(this, subsetV).toPool();
 	}
 
 	public void writeToUNOSKPDFile(String baseFileName) {
@@ -173,7 +756,8 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 			Collections.sort(allVertsSorted);
 
 			// <num-vertices> <num-edges>
-			writer.println(this.vertexSet().size() + " " + this.edgeSet().size());
+			int numImplicitEdges = implicitAltruistEdges ? (pairs.size() * altruists.size()) : 0;
+			writer.println(this.vertexSet().size() + " " + (this.edgeSet().size() + numImplicitEdges));
 			// <src-vert> <sink-vert> <edge-weight> <is-dummy> <failure-prob>
 
 			for(Vertex src : allVertsSorted) {
@@ -185,6 +769,12 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 					double failureProb = e.getFailureProbability();
 					writer.println(src.getID() + " " + dst.getID() + " " + weight + " " + isDummy + " " + failureProb);
 				}
+				// Legacy format expects explicit dummy edges from every pair to every altruist
+				if(implicitAltruistEdges && !src.isAltruist()) {
+					for(VertexAltruist alt : altruists) {
+						writer.println(src.getID() + " " + alt.getID() + " " + 0.0 + " " + 1 + " " + 0.0);
+					}
+				}
 			}
 			// Legacy code signals EOF with -1 -1 -1
 			writer.println("-1 -1 -1");
@@ -311,13 +901,13 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 	 */
 	public void writeUNOSGraphToDenseAdjacencyMatrix(String path) {
 		int n=this.vertexSet().size();
-		boolean[][] edgeExists = this.getDenseAdjacencyMatrix();
+		AdjacencyBitMatrix edgeExists = this.getAdjacencyBitMatrix();
 		try {
 			PrintWriter writer = new PrintWriter(path, "UTF-8");
 			for(int v_i=0; v_i<n; v_i++) {
 				StringBuilder sb = new StringBuilder();
 				for(int v_j=0; v_j<n; v_j++) {
-					sb.append(edgeExists[v_i][v_j] ? "1," : "0,");
+					sb.append(edgeExists.get(v_i, v_j) ? "1," : "0,");
 				}
 				writer.println(sb.toString());
 			}
@@ -339,7 +929,7 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 	 */
 	public void writeUNOSGraphToDZN(String path, int k, int t) {
 		int n=this.vertexSet().size();
-		boolean[][] edgeExists = this.getDenseAdjacencyMatrix();
+		AdjacencyBitMatrix edgeExists = this.getAdjacencyBitMatrix();
 		try {
 			PrintWriter writer = new PrintWriter(path, "UTF-8");
 			writer.println("v = " + this.vertexSet().size() + ";");
@@ -353,7 +943,7 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 					sb.append("     | ");
 				}
 				for(int v_j=0; v_j<n; v_j++) {
-					sb.append(edgeExists[v_i][v_j] ? "1" : "0");
+					sb.append(edgeExists.get(v_i, v_j) ? "1" : "0");
 					if(v_j != n-1) {
 						sb.append(", ");
 					}
@@ -382,7 +972,7 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 	 */
 	public void writeUNOSGraphToBitwiseCNF(final int k, String path) {
 		int n=this.vertexSet().size();
-		boolean[][] edgeExists = this.getDenseAdjacencyMatrix();
+		AdjacencyBitMatrix edgeExists = this.getAdjacencyBitMatrix();
 		try {
 			PrintWriter writer = new PrintWriter(path, "UTF-8");
 			writer.println("c " + path);
@@ -396,7 +986,7 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 			for(int v_i=0; v_i<n; v_i++) {
 				for(int v_j=0; v_j<n; v_j++) {
 					if(v_i != v_j) {
-						if(edgeExists[v_i][v_j]) {
+						if(edgeExists.get(v_i, v_j)) {
 							// \bigwedge\limits_{\rho \in [k]} (\neg d_i^\rho \lor \neg p_j^\rho)   & \forall (v_i, v_j) \in E
 							for(int rho=0; rho<k; rho++) {
 								sb.append("-" + getCNFDonorIdx(n, k, v_i, rho) + " -" + getCNFPatientIdx(n, k, v_j, rho) + " 0\n");
@@ -503,7 +1093,7 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 		}
 		int z,d,p;
 		int n=this.vertexSet().size();
-		boolean[][] edgeExists = this.getDenseAdjacencyMatrix();
+		AdjacencyBitMatrix edgeExists = this.getAdjacencyBitMatrix();
 		try {
 			PrintWriter writer = new PrintWriter(path, "UTF-8");
 			writer.println("c " + path);
@@ -519,7 +1109,7 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 			for(int v_i=0; v_i<n; v_i++) {
 				for(int v_j=0; v_j<n; v_j++) {
 					if(v_i != v_j) {
-						if(edgeExists[v_i][v_j]) {
+						if(edgeExists.get(v_i, v_j)) {
 							for(ArrayList<Integer> cluster: edgeClusters){
 								//constraints for each t-cluster for each edge that exists
 								String bigDisjunct = ""; // \bigvee_{q \in r}(\neg d_i^q \vee \neg p_j^q)
@@ -666,24 +1256,23 @@ public class Pool extends DefaultDirectedWeightedGraph<Vertex, Edge> {
 	}
 
 
+	/**
+	 * Returns the |V| x |V| adjacency matrix for this pool, indexed by vertex ID and
+	 * packed 64 cells per word.  Dummy edges going back to altruists are excluded.
+	 * @return
+	 */
+	public AdjacencyBitMatrix getAdjacencyBitMatrix() {
+		return AdjacencyBitMatrix.fromPool(this);
+	}
+
 	/**
 	 * Returns the |V| x |V| adjacency matrix, dense, for this pool
 	 * @return
+	 * @deprecated n^2 bytes; use {@link #getAdjacencyBitMatrix()}
 	 */
+	@Deprecated
 	public boolean[][] getDenseAdjacencyMatrix() {
-		int n=this.vertexSet().size();
-		boolean[][] edgeExists = new boolean[n][n];
-		for(int v_i=0; v_i<n; v_i++) { for(int v_j=0; v_j<n; v_j++) { edgeExists[v_i][v_j] = false; }}
-		for(Edge e : this.edgeSet()) {
-			// Don't include the dummy edges going back to altruists (since they're a byproduct of the cycle formulation)
-			if(this.getEdgeTarget(e).isAltruist()) { continue; }
-			// Otherwise, set (v_i, v_j) to True in our existence array
-			edgeExists[this.getEdgeSource(e).getID()][this.getEdgeTarget(e).getID()] = true;
-		}
-		for(Vertex v : this.vertexSet()) {
-			System.out.println(v.getID() + " " + v.isAltruist());
-		}
-		return edgeExists;
+		return getAdjacencyBitMatrix().toDenseArray();
 	}
 
 
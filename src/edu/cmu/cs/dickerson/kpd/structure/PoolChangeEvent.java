@@ -0,0 +1,120 @@
+package edu.cmu.cs.dickerson.kpd.structure;
+
+/**
+ * A single mutation of a {@link Pool}, stamped with the pool's version number
+ * immediately after the mutation.  Versions are strictly increasing per pool, so
+ * a consumer that remembers the last version it saw knows exactly which changes
+ * it has (and has not) accounted for.
+ *
+ * Edge events carry the edge's endpoints, since a removed edge can no longer be
+ * looked up in the pool.  Weight and failure probability events carry both the
+ * old and new values; for other events these are NaN.
+ *
+ * @author John P. Dickerson
+ */
+public class PoolChangeEvent {
+
+	public static enum Type {
+		VERTEX_ADDED,
+		VERTEX_REMOVED,
+		EDGE_ADDED,
+		EDGE_REMOVED,
+		EDGE_WEIGHT_CHANGED,
+		EDGE_FAILURE_PROBABILITY_CHANGED
+	}
+
+	private final Type type;
+	private final long version;
+	private final Vertex vertex;
+	private final Edge edge;
+	private final Vertex edgeSource;
+	private final Vertex edgeTarget;
+	private final double oldValue;
+	private final double newValue;
+
+	private PoolChangeEvent(Type type, long version, Vertex vertex, Edge edge, Vertex edgeSource, Vertex edgeTarget, double oldValue, double newValue) {
+		this.type = type;
+		this.version = version;
+		this.vertex = vertex;
+		this.edge = edge;
+		this.edgeSource = edgeSource;
+		this.edgeTarget = edgeTarget;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+
+	static PoolChangeEvent makeVertexEvent(Type type, long version, Vertex v) {
+		return new PoolChangeEvent(type, version, v, null, null, null, Double.NaN, Double.NaN);
+	}
+
+	static PoolChangeEvent makeEdgeEvent(Type type, long version, Edge e, Vertex src, Vertex tgt) {
+		return new PoolChangeEvent(type, version, null, e, src, tgt, Double.NaN, Double.NaN);
+	}
+
+	static PoolChangeEvent makeEdgeValueEvent(Type type, long version, Edge e, Vertex src, Vertex tgt, double oldValue, double newValue) {
+		return new PoolChangeEvent(type, version, null, e, src, tgt, oldValue, newValue);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean isVertexEvent() {
+		return type == Type.VERTEX_ADDED || type == Type.VERTEX_REMOVED;
+	}
+
+	/**
+	 * @return the added or removed vertex (null for edge events)
+	 */
+	public Vertex getVertex() {
+		return vertex;
+	}
+
+	/**
+	 * @return the affected edge (null for vertex events)
+	 */
+	public Edge getEdge() {
+		return edge;
+	}
+
+	public Vertex getEdgeSource() {
+		return edgeSource;
+	}
+
+	public Vertex getEdgeTarget() {
+		return edgeTarget;
+	}
+
+	/**
+	 * @return previous weight or failure probability (NaN for add/remove events)
+	 */
+	public double getOldValue() {
+		return oldValue;
+	}
+
+	/**
+	 * @return new weight or failure probability (NaN for add/remove events)
+	 */
+	public double getNewValue() {
+		return newValue;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[v").append(version).append("] ").append(type).append(' ');
+		if(isVertexEvent()) {
+			sb.append(vertex);
+		} else {
+			sb.append('(').append(edgeSource).append(" : ").append(edgeTarget).append(')');
+			if(type == Type.EDGE_WEIGHT_CHANGED || type == Type.EDGE_FAILURE_PROBABILITY_CHANGED) {
+				sb.append(' ').append(oldValue).append(" -> ").append(newValue);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,14 @@
+package edu.cmu.cs.dickerson.kpd.structure;
+
+/**
+ * Receives every mutation of a {@link Pool} it is registered with, synchronously
+ * and in order, immediately after the mutation has been applied.  Listeners must
+ * not mutate the pool from inside poolChanged.
+ *
+ * @author John P. Dickerson
+ */
+public interface PoolChangeListener {
+
+	public void poolChanged(PoolChangeEvent event);
+
+}
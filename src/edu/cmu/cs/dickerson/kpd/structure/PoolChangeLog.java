@@ -0,0 +1,104 @@
+package edu.cmu.cs.dickerson.kpd.structure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records a Pool's change events so that consumers (cycle lists, cycle membership,
+ * solver models, ...) can catch up lazily: remember the pool version you last
+ * synchronized at, then ask for everything that happened since.
+ *
+ * @author John P. Dickerson
+ */
+public class PoolChangeLog implements PoolChangeListener {
+
+	private final List<PoolChangeEvent> events = new ArrayList<PoolChangeEvent>();
+
+	/**
+	 * Makes a log and starts listening to pool
+	 * @param pool
+	 */
+	public PoolChangeLog(Pool pool) {
+		pool.addPoolChangeListener(this);
+	}
+
+	@Override
+	public void poolChanged(PoolChangeEvent event) {
+		events.add(event);
+	}
+
+	/**
+	 * @return all recorded events, oldest first (read-only)
+	 */
+	public List<PoolChangeEvent> getEvents() {
+		return Collections.unmodifiableList(events);
+	}
+
+	/**
+	 * @param version
+	 * @return recorded events with version strictly greater than the given version, oldest first
+	 */
+	public List<PoolChangeEvent> getEventsSince(long version) {
+		return Collections.unmodifiableList(events.subList(firstIndexAfter(version), events.size()));
+	}
+
+	/**
+	 * Versions are strictly increasing, so binary search for the first newer event
+	 */
+	private int firstIndexAfter(long version) {
+		int lo = 0, hi = events.size();
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(events.get(mid).getVersion() <= version) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @param version
+	 * @return every vertex that was added or removed, or that is an endpoint of an edge
+	 *   that was added, removed, or reweighted, after the given version
+	 */
+	public Set<Vertex> getTouchedVerticesSince(long version) {
+		Set<Vertex> touched = new HashSet<Vertex>();
+		for(PoolChangeEvent event : getEventsSince(version)) {
+			if(event.isVertexEvent()) {
+				touched.add(event.getVertex());
+			} else {
+				touched.add(event.getEdgeSource());
+				touched.add(event.getEdgeTarget());
+			}
+		}
+		return touched;
+	}
+
+	/**
+	 * @return version of the newest recorded event, or -1 if nothing has been recorded
+	 */
+	public long getLastVersion() {
+		return events.isEmpty() ? -1 : events.get(events.size()-1).getVersion();
+	}
+
+	/**
+	 * Forgets every recorded event with version at most the given version
+	 * @param version
+	 */
+	public void discardThrough(long version) {
+		events.subList(0, firstIndexAfter(version)).clear();
+	}
+
+	public void clear() {
+		events.clear();
+	}
+
+	public int size() {
+		return events.size();
+	}
+}
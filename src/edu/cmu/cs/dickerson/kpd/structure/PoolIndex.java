@@ -0,0 +1,162 @@
+package edu.cmu.cs.dickerson.kpd.structure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSRecipient;
+import edu.cmu.cs.dickerson.kpd.structure.types.BloodType;
+
+/**
+ * Secondary indexes over a Pool's vertices, kept up to date by Pool's addPair,
+ * addAltruist, removeVertex and blood type setters.  Pairs are bucketed by
+ * (patient ABO, donor ABO) and by CPRA; altruists by ABO; and "marginalized"
+ * pairs (UNOS highly-sensitized or under-18 candidates) are kept as their own set.
+ * Every bucket is sorted by vertex ID, like Pool.getPairs().
+ *
+ * A pair's CPRA is final (see VertexPair), so the CPRA buckets never need
+ * re-sorting.  Marginalization is read off the pair's UNOS recipient when the pair
+ * is added; editing the recipient's fields afterward isn't picked up.
+ *
+ * @author John P. Dickerson
+ */
+class PoolIndex {
+
+	// CPRA in [0,1] is split into this many equal-width buckets; CPRA 1.0 goes in the last one
+	static final int NUM_CPRA_BUCKETS = 20;
+
+	private static final int NUM_BT = BloodType.values().length;
+
+	private final List<SortedSet<VertexPair>> pairsByType;         // [patient.ordinal()*NUM_BT + donor.ordinal()]
+	private final List<SortedSet<VertexPair>> pairsByCPRABucket;
+	private final List<SortedSet<VertexAltruist>> altruistsByType;
+	private final SortedSet<VertexPair> marginalizedPairs;
+	// CPRA threshold -> pairs at or above it, built on first request and kept up to date after
+	private final Map<Double, SortedSet<VertexPair>> pairsByCPRAThreshold;
+
+	PoolIndex() {
+		pairsByType = new ArrayList<SortedSet<VertexPair>>(NUM_BT*NUM_BT);
+		for(int idx=0; idx<NUM_BT*NUM_BT; idx++) {
+			pairsByType.add(new TreeSet<VertexPair>());
+		}
+		pairsByCPRABucket = new ArrayList<SortedSet<VertexPair>>(NUM_CPRA_BUCKETS);
+		for(int idx=0; idx<NUM_CPRA_BUCKETS; idx++) {
+			pairsByCPRABucket.add(new TreeSet<VertexPair>());
+		}
+		altruistsByType = new ArrayList<SortedSet<VertexAltruist>>(NUM_BT);
+		for(int idx=0; idx<NUM_BT; idx++) {
+			altruistsByType.add(new TreeSet<VertexAltruist>());
+		}
+		marginalizedPairs = new TreeSet<VertexPair>();
+		pairsByCPRAThreshold = new HashMap<Double, SortedSet<VertexPair>>();
+	}
+
+	static int getCPRABucket(double cpra) {
+		int bucket = (int) Math.floor(cpra * NUM_CPRA_BUCKETS);
+		return Math.max(0, Math.min(NUM_CPRA_BUCKETS-1, bucket));
+	}
+
+	/**
+	 * Highly-sensitized (as marked by UNOS data) or below the age of 18
+	 */
+	static boolean isMarginalized(VertexPair pair) {
+		if(null==pair.getUnderlyingPair()) { return false; }
+		UNOSRecipient r = pair.getUnderlyingPair().getRecipient();
+		return r.highlySensitized || r.age < 18;
+	}
+
+	private static int typeIdx(BloodType btPatient, BloodType btDonor) {
+		return btPatient.ordinal()*NUM_BT + btDonor.ordinal();
+	}
+
+	void addPair(VertexPair pair) {
+		if(null != pair.getBloodTypePatient() && null != pair.getBloodTypeDonor()) {
+			pairsByType.get(typeIdx(pair.getBloodTypePatient(), pair.getBloodTypeDonor())).add(pair);
+		}
+		pairsByCPRABucket.get(getCPRABucket(pair.getPatientCPRA())).add(pair);
+		if(isMarginalized(pair)) {
+			marginalizedPairs.add(pair);
+		}
+		for(Map.Entry<Double, SortedSet<VertexPair>> entry : pairsByCPRAThreshold.entrySet()) {
+			if(pair.getPatientCPRA() >= entry.getKey()) {
+				entry.getValue().add(pair);
+			}
+		}
+	}
+
+	void removePair(VertexPair pair) {
+		if(null != pair.getBloodTypePatient() && null != pair.getBloodTypeDonor()) {
+			pairsByType.get(typeIdx(pair.getBloodTypePatient(), pair.getBloodTypeDonor())).remove(pair);
+		}
+		pairsByCPRABucket.get(getCPRABucket(pair.getPatientCPRA())).remove(pair);
+		marginalizedPairs.remove(pair);
+		for(SortedSet<VertexPair> atLeast : pairsByCPRAThreshold.values()) {
+			atLeast.remove(pair);
+		}
+	}
+
+	/**
+	 * Moves a pair between (patient ABO, donor ABO) buckets after its blood types change
+	 */
+	void retypePair(VertexPair pair, BloodType oldPatient, BloodType oldDonor) {
+		if(null != oldPatient && null != oldDonor) {
+			pairsByType.get(typeIdx(oldPatient, oldDonor)).remove(pair);
+		}
+		if(null != pair.getBloodTypePatient() && null != pair.getBloodTypeDonor()) {
+			pairsByType.get(typeIdx(pair.getBloodTypePatient(), pair.getBloodTypeDonor())).add(pair);
+		}
+	}
+
+	void addAltruist(VertexAltruist alt) {
+		if(null != alt.getBloodTypeDonor()) {
+			altruistsByType.get(alt.getBloodTypeDonor().ordinal()).add(alt);
+		}
+	}
+
+	void removeAltruist(VertexAltruist alt) {
+		if(null != alt.getBloodTypeDonor()) {
+			altruistsByType.get(alt.getBloodTypeDonor().ordinal()).remove(alt);
+		}
+	}
+
+	SortedSet<VertexPair> getPairsOfType(BloodType btPatient, BloodType btDonor) {
+		return Collections.unmodifiableSortedSet(pairsByType.get(typeIdx(btPatient, btDonor)));
+	}
+
+	SortedSet<VertexPair> getPairsInCPRABucket(int bucket) {
+		return Collections.unmodifiableSortedSet(pairsByCPRABucket.get(bucket));
+	}
+
+	SortedSet<VertexAltruist> getAltruistsOfType(BloodType btDonor) {
+		return Collections.unmodifiableSortedSet(altruistsByType.get(btDonor.ordinal()));
+	}
+
+	SortedSet<VertexPair> getMarginalizedPairs() {
+		return Collections.unmodifiableSortedSet(marginalizedPairs);
+	}
+
+	/**
+	 * The first request for a threshold builds its set from the CPRA buckets (only the
+	 * bucket containing the threshold needs its members checked; every higher bucket
+	 * is copied wholesale); from then on addPair and removePair keep it current
+	 */
+	SortedSet<VertexPair> getPairsWithCPRAAtLeast(double threshold) {
+		SortedSet<VertexPair> atLeast = pairsByCPRAThreshold.get(threshold);
+		if(null == atLeast) {
+			atLeast = new TreeSet<VertexPair>();
+			int firstBucket = getCPRABucket(threshold);
+			for(VertexPair pair : pairsByCPRABucket.get(firstBucket)) {
+				if(pair.getPatientCPRA() >= threshold) { atLeast.add(pair); }
+			}
+			for(int bucket=firstBucket+1; bucket<NUM_CPRA_BUCKETS; bucket++) {
+				atLeast.addAll(pairsByCPRABucket.get(bucket));
+			}
+			pairsByCPRAThreshold.put(threshold, atLeast);
+		}
+		return Collections.unmodifiableSortedSet(atLeast);
+	}
+}
@@ -0,0 +1,539 @@
+package edu.cmu.cs.dickerson.kpd.structure;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSDonor;
+
+/**
+ * Immutable, compressed sparse row (CSR) copy of a {@link Pool}.  Vertices are
+ * given dense integer indices (in the Pool's vertex iteration order), and the
+ * outgoing edges of vertex i are stored contiguously at edge indices
+ * [getOutStart(i), getOutEnd(i)), in the Pool's outgoing edge order.  Edge
+ * targets, weights, and failure probabilities are held in parallel primitive
+ * arrays, so hot loops (cycle enumeration, sampling, utility calculations) never
+ * touch the JGraphT hash maps or boxed objects.
+ *
+ * A snapshot reflects the Pool at the time it was built; later changes to the
+ * Pool (or to Edge failure probabilities) are NOT seen by the snapshot.  The
+ * original Vertex and Edge objects are kept so that results can be translated
+ * back into Pool-land (e.g., to build {@link Cycle} objects).
+ *
+ * Snapshots read from a binary pool file (see {@link BinaryPoolFile}) or frozen
+ * as a {@link PoolVersion} have no backing Pool; their Edge objects are created
+ * the first time they're asked for.
+ *
+ * @author John P. Dickerson
+ */
+public class PoolSnapshot {
+
+	private final int numVertices;
+	private final int numEdges;
+
+	// Vertex attributes, indexed by dense vertex index
+	private final Vertex[] vertices;
+	private final int[] vertexIDs;
+	private final boolean[] isAltruist;
+	private final Map<Vertex, Integer> vertexIndex;
+	// Most pairs each vertex's donors will allow in a cycle or chain through it (the
+	// tightest of its UNOS donors' preferences); null if no vertex has real donors
+	private final int[] maxPairsCycle;
+	private final int[] maxPairsChain;
+
+	// If true, every pair has an implicit 0-weight, infallible edge to every altruist
+	// that is NOT stored in the CSR arrays (see Pool.setImplicitAltruistEdges)
+	private final boolean implicitAltruistEdges;
+
+	// Outgoing edges: edges of vertex i live at [outOffsets[i], outOffsets[i+1])
+	private final int[] outOffsets;
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	private final double[] edgeWeights;
+	private final double[] edgeFailureProbabilities;
+	private final Edge[] edges;
+	// Non-null iff this snapshot has no backing Pool and creates its own Edges on demand
+	private final AtomicReferenceArray<Edge> lazyEdges;
+
+	// Incoming edges: inEdges[inOffsets[i] .. inOffsets[i+1]) are edge indices targeting vertex i
+	private final int[] inOffsets;
+	private final int[] inEdges;
+
+	// Built lazily, only needed when translating Pool Edges back to indices
+	private volatile Map<Edge, Integer> edgeIndex = null;
+	// Built lazily; see getStructuralFingerprint
+	private volatile String structuralFingerprint = null;
+
+	/**
+	 * Builds a snapshot of the entire pool in one pass over its vertices and edges
+	 * @param pool
+	 */
+	public PoolSnapshot(Pool pool) {
+		this(collect(pool, pool.vertexSet(), false));
+	}
+
+	/**
+	 * Builds a snapshot of the subgraph of pool induced by subsetV (vertices in subsetV
+	 * that are not in the pool are ignored), touching only the out-edges of subsetV.
+	 * Vertices are indexed in subsetV's iteration order, and each vertex's out-edges
+	 * are ordered by their targets' indices -- the same vertex and edge ordering as
+	 * {@link Pool#makeSubPool(Set)} -- so enumerating over this view gives the same
+	 * results as enumerating over the corresponding subpool, without copying the pool.
+	 * @param pool
+	 * @param subsetV
+	 */
+	public PoolSnapshot(Pool pool, Collection<? extends Vertex> subsetV) {
+		this(collect(pool, subsetV, true));
+	}
+
+	PoolSnapshot(Parts parts) {
+
+		this.implicitAltruistEdges = parts.implicitAltruistEdges;
+		this.numVertices = parts.numVertices;
+		this.vertices = parts.vertices;
+		this.vertexIndex = parts.vertexIndex;
+		this.outOffsets = parts.outOffsets;
+		this.numEdges = parts.numEdges;
+		this.edgeTargets = parts.edgeTargets;
+		this.edgeWeights = parts.edgeWeights;
+		this.edgeFailureProbabilities = parts.edgeFailureProbabilities;
+		this.edges = parts.edges;
+		this.lazyEdges = (null == parts.edges) ? new AtomicReferenceArray<Edge>(numEdges) : null;
+
+		this.vertexIDs = new int[numVertices];
+		this.isAltruist = new boolean[numVertices];
+		this.edgeSources = new int[numEdges];
+		int[] inDegree = new int[numVertices];
+		int[] maxPairsCycle = null;
+		int[] maxPairsChain = null;
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			vertexIDs[vIdx] = vertices[vIdx].getID();
+			isAltruist[vIdx] = vertices[vIdx].isAltruist();
+			if(null != vertices[vIdx].getUnderlyingPair()) {
+				if(null == maxPairsCycle) {
+					maxPairsCycle = new int[numVertices];
+					maxPairsChain = new int[numVertices];
+					Arrays.fill(maxPairsCycle, Integer.MAX_VALUE);
+					Arrays.fill(maxPairsChain, Integer.MAX_VALUE);
+				}
+				for(UNOSDonor d : vertices[vIdx].getUnderlyingPair().getDonors()) {
+					maxPairsCycle[vIdx] = Math.min(maxPairsCycle[vIdx], d.maxPairsCycle);
+					maxPairsChain[vIdx] = Math.min(maxPairsChain[vIdx], d.maxPairsChain);
+				}
+			}
+			for(int eIdx=outOffsets[vIdx]; eIdx<outOffsets[vIdx+1]; eIdx++) {
+				edgeSources[eIdx] = vIdx;
+				inDegree[edgeTargets[eIdx]]++;
+			}
+		}
+
+		this.maxPairsCycle = maxPairsCycle;
+		this.maxPairsChain = maxPairsChain;
+
+		// Counting sort of edge indices by target for the reverse (incoming) adjacency
+		this.inOffsets = new int[numVertices+1];
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			inOffsets[vIdx+1] = inOffsets[vIdx] + inDegree[vIdx];
+		}
+		this.inEdges = new int[numEdges];
+		int[] inCursor = new int[numVertices];
+		System.arraycopy(inOffsets, 0, inCursor, 0, numVertices);
+		for(int eIdx=0; eIdx<numEdges; eIdx++) {
+			inEdges[inCursor[edgeTargets[eIdx]]++] = eIdx;
+		}
+	}
+
+	/**
+	 * Raw CSR arrays, gathered before the (final) snapshot fields are set.  If edges
+	 * is null, the snapshot creates (unattached) Edge objects lazily.
+	 */
+	static final class Parts {
+		boolean implicitAltruistEdges;
+		int numVertices;
+		Vertex[] vertices;
+		Map<Vertex, Integer> vertexIndex;
+		int numEdges;
+		int[] outOffsets;
+		int[] edgeTargets;
+		double[] edgeWeights;
+		double[] edgeFailureProbabilities;
+		Edge[] edges;
+	}
+
+	static Parts collect(Pool pool, Collection<? extends Vertex> vertexOrder, boolean isSubset) {
+
+		Parts parts = new Parts();
+		parts.implicitAltruistEdges = pool.hasImplicitAltruistEdges();
+
+		// Dense vertex indices follow the given iteration order, so anything enumerated
+		// over the snapshot comes out in the same order as over the Pool (or subpool)
+		Vertex[] vertices = new Vertex[vertexOrder.size()];
+		Map<Vertex, Integer> vertexIndex = new HashMap<Vertex, Integer>(2*vertices.length);
+		int numVertices = 0;
+		for(Vertex v : vertexOrder) {
+			if(isSubset && (!pool.containsVertex(v) || vertexIndex.containsKey(v))) { continue; }
+			vertices[numVertices] = v;
+			vertexIndex.put(v, numVertices);
+			numVertices++;
+		}
+		if(numVertices < vertices.length) {
+			vertices = Arrays.copyOf(vertices, numVertices);
+		}
+
+		int capacity = 0;
+		if(!isSubset) {
+			capacity = pool.edgeSet().size();
+		} else {
+			for(int vIdx=0; vIdx<numVertices; vIdx++) {
+				capacity += pool.outDegreeOf(vertices[vIdx]);
+			}
+		}
+		int[] outOffsets = new int[numVertices+1];
+		int[] edgeTargets = new int[capacity];
+		double[] edgeWeights = new double[capacity];
+		double[] edgeFailureProbabilities = new double[capacity];
+		Edge[] edges = new Edge[capacity];
+
+		int eIdx = 0;
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			for(Edge e : pool.outgoingEdgesOf(vertices[vIdx])) {
+				Integer tgtIdx = vertexIndex.get(pool.getEdgeTarget(e));
+				if(null == tgtIdx) { continue; }   // only possible for subsets; edge leaves the subgraph
+				edgeTargets[eIdx] = tgtIdx;
+				edgeWeights[eIdx] = pool.getEdgeWeight(e);
+				edgeFailureProbabilities[eIdx] = e.getFailureProbability();
+				edges[eIdx] = e;
+				eIdx++;
+			}
+			outOffsets[vIdx+1] = eIdx;
+			if(isSubset) {
+				sortByTarget(outOffsets[vIdx], eIdx, edgeTargets, edgeWeights, edgeFailureProbabilities, edges);
+			}
+		}
+
+		parts.numVertices = numVertices;
+		parts.vertices = vertices;
+		parts.vertexIndex = vertexIndex;
+		parts.numEdges = eIdx;
+		parts.outOffsets = outOffsets;
+		parts.edgeTargets = eIdx < capacity ? Arrays.copyOf(edgeTargets, eIdx) : edgeTargets;
+		parts.edgeWeights = eIdx < capacity ? Arrays.copyOf(edgeWeights, eIdx) : edgeWeights;
+		parts.edgeFailureProbabilities = eIdx < capacity ? Arrays.copyOf(edgeFailureProbabilities, eIdx) : edgeFailureProbabilities;
+		parts.edges = eIdx < capacity ? Arrays.copyOf(edges, eIdx) : edges;
+		return parts;
+	}
+
+	/**
+	 * Stable sort of the edge range [from, to) by target index
+	 */
+	private static void sortByTarget(int from, int to, int[] edgeTargets, double[] edgeWeights, double[] edgeFailureProbabilities, Edge[] edges) {
+		int len = to - from;
+		boolean sorted = true;
+		for(int i=from+1; i<to && sorted; i++) {
+			sorted = edgeTargets[i-1] <= edgeTargets[i];
+		}
+		if(sorted) { return; }
+
+		// Pack (target, original position) into one long so a primitive sort is stable
+		long[] keys = new long[len];
+		for(int i=0; i<len; i++) {
+			keys[i] = ((long) edgeTargets[from+i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		double[] weightsCopy = Arrays.copyOfRange(edgeWeights, from, to);
+		double[] failureProbsCopy = Arrays.copyOfRange(edgeFailureProbabilities, from, to);
+		Edge[] edgesCopy = Arrays.copyOfRange(edges, from, to);
+		for(int i=0; i<len; i++) {
+			int orig = (int) keys[i];
+			edgeTargets[from+i] = (int) (keys[i] >>> 32);
+			edgeWeights[from+i] = weightsCopy[orig];
+			edgeFailureProbabilities[from+i] = failureProbsCopy[orig];
+			edges[from+i] = edgesCopy[orig];
+		}
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	public Vertex getVertex(int vIdx) {
+		return vertices[vIdx];
+	}
+
+	/**
+	 * @param v
+	 * @return dense index of v in this snapshot, or -1 if v was not in the pool
+	 */
+	public int indexOf(Vertex v) {
+		Integer idx = vertexIndex.get(v);
+		return null == idx ? -1 : idx;
+	}
+
+	public int getVertexID(int vIdx) {
+		return vertexIDs[vIdx];
+	}
+
+	public boolean isAltruist(int vIdx) {
+		return isAltruist[vIdx];
+	}
+
+	/**
+	 * @return true if some vertex's donors limit the length of cycles or chains through
+	 *   it (i.e., the pool holds real UNOS pairs; see getMaxPairsCycle, getMaxPairsChain)
+	 */
+	public boolean hasVertexLengthCaps() {
+		return null != maxPairsCycle;
+	}
+
+	/**
+	 * @param vIdx
+	 * @return most pairs allowed in any cycle through vIdx (the smallest maxPairsCycle of
+	 *   its UNOS donors), or Integer.MAX_VALUE if its donors don't say
+	 */
+	public int getMaxPairsCycle(int vIdx) {
+		return null == maxPairsCycle ? Integer.MAX_VALUE : maxPairsCycle[vIdx];
+	}
+
+	/**
+	 * @param vIdx
+	 * @return most pairs allowed in any chain through (or, for an altruist, out of) vIdx
+	 *   (the smallest maxPairsChain of its UNOS donors), or Integer.MAX_VALUE if its donors don't say
+	 */
+	public int getMaxPairsChain(int vIdx) {
+		return null == maxPairsChain ? Integer.MAX_VALUE : maxPairsChain[vIdx];
+	}
+
+	/**
+	 * @param vIdx
+	 * @return first edge index of vIdx's outgoing edges (inclusive)
+	 */
+	public int getOutStart(int vIdx) {
+		return outOffsets[vIdx];
+	}
+
+	/**
+	 * @param vIdx
+	 * @return last edge index of vIdx's outgoing edges (exclusive)
+	 */
+	public int getOutEnd(int vIdx) {
+		return outOffsets[vIdx+1];
+	}
+
+	public int getOutDegree(int vIdx) {
+		return outOffsets[vIdx+1] - outOffsets[vIdx];
+	}
+
+	/**
+	 * @param vIdx
+	 * @return first position in the incoming edge list of vIdx (inclusive); use with getInEdge
+	 */
+	public int getInStart(int vIdx) {
+		return inOffsets[vIdx];
+	}
+
+	/**
+	 * @param vIdx
+	 * @return last position in the incoming edge list of vIdx (exclusive); use with getInEdge
+	 */
+	public int getInEnd(int vIdx) {
+		return inOffsets[vIdx+1];
+	}
+
+	public int getInDegree(int vIdx) {
+		return inOffsets[vIdx+1] - inOffsets[vIdx];
+	}
+
+	/**
+	 * @param inPos position in [getInStart(v), getInEnd(v))
+	 * @return edge index of the incoming edge at that position
+	 */
+	public int getInEdge(int inPos) {
+		return inEdges[inPos];
+	}
+
+	public int getEdgeSource(int eIdx) {
+		return edgeSources[eIdx];
+	}
+
+	public int getEdgeTarget(int eIdx) {
+		return edgeTargets[eIdx];
+	}
+
+	public double getEdgeWeight(int eIdx) {
+		return edgeWeights[eIdx];
+	}
+
+	public double getEdgeFailureProbability(int eIdx) {
+		return edgeFailureProbabilities[eIdx];
+	}
+
+	/**
+	 * @param eIdx
+	 * @return the original Pool Edge object for this edge index
+	 */
+	public Edge getEdge(int eIdx) {
+		if(null == lazyEdges) {
+			return edges[eIdx];
+		}
+		Edge e = lazyEdges.get(eIdx);
+		if(null == e) {
+			e = new Edge();
+			e.setFailureProbability(edgeFailureProbabilities[eIdx]);
+			if(!lazyEdges.compareAndSet(eIdx, null, e)) {
+				e = lazyEdges.get(eIdx);
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * @return true if this snapshot was copied from a live Pool (false if, e.g., it
+	 *   was read from a binary pool file)
+	 */
+	public boolean isPoolBacked() {
+		return null == lazyEdges;
+	}
+
+	/**
+	 * @return true if pair->altruist dummy edges are implicit (not stored in the snapshot)
+	 */
+	public boolean hasImplicitAltruistEdges() {
+		return implicitAltruistEdges;
+	}
+
+	/**
+	 * @param pairIdx
+	 * @param altIdx
+	 * @return the implicit 0-weight edge from pair pairIdx back to altruist altIdx,
+	 *   created on demand; only valid if hasImplicitAltruistEdges()
+	 */
+	public Edge getImplicitAltruistEdge(int pairIdx, int altIdx) {
+		if(!implicitAltruistEdges || isAltruist[pairIdx] || !isAltruist[altIdx]) {
+			throw new IllegalArgumentException("No implicit altruist edge from " + vertices[pairIdx] + " to " + vertices[altIdx]);
+		}
+		return Pool.makeImplicitAltruistEdge(vertices[pairIdx], vertices[altIdx]);
+	}
+
+	/**
+	 * Linear scan of srcIdx's outgoing edges
+	 * @param srcIdx
+	 * @param tgtIdx
+	 * @return edge index of (srcIdx, tgtIdx), or -1 if no such edge is stored (implicit
+	 *   altruist edges are never stored)
+	 */
+	public int findEdge(int srcIdx, int tgtIdx) {
+		for(int eIdx=outOffsets[srcIdx]; eIdx<outOffsets[srcIdx+1]; eIdx++) {
+			if(edgeTargets[eIdx] == tgtIdx) {
+				return eIdx;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param e
+	 * @return index of the Pool Edge e in this snapshot, or -1 if e was not in the pool
+	 */
+	public int indexOf(Edge e) {
+		Map<Edge, Integer> index = edgeIndex;
+		if(null == index) {
+			// Benign race: concurrent callers may each build an identical map
+			index = new IdentityHashMap<Edge, Integer>(2*numEdges);
+			for(int eIdx=0; eIdx<numEdges; eIdx++) {
+				index.put(getEdge(eIdx), eIdx);
+			}
+			edgeIndex = index;
+		}
+		Integer idx = index.get(e);
+		return null == idx ? -1 : idx;
+	}
+
+	/**
+	 * Materializes this snapshot as a new Pool with the same vertex and edge order.
+	 * The new Pool shares this snapshot's Vertex and Edge objects (as subpools
+	 * always have), so edge weights are those currently stored on the Edges; for
+	 * snapshots without a backing Pool, weights are taken from the snapshot.
+	 * @return
+	 */
+	public Pool toPool() {
+		Pool pool = new Pool(Edge.class);
+		pool.setImplicitAltruistEdges(implicitAltruistEdges);
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			pool.addVertex(vertices[vIdx]);
+		}
+		for(int eIdx=0; eIdx<numEdges; eIdx++) {
+			Edge e = getEdge(eIdx);
+			pool.addEdge(vertices[edgeSources[eIdx]], vertices[edgeTargets[eIdx]], e);
+			if(!isPoolBacked()) {
+				pool.setEdgeWeight(e, edgeWeights[eIdx]);
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Hash of everything cycle enumeration depends on: vertex IDs and types, which
+	 * vertex each edge leaves and enters (in snapshot order), whether altruist dummy
+	 * edges are implicit, and per-vertex length caps -- but not edge weights or failure
+	 * probabilities.  Snapshots with equal fingerprints have the same cycles and chains,
+	 * with the same edge indices, so anything keyed on edge structure (e.g., a
+	 * {@link edu.cmu.cs.dickerson.kpd.structure.alg.CycleCache}) can be shared by pools
+	 * that differ only in weights.
+	 * @return SHA-1 of the snapshot's structure, as 40 hex digits
+	 */
+	public String getStructuralFingerprint() {
+		String fingerprint = structuralFingerprint;
+		if(null == fingerprint) {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			} catch(NoSuchAlgorithmException e) {
+				throw new RuntimeException("SHA-1 is not available: " + e);
+			}
+			ByteBuffer buf = ByteBuffer.allocate(1 << 14);
+			buf.putInt(numVertices).putInt(numEdges).put((byte) (implicitAltruistEdges ? 1 : 0)).put((byte) (hasVertexLengthCaps() ? 1 : 0));
+			for(int vIdx=0; vIdx<numVertices; vIdx++) {
+				if(buf.remaining() < 25) { flush(digest, buf); }
+				buf.putInt(vertexIDs[vIdx]).put((byte) (isAltruist[vIdx] ? 1 : 0)).putInt(outOffsets[vIdx+1]);
+				if(hasVertexLengthCaps()) {
+					buf.putInt(maxPairsCycle[vIdx]).putInt(maxPairsChain[vIdx]);
+				}
+			}
+			for(int eIdx=0; eIdx<numEdges; eIdx++) {
+				if(buf.remaining() < 4) { flush(digest, buf); }
+				buf.putInt(edgeTargets[eIdx]);
+			}
+			flush(digest, buf);
+
+			StringBuilder sb = new StringBuilder(40);
+			for(byte b : digest.digest()) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			fingerprint = sb.toString();
+			structuralFingerprint = fingerprint;
+		}
+		return fingerprint;
+	}
+
+	private static void flush(MessageDigest digest, ByteBuffer buf) {
+		digest.update(buf.array(), 0, buf.position());
+		buf.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "< snapshot |V|=" + numVertices + ", |E|=" + numEdges + " >";
+	}
+}
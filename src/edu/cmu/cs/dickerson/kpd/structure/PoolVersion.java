@@ -0,0 +1,96 @@
+package edu.cmu.cs.dickerson.kpd.structure;
+
+/**
+ * An immutable, frozen version of a {@link Pool}, as returned by {@link Pool#freeze()}.
+ * A version copies the pool's structure, edge weights and failure probabilities
+ * into its own {@link PoolSnapshot}, with its own Edge objects, so later changes
+ * to the live pool (including weight or failure probability changes on the live
+ * pool's Edges) are never seen here.  Versions are safe to share across threads:
+ * e.g., a dynamic simulator keeps evolving its pool while experiment threads
+ * enumerate and solve on the version they were handed.
+ *
+ * Vertex objects are shared with the live pool, as they are with subpools.  Use
+ * {@link #getSourceEdge(Edge)} to translate an edge of this version (say, from a
+ * matched Cycle) back to the live pool's Edge.
+ *
+ * @author John P. Dickerson
+ */
+public final class PoolVersion {
+
+	private final long version;
+	private final PoolSnapshot snapshot;
+	// sourceEdges[eIdx] is the live pool's Edge for snapshot edge eIdx
+	private final Edge[] sourceEdges;
+	// Read-only Pool view of the snapshot, built on first use
+	private volatile Pool pool = null;
+
+	PoolVersion(Pool livePool) {
+		this.version = livePool.getVersion();
+		PoolSnapshot.Parts parts = PoolSnapshot.collect(livePool, livePool.vertexSet(), false);
+		this.sourceEdges = parts.edges;
+		parts.edges = null;   // the snapshot makes its own Edges
+		this.snapshot = new PoolSnapshot(parts);
+	}
+
+	/**
+	 * @return the live pool's version (see Pool.getVersion) that this version froze
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the frozen CSR snapshot; cheap to share, and the fastest way to enumerate
+	 */
+	public PoolSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Materializes (once) and returns this version as a read-only Pool, for solvers
+	 * and packers that work on Pools.  Any attempt to change it throws an
+	 * UnsupportedOperationException.  The Pool's Edges are the snapshot's Edges, so
+	 * cycles generated from either one can be used with the other.
+	 * @return
+	 */
+	public Pool getPool() {
+		Pool p = pool;
+		if(null == p) {
+			synchronized(this) {
+				p = pool;
+				if(null == p) {
+					p = snapshot.toPool();
+					p.makeReadOnly();
+					pool = p;
+				}
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * @param eIdx edge index in getSnapshot()
+	 * @return the live pool's Edge at the time this version was frozen
+	 */
+	public Edge getSourceEdge(int eIdx) {
+		return sourceEdges[eIdx];
+	}
+
+	/**
+	 * @param e an Edge of this version (from getSnapshot() or getPool())
+	 * @return the corresponding live pool Edge, or null if e is not part of this version;
+	 *   implicit altruist edges are shared by all pools, and are returned as is
+	 */
+	public Edge getSourceEdge(Edge e) {
+		if(Pool.isImplicitAltruistEdge(e)) {
+			return e;
+		}
+		int eIdx = snapshot.indexOf(e);
+		return eIdx < 0 ? null : sourceEdges[eIdx];
+	}
+
+	@Override
+	public String toString() {
+		return "< version " + version + ", |V|=" + snapshot.getNumVertices() + ", |E|=" + snapshot.getNumEdges() + " >";
+	}
+}
@@ -0,0 +1,291 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+
+/**
+ * Prefix-sharing store of chains over a {@link PoolSnapshot}.  Chains out of the same
+ * altruist share prefixes, so rather than keep a full edge list per chain, each
+ * distinct path prefix is one trie node -- (parent node, last edge, and the
+ * running raw weight, success probability, and discounted weight along the path)
+ * -- and each chain is just a node plus the edge back to its altruist.  Memory is
+ * linear in the number of distinct prefixes, which is at most the number of chains,
+ * instead of in the total length of all chains.
+ *
+ * Node accumulators follow the same recurrence, in the same order, as the search,
+ * so chain weights are identical to CycleGenerator's.  Since a node's values only
+ * depend on its parent's, reweighting every chain for new failure probabilities is
+ * one O(1) update per node (see reweigh).
+ *
+ * Chains are materialized as Cycles (same edge order as CycleGenerator) on demand.
+ *
+ * @author John P. Dickerson
+ */
+public class ChainTrie implements CycleEnumerator.PathSink {
+
+	private final PoolSnapshot snapshot;
+	private final int maxChainSize;
+	private final boolean usingFailureProbabilities;
+	private final boolean addInfiniteTailUtility;
+	private final double infiniteTailFailureProb;
+
+	// Trie nodes; a node's parent always has a smaller index (-1 for the altruist's first edge)
+	private int numNodes = 0;
+	private int[] nodeParent = new int[16];
+	private int[] nodeEdge = new int[16];
+	private int[] nodeDepth = new int[16];
+	private double[] nodeRawWeight = new double[16];
+	private double[] nodeSuccProb = new double[16];
+	private double[] nodeDiscountedWeight = new double[16];
+
+	// Chains: last node on the path, edge back to the altruist (maybe IMPLICIT_EDGE), and weight
+	private int numChains = 0;
+	private int[] chainNode = new int[16];
+	private int[] chainReturnEdge = new int[16];
+	private double[] chainWeight = new double[16];
+
+	// Nodes along the most recently added chain, by depth, for prefix sharing while building
+	private int[] pathNodes;
+	private int pathDepth = 0;
+
+	public ChainTrie(PoolSnapshot snapshot, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+		this.snapshot = snapshot;
+		this.maxChainSize = maxChainSize;
+		this.usingFailureProbabilities = usingFailureProbabilities;
+		this.addInfiniteTailUtility = addInfiniteTailUtility;
+		this.infiniteTailFailureProb = infiniteTailFailureProb;
+		this.pathNodes = new int[Math.min(maxChainSize, snapshot.getNumVertices()) + 1];
+	}
+
+	public PoolSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Adds chains straight out of a {@link CycleEnumerator}; cycles are ignored.  Chains
+	 * must arrive in DFS order (as the enumerator emits them) for prefixes to be shared.
+	 */
+	@Override
+	public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+		if(!isChain) {
+			return true;
+		}
+
+		// Reuse the nodes this chain has in common with the previous one, then extend
+		int pathLength = numEdges-1;
+		int common = 0;
+		while(common < pathDepth && common < pathLength && nodeEdge[pathNodes[common]] == edgePath[common]) {
+			common++;
+		}
+		for(int d=common; d<pathLength; d++) {
+			pathNodes[d] = addNode(d == 0 ? -1 : pathNodes[d-1], edgePath[d]);
+		}
+		pathDepth = pathLength;
+
+		if(numChains == chainNode.length) {
+			int newCapacity = Math.max(2*numChains, numChains+1);
+			chainNode = Arrays.copyOf(chainNode, newCapacity);
+			chainReturnEdge = Arrays.copyOf(chainReturnEdge, newCapacity);
+			chainWeight = Arrays.copyOf(chainWeight, newCapacity);
+		}
+		chainNode[numChains] = pathNodes[pathLength-1];
+		chainReturnEdge[numChains] = edgePath[numEdges-1];
+		chainWeight[numChains] = weight;
+		numChains++;
+		return true;
+	}
+
+	private int addNode(int parent, int eIdx) {
+		if(numNodes == nodeParent.length) {
+			int newCapacity = Math.max(2*numNodes, numNodes+1);
+			nodeParent = Arrays.copyOf(nodeParent, newCapacity);
+			nodeEdge = Arrays.copyOf(nodeEdge, newCapacity);
+			nodeDepth = Arrays.copyOf(nodeDepth, newCapacity);
+			nodeRawWeight = Arrays.copyOf(nodeRawWeight, newCapacity);
+			nodeSuccProb = Arrays.copyOf(nodeSuccProb, newCapacity);
+			nodeDiscountedWeight = Arrays.copyOf(nodeDiscountedWeight, newCapacity);
+		}
+		int node = numNodes++;
+		nodeParent[node] = parent;
+		nodeEdge[node] = eIdx;
+		nodeDepth[node] = (parent < 0) ? 1 : nodeDepth[parent]+1;
+		accumulate(node, snapshot.getEdgeFailureProbability(eIdx));
+		return node;
+	}
+
+	/**
+	 * Sets node's running values from its parent's (same recurrence as the search)
+	 */
+	private void accumulate(int node, double failureProb) {
+		int parent = nodeParent[node];
+		int eIdx = nodeEdge[node];
+		if(parent < 0) {
+			nodeRawWeight[node] = snapshot.getEdgeWeight(eIdx);
+			nodeSuccProb[node] = 1.0 - failureProb;
+			nodeDiscountedWeight[node] = 0.0;
+		} else {
+			nodeSuccProb[node] = nodeSuccProb[parent] * (1.0 - failureProb);
+			nodeDiscountedWeight[node] = nodeDiscountedWeight[parent] + (nodeRawWeight[parent]*nodeSuccProb[parent]*failureProb);
+			nodeRawWeight[node] = nodeRawWeight[parent] + snapshot.getEdgeWeight(eIdx);
+		}
+	}
+
+	/**
+	 * Chain weight from its last node, as CycleEnumerator computes it
+	 */
+	private double weighChain(int chain) {
+		int node = chainNode[chain];
+		int returnE = chainReturnEdge[chain];
+		double returnEdgeWeight = (CycleEnumerator.IMPLICIT_EDGE == returnE) ? 0.0 : snapshot.getEdgeWeight(returnE);
+		if(!usingFailureProbabilities) {
+			return nodeRawWeight[node] + returnEdgeWeight;
+		}
+		double discounted = nodeDiscountedWeight[node];
+		if(addInfiniteTailUtility && nodeDepth[node]+1 == maxChainSize) {
+			discounted += ( Math.pow(1.0-infiniteTailFailureProb, maxChainSize) / (infiniteTailFailureProb) );
+		}
+		return discounted + (nodeRawWeight[node] * nodeSuccProb[node]) + returnEdgeWeight;
+	}
+
+	/**
+	 * Recomputes every node's running values and every chain's weight for new edge
+	 * failure probabilities (e.g., after edges have been tested), in one pass
+	 * @param edgeFailureProbabilities failure probability of each snapshot edge, by edge index
+	 */
+	public void reweigh(double[] edgeFailureProbabilities) {
+		if(edgeFailureProbabilities.length != snapshot.getNumEdges()) {
+			throw new IllegalArgumentException("Need one failure probability per snapshot edge (" + snapshot.getNumEdges() + "); got " + edgeFailureProbabilities.length);
+		}
+		// Parents come before their children, so one forward sweep suffices
+		for(int node=0; node<numNodes; node++) {
+			accumulate(node, edgeFailureProbabilities[nodeEdge[node]]);
+		}
+		for(int chain=0; chain<numChains; chain++) {
+			chainWeight[chain] = weighChain(chain);
+		}
+	}
+
+	public int getNumChains() {
+		return numChains;
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	public double getWeight(int chain) {
+		return chainWeight[chain];
+	}
+
+	/**
+	 * @param chain
+	 * @return number of edges in the chain, counting the edge back to the altruist
+	 */
+	public int getLength(int chain) {
+		return nodeDepth[chainNode[chain]] + 1;
+	}
+
+	/**
+	 * @param chain
+	 * @return snapshot index of the chain's altruist
+	 */
+	public int getAltruistIndex(int chain) {
+		int node = chainNode[chain];
+		while(nodeParent[node] >= 0) {
+			node = nodeParent[node];
+		}
+		return snapshot.getEdgeSource(nodeEdge[node]);
+	}
+
+	/**
+	 * @param chain
+	 * @return the chain's last node; walk getParent to the root to get the path
+	 */
+	public int getNode(int chain) {
+		return chainNode[chain];
+	}
+
+	public int getParent(int node) {
+		return nodeParent[node];
+	}
+
+	/**
+	 * @param node
+	 * @return snapshot edge index of the last edge on node's path
+	 */
+	public int getEdgeIndex(int node) {
+		return nodeEdge[node];
+	}
+
+	/**
+	 * Releases unused capacity once the trie is fully built
+	 */
+	public void trimToSize() {
+		nodeParent = Arrays.copyOf(nodeParent, numNodes);
+		nodeEdge = Arrays.copyOf(nodeEdge, numNodes);
+		nodeDepth = Arrays.copyOf(nodeDepth, numNodes);
+		nodeRawWeight = Arrays.copyOf(nodeRawWeight, numNodes);
+		nodeSuccProb = Arrays.copyOf(nodeSuccProb, numNodes);
+		nodeDiscountedWeight = Arrays.copyOf(nodeDiscountedWeight, numNodes);
+		chainNode = Arrays.copyOf(chainNode, numChains);
+		chainReturnEdge = Arrays.copyOf(chainReturnEdge, numChains);
+		chainWeight = Arrays.copyOf(chainWeight, numChains);
+	}
+
+	/**
+	 * Builds the Cycle for a chain, with its edges in the same order as
+	 * CycleGenerator produces them; a new Cycle is built on every call
+	 * @param chain
+	 * @return
+	 */
+	public Cycle getChain(int chain) {
+		int node = chainNode[chain];
+		List<Edge> edges = new ArrayList<Edge>(nodeDepth[node]+1);
+		int returnE = chainReturnEdge[chain];
+		if(CycleEnumerator.IMPLICIT_EDGE == returnE) {
+			edges.add(snapshot.getImplicitAltruistEdge(snapshot.getEdgeTarget(nodeEdge[node]), getAltruistIndex(chain)));
+		} else {
+			edges.add(snapshot.getEdge(returnE));
+		}
+		// Walking up the trie visits the path's edges last to first, which is the Cycle order
+		for(; node >= 0; node = nodeParent[node]) {
+			edges.add(snapshot.getEdge(nodeEdge[node]));
+		}
+		return Cycle.wrapEdges(edges, chainWeight[chain]);
+	}
+
+	/**
+	 * @return a read-only List view whose i-th element is getChain(i); Cycles are built
+	 *   as they are asked for, and not cached, so don't rely on Cycle identity
+	 */
+	public List<Cycle> asList() {
+		return new ChainListView();
+	}
+
+	private final class ChainListView extends AbstractList<Cycle> implements RandomAccess {
+		@Override
+		public Cycle get(int index) {
+			if(index < 0 || index >= numChains) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numChains);
+			}
+			return getChain(index);
+		}
+
+		@Override
+		public int size() {
+			return numChains;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "< ChainTrie: " + numChains + " chains, " + numNodes + " nodes >";
+	}
+}
@@ -0,0 +1,370 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+
+/**
+ * Content-addressed, on-disk cache of enumerated cycles and chains.  Sweeps over
+ * failure rates, rematch counts, or solvers re-enumerate the same pool structure
+ * over and over with different weights; since the cycles and chains of a pool only
+ * depend on its structure and caps, they are stored once per (structural
+ * fingerprint, caps) -- see {@link PoolSnapshot#getStructuralFingerprint()} -- as
+ * edge index paths, and only their weights are recomputed when they are loaded.
+ * Weights are accumulated in the same order as the enumerator does, so loaded
+ * cycles are identical (to the last bit) to freshly generated ones.
+ *
+ * One file per key, named key + ".cycles", all big-endian:
+ *
+ * <pre>
+ * int    magic (0x4B504443, "KPDC")
+ * int    format version (currently 1)
+ * int    |V| of the snapshot
+ * int    |E| of the snapshot
+ * int    max cycle size
+ * int    max chain size
+ * int    number of cycles and chains, n
+ * int    total number of edges in them, m
+ * int    path offsets   [n+1]  (path i is edges [off[i], off[i+1]))
+ * int    edge index     [m]    (in CycleEnumerator path order; -1 for an implicit altruist edge)
+ * </pre>
+ *
+ * Files are written to a temporary name and then renamed, so readers never see a
+ * partial file, and several processes can share a cache directory.  A file that
+ * can't be read is treated as a miss (and overwritten).
+ *
+ * @author John P. Dickerson
+ */
+public class CycleCache {
+
+	public static final int MAGIC = 0x4B504443;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 8 * 4;
+	private static final String SUFFIX = ".cycles";
+
+	private final File directory;
+	private final AtomicInteger numHits = new AtomicInteger(0);
+	private final AtomicInteger numMisses = new AtomicInteger(0);
+
+	/**
+	 * @param directory where cache files live; created if it doesn't exist
+	 */
+	public CycleCache(File directory) {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Could not create cycle cache directory " + directory);
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 * Shared across runs, and never cleaned up by this class: one file per pool
+	 * structure accumulates until someone deletes them
+	 * @return a kpd-cycle-cache directory under java.io.tmpdir
+	 */
+	public static File getDefaultDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"), "kpd-cycle-cache");
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param snapshot
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param usingVertexCaps whether per-vertex length caps were honored (see CycleGenerator.setUsingVertexCaps)
+	 * @return name under which this enumeration's cycles and chains are cached
+	 */
+	public static String getKey(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingVertexCaps) {
+		return snapshot.getStructuralFingerprint() + "-" + maxCycleSize + "-" + maxChainSize
+				+ ((usingVertexCaps && snapshot.hasVertexLengthCaps()) ? "-v" : "");
+	}
+
+	public File getFile(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	public boolean contains(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingVertexCaps) {
+		return getFile(getKey(snapshot, maxCycleSize, maxChainSize, usingVertexCaps)).isFile();
+	}
+
+	/**
+	 * Loads cached cycles and chains, weighted with the snapshot's current edge weights
+	 * and failure probabilities
+	 * @return the cycles and chains, in enumeration order, or null if not cached
+	 */
+	public List<Cycle> get(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingVertexCaps, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+		final List<Cycle> cycles = new ArrayList<Cycle>();
+		final PoolSnapshot finalSnapshot = snapshot;
+		boolean found = replay(snapshot, maxCycleSize, maxChainSize, usingVertexCaps, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb, new CycleEnumerator.PathSink() {
+			@Override
+			public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+				cycles.add(CycleGenerator.makeCycle(finalSnapshot, edgePath, numEdges, weight));
+				return true;
+			}
+		});
+		return found ? cycles : null;
+	}
+
+	/**
+	 * Hands each cached cycle and chain to sink, in enumeration order and weighted with
+	 * the snapshot's current edge weights and failure probabilities, exactly as a
+	 * {@link CycleEnumerator} would have -- but without searching
+	 * @return false if not cached
+	 */
+	public boolean replay(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingVertexCaps, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, CycleEnumerator.PathSink sink) {
+
+		File file = getFile(getKey(snapshot, maxCycleSize, maxChainSize, usingVertexCaps));
+		Paths paths = null;
+		if(file.isFile()) {
+			try {
+				paths = read(file, snapshot, maxCycleSize, maxChainSize);
+			} catch(IOException e) {
+				IOUtil.dPrintln(getClass().getSimpleName(), "Ignoring unreadable cache file: " + e.getMessage());
+			}
+		}
+		if(null == paths) {
+			numMisses.incrementAndGet();
+			return false;
+		}
+		numHits.incrementAndGet();
+
+		// Only the weights need recomputing
+		int[] path = new int[16];
+		for(int pIdx=0; pIdx<paths.numPaths; pIdx++) {
+			int numEdges = paths.offsets[pIdx+1] - paths.offsets[pIdx];
+			if(numEdges > path.length) {
+				path = new int[2*numEdges];
+			}
+			System.arraycopy(paths.edgeIdxs, paths.offsets[pIdx], path, 0, numEdges);
+			boolean isChain = snapshot.isAltruist(snapshot.getEdgeSource(path[0]));
+			double weight = isChain
+					? CycleEnumerator.weighChain(snapshot, path, numEdges, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb, maxChainSize)
+					: CycleEnumerator.weighCycle(snapshot, path, numEdges, usingFailureProbabilities);
+			if(!sink.accept(path, numEdges, weight, isChain)) {
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the structure of cycles (as enumerated from snapshot with these caps);
+	 * failures to write are logged, not thrown, since the cache is only an optimization
+	 * @param snapshot
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param usingVertexCaps
+	 * @param cycles
+	 * @return true if the cache file was written
+	 */
+	public boolean put(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingVertexCaps, List<Cycle> cycles) {
+
+		// Cycle edges are listed most recent first (see CycleGenerator.makeCycle); store them in path order
+		Paths paths = new Paths();
+		paths.numPaths = cycles.size();
+		paths.offsets = new int[cycles.size()+1];
+		for(int pIdx=0; pIdx<cycles.size(); pIdx++) {
+			paths.offsets[pIdx+1] = paths.offsets[pIdx] + cycles.get(pIdx).getEdges().size();
+		}
+		paths.edgeIdxs = new int[paths.offsets[cycles.size()]];
+		for(int pIdx=0; pIdx<cycles.size(); pIdx++) {
+			List<Edge> edges = cycles.get(pIdx).getEdges();
+			int numEdges = edges.size();
+			for(int d=0; d<numEdges; d++) {
+				Edge e = edges.get(d == numEdges-1 ? 0 : numEdges-1-d);
+				int eIdx = snapshot.indexOf(e);
+				if(eIdx < 0) {
+					if(!Pool.isImplicitAltruistEdge(e)) {
+						throw new IllegalArgumentException("Cycle " + cycles.get(pIdx) + " has an edge that is not in the snapshot.");
+					}
+					eIdx = CycleEnumerator.IMPLICIT_EDGE;
+				}
+				paths.edgeIdxs[paths.offsets[pIdx] + d] = eIdx;
+			}
+		}
+		return write(snapshot, maxCycleSize, maxChainSize, usingVertexCaps, paths);
+	}
+
+	/**
+	 * Stores the paths a Recorder saw during a full enumeration of snapshot with these caps
+	 */
+	boolean put(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingVertexCaps, Recorder recorder) {
+		return write(snapshot, maxCycleSize, maxChainSize, usingVertexCaps, recorder.paths);
+	}
+
+	/**
+	 * Edge paths, back to back: path i is edgeIdxs[offsets[i] .. offsets[i+1])
+	 */
+	private static final class Paths {
+		int numPaths = 0;
+		int[] offsets = new int[16];
+		int[] edgeIdxs = new int[64];
+	}
+
+	/**
+	 * Remembers every path it sees (so an enumeration can be cached without creating
+	 * Cycles), passing each on to a delegate sink
+	 */
+	static final class Recorder implements CycleEnumerator.PathSink {
+
+		private final CycleEnumerator.PathSink delegate;
+		private final Paths paths = new Paths();
+
+		Recorder(CycleEnumerator.PathSink delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+			int start = paths.offsets[paths.numPaths];
+			if(paths.numPaths+1 == paths.offsets.length) {
+				paths.offsets = Arrays.copyOf(paths.offsets, 2*paths.offsets.length);
+			}
+			if(start + numEdges > paths.edgeIdxs.length) {
+				paths.edgeIdxs = Arrays.copyOf(paths.edgeIdxs, Math.max(2*paths.edgeIdxs.length, start + numEdges));
+			}
+			System.arraycopy(edgePath, 0, paths.edgeIdxs, start, numEdges);
+			paths.numPaths++;
+			paths.offsets[paths.numPaths] = start + numEdges;
+			return delegate.accept(edgePath, numEdges, weight, isChain);
+		}
+	}
+
+	private static Paths read(File file, PoolSnapshot snapshot, int maxCycleSize, int maxChainSize) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if(size < HEADER_BYTES) {
+				throw new IOException(file + " is too short to be a cycle cache file");
+			}
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buf.order(ByteOrder.BIG_ENDIAN);
+			if(buf.getInt() != MAGIC) {
+				throw new IOException(file + " is not a cycle cache file (bad magic number)");
+			}
+			int version = buf.getInt();
+			if(version != VERSION) {
+				throw new IOException(file + " has cycle cache format version " + version + "; only version " + VERSION + " is supported");
+			}
+			int numVertices = buf.getInt();
+			int numEdges = buf.getInt();
+			int fileMaxCycleSize = buf.getInt();
+			int fileMaxChainSize = buf.getInt();
+			if(numVertices != snapshot.getNumVertices() || numEdges != snapshot.getNumEdges()
+					|| fileMaxCycleSize != maxCycleSize || fileMaxChainSize != maxChainSize) {
+				throw new IOException(file + " was written for a different pool or caps");
+			}
+			int numPaths = buf.getInt();
+			int totalEdges = buf.getInt();
+			if(numPaths < 0 || totalEdges < 0 || size != HEADER_BYTES + 4L*(numPaths+1) + 4L*totalEdges) {
+				throw new IOException(file + " is truncated or corrupt (" + numPaths + " paths, " + totalEdges + " edges, " + size + " bytes)");
+			}
+
+			Paths paths = new Paths();
+			paths.numPaths = numPaths;
+			paths.offsets = new int[numPaths+1];
+			paths.edgeIdxs = new int[totalEdges];
+			IntBuffer ints = buf.asIntBuffer();
+			ints.get(paths.offsets);
+			ints.get(paths.edgeIdxs);
+			if(paths.offsets[0] != 0 || paths.offsets[numPaths] != totalEdges) {
+				throw new IOException(file + " is corrupt (bad path offsets)");
+			}
+			for(int pIdx=0; pIdx<numPaths; pIdx++) {
+				if(paths.offsets[pIdx+1] - paths.offsets[pIdx] < 2) {
+					throw new IOException(file + " is corrupt (path " + pIdx + " has fewer than two edges)");
+				}
+				for(int pos=paths.offsets[pIdx]; pos<paths.offsets[pIdx+1]; pos++) {
+					// Only the edge back to an altruist can be implicit
+					int minIdx = (pos == paths.offsets[pIdx+1]-1) ? CycleEnumerator.IMPLICIT_EDGE : 0;
+					if(paths.edgeIdxs[pos] < minIdx || paths.edgeIdxs[pos] >= numEdges) {
+						throw new IOException(file + " is corrupt (edge index " + paths.edgeIdxs[pos] + " out of range)");
+					}
+				}
+			}
+			return paths;
+		} finally {
+			IOUtil.closeIgnoreExceptions(raf);
+		}
+	}
+
+	private boolean write(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingVertexCaps, Paths paths) {
+
+		String key = getKey(snapshot, maxCycleSize, maxChainSize, usingVertexCaps);
+		File file = getFile(key);
+		File tmpFile = null;
+		try {
+			tmpFile = File.createTempFile(key, ".tmp", directory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+			try {
+				int totalEdges = paths.offsets[paths.numPaths];
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(snapshot.getNumVertices());
+				out.writeInt(snapshot.getNumEdges());
+				out.writeInt(maxCycleSize);
+				out.writeInt(maxChainSize);
+				out.writeInt(paths.numPaths);
+				out.writeInt(totalEdges);
+				for(int pIdx=0; pIdx<=paths.numPaths; pIdx++) {
+					out.writeInt(paths.offsets[pIdx]);
+				}
+				for(int pos=0; pos<totalEdges; pos++) {
+					out.writeInt(paths.edgeIdxs[pos]);
+				}
+				out.close();
+			} finally {
+				IOUtil.closeIgnoreExceptions(out);
+			}
+			if(!tmpFile.renameTo(file)) {
+				// Maybe another process just wrote the same key; theirs is as good as ours
+				if(!(file.delete() && tmpFile.renameTo(file))) {
+					throw new IOException("Could not rename " + tmpFile + " to " + file);
+				}
+			}
+		} catch(IOException e) {
+			IOUtil.dPrintln(getClass().getSimpleName(), "Could not write cache file " + file + ": " + e.getMessage());
+			if(null != tmpFile) {
+				tmpFile.delete();
+			}
+			return false;
+		}
+		IOUtil.dPrintln(getClass().getSimpleName(), "Cached " + paths.numPaths + " cycles and chains in " + file);
+		return true;
+	}
+
+	public int getNumHits() {
+		return numHits.get();
+	}
+
+	public int getNumMisses() {
+		return numMisses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "< CycleCache: " + directory + ", " + numHits.get() + " hits, " + numMisses.get() + " misses >";
+	}
+}
@@ -0,0 +1,98 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.Arrays;
+
+/**
+ * Flat copy of a {@link CycleMembership} plus its transpose, for the tight loops of
+ * solvers and packers.  Vertex vIdx (a membership vertex index) is in columns
+ * getVertexColumns()[getVertexOffsets()[vIdx] .. getVertexOffsets()[vIdx+1]), in
+ * membership order, and column col has vertices
+ * getColumnVertices()[getColumnOffsets()[col] .. getColumnOffsets()[col+1]), in
+ * increasing index order.
+ *
+ * The getters hand out the arrays themselves, not copies; callers must not change
+ * them.  Read-only once built, so threads can share it.  Later changes to the
+ * membership aren't reflected.
+ *
+ * @author John P. Dickerson
+ */
+public final class CycleColumnIndex {
+
+	private final int numColumns;
+	private final int numVertices;
+	private final int[] colOffsets;
+	private final int[] colVertices;
+	private final int[] vertexOffsets;
+	private final int[] vertexColumns;
+
+	public CycleColumnIndex(CycleMembership membership) {
+		numColumns = membership.getNumCycles();
+		numVertices = membership.getNumVertices();
+
+		// Pack each vertex's membership range, counting each column's vertices on the way
+		vertexOffsets = new int[numVertices+1];
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			vertexOffsets[vIdx+1] = vertexOffsets[vIdx] + (membership.getEnd(vIdx) - membership.getStart(vIdx));
+		}
+		vertexColumns = new int[vertexOffsets[numVertices]];
+		colOffsets = new int[numColumns+1];
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			int out = vertexOffsets[vIdx];
+			for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+				int col = membership.getColumnAt(pos);
+				vertexColumns[out++] = col;
+				colOffsets[col+1]++;
+			}
+		}
+
+		// Transpose: prefix sums, then fill
+		for(int col=0; col<numColumns; col++) {
+			colOffsets[col+1] += colOffsets[col];
+		}
+		colVertices = new int[colOffsets[numColumns]];
+		int[] cursor = Arrays.copyOf(colOffsets, numColumns);
+		for(int vIdx=0; vIdx<numVertices; vIdx++) {
+			for(int pos=vertexOffsets[vIdx]; pos<vertexOffsets[vIdx+1]; pos++) {
+				colVertices[cursor[vertexColumns[pos]]++] = vIdx;
+			}
+		}
+	}
+
+	public int getNumColumns() {
+		return numColumns;
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	/**
+	 * @return numColumns+1 offsets into getColumnVertices()
+	 */
+	public int[] getColumnOffsets() {
+		return colOffsets;
+	}
+
+	public int[] getColumnVertices() {
+		return colVertices;
+	}
+
+	/**
+	 * @return numVertices+1 offsets into getVertexColumns()
+	 */
+	public int[] getVertexOffsets() {
+		return vertexOffsets;
+	}
+
+	public int[] getVertexColumns() {
+		return vertexColumns;
+	}
+
+	/**
+	 * @param col
+	 * @return number of vertices in col
+	 */
+	public int getLength(int col) {
+		return colOffsets[col+1] - colOffsets[col];
+	}
+}
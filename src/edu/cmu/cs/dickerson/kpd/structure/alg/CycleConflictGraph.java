@@ -0,0 +1,288 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.Arrays;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+
+/**
+ * Which cycles and chains (IP columns) can't be in the same matching, precomputed
+ * from a {@link CycleMembership}.  Columns conflict if they share a vertex; column
+ * i's conflicts are getConflictAt(pos) for pos in [getStart(i), getEnd(i)), in no
+ * particular order and without i itself, and column i's vertices (as CycleMembership vertex indices)
+ * are getVertexIndex(i, 0 .. getLength(i)-1).
+ *
+ * A greedy packer can then, instead of rebuilding a vertex set per cycle and
+ * checking it against the matched vertices, block every conflict of each column it
+ * packs and skip blocked columns -- O(degree) per packed column, O(1) per test.
+ * Every vertex's membership range is a clique here, which is what swap-based local
+ * search and clique cuts start from.
+ *
+ * The graph has one entry per (column, conflicting column) pair in each direction,
+ * which for long chains in dense pools can be far more than the columns themselves;
+ * it's meant for reduced column sets (e.g., 2- and 3-cycles plus sampled chains).
+ * Per-column vertex bitmasks (|V|/8 bytes per column) are optional; see buildVertexMasks.
+ *
+ * @author John P. Dickerson
+ */
+public class CycleConflictGraph {
+
+	private final CycleMembership membership;
+	private final int numCycles;
+
+	// Vertex indices of column i are colVertices[colOffsets[i] .. colOffsets[i+1]), and
+	// columns through vertex v are vertexColumns[vertexOffsets[v] .. vertexOffsets[v+1]); see CycleColumnIndex
+	private final int[] colOffsets;
+	private final int[] colVertices;
+	private final int[] vertexOffsets;
+	private final int[] vertexColumns;
+
+	// Columns conflicting with column i are conflicts[conflictOffsets[i] .. conflictOffsets[i+1])
+	private final int[] conflictOffsets;
+	private final int[] conflicts;
+
+	// Optional: vertexMasks[i*maskWords .. (i+1)*maskWords) has bit v set iff vertex index v is in column i
+	private long[] vertexMasks = null;
+	private int maskWords = 0;
+
+	public CycleConflictGraph(CycleMembership membership) {
+		this.membership = membership;
+		this.numCycles = membership.getNumCycles();
+		IOUtil.dPrintln(getClass().getSimpleName(), "Computing conflicts between " + numCycles + " cycles/chains.");
+
+		CycleColumnIndex index = new CycleColumnIndex(membership);
+		colOffsets = index.getColumnOffsets();
+		colVertices = index.getColumnVertices();
+		vertexOffsets = index.getVertexOffsets();
+		vertexColumns = index.getVertexColumns();
+
+		// Conflicts: count each column's distinct neighbors over its vertices' ranges, then fill
+		int[] lastSeenBy = new int[numCycles];
+		Arrays.fill(lastSeenBy, -1);
+		conflictOffsets = new int[numCycles+1];
+		long numEntries = 0;
+		for(int col=0; col<numCycles; col++) {
+			numEntries += collectConflicts(col, lastSeenBy, null, 0);
+			if(numEntries > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("Too many conflicts to index (more than " + (Integer.MAX_VALUE - 8) + "); reduce the set of cycles and chains.");
+			}
+			conflictOffsets[col+1] = (int) numEntries;
+		}
+		conflicts = new int[(int) numEntries];
+		Arrays.fill(lastSeenBy, -1);
+		for(int col=0; col<numCycles; col++) {
+			collectConflicts(col, lastSeenBy, conflicts, conflictOffsets[col]);
+		}
+		IOUtil.dPrintln(getClass().getSimpleName(), "Done computing " + (numEntries/2) + " conflicts.");
+	}
+
+	/**
+	 * Walks the membership ranges of col's vertices, counting (and, if out is non-null,
+	 * writing) each other column the first time it's seen
+	 * @param col
+	 * @param lastSeenBy lastSeenBy[c] == col iff c has already been seen for col
+	 * @param out
+	 * @param outStart
+	 * @return number of distinct columns other than col
+	 */
+	private int collectConflicts(int col, int[] lastSeenBy, int[] out, int outStart) {
+		lastSeenBy[col] = col;
+		int count = 0;
+		for(int cPos=colOffsets[col]; cPos<colOffsets[col+1]; cPos++) {
+			int vIdx = colVertices[cPos];
+			for(int pos=vertexOffsets[vIdx]; pos<vertexOffsets[vIdx+1]; pos++) {
+				int other = vertexColumns[pos];
+				if(lastSeenBy[other] != col) {
+					lastSeenBy[other] = col;
+					if(null != out) {
+						out[outStart + count] = other;
+					}
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	public CycleMembership getMembership() {
+		return membership;
+	}
+
+	/**
+	 * @return number of columns (IDs 0 .. getNumCycles()-1, as in the membership when this was built)
+	 */
+	public int getNumCycles() {
+		return numCycles;
+	}
+
+	/**
+	 * @param col
+	 * @return first position of col's conflicts (inclusive), for use with getConflictAt
+	 */
+	public int getStart(int col) {
+		return conflictOffsets[col];
+	}
+
+	/**
+	 * @param col
+	 * @return last position of col's conflicts (exclusive)
+	 */
+	public int getEnd(int col) {
+		return conflictOffsets[col+1];
+	}
+
+	public int getConflictAt(int pos) {
+		return conflicts[pos];
+	}
+
+	/**
+	 * @param col
+	 * @return number of other columns sharing a vertex with col
+	 */
+	public int getDegree(int col) {
+		return conflictOffsets[col+1] - conflictOffsets[col];
+	}
+
+	/**
+	 * @param colA
+	 * @param colB
+	 * @return true if colA and colB are different columns that share a vertex
+	 */
+	public boolean conflicts(int colA, int colB) {
+		if(colA == colB) {
+			return false;
+		}
+
+		// Both vertex lists are sorted; merge
+		int posA = colOffsets[colA], posB = colOffsets[colB];
+		while(posA < colOffsets[colA+1] && posB < colOffsets[colB+1]) {
+			if(colVertices[posA] == colVertices[posB]) {
+				return true;
+			} else if(colVertices[posA] < colVertices[posB]) {
+				posA++;
+			} else {
+				posB++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks col and every column conflicting with it in blocked, e.g. once a greedy
+	 * packer takes col
+	 * @param col
+	 * @param blocked getNumCycles() flags
+	 */
+	public void block(int col, boolean[] blocked) {
+		blocked[col] = true;
+		for(int pos=conflictOffsets[col]; pos<conflictOffsets[col+1]; pos++) {
+			blocked[conflicts[pos]] = true;
+		}
+	}
+
+	/**
+	 * @param col
+	 * @return number of vertices in col
+	 */
+	public int getLength(int col) {
+		return colOffsets[col+1] - colOffsets[col];
+	}
+
+	/**
+	 * @param col
+	 * @param i
+	 * @return membership index of col's i-th vertex (in increasing index order, not path order)
+	 */
+	public int getVertexIndex(int col, int i) {
+		return colVertices[colOffsets[col] + i];
+	}
+
+	public Vertex getVertex(int col, int i) {
+		return membership.getVertex(getVertexIndex(col, i));
+	}
+
+	/**
+	 * Precomputes a |V|-bit vertex mask per column, so sharesVertex and isDisjoint
+	 * are word operations
+	 * @throws IllegalArgumentException if the masks would need more words than a Java array holds
+	 */
+	public void buildVertexMasks() {
+		if(null != vertexMasks) { return; }
+		int words = getMaskWords();
+		long numMaskWords = (long) numCycles * words;
+		if(numMaskWords > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many vertex mask words to allocate (" + numCycles + " cycles/chains x " + words + " words each, more than " + (Integer.MAX_VALUE - 8) + "); reduce the set of cycles and chains, or skip vertex masks.");
+		}
+		maskWords = words;
+		vertexMasks = new long[(int) numMaskWords];
+		for(int col=0; col<numCycles; col++) {
+			int base = col*maskWords;
+			for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+				int vIdx = colVertices[pos];
+				vertexMasks[base + (vIdx >>> 6)] |= (1L << vIdx);
+			}
+		}
+	}
+
+	public boolean hasVertexMasks() {
+		return null != vertexMasks;
+	}
+
+	/**
+	 * @return words per vertex mask (and per matched-vertex mask passed to isDisjoint)
+	 */
+	public int getMaskWords() {
+		return (membership.getNumVertices() + 63) >>> 6;
+	}
+
+	/**
+	 * @param colA
+	 * @param colB
+	 * @return true if the two columns have a vertex in common (uses the vertex masks if built)
+	 */
+	public boolean sharesVertex(int colA, int colB) {
+		if(colA == colB) {
+			return getLength(colA) > 0;
+		}
+		if(null != vertexMasks) {
+			int baseA = colA*maskWords, baseB = colB*maskWords;
+			for(int w=0; w<maskWords; w++) {
+				if((vertexMasks[baseA+w] & vertexMasks[baseB+w]) != 0) { return true; }
+			}
+			return false;
+		}
+		return conflicts(colA, colB);
+	}
+
+	/**
+	 * @param col
+	 * @param matchedMask getMaskWords() words, bit v set iff membership vertex index v is taken
+	 * @return true if none of col's vertices are set in matchedMask
+	 */
+	public boolean isDisjoint(int col, long[] matchedMask) {
+		if(null != vertexMasks) {
+			int base = col*maskWords;
+			for(int w=0; w<maskWords; w++) {
+				if((vertexMasks[base+w] & matchedMask[w]) != 0) { return false; }
+			}
+			return true;
+		}
+		for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+			int vIdx = colVertices[pos];
+			if((matchedMask[vIdx >>> 6] & (1L << vIdx)) != 0) { return false; }
+		}
+		return true;
+	}
+
+	/**
+	 * Sets col's vertices in matchedMask
+	 * @param col
+	 * @param matchedMask getMaskWords() words
+	 */
+	public void addToMask(int col, long[] matchedMask) {
+		for(int pos=colOffsets[col]; pos<colOffsets[col+1]; pos++) {
+			int vIdx = colVertices[pos];
+			matchedMask[vIdx >>> 6] |= (1L << vIdx);
+		}
+	}
+}
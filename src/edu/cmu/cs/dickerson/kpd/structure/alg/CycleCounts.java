@@ -0,0 +1,183 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.Arrays;
+
+/**
+ * Number of cycles and chains in a pool, by length (number of edges, counting the
+ * edge back to a chain's altruist -- i.e., Cycle.getEdges().size()), as found by
+ * CycleGenerator's count-only, budgeted, or sampled enumeration.  Counting doesn't
+ * create Cycle objects, so it is cheap enough to run before deciding whether a
+ * pool is small enough for an exact IP.
+ *
+ * A budgeted enumeration stops after a maximum number of columns or amount of time;
+ * check isCompleted() before trusting the counts as totals.  A sampled enumeration
+ * counts only the cycles and chains found from a random subset of first edges, and
+ * scales up; see getScale().
+ *
+ * @author John P. Dickerson
+ */
+public class CycleCounts implements CycleEnumerator.PathSink {
+
+	// Check the clock only every so often; currentTimeMillis isn't free
+	private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+	private final long maxColumns;
+	private final long deadlineMillis;
+	private final CycleEnumerator.PathSink delegate;
+	private final long startMillis;
+
+	private long[] cycleCounts = new long[8];
+	private long[] chainCounts = new long[8];
+	private long numCycles = 0;
+	private long numChains = 0;
+	private boolean completed = false;
+	private boolean stoppedOnTime = false;
+	private double scale = 1.0;
+	private long elapsedMillis = 0;
+
+	/**
+	 * @param maxColumns stop once this many cycles and chains have been found (Long.MAX_VALUE for no limit)
+	 * @param maxMillis stop once this much time has passed (Long.MAX_VALUE for no limit)
+	 * @param delegate if non-null, also gets every path that is counted
+	 */
+	CycleCounts(long maxColumns, long maxMillis, CycleEnumerator.PathSink delegate) {
+		if(maxColumns < 0 || maxMillis < 0) {
+			throw new IllegalArgumentException("Budget must be nonnegative; your values: maxColumns=" + maxColumns + ", maxMillis=" + maxMillis);
+		}
+		this.maxColumns = maxColumns;
+		this.delegate = delegate;
+		this.startMillis = System.currentTimeMillis();
+		this.deadlineMillis = (maxMillis > Long.MAX_VALUE - startMillis) ? Long.MAX_VALUE : startMillis + maxMillis;
+	}
+
+	@Override
+	public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+		if(numCycles + numChains >= maxColumns) {
+			return false;
+		}
+		if(numEdges >= cycleCounts.length) {
+			int newLength = Math.max(2*cycleCounts.length, numEdges+1);
+			cycleCounts = Arrays.copyOf(cycleCounts, newLength);
+			chainCounts = Arrays.copyOf(chainCounts, newLength);
+		}
+		if(isChain) {
+			chainCounts[numEdges]++;
+			numChains++;
+		} else {
+			cycleCounts[numEdges]++;
+			numCycles++;
+		}
+		if(null != delegate) {
+			delegate.accept(edgePath, numEdges, weight, isChain);
+		}
+		if((numCycles + numChains) % CLOCK_CHECK_INTERVAL == 0 && System.currentTimeMillis() >= deadlineMillis) {
+			stoppedOnTime = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Called once enumeration stops
+	 * @param completed true if the enumerator finished
+	 */
+	void finish(boolean completed) {
+		this.completed = completed;
+		this.elapsedMillis = System.currentTimeMillis() - startMillis;
+	}
+
+	void setScale(double scale) {
+		this.scale = scale;
+	}
+
+	/**
+	 * @return true if every cycle and chain was counted (false if the budget ran out)
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return true if enumeration stopped because it ran out of time (rather than columns)
+	 */
+	public boolean isStoppedOnTime() {
+		return stoppedOnTime;
+	}
+
+	/**
+	 * @param numEdges
+	 * @return number of cycles counted with numEdges edges
+	 */
+	public long getNumCycles(int numEdges) {
+		return numEdges < cycleCounts.length ? cycleCounts[numEdges] : 0L;
+	}
+
+	/**
+	 * @param numEdges
+	 * @return number of chains counted with numEdges edges (numEdges-1 pairs)
+	 */
+	public long getNumChains(int numEdges) {
+		return numEdges < chainCounts.length ? chainCounts[numEdges] : 0L;
+	}
+
+	public long getNumCycles() {
+		return numCycles;
+	}
+
+	public long getNumChains() {
+		return numChains;
+	}
+
+	public long getNumColumns() {
+		return numCycles + numChains;
+	}
+
+	/**
+	 * @return length (in edges) of the longest cycle or chain counted, or 0 if none
+	 */
+	public int getMaxLength() {
+		for(int numEdges=cycleCounts.length-1; numEdges>0; numEdges--) {
+			if(cycleCounts[numEdges] > 0 || chainCounts[numEdges] > 0) {
+				return numEdges;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return factor to multiply counts by to estimate the pool's totals: 1.0 for an
+	 *   exact count, 1/(sampling fraction) for a sampled one
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	public boolean isEstimate() {
+		return scale != 1.0;
+	}
+
+	/**
+	 * @return estimated number of cycles and chains in the pool (exact if this isn't an estimate and is completed)
+	 */
+	public double estimateNumColumns() {
+		return scale * getNumColumns();
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("< CycleCounts: ").append(numCycles).append(" cycles, ").append(numChains).append(" chains");
+		if(isEstimate()) {
+			sb.append(" (sampled; estimate ").append(Math.round(estimateNumColumns())).append(" total)");
+		}
+		if(!completed) {
+			sb.append(stoppedOnTime ? " (out of time)" : " (hit column limit)");
+		}
+		sb.append(" in ").append(elapsedMillis).append("ms >");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,734 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.Arrays;
+
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+
+/**
+ * Iterative, allocation-free DFS kernel behind {@link CycleGenerator}.  Walks the
+ * int-indexed adjacency of a {@link PoolSnapshot} with an explicit stack of fixed
+ * size: per-depth vertex, edge cursor, and primitive running weight, success
+ * probability, and discounted weight.  Every cycle or chain found is reported to a
+ * {@link PathSink} as a slice of a reused int[] of edge indices, so nothing is
+ * allocated per cycle unless the sink chooses to.
+ *
+ * Enumeration order, weights (including floating point evaluation order), and
+ * pruning rules are exactly those of the original recursive generator, plus one:
+ * a vertex is only entered if the path can still be closed from it within the cap.
+ * Before searching from a start vertex, a reverse BFS (limited to the cap, and to
+ * vertices the search may visit) finds each vertex's hop distance back to the
+ * start, or for chains, to a pair with an edge back to the starting altruist.
+ * Those are lower bounds on the hops left in any completion, so pruning on them
+ * drops only subtrees that hold no cycles or chains.
+ *
+ * Optionally (see {@link #setUsingVertexCaps(boolean)}), each vertex's own cap on
+ * the pairs in any cycle or chain through it -- its UNOS donors' maxPairsCycle and
+ * maxPairsChain -- is honored too.  Each frame keeps the smallest cap of any vertex
+ * on the path so far, so a branch is cut at the first vertex whose preference it
+ * would violate, rather than generated and filtered out afterwards.
+ *
+ * Enumeration is resumable: if the sink returns false, {@link #run(PathSink)}
+ * returns right after that path with the DFS stack intact, and the next call to
+ * run picks up where it left off.  That is how consumers stop early, and how
+ * {@link CycleSpliterator} pulls one cycle at a time.
+ *
+ * Not thread-safe: give each thread its own enumerator (they're cheap, and can share
+ * the snapshot).
+ *
+ * @author John P. Dickerson
+ */
+public final class CycleEnumerator {
+
+	/**
+	 * Receives each cycle or chain as it is found
+	 */
+	public static interface PathSink {
+		/**
+		 * @param edgePath edge indices (into the snapshot) of the cycle or chain, in path
+		 *   order: edgePath[0] leaves the start vertex, edgePath[numEdges-1] returns to it.
+		 *   For chains, the returning edge may be {@link CycleEnumerator#IMPLICIT_EDGE}.
+		 *   The array is reused -- copy anything you want to keep.
+		 * @param numEdges number of valid entries in edgePath
+		 * @param weight (possibly failure-aware) weight of the cycle or chain
+		 * @param isChain true if this is a chain starting at an altruist
+		 * @return true to keep enumerating, false to pause (see run)
+		 */
+		public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain);
+	}
+
+	/**
+	 * Stands in for an implicit pair->altruist edge (see Pool.setImplicitAltruistEdges),
+	 * which has no edge index in the snapshot
+	 */
+	public static final int IMPLICIT_EDGE = -1;
+
+	private final PoolSnapshot snapshot;
+	private final int maxCycleSize;
+	private final int maxChainSize;
+	private final boolean usingFailureProbabilities;
+	private final boolean addInfiniteTailUtility;
+	private final double infiniteTailFailureProb;
+
+	// Test whether vertices are in the current path (only want simple cycles)
+	private final boolean[] inPath;
+	// edgePath[d] is the edge taken out of the vertex at depth d
+	private final int[] edgePath;
+	// Per-depth DFS frame: the vertex, its next and last out-edge index
+	private final int[] frameVertex;
+	private final int[] frameCursor;
+	private final int[] frameEnd;
+	// Per-depth accumulators for the path ending at that depth
+	private final double[] rawWeight;
+	private final double[] succProb;
+	private final double[] discountedWeight;
+	// pathCap[d] is the most pairs a cycle or chain may have, given the global cap and
+	// the caps of every vertex at depths 0..d
+	private final int[] pathCap;
+
+	// Per-vertex caps on cycle and chain length; null unless honoring them
+	private int[] vertexCycleCaps = null;
+	private int[] vertexChainCaps = null;
+
+	// Resumable state: the range of first edges still to start, the search in
+	// progress (depth 0 if none), and whether the sink asked us to pause
+	private int nextStartE = 0;
+	private int rangeEnd = 0;
+	private boolean generatingForAllVertices = true;
+	private int startIdx = -1;
+	private boolean searchingChains = false;
+	private int depth = 0;
+	private boolean pauseRequested = false;
+	// Chain searches stop backtracking at this depth (deeper than 1 when the
+	// path above it was fixed by enumerateChainsThrough)
+	private int minDepth = 1;
+
+	// Hop distance of each vertex back to the start vertex (cycles) or to a vertex
+	// that can close the chain (chains), valid where closeStamp == currentStamp;
+	// computed once per start vertex, in distanceRoot (-1 if none)
+	private boolean pruningOnDistance = false;
+	private int[] closeDist = null;
+	private int[] closeStamp = null;
+	private int[] bfsQueue = null;
+	private int currentStamp = 0;
+	private int distanceRoot = -1;
+	private int numPairs = -1;
+
+	public CycleEnumerator(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+
+		if(maxCycleSize < 0 || maxChainSize < 0) {
+			throw new IllegalArgumentException("Maximum (cycle, chain) length must be nonnegative.  For infinite length, please use Integer.MAX_INT.  For zero length, please use 0.");
+		}
+
+		this.snapshot = snapshot;
+		this.maxCycleSize = maxCycleSize;
+		this.maxChainSize = maxChainSize;
+		this.usingFailureProbabilities = usingFailureProbabilities;
+		this.addInfiniteTailUtility = addInfiniteTailUtility;
+		this.infiniteTailFailureProb = infiniteTailFailureProb;
+
+		// Simple paths visit each vertex at most once, so depth is bounded by |V| as well as the caps
+		int n = snapshot.getNumVertices();
+		int maxDepth = Math.min(Math.max(maxCycleSize, maxChainSize), n) + 2;
+		this.inPath = new boolean[n];
+		this.edgePath = new int[maxDepth];
+		this.frameVertex = new int[maxDepth];
+		this.frameCursor = new int[maxDepth];
+		this.frameEnd = new int[maxDepth];
+		this.rawWeight = new double[maxDepth];
+		this.succProb = new double[maxDepth];
+		this.discountedWeight = new double[maxDepth];
+		this.pathCap = new int[maxDepth];
+	}
+
+	public PoolSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * If true, only enumerates cycles and chains no longer than every vertex on them
+	 * allows (see PoolSnapshot.getMaxPairsCycle and getMaxPairsChain), on top of the
+	 * global caps.  Off by default; has no effect if the snapshot has no such caps.
+	 * Takes effect from the next reset (or enumerate) call.
+	 * @param usingVertexCaps
+	 */
+	public void setUsingVertexCaps(boolean usingVertexCaps) {
+		if(usingVertexCaps && snapshot.hasVertexLengthCaps()) {
+			int n = snapshot.getNumVertices();
+			vertexCycleCaps = new int[n];
+			vertexChainCaps = new int[n];
+			for(int vIdx=0; vIdx<n; vIdx++) {
+				vertexCycleCaps[vIdx] = snapshot.getMaxPairsCycle(vIdx);
+				vertexChainCaps[vIdx] = snapshot.getMaxPairsChain(vIdx);
+			}
+		} else {
+			vertexCycleCaps = null;
+			vertexChainCaps = null;
+		}
+		this.distanceRoot = -1;
+	}
+
+	public boolean isUsingVertexCaps() {
+		return null != vertexCycleCaps;
+	}
+
+	/**
+	 * Enumerates every cycle and chain in the snapshot, each exactly once, in vertex
+	 * order of the cycle's lowest-ID vertex (or the chain's altruist)
+	 * @param sink
+	 * @return true if enumeration finished, false if the sink stopped it early
+	 */
+	public boolean enumerateAll(PathSink sink) {
+		reset(0, snapshot.getNumEdges(), true);
+		return run(sink);
+	}
+
+	/**
+	 * Enumerates all cycles through startIdx (if it is a pair) or all chains out of
+	 * startIdx (if it is an altruist) whose first edge is in [fromE, toE)
+	 * @param startIdx
+	 * @param fromE first out-edge of startIdx to explore (inclusive)
+	 * @param toE last out-edge of startIdx to explore (exclusive)
+	 * @param generatingForAllVertices if true, only generates cycles whose lowest-ID
+	 *        vertex is startIdx, assuming the caller loops over all vertices
+	 * @param sink
+	 * @return true if enumeration finished, false if the sink stopped it early
+	 */
+	public boolean enumerate(int startIdx, int fromE, int toE, boolean generatingForAllVertices, PathSink sink) {
+		if(fromE < toE && (fromE < snapshot.getOutStart(startIdx) || toE > snapshot.getOutEnd(startIdx))) {
+			throw new IllegalArgumentException("Edges [" + fromE + ", " + toE + ") are not all out-edges of vertex " + startIdx);
+		}
+		reset(fromE, toE, generatingForAllVertices);
+		return run(sink);
+	}
+
+	/**
+	 * Abandons any enumeration in progress and sets up a new one over every first
+	 * edge in [fromE, toE) -- a contiguous range of edge indices, possibly spanning
+	 * several start vertices.  Call run to do the work.
+	 * @param fromE
+	 * @param toE
+	 * @param generatingForAllVertices see enumerate
+	 */
+	public void reset(int fromE, int toE, boolean generatingForAllVertices) {
+		if(fromE < 0 || toE > snapshot.getNumEdges()) {
+			throw new IllegalArgumentException("Edge range [" + fromE + ", " + toE + ") is outside [0, " + snapshot.getNumEdges() + ")");
+		}
+		abandonSearch();
+		this.distanceRoot = -1;
+		this.nextStartE = fromE;
+		this.rangeEnd = Math.max(fromE, toE);
+		this.generatingForAllVertices = generatingForAllVertices;
+		this.pauseRequested = false;
+	}
+
+	/**
+	 * Runs (or resumes) the enumeration set up by reset, reporting paths to sink
+	 * @param sink
+	 * @return true if the enumeration is finished; false if sink returned false, in
+	 *   which case calling run again resumes right after the last reported path
+	 */
+	public boolean run(PathSink sink) {
+
+		pauseRequested = false;
+		while(true) {
+
+			// Finish (or continue) the search in progress
+			if(depth > 0) {
+				if(searchingChains) {
+					searchChains(sink);
+				} else {
+					searchCycles(sink);
+				}
+				if(depth == 0) {
+					inPath[startIdx] = false;
+				}
+			}
+			if(pauseRequested) {
+				return false;
+			}
+
+			if(nextStartE >= rangeEnd) {
+				return true;
+			}
+			beginSearch(nextStartE++, sink);
+		}
+	}
+
+	/**
+	 * @return true if nothing is left to enumerate
+	 */
+	public boolean isFinished() {
+		return depth == 0 && nextStartE >= rangeEnd;
+	}
+
+	/**
+	 * Splits off the back half of the first edges that have not been started yet
+	 * @return the first edge of the split-off range (its end is the old range end);
+	 *   the range no longer belongs to this enumerator.  Returns -1 if fewer than two
+	 *   first edges are left to start.
+	 */
+	int splitRemaining() {
+		int remaining = rangeEnd - nextStartE;
+		if(remaining < 2) {
+			return -1;
+		}
+		int mid = nextStartE + remaining/2;
+		rangeEnd = mid;
+		return mid;
+	}
+
+	int getRangeEnd() {
+		return rangeEnd;
+	}
+
+	int getNumUnstartedEdges() {
+		return rangeEnd - nextStartE;
+	}
+
+	private void abandonSearch() {
+		while(depth > 0) {
+			inPath[frameVertex[depth]] = false;
+			depth--;
+		}
+		if(startIdx >= 0) {
+			inPath[startIdx] = false;
+		}
+	}
+
+	/**
+	 * Starts the DFS along first edge startE, possibly reporting a path right away
+	 */
+	private void beginSearch(int startE, PathSink sink) {
+
+		this.startIdx = snapshot.getEdgeSource(startE);
+		this.searchingChains = snapshot.isAltruist(startIdx);
+		int nextIdx = snapshot.getEdgeTarget(startE);
+		if(!searchingChains && generatingForAllVertices && snapshot.getVertexID(nextIdx) <= snapshot.getVertexID(startIdx)) {
+			// If the target hop has a lower ID than the source, we've generated these cycles already
+			return;
+		}
+
+		pathCap[0] = searchingChains ? capAt(vertexChainCaps, startIdx, maxChainSize) : capAt(vertexCycleCaps, startIdx, maxCycleSize);
+		if(pathCap[0] < (searchingChains ? 1 : 2)) {
+			// The start vertex's own cap rules out every chain (or cycle) through it
+			return;
+		}
+		if(startIdx != distanceRoot) {
+			computeCloseDistances();
+		}
+
+		// Initial path weight is just the single edge's weight, and the probability of
+		// the first edge executing is 1-probability of it failing
+		edgePath[0] = startE;
+		rawWeight[1] = snapshot.getEdgeWeight(startE);
+		succProb[1] = 1.0 - snapshot.getEdgeFailureProbability(startE);
+		discountedWeight[1] = 0.0;
+
+		// Test whether vertices are in the current path (only want simple cycles)
+		inPath[startIdx] = true;
+		boolean pushed = searchingChains ? enterChainVertex(1, nextIdx) : enterCycleVertex(1, nextIdx, sink);
+		if(pushed) {
+			depth = 1;
+		} else {
+			inPath[startIdx] = false;
+		}
+	}
+
+	private void searchCycles(final PathSink sink) {
+
+		final int startID = snapshot.getVertexID(startIdx);
+		while(depth >= 1 && !pauseRequested) {
+			if(frameCursor[depth] < frameEnd[depth]) {
+				int nextE = frameCursor[depth]++;
+				int nextIdx = snapshot.getEdgeTarget(nextE);
+
+				// Target hop has a lower ID than the start, so we'll generate this cycle elsewhere
+				// (conditioned on generatingAllVertices; if that's false, then we can't short circuit here)
+				if(generatingForAllVertices && snapshot.getVertexID(nextIdx) < startID) { continue; }
+
+				// Step down one edge in the path, updating the path weight as well
+				edgePath[depth] = nextE;
+				rawWeight[depth+1] = rawWeight[depth] + snapshot.getEdgeWeight(nextE);
+				succProb[depth+1] = succProb[depth] * (1.0 - snapshot.getEdgeFailureProbability(nextE));
+				if(enterCycleVertex(depth+1, nextIdx, sink)) {
+					depth++;
+				}
+			} else {
+				inPath[frameVertex[depth]] = false;
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Reached vIdx along a path of pathLength edges: reports a completed cycle, or
+	 * pushes a frame for vIdx if the path may be extended from there
+	 * @return true if a frame was pushed
+	 */
+	private boolean enterCycleVertex(int pathLength, int vIdx, PathSink sink) {
+
+		if(vIdx == startIdx) {
+			// We've completed a cycle <startV, V1, V2, ..., lastV=startV>
+			// If we're using failure probabilities, the discounted utility of a cycle is:
+			// u(c) = \prod_e (1-fail(e))  *  \sum_e weight(e)
+			double weight = rawWeight[pathLength];
+			if(usingFailureProbabilities) {
+				weight *= succProb[pathLength];
+			}
+			pauseRequested = !sink.accept(edgePath, pathLength, weight, false);
+			return false;
+		}
+
+		int cap = capAt(vertexCycleCaps, vIdx, pathCap[pathLength-1]);
+		if(inPath[vIdx]                      // Must be a simple cycle
+				|| pathLength >= cap             // Cap cycle length to maxCycleSize (and to every vertex's own cap)
+				|| snapshot.isAltruist(vIdx)     // Only generate cycles, not chains
+				|| maxCycleSize <= 0             // Sanity check
+				|| !canCloseWithin(vIdx, cap - pathLength)  // Can't get back to startV in time
+				) {
+			return false;
+		}
+
+		pushFrame(pathLength, vIdx);
+		pathCap[pathLength] = cap;
+		return true;
+	}
+
+	private void searchChains(final PathSink sink) {
+
+		final int startingAltIdx = startIdx;
+		while(depth >= minDepth && !pauseRequested) {
+			if(frameCursor[depth] < frameEnd[depth]) {
+				int nextE = frameCursor[depth]++;
+				int nextIdx = snapshot.getEdgeTarget(nextE);
+
+				if(snapshot.isAltruist(nextIdx)) {
+					// If we've bounced back to an altruist who isn't the starting altruist, ignore; else, add this chain
+					if(nextIdx == startingAltIdx) {
+						emitChain(depth, nextE, snapshot.getEdgeWeight(nextE), sink);
+					}
+					continue;
+				}
+
+				// Probability of chain executing to very end (and maybe continuing), and the discounted
+				// utility of the chain going to EXACTLY this edge and then failing
+				double failureProb = snapshot.getEdgeFailureProbability(nextE);
+				edgePath[depth] = nextE;
+				succProb[depth+1] = succProb[depth] * (1.0 - failureProb);
+				discountedWeight[depth+1] = discountedWeight[depth] + (rawWeight[depth]*succProb[depth]*failureProb);
+				rawWeight[depth+1] = rawWeight[depth] + snapshot.getEdgeWeight(nextE);
+				if(enterChainVertex(depth+1, nextIdx)) {
+					depth++;
+				}
+			} else {
+				// Any pair can end the chain by hopping back to the altruist along an implicit dummy edge
+				int lastIdx = frameVertex[depth];
+				if(snapshot.hasImplicitAltruistEdges() && !snapshot.isAltruist(lastIdx)) {
+					emitChain(depth, IMPLICIT_EDGE, 0.0, sink);
+				}
+				inPath[lastIdx] = false;
+				depth--;
+			}
+		}
+	}
+
+	private boolean enterChainVertex(int pathLength, int vIdx) {
+		int cap = capAt(vertexChainCaps, vIdx, pathCap[pathLength-1]);
+		if(inPath[vIdx]                      // Must be a simple cycle
+				|| pathLength > cap              // Cap chain length to maxChainSize (ignore altruist), and to every vertex's own cap
+				|| maxChainSize <= 0             // Sanity check
+				|| !canCloseWithin(vIdx, cap - pathLength)  // Can't reach a pair that ends the chain
+				) {
+			return false;
+		}
+		pushFrame(pathLength, vIdx);
+		pathCap[pathLength] = cap;
+		return true;
+	}
+
+	/**
+	 * @return the smaller of cap and vIdx's own cap (if honoring per-vertex caps)
+	 */
+	private static int capAt(int[] vertexCaps, int vIdx, int cap) {
+		return (null != vertexCaps && vertexCaps[vIdx] < cap) ? vertexCaps[vIdx] : cap;
+	}
+
+	private boolean canCloseWithin(int vIdx, int hopsLeft) {
+		if(!pruningOnDistance) {
+			return true;   // No bound (every pair can end a chain)
+		}
+		return closeStamp[vIdx] == currentStamp && closeDist[vIdx] <= hopsLeft;
+	}
+
+	/**
+	 * Reverse BFS from the current start vertex over pairs the search may visit,
+	 * out to as many hops as a path could still take.  For cycles, distances are
+	 * to startIdx; for chains, to the nearest pair with an edge back to startIdx.
+	 * A vertex k hops out is on a cycle or chain of at least k+1 pairs, so if its own
+	 * cap is smaller, it is left out (and never entered).
+	 */
+	private void computeCloseDistances() {
+
+		distanceRoot = startIdx;
+		if(searchingChains && snapshot.hasImplicitAltruistEdges()) {
+			// Every pair can hop back to the altruist, so nothing to prune
+			pruningOnDistance = false;
+			return;
+		}
+		pruningOnDistance = true;
+		int n = snapshot.getNumVertices();
+		if(null == closeDist || closeDist.length < n) {
+			closeDist = new int[n];
+			closeStamp = new int[n];
+			bfsQueue = new int[n];
+			currentStamp = 0;
+		}
+		if(++currentStamp == 0) {
+			// Stamps wrapped around; old stamps could collide, so start over
+			Arrays.fill(closeStamp, 0);
+			currentStamp = 1;
+		}
+
+		final int minID = snapshot.getVertexID(startIdx);
+		final boolean restrictIDs = !searchingChains && generatingForAllVertices;
+		final int[] vertexCaps = searchingChains ? vertexChainCaps : vertexCycleCaps;
+		final int maxHops = pathCap[0] - 1;
+		int head = 0, tail = 0;
+		if(searchingChains) {
+			// Pairs that can hop straight back to the altruist end chains
+			for(int inPos=snapshot.getInStart(startIdx); inPos<snapshot.getInEnd(startIdx); inPos++) {
+				int wIdx = snapshot.getEdgeSource(snapshot.getInEdge(inPos));
+				if(!snapshot.isAltruist(wIdx) && closeStamp[wIdx] != currentStamp && (null == vertexCaps || vertexCaps[wIdx] >= 1)) {
+					closeStamp[wIdx] = currentStamp;
+					closeDist[wIdx] = 0;
+					bfsQueue[tail++] = wIdx;
+				}
+			}
+		} else {
+			closeStamp[startIdx] = currentStamp;
+			closeDist[startIdx] = 0;
+			bfsQueue[tail++] = startIdx;
+		}
+
+		if(searchingChains && tail == getNumPairs()) {
+			// Every pair can end the chain directly (the usual case), so nothing to prune
+			pruningOnDistance = false;
+			return;
+		}
+
+		while(head < tail) {
+			int uIdx = bfsQueue[head++];
+			int dist = closeDist[uIdx];
+			if(dist >= maxHops) {
+				continue;
+			}
+			for(int inPos=snapshot.getInStart(uIdx); inPos<snapshot.getInEnd(uIdx); inPos++) {
+				int wIdx = snapshot.getEdgeSource(snapshot.getInEdge(inPos));
+				if(closeStamp[wIdx] == currentStamp
+						|| snapshot.isAltruist(wIdx)
+						|| (restrictIDs && snapshot.getVertexID(wIdx) < minID)
+						|| (null != vertexCaps && vertexCaps[wIdx] < dist+2)) {
+					continue;
+				}
+				closeStamp[wIdx] = currentStamp;
+				closeDist[wIdx] = dist + 1;
+				bfsQueue[tail++] = wIdx;
+			}
+		}
+	}
+
+	/**
+	 * Weight of the cycle edgePath[0..numEdges), summed in path order exactly as the
+	 * search does (so rotating a cycle to start at a different vertex can change the
+	 * last bits of its weight)
+	 */
+	static double weighCycle(PoolSnapshot snapshot, int[] edgePath, int numEdges, boolean usingFailureProbabilities) {
+		double rawWeight = snapshot.getEdgeWeight(edgePath[0]);
+		double succProb = 1.0 - snapshot.getEdgeFailureProbability(edgePath[0]);
+		for(int d=1; d<numEdges; d++) {
+			rawWeight = rawWeight + snapshot.getEdgeWeight(edgePath[d]);
+			succProb = succProb * (1.0 - snapshot.getEdgeFailureProbability(edgePath[d]));
+		}
+		return usingFailureProbabilities ? rawWeight * succProb : rawWeight;
+	}
+
+	/**
+	 * Weight of the chain edgePath[0..numEdges) (the last edge returns to the altruist,
+	 * and may be IMPLICIT_EDGE), accumulated exactly as searchChains and emitChain do
+	 */
+	static double weighChain(PoolSnapshot snapshot, int[] edgePath, int numEdges, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, int maxChainSize) {
+		int pathLength = numEdges-1;
+		double rawWeight = snapshot.getEdgeWeight(edgePath[0]);
+		double succProb = 1.0 - snapshot.getEdgeFailureProbability(edgePath[0]);
+		double discountedWeight = 0.0;
+		for(int d=1; d<pathLength; d++) {
+			double failureProb = snapshot.getEdgeFailureProbability(edgePath[d]);
+			double nextSuccProb = succProb * (1.0 - failureProb);
+			discountedWeight = discountedWeight + (rawWeight*succProb*failureProb);
+			rawWeight = rawWeight + snapshot.getEdgeWeight(edgePath[d]);
+			succProb = nextSuccProb;
+		}
+		int returnE = edgePath[pathLength];
+		double returnEdgeWeight = (IMPLICIT_EDGE == returnE) ? 0.0 : snapshot.getEdgeWeight(returnE);
+		if(!usingFailureProbabilities) {
+			return rawWeight + returnEdgeWeight;
+		}
+		if(addInfiniteTailUtility && numEdges == maxChainSize) {
+			discountedWeight += ( Math.pow(1.0-infiniteTailFailureProb, maxChainSize) / (infiniteTailFailureProb) );
+		}
+		return discountedWeight + (rawWeight * succProb) + returnEdgeWeight;
+	}
+
+	/**
+	 * Enumerates every chain that passes through pair pairIdx, each exactly once and
+	 * with the same weight as a full enumeration would give it.  Walks back from
+	 * pairIdx to every altruist within the chain cap, then searches forward from
+	 * pairIdx along each such prefix, so the work done scales with the number of
+	 * chains through pairIdx rather than with the number of chains in the pool.
+	 * Not resumable: the sink must not stop enumeration.
+	 * @param pairIdx
+	 * @param sink
+	 */
+	void enumerateChainsThrough(int pairIdx, PathSink sink) {
+
+		reset(0, 0, false);
+		if(maxChainSize <= 0 || snapshot.isAltruist(pairIdx) || capAt(vertexChainCaps, pairIdx, maxChainSize) <= 0) {
+			return;
+		}
+
+		// Backward DFS over in-edges; backEdge[k] is the k-th edge back from pairIdx,
+		// backVertex[k] is its target (backVertex[0] == pairIdx), and backCap[k] is the
+		// smallest cap of backVertex[0..k]
+		int[] backEdge = new int[edgePath.length];
+		int[] backVertex = new int[edgePath.length];
+		int[] backCursor = new int[edgePath.length];
+		int[] backCap = new int[edgePath.length];
+		int numBack = 0;
+		backVertex[0] = pairIdx;
+		backCap[0] = capAt(vertexChainCaps, pairIdx, maxChainSize);
+		backCursor[0] = snapshot.getInStart(pairIdx);
+		inPath[pairIdx] = true;
+
+		while(numBack >= 0) {
+			int uIdx = backVertex[numBack];
+			if(backCursor[numBack] >= snapshot.getInEnd(uIdx)) {
+				inPath[uIdx] = false;
+				numBack--;
+				continue;
+			}
+			int inE = snapshot.getInEdge(backCursor[numBack]++);
+			int wIdx = snapshot.getEdgeSource(inE);
+			if(inPath[wIdx]) {
+				continue;
+			}
+			backEdge[numBack] = inE;
+			int cap = capAt(vertexChainCaps, wIdx, backCap[numBack]);
+			if(snapshot.isAltruist(wIdx)) {
+				// The prefix wIdx -> ... -> pairIdx has numBack+1 edges
+				if(numBack+1 <= cap) {
+					searchChainsFrom(wIdx, backEdge, numBack+1, pairIdx, sink);
+				}
+			} else if(numBack+2 <= cap) {
+				numBack++;
+				backVertex[numBack] = wIdx;
+				backCursor[numBack] = snapshot.getInStart(wIdx);
+				backCap[numBack] = cap;
+				inPath[wIdx] = true;
+			}
+		}
+	}
+
+	/**
+	 * Fixes the path altIdx -> ... -> pairIdx (prefixLength edges, given back to front
+	 * in backEdge), then searches forward from pairIdx as searchChains would have
+	 */
+	private void searchChainsFrom(int altIdx, int[] backEdge, int prefixLength, int pairIdx, PathSink sink) {
+
+		this.startIdx = altIdx;
+		this.searchingChains = true;
+		pathCap[0] = capAt(vertexChainCaps, altIdx, maxChainSize);
+		for(int d=1; d<prefixLength; d++) {
+			pathCap[d] = capAt(vertexChainCaps, snapshot.getEdgeSource(backEdge[prefixLength-1-d]), pathCap[d-1]);
+		}
+		int cap = capAt(vertexChainCaps, pairIdx, pathCap[prefixLength-1]);
+		if(altIdx != distanceRoot) {
+			computeCloseDistances();
+		}
+		if(!canCloseWithin(pairIdx, cap - prefixLength)) {
+			this.startIdx = -1;
+			return;
+		}
+
+		// Same accumulation, in the same order, as beginSearch and searchChains
+		int firstE = backEdge[prefixLength-1];
+		edgePath[0] = firstE;
+		rawWeight[1] = snapshot.getEdgeWeight(firstE);
+		succProb[1] = 1.0 - snapshot.getEdgeFailureProbability(firstE);
+		discountedWeight[1] = 0.0;
+		for(int d=1; d<prefixLength; d++) {
+			int e = backEdge[prefixLength-1-d];
+			double failureProb = snapshot.getEdgeFailureProbability(e);
+			edgePath[d] = e;
+			frameVertex[d] = snapshot.getEdgeSource(e);
+			succProb[d+1] = succProb[d] * (1.0 - failureProb);
+			discountedWeight[d+1] = discountedWeight[d] + (rawWeight[d]*succProb[d]*failureProb);
+			rawWeight[d+1] = rawWeight[d] + snapshot.getEdgeWeight(e);
+		}
+
+		inPath[altIdx] = true;
+		pushFrame(prefixLength, pairIdx);
+		pathCap[prefixLength] = cap;
+		depth = prefixLength;
+		minDepth = prefixLength;
+		searchChains(sink);
+
+		// The search popped pairIdx, but the backward walk still has it on its path
+		inPath[pairIdx] = true;
+		inPath[altIdx] = false;
+		minDepth = 1;
+		depth = 0;
+		this.startIdx = -1;
+	}
+
+	private int getNumPairs() {
+		if(numPairs < 0) {
+			numPairs = 0;
+			for(int vIdx=0; vIdx<snapshot.getNumVertices(); vIdx++) {
+				if(!snapshot.isAltruist(vIdx)) { numPairs++; }
+			}
+		}
+		return numPairs;
+	}
+
+	private void pushFrame(int pathLength, int vIdx) {
+		inPath[vIdx] = true;
+		frameVertex[pathLength] = vIdx;
+		frameCursor[pathLength] = snapshot.getOutStart(vIdx);
+		frameEnd[pathLength] = snapshot.getOutEnd(vIdx);
+	}
+
+	/**
+	 * Closes the chain of pathLength edges with a (dummy) edge back to its starting altruist
+	 */
+	private void emitChain(int pathLength, int returnE, double returnEdgeWeight, PathSink sink) {
+
+		edgePath[pathLength] = returnE;
+		int numEdges = pathLength + 1;
+		double weight;
+		if(!usingFailureProbabilities) {
+			weight = rawWeight[pathLength] + returnEdgeWeight;
+		} else {
+			double discounted = discountedWeight[pathLength];
+
+			// Adds geometric sum to end of tail if the chain is max-length (successProb = 1.0-failureProb)
+			if(addInfiniteTailUtility && numEdges == maxChainSize) {
+				discounted += ( Math.pow(1.0-infiniteTailFailureProb, maxChainSize) / (infiniteTailFailureProb) );
+			}
+
+			// We assume the dummy edge is infallible, but it might be nonzero weight, so add that
+			// Also add the probability of the chain executing in its entirety (sum of weights * product of success probs)
+			weight = discounted + (rawWeight[pathLength] * succProb[pathLength]) + returnEdgeWeight;
+		}
+		pauseRequested = !sink.accept(edgePath, numEdges, weight, true);
+	}
+}
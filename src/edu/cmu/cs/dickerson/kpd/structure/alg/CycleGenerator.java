@@ -1,24 +1,117 @@
 package edu.cmu.cs.dickerson.kpd.structure.alg;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
 
 public class CycleGenerator {
 
 	private final Pool pool; 
+	private final PoolSnapshot fixedSnapshot;
+
+	// Threads used by generateCyclesAndChains; 1 is sequential, 0 is one per processor
+	private int maxCPUThreads = 1;
+	// Parallel enumeration hands out (start vertex, first edge) work units in chunks;
+	// aim for this many chunks per thread, so that long chain searches balance out
+	private static final int CHUNKS_PER_THREAD = 64;
+	// If true, also honor each vertex's own cap on cycle and chain length
+	private boolean usingVertexCaps = false;
+	// If non-null, generateCyclesAndChains loads cycles from (and saves them to) this cache
+	private CycleCache cycleCache = null;
+
 	public CycleGenerator(Pool pool) {
 		this.pool = pool;
+		this.fixedSnapshot = null;
+	}
+
+	/**
+	 * Enumerates over a fixed snapshot; changes to the underlying Pool after the
+	 * snapshot was taken are not seen by this generator
+	 * @param snapshot
+	 */
+	public CycleGenerator(PoolSnapshot snapshot) {
+		this.pool = null;
+		this.fixedSnapshot = snapshot;
+	}
+
+	public int getMaxCPUThreads() {
+		return maxCPUThreads;
+	}
+
+	/**
+	 * Sets the number of threads used to enumerate all cycles and chains.  The DFS
+	 * from each (start vertex, first edge) pair is independent, so these work units
+	 * are spread across threads, and their outputs are concatenated in the same order
+	 * a sequential run would produce them -- results (and so IP column indices) don't
+	 * depend on the number of threads or on scheduling.
+	 * @param maxCPUThreads 1 (the default) to enumerate sequentially, 0 to use one thread per processor
+	 */
+	public void setMaxCPUThreads(int maxCPUThreads) {
+		if(maxCPUThreads < 0) {
+			throw new IllegalArgumentException("Number of threads must be nonnegative (0 for one per processor); your value=" + maxCPUThreads);
+		}
+		this.maxCPUThreads = maxCPUThreads;
+	}
+
+	public boolean isUsingVertexCaps() {
+		return usingVertexCaps;
+	}
+
+	/**
+	 * If true, every cycle and chain generated also respects the length preferences of
+	 * the donors on it: no cycle through a vertex has more pairs than the smallest
+	 * maxPairsCycle of its UNOS donors, and likewise for chains and maxPairsChain (for
+	 * an altruist, that caps the chains out of it).  Branches are cut during the search,
+	 * so nothing needs filtering afterwards.  Vertices without real UNOS donors are
+	 * bound only by the global caps.
+	 * @param usingVertexCaps false (the default) to apply only the global caps
+	 */
+	public void setUsingVertexCaps(boolean usingVertexCaps) {
+		this.usingVertexCaps = usingVertexCaps;
+	}
+
+	public CycleCache getCycleCache() {
+		return cycleCache;
+	}
+
+	/**
+	 * If set, generateCyclesAndChains (the List-returning versions) and generateCycleStore
+	 * first look for this pool's structure and caps in the cache, and only reweight what
+	 * they find; on a miss, they enumerate as usual and save the result.  Sweeps that
+	 * only change weights or failure probabilities then enumerate each pool once.
+	 * @param cycleCache null (the default) to always enumerate
+	 */
+	public void setCycleCache(CycleCache cycleCache) {
+		this.cycleCache = cycleCache;
+	}
+
+	private CycleEnumerator newEnumerator(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+		CycleEnumerator enumerator = new CycleEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		enumerator.setUsingVertexCaps(usingVertexCaps);
+		return enumerator;
+	}
+
+	/**
+	 * Enumeration walks a CSR snapshot of the pool rather than the JGraphT maps.  If
+	 * we were built from a (mutable) Pool, take a fresh snapshot for each call.
+	 */
+	private PoolSnapshot getSnapshot() {
+		return null != fixedSnapshot ? fixedSnapshot : new PoolSnapshot(pool);
 	}
 
 	public List<Cycle> generateCyclesAndChains(int maxCycleSize, int maxChainSize) {
@@ -49,216 +142,409 @@ public class CycleGenerator {
 	 */
 	public List<Cycle> generateCyclesAndChains(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
 
-		if(addInfiniteTailUtility && (infiniteTailFailureProb <= 0.0 || infiniteTailFailureProb >= 1.0)) { throw new IllegalArgumentException("infiniteFailureProb must be in (0,1); your value=" + infiniteTailFailureProb); }
-		if(!usingFailureProbabilities && addInfiniteTailUtility) { throw new IllegalArgumentException("Infinite tail extension without failure probabilities is infinite; arguments don't make sense."); }
-
+		checkArguments(maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
 		IOUtil.dPrintln(getClass().getSimpleName(), "Generating all (at-most) " + maxCycleSize + "-cycles and " + maxChainSize + "-chains ...");
 
-		if(maxCycleSize < 0 || maxChainSize < 0) {
-			throw new IllegalArgumentException("Maximum (cycle, chain) length must be nonnegative.  For infinite length, please use Integer.MAX_INT.  For zero length, please use 0.");
+		PoolSnapshot snapshot = getSnapshot();
+		if(null != cycleCache) {
+			List<Cycle> cachedCycles = cycleCache.get(snapshot, maxCycleSize, maxChainSize, usingVertexCaps, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+			if(null != cachedCycles) {
+				IOUtil.dPrintln(getClass().getSimpleName(), "Loaded " + cachedCycles.size() + " cycles and chains from cache.");
+				return cachedCycles;
+			}
 		}
+		int numThreads = (maxCPUThreads > 0) ? maxCPUThreads : Runtime.getRuntime().availableProcessors();
 
-		List<Cycle> generatedCycles = new ArrayList<Cycle>();
-
-		for(Vertex startV : pool.vertexSet()) {
-			generatedCycles.addAll(generateCyclesAndChainsForOneVertex(
-					startV,
-					maxCycleSize,
-					maxChainSize,
-					usingFailureProbabilities,
-					addInfiniteTailUtility,
-					infiniteTailFailureProb,
-					true
-					));
+		List<Cycle> generatedCycles;
+		if(numThreads <= 1 || snapshot.getNumEdges() == 0) {
+			generatedCycles = new ArrayList<Cycle>();
+			CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+			enumerator.enumerateAll(new MaterializingSink(snapshot, new CollectingSink(generatedCycles)));
+		} else {
+			generatedCycles = generateInParallel(snapshot, numThreads, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
 		}
 
 		IOUtil.dPrintln(getClass().getSimpleName(), "Generated " + generatedCycles.size() + " cycles and chains.");
+		if(null != cycleCache) {
+			cycleCache.put(snapshot, maxCycleSize, maxChainSize, usingVertexCaps, generatedCycles);
+		}
 		return generatedCycles;
 	}
 
-	
+	public boolean generateCyclesAndChains(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, CycleSink sink) {
+		return generateCyclesAndChains(maxCycleSize, maxChainSize, usingFailureProbabilities, false, 0.5, sink);
+	}
+
 	/**
-	 * Given a distinguished vertex startV, generates all cycles that include 
-	 * startV (if startV is a pair) or all chains that start from startV (if
-	 * startV is an altruistic donor), where cycles and chains are capped and
-	 * valued according to the parameters passed into the method call
-	 * @param startV
+	 * Streams every cycle and chain to sink as soon as it is found, in the same order
+	 * (and with the same weights) as the List-returning version, without ever holding
+	 * more than one of them.  Runs on the calling thread regardless of
+	 * setMaxCPUThreads, so the sink needn't be thread-safe.
 	 * @param maxCycleSize
 	 * @param maxChainSize
 	 * @param usingFailureProbabilities
 	 * @param addInfiniteTailUtility
 	 * @param infiniteTailFailureProb
-	 * @param generatingForAllVertices if true, assumes you are calling this method repeatedly 
-	 *        and will short-circuit based on vertex ID to not generate duplicate cycles. If
-	 *        this is true and you are not separately looping over all vertices, this method
-	 *        will NOT return all cycles containing a specific vertex
-	 * @return
+	 * @param sink
+	 * @return true if every cycle and chain was streamed, false if the sink stopped early
 	 */
-	public List<Cycle> generateCyclesAndChainsForOneVertex(Vertex startV, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, boolean generatingForAllVertices) {
-		
-		List<Cycle> generatedCycles = new ArrayList<Cycle>();
+	public boolean generateCyclesAndChains(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, CycleSink sink) {
 
-		// Keep track of our path from the start node (startV) to the current node
-		Deque<Edge> path = new ArrayDeque<Edge>();
+		checkArguments(maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		IOUtil.dPrintln(getClass().getSimpleName(), "Streaming all (at-most) " + maxCycleSize + "-cycles and " + maxChainSize + "-chains ...");
 
-		// Test whether vertices are in the current path (only want simple cycles)
-		Set<Vertex> inPath = new HashSet<Vertex>();
-		inPath.add(startV);
+		PoolSnapshot snapshot = getSnapshot();
+		CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		boolean completed = enumerator.enumerateAll(new MaterializingSink(snapshot, sink));
+		if(!completed) {
+			IOUtil.dPrintln(getClass().getSimpleName(), "Sink stopped enumeration early.");
+		}
+		return completed;
+	}
 
-		for(Edge startE : pool.outgoingEdgesOf(startV)) {
+	/**
+	 * Generates cycles and chains into out, in the usual order, until every one has
+	 * been generated or the budget runs out (checked as cycles are found)
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param usingFailureProbabilities
+	 * @param addInfiniteTailUtility
+	 * @param infiniteTailFailureProb
+	 * @param maxColumns generate at most this many cycles and chains (Long.MAX_VALUE for no limit)
+	 * @param maxMillis stop after about this many milliseconds (Long.MAX_VALUE for no limit)
+	 * @param out
+	 * @return counts of what was generated; isCompleted() says whether that was everything
+	 */
+	public CycleCounts generateCyclesAndChains(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, long maxColumns, long maxMillis, List<Cycle> out) {
 
-			Vertex nextV = pool.getEdgeTarget(startE);
+		checkArguments(maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		IOUtil.dPrintln(getClass().getSimpleName(), "Generating (at-most) " + maxCycleSize + "-cycles and " + maxChainSize + "-chains, up to " + maxColumns + " columns or " + maxMillis + "ms ...");
 
-			// Initial path weight is just the single edge's weight
-			double pathWeight = pool.getEdgeWeight(startE);
-			// Probability of the first edge executing is 1-probability of it failing
-			double pathSuccProb = (1.0 - startE.getFailureProbability());
+		PoolSnapshot snapshot = getSnapshot();
+		CycleCounts counts = new CycleCounts(maxColumns, maxMillis, new MaterializingSink(snapshot, new CollectingSink(out)));
+		CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		counts.finish(enumerator.enumerateAll(counts));
 
-			// Generate all cycles or all chains starting from the vertex firstV
-			path.push(startE);
-			if(startV.isAltruist()) {
-				double discountedPathWeight = 0.0;
-				generateChains(maxChainSize, generatedCycles, startV, nextV, path, pathWeight, inPath, usingFailureProbabilities, pathSuccProb, discountedPathWeight, addInfiniteTailUtility, infiniteTailFailureProb);
-			} else {
-				// If the target hop has a lower ID than the source, we've generated these cycles already
-				// assuming we are calling this method for all vertices; otherwise, ignore this conditional
-				if( !generatingForAllVertices || nextV.getID() > startV.getID() ) {
-					generateCycles(
-							maxCycleSize, 
-							generatedCycles, 
-							startV, 
-							nextV, 
-							path, 
-							pathWeight, 
-							inPath, 
-							usingFailureProbabilities, 
-							pathSuccProb,
-							generatingForAllVertices
-							);
-				}
+		IOUtil.dPrintln(getClass().getSimpleName(), "Generated " + counts);
+		return counts;
+	}
+
+	public CycleCounts countCyclesAndChains(int maxCycleSize, int maxChainSize) {
+		return countCyclesAndChains(maxCycleSize, maxChainSize, Long.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Counts cycles and chains, by length, without creating them
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param maxColumns stop counting after this many (Long.MAX_VALUE for no limit)
+	 * @param maxMillis stop counting after about this many milliseconds (Long.MAX_VALUE for no limit)
+	 * @return counts; isCompleted() is false if the budget ran out first
+	 */
+	public CycleCounts countCyclesAndChains(int maxCycleSize, int maxChainSize, long maxColumns, long maxMillis) {
+
+		checkArguments(maxCycleSize, maxChainSize, false, false, 0.5);
+		PoolSnapshot snapshot = getSnapshot();
+		CycleCounts counts = new CycleCounts(maxColumns, maxMillis, null);
+		CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, false, false, 0.5);
+		counts.finish(enumerator.enumerateAll(counts));
+
+		IOUtil.dPrintln(getClass().getSimpleName(), "Counted " + counts);
+		return counts;
+	}
+
+	/**
+	 * Estimates the number of cycles and chains, by length, by counting exactly those
+	 * found from a random subset of first edges (each kept with probability
+	 * sampleFraction) and scaling up by 1/sampleFraction.  The DFS from each first edge
+	 * is independent, so the estimate is unbiased; its variance is high if a few
+	 * first edges account for most of the cycles (e.g., long chains from a few altruists).
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param sampleFraction in (0,1]
+	 * @param r
+	 * @return counts from the sample, with getScale() == 1/sampleFraction
+	 */
+	public CycleCounts estimateCyclesAndChains(int maxCycleSize, int maxChainSize, double sampleFraction, Random r) {
+
+		checkArguments(maxCycleSize, maxChainSize, false, false, 0.5);
+		if(sampleFraction <= 0.0 || sampleFraction > 1.0) {
+			throw new IllegalArgumentException("Sampling fraction must be in (0,1]; your value=" + sampleFraction);
+		}
+		PoolSnapshot snapshot = getSnapshot();
+		CycleCounts counts = new CycleCounts(Long.MAX_VALUE, Long.MAX_VALUE, null);
+		CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, false, false, 0.5);
+		for(int startE=0; startE<snapshot.getNumEdges(); startE++) {
+			if(r.nextDouble() < sampleFraction) {
+				enumerator.reset(startE, startE+1, true);
+				enumerator.run(counts);
 			}
-			path.pop();
 		}
-		
-		return generatedCycles;
+		counts.setScale(1.0 / sampleFraction);
+		counts.finish(true);
+
+		IOUtil.dPrintln(getClass().getSimpleName(), "Estimated " + counts);
+		return counts;
 	}
 
+	public CycleStore generateCycleStore(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities) {
+		return generateCycleStore(maxCycleSize, maxChainSize, usingFailureProbabilities, false, 0.5);
+	}
 
-	private void generateCycles(final int maxCycleSize, Collection<Cycle> cycles, Vertex startV, Vertex lastV, Deque<Edge> path, double pathWeight, Set<Vertex> inPath, final boolean usingFailureProbabilities, double pathSuccProb, final boolean generatingForAllVertices) {
+	/**
+	 * Generates the same cycles and chains, in the same order, as the List-returning
+	 * version, but packs them into a {@link CycleStore} without creating Cycle objects.
+	 * Runs on the calling thread regardless of setMaxCPUThreads.
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param usingFailureProbabilities
+	 * @param addInfiniteTailUtility
+	 * @param infiniteTailFailureProb
+	 * @return
+	 */
+	public CycleStore generateCycleStore(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
 
-		if(startV.equals(lastV)) {
-			// We've completed a cycle <startV, V1, V2, ..., lastV=startV>
+		checkArguments(maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		IOUtil.dPrintln(getClass().getSimpleName(), "Packing all (at-most) " + maxCycleSize + "-cycles and " + maxChainSize + "-chains ...");
 
-			// If we're using failure probabilities, the discounted utility of a cycle is:
-			// u(c) = \prod_e (1-fail(e))  *  \sum_e weight(e)
-			if(usingFailureProbabilities) {
-				pathWeight *= pathSuccProb;
+		PoolSnapshot snapshot = getSnapshot();
+		CycleStore store = new CycleStore(snapshot, Math.max(16, snapshot.getNumEdges()));
+		if(null == cycleCache || !cycleCache.replay(snapshot, maxCycleSize, maxChainSize, usingVertexCaps, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb, store)) {
+			CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+			if(null == cycleCache) {
+				enumerator.enumerateAll(store);
+			} else {
+				CycleCache.Recorder recorder = new CycleCache.Recorder(store);
+				enumerator.enumerateAll(recorder);
+				cycleCache.put(snapshot, maxCycleSize, maxChainSize, usingVertexCaps, recorder);
 			}
+		}
+		store.trimToSize();
 
-			cycles.add( Cycle.makeCycle(path, pathWeight));
-		} else {
+		IOUtil.dPrintln(getClass().getSimpleName(), "Packed " + store.getNumCycles() + " cycles and chains.");
+		return store;
+	}
 
-			if(inPath.contains(lastV)              // Must be a simple cycle
-					|| path.size() >= maxCycleSize // Cap cycle length to maxCycleSize
-					|| lastV.isAltruist()          // Only generate cycles, not chains
-					|| maxCycleSize <= 0           // Sanity check
-					) { 
-				return;
-			}
+	public ChainTrie generateChainTrie(int maxChainSize, boolean usingFailureProbabilities) {
+		return generateChainTrie(maxChainSize, usingFailureProbabilities, false, 0.5);
+	}
 
-			// Explore the subtree rooted at lastV
-			inPath.add(lastV);
-			for(Edge nextE : pool.outgoingEdgesOf(lastV)) {
-
-				// Target hop has a lower ID than the source, so we'll generate this cycle elsewhere
-				// (conditioned on generatingAllVertices; if that's false, then we can't short circuit here)
-				if(generatingForAllVertices && pool.getEdgeTarget(nextE).getID() < startV.getID()) { continue; }
-
-				// Step down one edge in the path, updating the pathWeight as well
-				path.push(nextE);
-				generateCycles(maxCycleSize,
-						cycles,
-						startV,
-						pool.getEdgeTarget(nextE),
-						path,
-						pathWeight + pool.getEdgeWeight(nextE),
-						inPath,
-						usingFailureProbabilities,
-						pathSuccProb * (1.0 - nextE.getFailureProbability()),
-						generatingForAllVertices
-						);
-				path.pop();
+	/**
+	 * Generates every chain (no cycles), in the same order and with the same weights as
+	 * generateCyclesAndChains(0, maxChainSize, ...), into a prefix-sharing {@link ChainTrie}.
+	 * Runs on the calling thread regardless of setMaxCPUThreads.
+	 * @param maxChainSize
+	 * @param usingFailureProbabilities
+	 * @param addInfiniteTailUtility
+	 * @param infiniteTailFailureProb
+	 * @return
+	 */
+	public ChainTrie generateChainTrie(int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+
+		checkArguments(0, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		IOUtil.dPrintln(getClass().getSimpleName(), "Generating trie of all (at-most) " + maxChainSize + "-chains ...");
 
+		PoolSnapshot snapshot = getSnapshot();
+		ChainTrie trie = new ChainTrie(snapshot, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		CycleEnumerator enumerator = newEnumerator(snapshot, 0, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		for(int vIdx=0; vIdx<snapshot.getNumVertices(); vIdx++) {
+			if(snapshot.isAltruist(vIdx)) {
+				enumerator.enumerate(vIdx, snapshot.getOutStart(vIdx), snapshot.getOutEnd(vIdx), true, trie);
 			}
-			inPath.remove(lastV);
 		}
+		trie.trimToSize();
+
+		IOUtil.dPrintln(getClass().getSimpleName(), "Generated " + trie.getNumChains() + " chains in " + trie.getNumNodes() + " trie nodes.");
+		return trie;
 	}
 
-	private void generateChains(final int maxChainSize, Collection<Cycle> cycles, Vertex startingAlt, Vertex lastV, Deque<Edge> path, double rawPathWeight, Set<Vertex> inPath, final boolean usingFailureProbabilities, double pathSuccProb, double discountedPathWeight, final boolean addInfiniteTailUtility, final double infiniteTailFailureProb) {
+	public CycleSpliterator spliterator(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities) {
+		return spliterator(maxCycleSize, maxChainSize, usingFailureProbabilities, false, 0.5);
+	}
 
-		if(inPath.contains(lastV)               // Must be a simple cycle
-				|| path.size() > maxChainSize   // Cap chain length to maxChainSize (ignore altruist)
-				|| maxChainSize <= 0            // Sanity check
-				) {
-			return;
-		}
+	/**
+	 * Lazily enumerates cycles and chains, one per call to next(); see {@link CycleSpliterator}.
+	 * The spliterator works on a snapshot of the pool taken now.
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param usingFailureProbabilities
+	 * @param addInfiniteTailUtility
+	 * @param infiniteTailFailureProb
+	 * @return
+	 */
+	public CycleSpliterator spliterator(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+		checkArguments(maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		PoolSnapshot snapshot = getSnapshot();
+		return new CycleSpliterator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb, usingVertexCaps, 0, snapshot.getNumEdges());
+	}
 
-		inPath.add(lastV);
-		for(Edge nextE : pool.outgoingEdgesOf(lastV)) {
+	static void checkArguments(int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
 
+		if(addInfiniteTailUtility && (infiniteTailFailureProb <= 0.0 || infiniteTailFailureProb >= 1.0)) { throw new IllegalArgumentException("infiniteFailureProb must be in (0,1); your value=" + infiniteTailFailureProb); }
+		if(!usingFailureProbabilities && addInfiniteTailUtility) { throw new IllegalArgumentException("Infinite tail extension without failure probabilities is infinite; arguments don't make sense."); }
 
-			Vertex nextV = pool.getEdgeTarget(nextE);
-			if(nextV.isAltruist()) {
+		if(maxCycleSize < 0 || maxChainSize < 0) {
+			throw new IllegalArgumentException("Maximum (cycle, chain) length must be nonnegative.  For infinite length, please use Integer.MAX_INT.  For zero length, please use 0.");
+		}
+	}
+
+	
+	/**
+	 * Given a distinguished vertex startV, generates all cycles that include 
+	 * startV (if startV is a pair) or all chains that start from startV (if
+	 * startV is an altruistic donor), where cycles and chains are capped and
+	 * valued according to the parameters passed into the method call
+	 * @param startV
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param usingFailureProbabilities
+	 * @param addInfiniteTailUtility
+	 * @param infiniteTailFailureProb
+	 * @param generatingForAllVertices if true, assumes you are calling this method repeatedly 
+	 *        and will short-circuit based on vertex ID to not generate duplicate cycles. If
+	 *        this is true and you are not separately looping over all vertices, this method
+	 *        will NOT return all cycles containing a specific vertex
+	 * @return
+	 */
+	public List<Cycle> generateCyclesAndChainsForOneVertex(Vertex startV, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, boolean generatingForAllVertices) {
+		
+		List<Cycle> generatedCycles = new ArrayList<Cycle>();
 
-				// If we've bounced back to an altruist who isn't the starting altruist, ignore; else, add this chain
-				if(!nextV.equals(startingAlt)) { continue; }
-				else {
-					path.push(nextE);
-					if(!usingFailureProbabilities) {
-						cycles.add( Cycle.makeCycle(path, rawPathWeight + pool.getEdgeWeight(nextE)) );
-					} else {
+		PoolSnapshot snapshot = getSnapshot();
+		int startIdx = snapshot.indexOf(startV);
+		if(startIdx < 0) {
+			throw new IllegalArgumentException("Vertex " + startV + " is not in the pool.");
+		}
 
+		CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		enumerator.enumerate(startIdx, snapshot.getOutStart(startIdx), snapshot.getOutEnd(startIdx), generatingForAllVertices, new MaterializingSink(snapshot, new CollectingSink(generatedCycles)));
+		return generatedCycles;
+	}
 
-						// Adds geometric sum to end of tail if the chain is max-length (successProb = 1.0-failureProb)
-						if(addInfiniteTailUtility && path.size()==maxChainSize) {
-							discountedPathWeight += ( Math.pow(1.0-infiniteTailFailureProb, maxChainSize) / (infiniteTailFailureProb) );
+	/**
+	 * Splits the edge index range into chunks of consecutive (start vertex, first edge)
+	 * work units; worker threads claim chunks in order, each with its own path buffers
+	 * and output list, and chunk outputs are concatenated in chunk order.  Since CSR
+	 * edges are grouped by source in vertex order, that is exactly the sequential order.
+	 */
+	private List<Cycle> generateInParallel(final PoolSnapshot snapshot, int numThreads, final int maxCycleSize, final int maxChainSize, final boolean usingFailureProbabilities, final boolean addInfiniteTailUtility, final double infiniteTailFailureProb) {
+
+		final int numEdges = snapshot.getNumEdges();
+		final int chunkSize = Math.max(1, numEdges / (numThreads * CHUNKS_PER_THREAD));
+		final int numChunks = (numEdges + chunkSize - 1) / chunkSize;
+		numThreads = Math.min(numThreads, numChunks);
+		IOUtil.dPrintln(getClass().getSimpleName(), "Enumerating " + numChunks + " chunks of " + chunkSize + " start edges on " + numThreads + " threads.");
+
+		final AtomicInteger nextChunk = new AtomicInteger(0);
+		final AtomicReferenceArray<List<Cycle>> chunkCycles = new AtomicReferenceArray<List<Cycle>>(numChunks);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(numThreads);
+			for(int threadIdx=0; threadIdx<numThreads; threadIdx++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						// Per-thread DFS state, reused across every work unit this thread runs
+						CycleEnumerator enumerator = newEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+						int chunk;
+						while((chunk = nextChunk.getAndIncrement()) < numChunks) {
+							List<Cycle> out = new ArrayList<Cycle>();
+							enumerator.reset(chunk * chunkSize, Math.min(numEdges, (chunk+1) * chunkSize), true);
+							enumerator.run(new MaterializingSink(snapshot, new CollectingSink(out)));
+							chunkCycles.set(chunk, out);
 						}
-
-						// We assume the dummy edge is infallible, but it might be nonzero weight, so add that
-						// Also add the probability of the chain executing in its entirety (sum of weights * product of success probs)
-						cycles.add( Cycle.makeCycle(path, discountedPathWeight + (rawPathWeight * pathSuccProb) + pool.getEdgeWeight(nextE)) );
+						return null;
 					}
-					path.pop();
-				}
+				}));
+			}
+			for(Future<Void> future : futures) {
+				waitFor(future);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
 
-			} else {
-				// Step down one edge in the path, updating the pathWeight as well
-				path.push(nextE);
-
-				// Probability of chain executing to very end (and maybe continuing)
-				double newPathSuccProb = pathSuccProb * (1.0 - nextE.getFailureProbability());
-				// Add discounted utility of chain goings to EXACTLY this edge and then failing (so \sum weights * \prod success * (1-failure of this edge))
-				double newDiscountedPathWeight = discountedPathWeight + (rawPathWeight*pathSuccProb*nextE.getFailureProbability());
-
-				generateChains(maxChainSize,
-						cycles,
-						startingAlt,
-						nextV,
-						path,
-						rawPathWeight + pool.getEdgeWeight(nextE),    // Add this edge's weight to raw chain length
-						inPath,
-						usingFailureProbabilities,
-						newPathSuccProb,
-						newDiscountedPathWeight,   // Discounted weight + discounted utility of reaching exactly this point
-						addInfiniteTailUtility,
-						infiniteTailFailureProb
-						);
-				path.pop();
+		int numCycles = 0;
+		for(int chunk=0; chunk<numChunks; chunk++) {
+			numCycles += chunkCycles.get(chunk).size();
+		}
+		List<Cycle> generatedCycles = new ArrayList<Cycle>(numCycles);
+		for(int chunk=0; chunk<numChunks; chunk++) {
+			generatedCycles.addAll(chunkCycles.get(chunk));
+		}
+		return generatedCycles;
+	}
+
+	private static void waitFor(Future<Void> future) {
+		try {
+			future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while enumerating cycles and chains.");
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if(cause instanceof Error) {
+				throw (Error) cause;
 			}
+			throw new RuntimeException("Cycle and chain enumeration failed: " + cause);
+		}
+	}
 
+	/**
+	 * Materializes an enumerated path as a Cycle.  Edges are listed most recent first
+	 * (the returning edge, then back to the start vertex's out-edge), the order the
+	 * rest of the code base expects.
+	 */
+	static Cycle makeCycle(PoolSnapshot snapshot, int[] edgePath, int numEdges, double weight) {
+		List<Edge> edges = new ArrayList<Edge>(numEdges);
+		int lastE = edgePath[numEdges-1];
+		if(CycleEnumerator.IMPLICIT_EDGE == lastE) {
+			int pairIdx = snapshot.getEdgeTarget(edgePath[numEdges-2]);
+			int altIdx = snapshot.getEdgeSource(edgePath[0]);
+			edges.add(snapshot.getImplicitAltruistEdge(pairIdx, altIdx));
+		} else {
+			edges.add(snapshot.getEdge(lastE));
+		}
+		for(int eIdx=numEdges-2; eIdx>=0; eIdx--) {
+			edges.add(snapshot.getEdge(edgePath[eIdx]));
 		}
-		inPath.remove(lastV);
+		return Cycle.wrapEdges(edges, weight);
+	}
 
+	/**
+	 * Turns enumerated paths into Cycles and passes them on
+	 */
+	static final class MaterializingSink implements CycleEnumerator.PathSink {
 
+		private final PoolSnapshot snapshot;
+		private final CycleSink sink;
+
+		MaterializingSink(PoolSnapshot snapshot, CycleSink sink) {
+			this.snapshot = snapshot;
+			this.sink = sink;
+		}
+
+		@Override
+		public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+			return sink.accept(makeCycle(snapshot, edgePath, numEdges, weight));
+		}
+	}
+
+	private static final class CollectingSink implements CycleSink {
+
+		private final Collection<Cycle> cycles;
+
+		CollectingSink(Collection<Cycle> cycles) {
+			this.cycles = cycles;
+		}
+
+		@Override
+		public boolean accept(Cycle cycle) {
+			cycles.add(cycle);
+			return true;
+		}
 	}
 }
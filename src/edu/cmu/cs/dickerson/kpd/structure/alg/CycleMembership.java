@@ -1,50 +1,474 @@
 package edu.cmu.cs.dickerson.kpd.structure.alg;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
 
-public class CycleMembership {
-	
-	private Map<Vertex, Set<Integer>> membership;
-	
+/**
+ * For every vertex in a pool, the IP column IDs of the cycles and chains containing
+ * it.  Stored in compressed sparse row form: vertex i's columns are
+ * columns[offsets[i] .. offsets[i+1]), in increasing order -- 4 bytes per
+ * (vertex, column) entry, instead of a boxed Integer in a HashSet.
+ *
+ * Bulk constructors build the index in two passes (count entries per vertex, then
+ * fill); the CycleStore version can split both passes over threads.  Cycles added
+ * one at a time with addCycle are buffered and merged into the index the next time
+ * it is read.
+ *
+ * Merging always builds new arrays rather than writing into published ones, so a
+ * fixed base set of columns (say, all 2- and 3-cycles) can be frozen with freezeBase
+ * and shared by copies; columns added on top of it (say, sampled chains) are dropped
+ * in constant time by resetToBase, without re-indexing the base.
+ *
+ * Solvers should loop over [getStart(vIdx), getEnd(vIdx)) with getColumnAt;
+ * getMembershipSet is a read-only Set view of the same range for older code.
+ *
+ * @author John P. Dickerson
+ */
+public class CycleMembership implements CycleSink {
+
+	// With one thread per processor, don't split into ranges smaller than this; thread startup would cost more than the build
+	private static final int MIN_COLUMNS_PER_THREAD = 1 << 14;
+
+	private final Pool pool;
+
+	// Vertex indices are this pool's vertexSet() order
+	private final Vertex[] vertices;
+	private final Map<Vertex, Integer> vertexIndex;
+
+	// Columns containing vertex i are columns[offsets[i] .. offsets[i+1])
+	private int[] offsets;
+	private int[] columns;
+
+	// (vertex, column) entries added since the index was last built, in column order; buffers are reused
+	private int[] pendingVertices = new int[0];
+	private int[] pendingColumns = new int[0];
+	private int numPending = 0;
+
+	private int numCycles = 0;
+
+	// Index as of the last freezeBase (null: empty base)
+	private int[] baseOffsets = null;
+	private int[] baseColumns = null;
+	private int numBaseCycles = 0;
+
+	/**
+	 * Empty membership for pool; add cycles one at a time with addCycle, or pass this
+	 * as the sink to CycleGenerator.generateCyclesAndChains to build the membership
+	 * while cycles are generated (without keeping a List of them)
+	 * @param pool
+	 */
+	public CycleMembership(Pool pool) {
+		this.pool = pool;
+
+		// Want to make sure EVERY vertex in the pool is indexed
+		Set<Vertex> vertexSet = pool.vertexSet();
+		this.vertices = new Vertex[vertexSet.size()];
+		this.vertexIndex = new HashMap<Vertex, Integer>();
+		for(Vertex v : vertexSet) {
+			vertices[vertexIndex.size()] = v;
+			vertexIndex.put(v, vertexIndex.size());
+		}
+		this.offsets = new int[vertices.length+1];
+		this.columns = new int[0];
+	}
+
+	/**
+	 * Membership whose base is everything in other (as of now); other is unchanged
+	 * and shares its index arrays with this
+	 * @param other
+	 */
+	public CycleMembership(CycleMembership other) {
+		this.pool = other.pool;
+		this.vertices = other.vertices;
+		this.vertexIndex = other.vertexIndex;
+		other.compact();
+		this.offsets = other.offsets;
+		this.columns = other.columns;
+		this.numCycles = other.numCycles;
+		freezeBase();
+	}
+
 	public CycleMembership(Pool pool, List<Cycle> cycles) {
+		this(pool);
 
 		IOUtil.dPrintln(getClass().getSimpleName(), "Computing membership for " + pool.vertexSet().size() + " vertices and " + cycles.size() + " cycles/chains.");
-		
-		// Want to make sure EVERY vertex in the pool is in this map
-		membership = new HashMap<Vertex, Set<Integer>>();
-		for(Vertex v : pool.vertexSet()) {
-			membership.put(v, new HashSet<Integer>());
+		for(Cycle c : cycles) {
+			addCycle(c);
 		}
+		compact();
+		IOUtil.dPrintln(getClass().getSimpleName(), "Done computing membership.");
+	}
 
-		// For each cycle c, for each vertex v in c, add c's IP column ID to v's membership list
-		int cycleIdx = 0;
-		for(Cycle c : cycles) {
-			for(Edge e : c.getEdges()) {
-				Vertex v = pool.getEdgeTarget(e);
-				membership.get(v).add(cycleIdx);
+	/**
+	 * Membership for every column of a packed store, read straight off its vertex indices
+	 * @param pool pool the store's snapshot was taken of
+	 * @param store
+	 */
+	public CycleMembership(Pool pool, CycleStore store) {
+		this(pool, store, 1);
+	}
+
+	/**
+	 * Membership for every column of a packed store, with the counting and filling
+	 * passes each split over numThreads contiguous ranges of columns
+	 * @param pool pool the store's snapshot was taken of
+	 * @param store
+	 * @param numThreads 1 to build on the calling thread, 0 for one thread per processor
+	 */
+	public CycleMembership(Pool pool, final CycleStore store, int numThreads) {
+		this(pool);
+
+		if(numThreads < 0) {
+			throw new IllegalArgumentException("Number of threads must be nonnegative (0 for one per processor); your value=" + numThreads);
+		}
+		final int numCols = store.getNumCycles();
+		if(0 == numThreads) {
+			numThreads = Math.min(Runtime.getRuntime().availableProcessors(), numCols / MIN_COLUMNS_PER_THREAD);
+		}
+		numThreads = Math.max(1, Math.min(numThreads, numCols));
+		IOUtil.dPrintln(getClass().getSimpleName(), "Computing membership for " + vertices.length + " vertices and " + numCols + " packed cycles/chains on " + numThreads + " threads.");
+
+		// Snapshot vertex index -> our vertex index
+		PoolSnapshot snapshot = store.getSnapshot();
+		final int[] remap = new int[snapshot.getNumVertices()];
+		for(int sIdx=0; sIdx<remap.length; sIdx++) {
+			remap[sIdx] = indexOf(snapshot.getVertex(sIdx));
+			if(remap[sIdx] < 0) {
+				throw new IllegalArgumentException("Store contains vertex " + snapshot.getVertex(sIdx) + ", which is not in the pool.");
+			}
+		}
+
+		// Thread t handles columns [bounds[t], bounds[t+1]); pass one counts its entries per vertex
+		final int[] bounds = new int[numThreads+1];
+		for(int t=0; t<=numThreads; t++) {
+			bounds[t] = (int) ((long) numCols * t / numThreads);
+		}
+		final int[][] cursors = new int[numThreads][];
+		runInParallel(numThreads, new RangeTask() {
+			@Override
+			public void run(int t) {
+				int[] counts = new int[vertices.length];
+				for(int pos=store.getStart(bounds[t]); pos<store.getStart(bounds[t+1]); pos++) {
+					counts[remap[store.getVertexIndexAt(pos)]]++;
+				}
+				cursors[t] = counts;
+			}
+		});
+
+		// Turn the counts into each thread's first write position per vertex; lower
+		// column ranges go first, so every vertex's columns come out sorted
+		int numEntries = 0;
+		for(int vIdx=0; vIdx<vertices.length; vIdx++) {
+			offsets[vIdx] = numEntries;
+			for(int t=0; t<numThreads; t++) {
+				int count = cursors[t][vIdx];
+				cursors[t][vIdx] = numEntries;
+				numEntries += count;
 			}
-			cycleIdx++;
 		}
-		
+		offsets[vertices.length] = numEntries;
+		columns = new int[numEntries];
+
+		// Pass two fills
+		runInParallel(numThreads, new RangeTask() {
+			@Override
+			public void run(int t) {
+				int[] cursor = cursors[t];
+				for(int col=bounds[t]; col<bounds[t+1]; col++) {
+					for(int pos=store.getStart(col); pos<store.getEnd(col); pos++) {
+						columns[cursor[remap[store.getVertexIndexAt(pos)]]++] = col;
+					}
+				}
+			}
+		});
+		numCycles = numCols;
 		IOUtil.dPrintln(getClass().getSimpleName(), "Done computing membership.");
 	}
 
+	private interface RangeTask {
+		void run(int t);
+	}
+
+	private static void runInParallel(int numThreads, final RangeTask task) {
+		if(1 == numThreads) {
+			task.run(0);
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(numThreads);
+			for(int t=0; t<numThreads; t++) {
+				final int threadIdx = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						task.run(threadIdx);
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while computing membership.");
+				} catch(ExecutionException e) {
+					Throwable cause = e.getCause();
+					if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if(cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException("Computing membership failed: " + cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gives c the next IP column ID, and records that ID for every vertex in c
+	 * @param c
+	 * @return c's column ID
+	 */
+	public int addCycle(Cycle c) {
+		int cycleIdx = numCycles++;
+		int first = numPending;
+		for(Edge e : c.getEdges()) {
+			Vertex v = pool.getEdgeTarget(e);
+			Integer vIdx = vertexIndex.get(v);
+			if(null == vIdx) {
+				throw new IllegalArgumentException("Cycle contains vertex " + v + ", which is not in the pool.");
+			}
+			boolean seen = false;
+			for(int pIdx=first; pIdx<numPending && !seen; pIdx++) {
+				seen = pendingVertices[pIdx] == vIdx;
+			}
+			if(!seen) {
+				if(numPending == pendingVertices.length) {
+					int newLength = Math.max(16, 2*pendingVertices.length);
+					pendingVertices = Arrays.copyOf(pendingVertices, newLength);
+					pendingColumns = Arrays.copyOf(pendingColumns, newLength);
+				}
+				pendingVertices[numPending] = vIdx;
+				pendingColumns[numPending] = cycleIdx;
+				numPending++;
+			}
+		}
+		return cycleIdx;
+	}
+
+	@Override
+	public boolean accept(Cycle cycle) {
+		addCycle(cycle);
+		return true;
+	}
+
+	/**
+	 * Merges cycles added since the last read into the index: counts each vertex's
+	 * new entries, then copies old and new entries into resized arrays
+	 */
+	private void compact() {
+		if(0 == numPending) {
+			return;
+		}
+		int[] newOffsets = new int[vertices.length+1];
+		for(int pIdx=0; pIdx<numPending; pIdx++) {
+			newOffsets[pendingVertices[pIdx]+1]++;
+		}
+		for(int vIdx=0; vIdx<vertices.length; vIdx++) {
+			newOffsets[vIdx+1] += newOffsets[vIdx] + (offsets[vIdx+1] - offsets[vIdx]);
+		}
+		int[] newColumns = new int[newOffsets[vertices.length]];
+		int[] cursor = new int[vertices.length];
+		for(int vIdx=0; vIdx<vertices.length; vIdx++) {
+			int oldCount = offsets[vIdx+1] - offsets[vIdx];
+			System.arraycopy(columns, offsets[vIdx], newColumns, newOffsets[vIdx], oldCount);
+			cursor[vIdx] = newOffsets[vIdx] + oldCount;
+		}
+		for(int pIdx=0; pIdx<numPending; pIdx++) {
+			newColumns[cursor[pendingVertices[pIdx]]++] = pendingColumns[pIdx];
+		}
+		offsets = newOffsets;
+		columns = newColumns;
+		numPending = 0;
+	}
+
+	/**
+	 * Makes every cycle added so far the base that resetToBase returns to
+	 */
+	public void freezeBase() {
+		compact();
+		baseOffsets = offsets;
+		baseColumns = columns;
+		numBaseCycles = numCycles;
+	}
+
+	/**
+	 * Drops every cycle added since the last freezeBase (or all of them, if never
+	 * frozen); the next addCycle gets column ID getNumBaseCycles()
+	 */
+	public void resetToBase() {
+		if(null == baseOffsets) {
+			offsets = new int[vertices.length+1];
+			columns = new int[0];
+		} else {
+			offsets = baseOffsets;
+			columns = baseColumns;
+		}
+		numCycles = numBaseCycles;
+		numPending = 0;
+	}
+
+	/**
+	 * @return number of cycles in the frozen base (column IDs 0 .. getNumBaseCycles()-1)
+	 */
+	public int getNumBaseCycles() {
+		return numBaseCycles;
+	}
+
+	/**
+	 * @return number of cycles added so far (column IDs are 0 .. getNumCycles()-1)
+	 */
+	public int getNumCycles() {
+		return numCycles;
+	}
+
+	public int getNumVertices() {
+		return vertices.length;
+	}
+
+	public Vertex getVertex(int vIdx) {
+		return vertices[vIdx];
+	}
+
+	/**
+	 * @param v
+	 * @return v's index here, or -1 if v isn't in the pool
+	 */
+	public int indexOf(Vertex v) {
+		Integer vIdx = vertexIndex.get(v);
+		return null == vIdx ? -1 : vIdx;
+	}
+
+	/**
+	 * @param vIdx
+	 * @return first position of vIdx's columns (inclusive), for use with getColumnAt
+	 */
+	public int getStart(int vIdx) {
+		compact();
+		return offsets[vIdx];
+	}
+
+	/**
+	 * @param vIdx
+	 * @return last position of vIdx's columns (exclusive)
+	 */
+	public int getEnd(int vIdx) {
+		compact();
+		return offsets[vIdx+1];
+	}
+
+	public int getColumnAt(int pos) {
+		return columns[pos];
+	}
+
+	/**
+	 * @param v
+	 * @return number of cycles and chains containing v (0 if v isn't in the pool)
+	 */
+	public int getNumMemberships(Vertex v) {
+		int vIdx = indexOf(v);
+		return vIdx < 0 ? 0 : getEnd(vIdx) - getStart(vIdx);
+	}
+
+	/**
+	 * @param v
+	 * @return read-only view of the column IDs of cycles containing v, in increasing
+	 *   order, as of this call; null if v isn't in the pool
+	 */
 	public Set<Integer> getMembershipSet(Vertex v) {
-		return membership.get(v);
+		int vIdx = indexOf(v);
+		if(vIdx < 0) {
+			return null;
+		}
+		compact();
+		return new MembershipView(columns, offsets[vIdx], offsets[vIdx+1]);
 	}
-	
+
 	public Set<Vertex> getAllVertices() {
-		return membership.keySet();
+		return Collections.unmodifiableSet(vertexIndex.keySet());
 	}
 
+	/**
+	 * Sorted, read-only range of the columns array
+	 */
+	private static final class MembershipView extends AbstractSet<Integer> {
+		private final int[] columns;
+		private final int start;
+		private final int end;
+
+		MembershipView(int[] columns, int start, int end) {
+			this.columns = columns;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return (o instanceof Integer) && Arrays.binarySearch(columns, start, end, (Integer) o) >= 0;
+		}
+
+		@Override
+		public Iterator<Integer> iterator() {
+			return new Iterator<Integer>() {
+				private int pos = start;
+
+				@Override
+				public boolean hasNext() {
+					return pos < end;
+				}
+
+				@Override
+				public Integer next() {
+					if(pos >= end) {
+						throw new NoSuchElementException();
+					}
+					return columns[pos++];
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
 }
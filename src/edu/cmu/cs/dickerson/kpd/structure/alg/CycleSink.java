@@ -0,0 +1,22 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+
+/**
+ * Push-style consumer of cycles and chains, fed one at a time as they are
+ * enumerated (see CycleGenerator.generateCyclesAndChains(..., CycleSink)), so
+ * nothing has to hold the full list of cycles.  Counters, filters, column writers,
+ * and {@link CycleMembership} can all consume a stream this way.
+ *
+ * @author John P. Dickerson
+ */
+public interface CycleSink {
+
+	/**
+	 * @param cycle the next cycle or chain; IP column IDs are assigned in the order
+	 *   cycles are accepted
+	 * @return true to keep going, false to stop enumeration (a budget ran out, the
+	 *   caller was cancelled, we found what we were looking for, ...)
+	 */
+	public boolean accept(Cycle cycle);
+}
@@ -0,0 +1,144 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+
+/**
+ * Pull-style, lazily enumerated sequence of cycles and chains.  Each call to next()
+ * (or tryAdvance) resumes the DFS just long enough to find one more cycle, so memory
+ * use doesn't grow with the number of cycles, and the caller can simply stop pulling.
+ * Cycles come out in the same order as CycleGenerator.generateCyclesAndChains.
+ *
+ * Modeled on java.util.Spliterator: trySplit hands off part of the remaining work,
+ * e.g., to another thread.  Unlike Spliterator, the split-off part is a suffix of
+ * this one, so draining this spliterator and then the split-off one still gives
+ * enumeration order.  A spliterator (like an Iterator) is for one thread at a time.
+ *
+ * @author John P. Dickerson
+ */
+public final class CycleSpliterator implements Iterator<Cycle> {
+
+	private final PoolSnapshot snapshot;
+	private final int maxCycleSize;
+	private final int maxChainSize;
+	private final boolean usingFailureProbabilities;
+	private final boolean addInfiniteTailUtility;
+	private final double infiniteTailFailureProb;
+	private final boolean usingVertexCaps;
+	private final CycleEnumerator enumerator;
+
+	// Cycle found by hasNext() but not yet handed out
+	private Cycle buffered = null;
+	private boolean finished = false;
+
+	/**
+	 * Grabs one cycle and pauses the enumerator right after it
+	 */
+	private final CycleEnumerator.PathSink bufferOne = new CycleEnumerator.PathSink() {
+		@Override
+		public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+			buffered = CycleGenerator.makeCycle(snapshot, edgePath, numEdges, weight);
+			return false;
+		}
+	};
+
+	CycleSpliterator(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, boolean usingVertexCaps, int fromE, int toE) {
+		this.snapshot = snapshot;
+		this.maxCycleSize = maxCycleSize;
+		this.maxChainSize = maxChainSize;
+		this.usingFailureProbabilities = usingFailureProbabilities;
+		this.addInfiniteTailUtility = addInfiniteTailUtility;
+		this.infiniteTailFailureProb = infiniteTailFailureProb;
+		this.usingVertexCaps = usingVertexCaps;
+		this.enumerator = new CycleEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		this.enumerator.setUsingVertexCaps(usingVertexCaps);
+		this.enumerator.reset(fromE, toE, true);
+	}
+
+	/**
+	 * If a cycle remains, hands it to action.  Exactly one cycle is handed over either
+	 * way, so action's return value is ignored; to stop, just stop calling tryAdvance.
+	 * @param action
+	 * @return false if no cycles remain
+	 */
+	public boolean tryAdvance(CycleSink action) {
+		if(!hasNext()) {
+			return false;
+		}
+		Cycle c = buffered;
+		buffered = null;
+		action.accept(c);
+		return true;
+	}
+
+	/**
+	 * Streams every remaining cycle to action, without buffering
+	 * @param action
+	 * @return true if the spliterator was drained, false if action stopped early (in
+	 *   which case the spliterator can be resumed from the next cycle)
+	 */
+	public boolean drainTo(CycleSink action) {
+		if(null != buffered) {
+			Cycle c = buffered;
+			buffered = null;
+			if(!action.accept(c)) {
+				return false;
+			}
+		}
+		if(finished) {
+			return true;
+		}
+		finished = enumerator.run(new CycleGenerator.MaterializingSink(snapshot, action));
+		return finished;
+	}
+
+	/**
+	 * Splits off roughly the back half of the start edges that haven't been explored yet
+	 * @return a spliterator over that suffix, or null if the remaining work can't be split
+	 */
+	public CycleSpliterator trySplit() {
+		if(finished) {
+			return null;
+		}
+		int oldEnd = enumerator.getRangeEnd();
+		int mid = enumerator.splitRemaining();
+		if(mid < 0) {
+			return null;
+		}
+		return new CycleSpliterator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb, usingVertexCaps, mid, oldEnd);
+	}
+
+	/**
+	 * @return number of start edges (units of DFS work) not yet begun; a rough size for
+	 *   deciding whether to split further
+	 */
+	public int getNumUnstartedEdges() {
+		return enumerator.getNumUnstartedEdges();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(null == buffered && !finished) {
+			finished = enumerator.run(bufferOne);
+		}
+		return null != buffered;
+	}
+
+	@Override
+	public Cycle next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Cycle c = buffered;
+		buffered = null;
+		return c;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Cycles cannot be removed from an enumeration.");
+	}
+}
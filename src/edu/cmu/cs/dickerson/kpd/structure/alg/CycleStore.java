@@ -0,0 +1,371 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+
+/**
+ * Packed, columnar store of cycles and chains over a {@link PoolSnapshot}.  Cycle
+ * (IP column) i is held as its vertex indices, in path order starting from the
+ * cycle's start vertex (the chain's altruist), at
+ * [getStart(i), getEnd(i)) of one flat int[], with its weight in a double[] and
+ * its chain flag in a BitSet -- a few bytes per vertex, instead of a Cycle, an
+ * ArrayList and an Edge reference per vertex.  Optionally, a per-cycle vertex
+ * bitmask can be precomputed for constant-time vertex-conflict tests.
+ *
+ * Solvers and packers that want a List<Cycle> can use {@link #asList()}, which
+ * builds each Cycle on demand, and {@link CycleMembership#CycleMembership(Pool, CycleStore)}
+ * indexes the store directly.
+ *
+ * @author John P. Dickerson
+ */
+public class CycleStore implements CycleEnumerator.PathSink {
+
+	private final PoolSnapshot snapshot;
+
+	private int numCycles = 0;
+	// Vertices of cycle i are vertexIdx[offsets[i] .. offsets[i+1])
+	private int[] offsets;
+	private int[] vertexIdx;
+	private double[] weights;
+	private final BitSet chains = new BitSet();
+
+	// Optional: vertexMasks[i*maskWords .. (i+1)*maskWords) has bit v set iff vertex index v is in cycle i.
+	// Its length is checked to fit in an int (see maskLength), so i*maskWords can't overflow either
+	private long[] vertexMasks = null;
+	private int maskWords = 0;
+
+	public CycleStore(PoolSnapshot snapshot) {
+		this(snapshot, 16);
+	}
+
+	/**
+	 * @param snapshot
+	 * @param expectedCycles initial capacity, in cycles
+	 */
+	public CycleStore(PoolSnapshot snapshot, int expectedCycles) {
+		this.snapshot = snapshot;
+		int capacity = Math.max(1, expectedCycles);
+		this.offsets = new int[capacity+1];
+		this.vertexIdx = new int[4*capacity];
+		this.weights = new double[capacity];
+	}
+
+	/**
+	 * Packs existing Cycles (e.g., from CycleGenerator.generateCyclesAndChains) into a store
+	 * @param snapshot snapshot of pool
+	 * @param pool pool the cycles were generated on
+	 * @param cycles
+	 * @return
+	 */
+	public static CycleStore fromCycles(PoolSnapshot snapshot, Pool pool, Collection<Cycle> cycles) {
+		CycleStore store = new CycleStore(snapshot, cycles.size());
+		for(Cycle c : cycles) {
+			store.add(c, pool);
+		}
+		store.trimToSize();
+		return store;
+	}
+
+	public PoolSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public int getNumCycles() {
+		return numCycles;
+	}
+
+	/**
+	 * Appends a cycle or chain
+	 * @param pathVertices vertex indices in path order, starting from the start vertex
+	 *   (for chains, the altruist); the edge back to the start vertex is implied
+	 * @param numVertices
+	 * @param weight
+	 * @param isChain
+	 * @return the new cycle's column ID
+	 */
+	public int add(int[] pathVertices, int numVertices, double weight, boolean isChain) {
+		ensureCapacity(numVertices);
+		int col = numCycles++;
+		int start = offsets[col];
+		System.arraycopy(pathVertices, 0, vertexIdx, start, numVertices);
+		offsets[col+1] = start + numVertices;
+		weights[col] = weight;
+		if(isChain) { chains.set(col); }
+		if(null != vertexMasks) { setMask(col); }
+		return col;
+	}
+
+	/**
+	 * Appends a Cycle generated on pool
+	 * @param c
+	 * @param pool
+	 * @return the new cycle's column ID
+	 */
+	public int add(Cycle c, Pool pool) {
+
+		// Cycle edges run from the edge returning to the start vertex back to the first edge,
+		// so the targets are (start, v_{k-1}, ..., v_1); we want path order (start, v_1, ..., v_{k-1})
+		List<Edge> edges = c.getEdges();
+		int k = edges.size();
+		ensureCapacity(k);
+		int col = numCycles++;
+		int start = offsets[col];
+		for(int pos=0; pos<k; pos++) {
+			Edge e = edges.get(pos == 0 ? 0 : k-pos);
+			int vIdx = snapshot.indexOf(pool.getEdgeTarget(e));
+			if(vIdx < 0) {
+				throw new IllegalArgumentException("Cycle " + c + " has a vertex that is not in the snapshot.");
+			}
+			vertexIdx[start+pos] = vIdx;
+		}
+		offsets[col+1] = start + k;
+		weights[col] = c.getWeight();
+		if(k > 0 && snapshot.isAltruist(vertexIdx[start])) { chains.set(col); }
+		if(null != vertexMasks) { setMask(col); }
+		return col;
+	}
+
+	/**
+	 * Appends cycles straight out of a {@link CycleEnumerator}, without creating Cycle objects
+	 */
+	@Override
+	public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+		ensureCapacity(numEdges);
+		int col = numCycles++;
+		int start = offsets[col];
+		vertexIdx[start] = snapshot.getEdgeSource(edgePath[0]);
+		for(int pos=1; pos<numEdges; pos++) {
+			vertexIdx[start+pos] = snapshot.getEdgeTarget(edgePath[pos-1]);
+		}
+		offsets[col+1] = start + numEdges;
+		weights[col] = weight;
+		if(isChain) { chains.set(col); }
+		if(null != vertexMasks) { setMask(col); }
+		return true;
+	}
+
+	private void ensureCapacity(int numNewVertices) {
+		if(numCycles+1 >= offsets.length) {
+			int newCapacity = Math.max(2*weights.length, numCycles+2);
+			int newMaskLength = (null != vertexMasks) ? maskLength(newCapacity, maskWords) : 0;
+			offsets = Arrays.copyOf(offsets, newCapacity+1);
+			weights = Arrays.copyOf(weights, newCapacity);
+			if(null != vertexMasks) {
+				vertexMasks = Arrays.copyOf(vertexMasks, newMaskLength);
+			}
+		}
+		int needed = offsets[numCycles] + numNewVertices;
+		if(needed > vertexIdx.length) {
+			vertexIdx = Arrays.copyOf(vertexIdx, Math.max(2*vertexIdx.length, needed));
+		}
+	}
+
+	/**
+	 * Releases unused capacity once the store is fully built
+	 */
+	public void trimToSize() {
+		offsets = Arrays.copyOf(offsets, numCycles+1);
+		weights = Arrays.copyOf(weights, numCycles);
+		vertexIdx = Arrays.copyOf(vertexIdx, offsets[numCycles]);
+		if(null != vertexMasks) {
+			vertexMasks = Arrays.copyOf(vertexMasks, maskLength(numCycles, maskWords));
+		}
+	}
+
+	/**
+	 * @param col
+	 * @return first position of col's vertices (inclusive), for use with getVertexIndexAt
+	 */
+	public int getStart(int col) {
+		return offsets[col];
+	}
+
+	/**
+	 * @param col
+	 * @return last position of col's vertices (exclusive)
+	 */
+	public int getEnd(int col) {
+		return offsets[col+1];
+	}
+
+	public int getVertexIndexAt(int pos) {
+		return vertexIdx[pos];
+	}
+
+	/**
+	 * @param col
+	 * @return number of vertices (equivalently, edges) in the cycle or chain
+	 */
+	public int getLength(int col) {
+		return offsets[col+1] - offsets[col];
+	}
+
+	/**
+	 * @param col
+	 * @param i
+	 * @return snapshot index of col's i-th vertex in path order (i=0 is the start vertex)
+	 */
+	public int getVertexIndex(int col, int i) {
+		return vertexIdx[offsets[col] + i];
+	}
+
+	public Vertex getVertex(int col, int i) {
+		return snapshot.getVertex(getVertexIndex(col, i));
+	}
+
+	public double getWeight(int col) {
+		return weights[col];
+	}
+
+	public void setWeight(int col, double weight) {
+		weights[col] = weight;
+	}
+
+	public boolean isChain(int col) {
+		return chains.get(col);
+	}
+
+	/**
+	 * @param col
+	 * @param vIdx snapshot vertex index
+	 * @return true if vIdx is in col (uses the vertex masks if built, else scans col)
+	 */
+	public boolean containsVertex(int col, int vIdx) {
+		if(null != vertexMasks) {
+			return (vertexMasks[col*maskWords + (vIdx >>> 6)] & (1L << vIdx)) != 0;
+		}
+		for(int pos=offsets[col]; pos<offsets[col+1]; pos++) {
+			if(vertexIdx[pos] == vIdx) { return true; }
+		}
+		return false;
+	}
+
+	/**
+	 * Precomputes a |V|-bit vertex mask per cycle, so sharesVertex and containsVertex
+	 * are word operations; costs |V|/8 bytes per cycle, so only worth it for small
+	 * pools or few cycles.  Cycles added afterwards get masks too.
+	 * @throws IllegalArgumentException if the masks would need more words than a Java array holds
+	 */
+	public void buildVertexMasks() {
+		if(null != vertexMasks) { return; }
+		int words = (snapshot.getNumVertices() + 63) >>> 6;
+		int length = maskLength(weights.length, words);
+		maskWords = words;
+		vertexMasks = new long[length];
+		for(int col=0; col<numCycles; col++) {
+			setMask(col);
+		}
+	}
+
+	/**
+	 * @return numCycles*words, checked to fit in a Java array
+	 */
+	private static int maskLength(int numCycles, int words) {
+		long numMaskWords = (long) numCycles * words;
+		if(numMaskWords > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many vertex mask words to allocate (" + numCycles + " cycles/chains x " + words + " words each, more than " + (Integer.MAX_VALUE - 8) + "); reduce the set of cycles and chains, or skip vertex masks.");
+		}
+		return (int) numMaskWords;
+	}
+
+	public boolean hasVertexMasks() {
+		return null != vertexMasks;
+	}
+
+	private void setMask(int col) {
+		int base = col*maskWords;
+		for(int pos=offsets[col]; pos<offsets[col+1]; pos++) {
+			int vIdx = vertexIdx[pos];
+			vertexMasks[base + (vIdx >>> 6)] |= (1L << vIdx);
+		}
+	}
+
+	/**
+	 * @param colA
+	 * @param colB
+	 * @return true if the two cycles/chains have a vertex in common (i.e., can't both be in a matching)
+	 */
+	public boolean sharesVertex(int colA, int colB) {
+		if(null != vertexMasks) {
+			int baseA = colA*maskWords, baseB = colB*maskWords;
+			for(int w=0; w<maskWords; w++) {
+				if((vertexMasks[baseA+w] & vertexMasks[baseB+w]) != 0) { return true; }
+			}
+			return false;
+		}
+		for(int posA=offsets[colA]; posA<offsets[colA+1]; posA++) {
+			for(int posB=offsets[colB]; posB<offsets[colB+1]; posB++) {
+				if(vertexIdx[posA] == vertexIdx[posB]) { return true; }
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the Cycle for column col, with its edges in the same order as
+	 * CycleGenerator produces them; a new Cycle is built on every call
+	 * @param col
+	 * @return
+	 */
+	public Cycle getCycle(int col) {
+		int start = offsets[col];
+		int k = offsets[col+1] - start;
+		List<Edge> edges = new ArrayList<Edge>(k);
+		for(int pos=k-1; pos>=0; pos--) {
+			int srcIdx = vertexIdx[start+pos];
+			int tgtIdx = vertexIdx[start + (pos+1 == k ? 0 : pos+1)];
+			edges.add(getEdge(srcIdx, tgtIdx));
+		}
+		return Cycle.wrapEdges(edges, weights[col]);
+	}
+
+	private Edge getEdge(int srcIdx, int tgtIdx) {
+		int eIdx = snapshot.findEdge(srcIdx, tgtIdx);
+		if(eIdx >= 0) {
+			return snapshot.getEdge(eIdx);
+		}
+		if(snapshot.hasImplicitAltruistEdges() && !snapshot.isAltruist(srcIdx) && snapshot.isAltruist(tgtIdx)) {
+			return snapshot.getImplicitAltruistEdge(srcIdx, tgtIdx);
+		}
+		throw new IllegalStateException("No edge from " + snapshot.getVertex(srcIdx) + " to " + snapshot.getVertex(tgtIdx) + " in snapshot.");
+	}
+
+	/**
+	 * @return a read-only List view whose i-th element is getCycle(i); Cycles are built
+	 *   as they are asked for, and not cached, so don't rely on Cycle identity
+	 */
+	public List<Cycle> asList() {
+		return new CycleListView();
+	}
+
+	private final class CycleListView extends AbstractList<Cycle> implements RandomAccess {
+		@Override
+		public Cycle get(int index) {
+			if(index < 0 || index >= numCycles) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numCycles);
+			}
+			return getCycle(index);
+		}
+
+		@Override
+		public int size() {
+			return numCycles;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "< CycleStore: " + numCycles + " cycles/chains, " + offsets[numCycles] + " vertex entries >";
+	}
+}
@@ -1,6 +1,7 @@
 package edu.cmu.cs.dickerson.kpd.structure.alg;
 
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -54,7 +55,7 @@ public final class FailureProbabilityUtil {
 
 			if(pool.getEdgeTarget(e).isAltruist()) {
 				// Dummy edges going to altruists cannot fail
-				e.setFailureProbability(0.0);
+				pool.setEdgeFailureProbability(e, 0.0);
 			} else {
 				// Real edges (real donor giving to real patient) can fail
 				// Safe cast; earlier if statement checks for Altruist
@@ -63,15 +64,15 @@ public final class FailureProbabilityUtil {
 				switch(dist) {
 				case CONSTANT:
 					// Constant 70% chance of failure
-					e.setFailureProbability(param1);
+					pool.setEdgeFailureProbability(e, param1);
 					break;
 				case BIMODAL_RANDOM:
 					if(r.nextDouble() < 0.25) {
 						// E[10%] chance of failure
-						e.setFailureProbability(0.0 + r.nextDouble()*0.2);
+						pool.setEdgeFailureProbability(e, 0.0 + r.nextDouble()*0.2);
 					} else {
 						// E[90%] chance of failure
-						e.setFailureProbability(0.8 + r.nextDouble()*0.2);
+						pool.setEdgeFailureProbability(e, 0.8 + r.nextDouble()*0.2);
 					}
 					break;
 				case BIMODAL_CORRELATED:
@@ -79,22 +80,22 @@ public final class FailureProbabilityUtil {
 					if(patient_cpra < 0.8) {   // CPRA<80 = UNOS lowly-sensitized
 						// E[10%] chance of failure
 						//e.setFailureProbability(0.0 + r.nextDouble()*0.2);
-						e.setFailureProbability(0.1);
+						pool.setEdgeFailureProbability(e, 0.1);
 					} else {
 						// E[90%] chance of failure
 						//e.setFailureProbability(0.8 + r.nextDouble()*0.2);
-						e.setFailureProbability(0.9);
+						pool.setEdgeFailureProbability(e, 0.9);
 					}
 					break;
 				case BIMODAL_CORRELATED_APD:
 					if(patient_cpra < 0.75) {   // CPRA<75 = APD highest sensitization level (from Ashlagi et al. "Nonsimultaneous Chains and Dominos in Kidney Paired Donation--Revisited")
 						// E[28%] chance of failure   :  20% crossmatch failure, 8% exogenous failure rate
 						//e.setFailureProbability(0.18 + r.nextDouble()*0.2);
-						e.setFailureProbability(0.28);
+						pool.setEdgeFailureProbability(e, 0.28);
 					} else {
 						// E[58%] chance of failure
 						//e.setFailureProbability(0.48 + r.nextDouble()*0.2);
-						e.setFailureProbability(0.58);
+						pool.setEdgeFailureProbability(e, 0.58);
 					}
 					break;
 				case BIMODAL_CORRELATED_NKR:
@@ -137,6 +138,16 @@ public final class FailureProbabilityUtil {
 	}
 
 	public static double calculateDiscountedCycleUtility(Cycle c, Pool pool, Set<Vertex> specialV, boolean forceCardinality) {
+		return calculateDiscountedCycleUtility(c, pool, specialV, forceCardinality, null);
+	}
+
+	/**
+	 * Same as calculateDiscountedCycleUtility, but edges in failureProbabilityOverrides
+	 * use the mapped failure probability instead of their own -- e.g., 0.0 or 1.0 for
+	 * edges that have been tested -- so callers can ask "what if" without mutating
+	 * (possibly shared) Edge objects
+	 */
+	public static double calculateDiscountedCycleUtility(Cycle c, Pool pool, Set<Vertex> specialV, boolean forceCardinality, Map<Edge, Double> failureProbabilityOverrides) {
 
 		double utilSum = 0.0;
 		double succProb = 1.0;
@@ -145,7 +156,7 @@ public final class FailureProbabilityUtil {
 			if(specialV.contains(recipient)) {
 				utilSum += ( forceCardinality ? 1.0 : pool.getEdgeWeight(e) );
 			}
-			succProb *= (1.0 - e.getFailureProbability());
+			succProb *= (1.0 - getFailureProbability(e, failureProbabilityOverrides));
 		}
 
 		return utilSum * succProb;
@@ -156,6 +167,14 @@ public final class FailureProbabilityUtil {
 	}
 
 	public static double calculateDiscountedChainUtility(Cycle c, Pool pool, Set<Vertex> specialV, boolean forceCardinality) {
+		return calculateDiscountedChainUtility(c, pool, specialV, forceCardinality, null);
+	}
+
+	/**
+	 * Same as calculateDiscountedChainUtility, with per-edge failure probability
+	 * overrides (see calculateDiscountedCycleUtility)
+	 */
+	public static double calculateDiscountedChainUtility(Cycle c, Pool pool, Set<Vertex> specialV, boolean forceCardinality, Map<Edge, Double> failureProbabilityOverrides) {
 
 		int edgeIdx = 0;
 		double pathSuccProb = 1.0;
@@ -178,10 +197,10 @@ public final class FailureProbabilityUtil {
 			if(edgeIdx == 0 && !pool.getEdgeSource(e).isAltruist()) {
 				throw new IllegalArgumentException("Our generator generates chains with altruists sourcing the first edge.  I haven't coded up the discounted utility code for non-0-index altruists.");
 			} else {
-				discountedPathWeight += rawPathWeight*pathSuccProb*e.getFailureProbability();
+				discountedPathWeight += rawPathWeight*pathSuccProb*getFailureProbability(e, failureProbabilityOverrides);
 			}
 
-			pathSuccProb *= (1.0 - e.getFailureProbability());
+			pathSuccProb *= (1.0 - getFailureProbability(e, failureProbabilityOverrides));
 
 			if(specialV.contains(pool.getEdgeTarget(e))) {
 				rawPathWeight += ( forceCardinality ? 1.0 : pool.getEdgeWeight(e) );
@@ -191,6 +210,14 @@ public final class FailureProbabilityUtil {
 
 		return discountedPathWeight;
 	}
+
+	private static double getFailureProbability(Edge e, Map<Edge, Double> failureProbabilityOverrides) {
+		if(null != failureProbabilityOverrides) {
+			Double override = failureProbabilityOverrides.get(e);
+			if(null != override) { return override; }
+		}
+		return e.getFailureProbability();
+	}
 	
 	/*
 	 * Overloads for use by EthicalCPLEXSolver below this point.
@@ -0,0 +1,385 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolChangeEvent;
+import edu.cmu.cs.dickerson.kpd.structure.PoolChangeLog;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+
+/**
+ * Keeps the list of all cycles and chains of a dynamic pool up to date, for
+ * simulations that match, add arrivals, and remove departures every period.
+ * Rather than regenerating everything, {@link #sync()} replays the pool's change
+ * events since the last sync:
+ * <ul>
+ * <li>cycles and chains through departed vertices are dropped, via an index from
+ *     each vertex to the cycles through it;</li>
+ * <li>cycles and chains through arrived vertices are enumerated, and nothing else;</li>
+ * <li>if an edge between two older vertices was added, removed, or reweighted, the
+ *     cycles through its source are dropped and enumerated again.</li>
+ * </ul>
+ * so enumeration work scales with churn, not with the size of the pool.
+ *
+ * After a sync, surviving cycles keep their relative order and come first, followed
+ * by the new cycles; sync returns the old-to-new column mapping.  The set of cycles
+ * and their weights are exactly those a fresh CycleGenerator would produce, but
+ * (after the first sync) not in the same order.
+ *
+ * Two limits, both because sync only sees what the pool reports as change events:
+ * <ul>
+ * <li>Per-vertex length caps (see CycleGenerator.setUsingVertexCaps) are read when a
+ *     vertex's cycles are enumerated.  Changing a UNOS donor's maxPairsCycle or
+ *     maxPairsChain after its vertex is in the pool isn't noticed; call rebuild().</li>
+ * <li>Failure probabilities set directly on an Edge (Edge.setFailureProbability
+ *     instead of Pool.setEdgeFailureProbability) fire no event, so cycles through
+ *     that edge keep their old weight until the next rebuild().</li>
+ * </ul>
+ *
+ * @author John P. Dickerson
+ */
+public class IncrementalCycleIndex {
+
+	private final Pool pool;
+	private final int maxCycleSize;
+	private final int maxChainSize;
+	private final boolean usingFailureProbabilities;
+	private final boolean addInfiniteTailUtility;
+	private final double infiniteTailFailureProb;
+	private final boolean usingVertexCaps;
+
+	private final PoolChangeLog log;
+	private long syncedVersion;
+	private boolean syncedImplicitAltruistEdges;
+
+	private List<Cycle> cycles = new ArrayList<Cycle>();
+	// Vertices of each indexed cycle, and indexed cycles through each vertex.  By identity,
+	// since departed vertices (and their edges) can no longer be looked up in the pool
+	private final Map<Cycle, Vertex[]> cycleVertices = new IdentityHashMap<Cycle, Vertex[]>();
+	private final Map<Vertex, Set<Cycle>> cyclesThrough = new IdentityHashMap<Vertex, Set<Cycle>>();
+
+	private int numAddedLastSync = 0;
+	private int numDroppedLastSync = 0;
+
+	public IncrementalCycleIndex(Pool pool, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities) {
+		this(pool, maxCycleSize, maxChainSize, usingFailureProbabilities, false, 0.5);
+	}
+
+	public IncrementalCycleIndex(Pool pool, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb) {
+		this(pool, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb, false);
+	}
+
+	/**
+	 * Generates every cycle and chain in pool now, and starts listening to pool's changes
+	 * @param pool
+	 * @param maxCycleSize
+	 * @param maxChainSize
+	 * @param usingFailureProbabilities
+	 * @param addInfiniteTailUtility
+	 * @param infiniteTailFailureProb
+	 * @param usingVertexCaps whether to honor each vertex's own length caps, as in CycleGenerator.setUsingVertexCaps
+	 */
+	public IncrementalCycleIndex(Pool pool, int maxCycleSize, int maxChainSize, boolean usingFailureProbabilities, boolean addInfiniteTailUtility, double infiniteTailFailureProb, boolean usingVertexCaps) {
+		CycleGenerator.checkArguments(maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		this.pool = pool;
+		this.maxCycleSize = maxCycleSize;
+		this.maxChainSize = maxChainSize;
+		this.usingFailureProbabilities = usingFailureProbabilities;
+		this.addInfiniteTailUtility = addInfiniteTailUtility;
+		this.infiniteTailFailureProb = infiniteTailFailureProb;
+		this.usingVertexCaps = usingVertexCaps;
+		this.log = new PoolChangeLog(pool);
+		rebuild();
+	}
+
+	/**
+	 * Stops listening to the pool; the index can't be synced afterwards
+	 */
+	public void detach() {
+		pool.removePoolChangeListener(log);
+	}
+
+	/**
+	 * Throws everything away and regenerates all cycles and chains from scratch,
+	 * in CycleGenerator's order
+	 * @return old-to-new column mapping (every old column maps to -1)
+	 */
+	public int[] rebuild() {
+
+		int[] remap = new int[cycles.size()];
+		Arrays.fill(remap, -1);
+		numDroppedLastSync = cycles.size();
+
+		cycleVertices.clear();
+		cyclesThrough.clear();
+		CycleGenerator cg = new CycleGenerator(pool);
+		cg.setUsingVertexCaps(usingVertexCaps);
+		cycles = cg.generateCyclesAndChains(maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		for(Cycle c : cycles) {
+			Set<Vertex> vertices = Cycle.getConstituentVertices(c, pool);
+			indexCycle(c, vertices.toArray(new Vertex[vertices.size()]));
+		}
+		numAddedLastSync = cycles.size();
+
+		syncedVersion = pool.getVersion();
+		syncedImplicitAltruistEdges = pool.hasImplicitAltruistEdges();
+		log.discardThrough(syncedVersion);
+		return remap;
+	}
+
+	/**
+	 * Brings the index up to date with every change made to the pool since the last sync
+	 * @return old-to-new column mapping: entry i is the new column of what was column i
+	 *   (in getCycles() before this call), or -1 if that cycle or chain was dropped
+	 */
+	public int[] sync() {
+
+		if(pool.hasImplicitAltruistEdges() != syncedImplicitAltruistEdges) {
+			// Switching implicit altruist edges swaps every chain's last edge
+			return rebuild();
+		}
+
+		List<PoolChangeEvent> events = log.getEventsSince(syncedVersion);
+		Set<Vertex> added = newIdentitySet();
+		Set<Vertex> removed = newIdentitySet();
+		Set<Vertex> transients = newIdentitySet();   // Added and then removed since the last sync
+		List<PoolChangeEvent> edgeEvents = new ArrayList<PoolChangeEvent>();
+		for(PoolChangeEvent event : events) {
+			switch(event.getType()) {
+			case VERTEX_ADDED:
+				added.add(event.getVertex());
+				break;
+			case VERTEX_REMOVED:
+				if(added.remove(event.getVertex())) {
+					transients.add(event.getVertex());
+				} else {
+					removed.add(event.getVertex());
+				}
+				break;
+			default:
+				edgeEvents.add(event);
+				break;
+			}
+		}
+
+		// Edge changes matter only between vertices that were here at the last sync and still are
+		Set<Vertex> touched = newIdentitySet();
+		Map<Edge, PoolChangeEvent> firstWeightChange = new IdentityHashMap<Edge, PoolChangeEvent>();
+		Map<Edge, PoolChangeEvent> firstFailureProbabilityChange = new IdentityHashMap<Edge, PoolChangeEvent>();
+		for(PoolChangeEvent event : edgeEvents) {
+			Vertex src = event.getEdgeSource();
+			Vertex tgt = event.getEdgeTarget();
+			if(isNew(src, added, removed, transients) || isNew(tgt, added, removed, transients)) {
+				continue;
+			}
+			switch(event.getType()) {
+			case EDGE_WEIGHT_CHANGED:
+				if(!firstWeightChange.containsKey(event.getEdge())) { firstWeightChange.put(event.getEdge(), event); }
+				break;
+			case EDGE_FAILURE_PROBABILITY_CHANGED:
+				if(!firstFailureProbabilityChange.containsKey(event.getEdge())) { firstFailureProbabilityChange.put(event.getEdge(), event); }
+				break;
+			default:
+				touched.add(src);
+				break;
+			}
+		}
+		// Values changed and then changed back (e.g., temporary reweighting for a solve) don't count
+		for(PoolChangeEvent event : firstWeightChange.values()) {
+			Edge e = event.getEdge();
+			if(pool.containsEdge(e) && Double.compare(pool.getEdgeWeight(e), event.getOldValue()) != 0) {
+				touched.add(event.getEdgeSource());
+			}
+		}
+		for(PoolChangeEvent event : firstFailureProbabilityChange.values()) {
+			Edge e = event.getEdge();
+			if(pool.containsEdge(e) && Double.compare(e.getFailureProbability(), event.getOldValue()) != 0) {
+				touched.add(event.getEdgeSource());
+			}
+		}
+
+		// Drop everything through departed or touched vertices, keep the rest in order
+		Set<Cycle> dropped = newIdentitySet();
+		for(Vertex v : removed) {
+			Set<Cycle> through = cyclesThrough.remove(v);
+			if(null != through) { dropped.addAll(through); }
+		}
+		for(Vertex v : touched) {
+			Set<Cycle> through = cyclesThrough.get(v);
+			if(null != through) { dropped.addAll(through); }
+		}
+		for(Cycle c : dropped) {
+			for(Vertex u : cycleVertices.remove(c)) {
+				Set<Cycle> through = cyclesThrough.get(u);
+				if(null != through) { through.remove(c); }
+			}
+		}
+
+		int[] remap = new int[cycles.size()];
+		List<Cycle> kept = new ArrayList<Cycle>(cycles.size());
+		for(int cIdx=0; cIdx<cycles.size(); cIdx++) {
+			Cycle c = cycles.get(cIdx);
+			if(dropped.contains(c)) {
+				remap[cIdx] = -1;
+			} else {
+				remap[cIdx] = kept.size();
+				kept.add(c);
+			}
+		}
+		cycles = kept;
+
+		// Enumerate everything through arrived or touched vertices
+		int numBefore = cycles.size();
+		if(!added.isEmpty() || !touched.isEmpty()) {
+			enumerateThrough(added, touched);
+		}
+
+		numAddedLastSync = cycles.size() - numBefore;
+		numDroppedLastSync = dropped.size();
+		IOUtil.dPrintln(getClass().getSimpleName(), "Synced " + events.size() + " changes (" + added.size() + " arrivals, " + removed.size() + " departures, " + touched.size() + " touched): -" + numDroppedLastSync + " +" + numAddedLastSync + " = " + cycles.size() + " cycles/chains.");
+
+		syncedVersion = pool.getVersion();
+		log.discardThrough(syncedVersion);
+		return remap;
+	}
+
+	private static boolean isNew(Vertex v, Set<Vertex> added, Set<Vertex> removed, Set<Vertex> transients) {
+		return added.contains(v) || removed.contains(v) || transients.contains(v);
+	}
+
+	/**
+	 * Finds every cycle and chain through at least one vertex of added or touched.
+	 * Vertices are handled one at a time, and a cycle is only kept by the first of
+	 * its vertices to be handled.
+	 */
+	private void enumerateThrough(Set<Vertex> added, Set<Vertex> touched) {
+
+		final PoolSnapshot snapshot = new PoolSnapshot(pool);
+		final boolean[] handled = new boolean[snapshot.getNumVertices()];
+		final int[] rotated = new int[snapshot.getNumVertices()+1];
+		boolean[] fresh = new boolean[snapshot.getNumVertices()];
+		for(Vertex v : added) { fresh[snapshot.indexOf(v)] = true; }
+		for(Vertex v : touched) { fresh[snapshot.indexOf(v)] = true; }
+
+		CycleEnumerator.PathSink sink = new CycleEnumerator.PathSink() {
+			@Override
+			public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+				Vertex[] vertices = new Vertex[numEdges];
+				for(int pos=0; pos<numEdges; pos++) {
+					int vIdx = (pos == 0) ? snapshot.getEdgeSource(edgePath[0]) : snapshot.getEdgeTarget(edgePath[pos-1]);
+					if(handled[vIdx]) {
+						return true;   // Found (or will be found) from an earlier fresh vertex
+					}
+					vertices[pos] = snapshot.getVertex(vIdx);
+				}
+				if(!isChain) {
+					// Start the cycle at its lowest-ID vertex, as a full enumeration would, so
+					// its edges come in the same order and its weight is summed the same way
+					int first = 0;
+					for(int pos=1; pos<numEdges; pos++) {
+						if(vertices[pos].getID() < vertices[first].getID()) { first = pos; }
+					}
+					if(first > 0) {
+						for(int pos=0; pos<numEdges; pos++) {
+							rotated[pos] = edgePath[(first+pos) % numEdges];
+						}
+						edgePath = rotated;
+						weight = CycleEnumerator.weighCycle(snapshot, rotated, numEdges, usingFailureProbabilities);
+					}
+				}
+				Cycle c = CycleGenerator.makeCycle(snapshot, edgePath, numEdges, weight);
+				cycles.add(c);
+				indexCycle(c, vertices);
+				return true;
+			}
+		};
+
+		CycleEnumerator enumerator = new CycleEnumerator(snapshot, maxCycleSize, maxChainSize, usingFailureProbabilities, addInfiniteTailUtility, infiniteTailFailureProb);
+		enumerator.setUsingVertexCaps(usingVertexCaps);
+		for(int vIdx=0; vIdx<snapshot.getNumVertices(); vIdx++) {
+			if(!fresh[vIdx]) { continue; }
+			// From a pair, this is every cycle through it; from an altruist, every chain out of it
+			enumerator.enumerate(vIdx, snapshot.getOutStart(vIdx), snapshot.getOutEnd(vIdx), false, sink);
+			if(!snapshot.isAltruist(vIdx)) {
+				enumerator.enumerateChainsThrough(vIdx, sink);
+			}
+			handled[vIdx] = true;
+		}
+	}
+
+	private void indexCycle(Cycle c, Vertex[] vertices) {
+		cycleVertices.put(c, vertices);
+		for(Vertex v : vertices) {
+			Set<Cycle> through = cyclesThrough.get(v);
+			if(null == through) {
+				through = newIdentitySet();
+				cyclesThrough.put(v, through);
+			}
+			through.add(c);
+		}
+	}
+
+	private static <T> Set<T> newIdentitySet() {
+		return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+	}
+
+	/**
+	 * @return every cycle and chain as of the last sync; column IDs are list indices (read-only)
+	 */
+	public List<Cycle> getCycles() {
+		return Collections.unmodifiableList(cycles);
+	}
+
+	public boolean isUsingVertexCaps() {
+		return usingVertexCaps;
+	}
+
+	public int getNumCycles() {
+		return cycles.size();
+	}
+
+	/**
+	 * @return membership for getCycles(), for solvers; built fresh on every call
+	 */
+	public CycleMembership getMembership() {
+		return new CycleMembership(pool, cycles);
+	}
+
+	/**
+	 * @param v
+	 * @return number of indexed cycles and chains through v
+	 */
+	public int getNumCyclesThrough(Vertex v) {
+		Set<Cycle> through = cyclesThrough.get(v);
+		return null == through ? 0 : through.size();
+	}
+
+	/**
+	 * @return true if the pool hasn't changed since the last sync
+	 */
+	public boolean isSynced() {
+		return pool.getVersion() == syncedVersion;
+	}
+
+	public long getSyncedVersion() {
+		return syncedVersion;
+	}
+
+	public int getNumAddedLastSync() {
+		return numAddedLastSync;
+	}
+
+	public int getNumDroppedLastSync() {
+		return numDroppedLastSync;
+	}
+}
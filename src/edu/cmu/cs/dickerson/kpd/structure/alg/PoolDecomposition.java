@@ -0,0 +1,143 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.cmu.cs.dickerson.kpd.helper.IOUtil;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+
+/**
+ * Splits a pool into independent cycle-formulation subproblems.  Cycles live
+ * inside a strongly connected component of the pair subgraph; a chain starting
+ * at an altruist can only touch pairs within maxChainSize hops of it.  So we
+ * take the pair-subgraph SCCs that can hold a cycle, and union together every
+ * SCC reachable (within maxChainSize pair hops) from the same altruist, along
+ * with the altruist.  No cycle or chain of the requested sizes can then touch
+ * two different groups, and vertices in no group cannot be matched at all.
+ *
+ * Groups are ordered by their first vertex in pool iteration order, and each
+ * group lists its vertices in pool iteration order, so results are deterministic.
+ *
+ * @author John P. Dickerson
+ */
+public class PoolDecomposition {
+
+	private final PoolSnapshot snapshot;
+	private final StronglyConnectedComponents scc;
+	private final List<List<Vertex>> components;
+
+	public PoolDecomposition(Pool pool, int maxCycleSize, int maxChainSize) {
+		this(new PoolSnapshot(pool), maxCycleSize, maxChainSize);
+	}
+
+	public PoolDecomposition(PoolSnapshot snapshot, int maxCycleSize, int maxChainSize) {
+
+		this.snapshot = snapshot;
+		this.scc = new StronglyConnectedComponents(snapshot, true);
+		final int n = snapshot.getNumVertices();
+		final int numSCC = scc.getNumComponents();
+
+		// Union-find over SCC IDs, with one extra node per vertex slot for altruists
+		int[] parent = new int[numSCC + n];
+		for(int idx=0; idx<parent.length; idx++) { parent[idx] = idx; }
+		boolean[] active = new boolean[numSCC + n];
+
+		if(maxCycleSize >= 2) {
+			for(int c=0; c<numSCC; c++) {
+				active[c] = !scc.isTrivial(c);
+			}
+		}
+
+		if(maxChainSize >= 1) {
+			// Breadth-first over pairs from each altruist, out to maxChainSize hops
+			int[] seenStamp = new int[n];
+			int[] queue = new int[n];
+			int[] depth = new int[n];
+			int stamp = 0;
+			for(int alt=0; alt<n; alt++) {
+				if(!snapshot.isAltruist(alt)) { continue; }
+				stamp++;
+				int altNode = numSCC + alt;
+				int head = 0, tail = 0;
+				for(int e=snapshot.getOutStart(alt); e<snapshot.getOutEnd(alt); e++) {
+					int w = snapshot.getEdgeTarget(e);
+					if(snapshot.isAltruist(w) || seenStamp[w] == stamp) { continue; }
+					seenStamp[w] = stamp;
+					depth[w] = 1;
+					queue[tail++] = w;
+				}
+				if(tail > 0) { active[altNode] = true; }
+				while(head < tail) {
+					int v = queue[head++];
+					int c = scc.getComponent(v);
+					active[c] = true;
+					union(parent, altNode, c);
+					if(depth[v] >= maxChainSize) { continue; }
+					for(int e=snapshot.getOutStart(v); e<snapshot.getOutEnd(v); e++) {
+						int w = snapshot.getEdgeTarget(e);
+						if(snapshot.isAltruist(w) || seenStamp[w] == stamp) { continue; }
+						seenStamp[w] = stamp;
+						depth[w] = depth[v] + 1;
+						queue[tail++] = w;
+					}
+				}
+			}
+		}
+
+		// Gather active vertices by group root, in snapshot order
+		int[] groupOfRoot = new int[numSCC + n];
+		for(int idx=0; idx<groupOfRoot.length; idx++) { groupOfRoot[idx] = -1; }
+		List<List<Vertex>> groups = new ArrayList<List<Vertex>>();
+		for(int v=0; v<n; v++) {
+			int node = snapshot.isAltruist(v) ? numSCC + v : scc.getComponent(v);
+			if(!active[node]) { continue; }
+			int root = find(parent, node);
+			if(groupOfRoot[root] < 0) {
+				groupOfRoot[root] = groups.size();
+				groups.add(new ArrayList<Vertex>());
+			}
+			groups.get(groupOfRoot[root]).add(snapshot.getVertex(v));
+		}
+		this.components = Collections.unmodifiableList(groups);
+
+		IOUtil.dPrintln(getClass().getSimpleName(), "Split " + n + " vertices into " + components.size() + " independent components (" + scc.getNumNontrivialComponents() + " nontrivial pair SCCs).");
+	}
+
+	private static int find(int[] parent, int x) {
+		while(parent[x] != x) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+
+	private static void union(int[] parent, int a, int b) {
+		int ra = find(parent, a), rb = find(parent, b);
+		if(ra != rb) {
+			// Smaller root wins, so roots don't depend on union order
+			if(ra < rb) { parent[rb] = ra; } else { parent[ra] = rb; }
+		}
+	}
+
+	/**
+	 * @return the independent groups of vertices, each in pool iteration order (read-only)
+	 */
+	public List<List<Vertex>> getComponents() {
+		return components;
+	}
+
+	public int getNumComponents() {
+		return components.size();
+	}
+
+	public PoolSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public StronglyConnectedComponents getStronglyConnectedComponents() {
+		return scc;
+	}
+}
@@ -0,0 +1,159 @@
+package edu.cmu.cs.dickerson.kpd.structure.alg;
+
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+
+/**
+ * Tarjan's strongly connected components over a PoolSnapshot, run iteratively
+ * (an explicit edge-cursor stack instead of recursion) so that long paths in
+ * large pools cannot overflow the call stack.  Runs in O(|V| + |E|).
+ *
+ * Every simple cycle lies entirely within one SCC.  If pairsOnly is set, altruists
+ * and every edge into or out of an altruist are ignored, which is what you want
+ * for cycle (not chain) structure: otherwise, dummy pair->altruist edges glue every
+ * pair reachable from an altruist into one giant component.
+ *
+ * Components are numbered in the order Tarjan completes them, which is a reverse
+ * topological order of the condensation.  Excluded vertices have component -1.
+ *
+ * @author John P. Dickerson
+ */
+public class StronglyConnectedComponents {
+
+	private final PoolSnapshot snapshot;
+	private final int[] componentOf;
+	private final int numComponents;
+	private final int[] compOffsets;   // members of component c are compVertices[compOffsets[c]..compOffsets[c+1])
+	private final int[] compVertices;
+
+	public StronglyConnectedComponents(PoolSnapshot snapshot, boolean pairsOnly) {
+
+		this.snapshot = snapshot;
+		final int n = snapshot.getNumVertices();
+
+		componentOf = new int[n];
+		int[] disc = new int[n];        // 1-based discovery time; 0 means unvisited
+		int[] low = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] tarjanStack = new int[n];
+		int tarjanTop = 0;
+		int[] callStack = new int[n];   // DFS vertices
+		int[] edgeCursor = new int[n];  // next out-edge to examine, per DFS vertex
+		int time = 0;
+		int compCount = 0;
+
+		for(int v=0; v<n; v++) { componentOf[v] = -1; }
+
+		for(int root=0; root<n; root++) {
+			if(disc[root] != 0 || (pairsOnly && snapshot.isAltruist(root))) { continue; }
+
+			int callTop = 0;
+			callStack[callTop] = root;
+			edgeCursor[root] = snapshot.getOutStart(root);
+			disc[root] = low[root] = ++time;
+			tarjanStack[tarjanTop++] = root;
+			onStack[root] = true;
+
+			while(callTop >= 0) {
+				int v = callStack[callTop];
+				if(edgeCursor[v] < snapshot.getOutEnd(v)) {
+					int w = snapshot.getEdgeTarget(edgeCursor[v]++);
+					if(pairsOnly && snapshot.isAltruist(w)) { continue; }
+					if(disc[w] == 0) {
+						// Tree edge: descend into w
+						disc[w] = low[w] = ++time;
+						tarjanStack[tarjanTop++] = w;
+						onStack[w] = true;
+						edgeCursor[w] = snapshot.getOutStart(w);
+						callStack[++callTop] = w;
+					} else if(onStack[w]) {
+						low[v] = Math.min(low[v], disc[w]);
+					}
+				} else {
+					// Done with v; if it is a root, pop its component off the Tarjan stack
+					if(low[v] == disc[v]) {
+						int w;
+						do {
+							w = tarjanStack[--tarjanTop];
+							onStack[w] = false;
+							componentOf[w] = compCount;
+						} while(w != v);
+						compCount++;
+					}
+					callTop--;
+					if(callTop >= 0) {
+						int parent = callStack[callTop];
+						low[parent] = Math.min(low[parent], low[v]);
+					}
+				}
+			}
+		}
+		numComponents = compCount;
+
+		// Bucket vertices by component (counting sort keeps snapshot order within a component)
+		compOffsets = new int[numComponents+1];
+		for(int v=0; v<n; v++) {
+			if(componentOf[v] >= 0) { compOffsets[componentOf[v]+1]++; }
+		}
+		for(int c=0; c<numComponents; c++) {
+			compOffsets[c+1] += compOffsets[c];
+		}
+		compVertices = new int[compOffsets[numComponents]];
+		int[] fill = new int[numComponents];
+		for(int v=0; v<n; v++) {
+			int c = componentOf[v];
+			if(c >= 0) { compVertices[compOffsets[c] + fill[c]++] = v; }
+		}
+	}
+
+	public PoolSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public int getNumComponents() {
+		return numComponents;
+	}
+
+	/**
+	 * @param vIdx snapshot vertex index
+	 * @return component ID, or -1 if the vertex was excluded
+	 */
+	public int getComponent(int vIdx) {
+		return componentOf[vIdx];
+	}
+
+	public int getComponentSize(int c) {
+		return compOffsets[c+1] - compOffsets[c];
+	}
+
+	/**
+	 * @param c component ID
+	 * @param i position in [0, getComponentSize(c))
+	 * @return snapshot index of the i-th member of component c (members are in snapshot order)
+	 */
+	public int getComponentVertex(int c, int i) {
+		return compVertices[compOffsets[c] + i];
+	}
+
+	/**
+	 * A component is trivial if it is a single vertex without a self-loop; such a
+	 * vertex cannot be on any cycle
+	 * @param c
+	 * @return
+	 */
+	public boolean isTrivial(int c) {
+		if(getComponentSize(c) > 1) { return false; }
+		int v = compVertices[compOffsets[c]];
+		return snapshot.findEdge(v, v) < 0;
+	}
+
+	/**
+	 * @return number of components that could contain a cycle
+	 */
+	public int getNumNontrivialComponents() {
+		int count = 0;
+		for(int c=0; c<numComponents; c++) {
+			if(!isTrivial(c)) { count++; }
+		}
+		return count;
+	}
+}
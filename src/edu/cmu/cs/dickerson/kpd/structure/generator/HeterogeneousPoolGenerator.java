@@ -37,6 +37,7 @@ public class HeterogeneousPoolGenerator extends PoolGenerator {
 	public Pool generate(int numPairs, int numAltruists, double pctEasyToMatch) {
 
 		Pool pool = new Pool(Edge.class);
+		pool.setImplicitAltruistEdges(implicitAltruistEdges);
 
 		int numEasyToMatch = (int) Math.round(pctEasyToMatch * numPairs);
 
@@ -83,7 +84,9 @@ public class HeterogeneousPoolGenerator extends PoolGenerator {
 				if(random.nextDouble() > v.getPatientCPRA()) {
 					pool.setEdgeWeight(pool.addEdge(alt, v), 1.0);
 				}
-				pool.setEdgeWeight(pool.addEdge(v, alt), 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					pool.setEdgeWeight(pool.addEdge(v, alt), 0.0);
+				}
 			}
 		}
 
@@ -9,6 +9,9 @@ import edu.cmu.cs.dickerson.kpd.structure.Vertex;
 public abstract class PoolGenerator {
 
 	protected Random random;
+
+	// If true, generated pools leave pair->altruist dummy edges implicit (see Pool.setImplicitAltruistEdges)
+	protected boolean implicitAltruistEdges = false;
 	
 	public PoolGenerator(Random random) {
 		this.random = random;
@@ -31,6 +34,14 @@ public abstract class PoolGenerator {
 	public void setRandom(Random random) {
 		this.random = random;
 	}
+
+	public boolean isImplicitAltruistEdges() {
+		return implicitAltruistEdges;
+	}
+
+	public void setImplicitAltruistEdges(boolean implicitAltruistEdges) {
+		this.implicitAltruistEdges = implicitAltruistEdges;
+	}
 	
 	
 	// TODO write to a file, specifically in our UNOS KPD format
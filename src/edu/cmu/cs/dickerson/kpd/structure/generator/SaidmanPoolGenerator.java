@@ -217,6 +217,7 @@ public class SaidmanPoolGenerator extends PoolGenerator {
 
 		// Only add the incompatible pairs to the pool
 		Pool pool = new Pool(Edge.class);
+		pool.setImplicitAltruistEdges(implicitAltruistEdges);
 		for(VertexPair pair : incompatiblePairs) {
 			pool.addPair(pair);	
 		}
@@ -254,8 +255,10 @@ public class SaidmanPoolGenerator extends PoolGenerator {
 				}
 				
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				Edge dummy = pool.addEdge(patientPair, alt);
-				pool.setEdgeWeight(dummy, 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					Edge dummy = pool.addEdge(patientPair, alt);
+					pool.setEdgeWeight(dummy, 0.0);
+				}
 			}
 		}
 
@@ -291,7 +294,9 @@ public class SaidmanPoolGenerator extends PoolGenerator {
 					pool.setEdgeWeight(pool.addEdge(altO, vN), 1.0);
 				}
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				pool.setEdgeWeight(pool.addEdge(vN, altO), 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					pool.setEdgeWeight(pool.addEdge(vN, altO), 0.0);
+				}
 			}
 		}
 		
@@ -306,7 +311,9 @@ public class SaidmanPoolGenerator extends PoolGenerator {
 				}
 				
 				// Add dummy edges from a non-altruist donor to each of the altruists
-				pool.setEdgeWeight(pool.addEdge(v, altN), 0.0);
+				if(!pool.hasImplicitAltruistEdges()) {
+					pool.setEdgeWeight(pool.addEdge(v, altN), 0.0);
+				}
 			}
 		}
 		
@@ -150,6 +150,7 @@ public class UNOSGenerator extends PoolGenerator {
 		this.currentVertexID = 0;  // have to reset so this doesn't keep incrementing as we make independent pools
 		this.vertexMap = new HashMap<Vertex, UNOSPair>();
 		Pool pool = new Pool(Edge.class);
+		pool.setImplicitAltruistEdges(implicitAltruistEdges);
 		this.addVerticesToPool(pool, numPairs, numAltruists);
 		return pool;	
 	}
@@ -159,6 +160,7 @@ public class UNOSGenerator extends PoolGenerator {
 		this.currentVertexID = 0;  // have to reset so this doesn't keep incrementing as we make independent pools
 		this.vertexMap = new HashMap<Vertex, UNOSPair>();
 		Pool pool = new Pool(Edge.class);
+		pool.setImplicitAltruistEdges(implicitAltruistEdges);
 		this.addVerticesToPool(pool, size);
 		return pool;	
 	}
@@ -205,6 +207,8 @@ public class UNOSGenerator extends PoolGenerator {
 					pool.setEdgeWeight(e, 1.0);
 				}
 				if(UNOSPair.canDrawDirectedEdge(v.getUnderlyingPair(), samplePair, this.threshold)) {
+					// Dummy edge from a pair to this new altruist may be implicit
+					if(samplePair.isAltruist() && pool.hasImplicitAltruistEdges()) { continue; }
 					Edge e = pool.addEdge(v, sampleVert);
 					if(samplePair.isAltruist()) {
 						pool.setEdgeWeight(e, 0.0);
@@ -217,7 +221,8 @@ public class UNOSGenerator extends PoolGenerator {
 				if(alt.equals(sampleVert)) { continue; }
 				
 				// Always draw a (dummy) edge from this vertex to altruists, UNLESS this is an altruist
-				if(UNOSPair.canDrawDirectedEdge(samplePair, alt.getUnderlyingPair())) {
+				// (or unless the pool leaves those dummy edges implicit)
+				if(!pool.hasImplicitAltruistEdges() && UNOSPair.canDrawDirectedEdge(samplePair, alt.getUnderlyingPair())) {
 					Edge e = pool.addEdge(sampleVert, alt);
 					pool.setEdgeWeight(e, 0.0);
 				}
@@ -21,6 +21,9 @@ public class UNOSLoader {
 
 	private char delim = ',';
 
+	// If true, loaded pools leave pair->altruist dummy edges implicit (see Pool.setImplicitAltruistEdges)
+	private boolean implicitAltruistEdges = false;
+
 	public enum DonorIdx {
 		PAIR_ID(0), CANDIDATE_ID(1), DONOR_ID(2), NDD(5), ABO(6);
 		private int index;
@@ -46,6 +49,14 @@ public class UNOSLoader {
 		this.delim = delim;
 	}
 
+	public boolean isImplicitAltruistEdges() {
+		return implicitAltruistEdges;
+	}
+
+	public void setImplicitAltruistEdges(boolean implicitAltruistEdges) {
+		this.implicitAltruistEdges = implicitAltruistEdges;
+	}
+
 	private int loadRecipients(String recipientFilePath, Pool pool, Map<Integer, Vertex> idToVertex, Map<String, Integer> strIDtoIntID) {
 		CSVReader reader = null;
 		int ID = 0;
@@ -112,7 +123,7 @@ public class UNOSLoader {
 						// and the pair version's paired patient ID doesn't exist -- so skip it here
 						IOUtil.dPrintln("Could not find vertex pair for donor ID: " + donorID + "; skipping.");
 					} else {
-						vp.setBloodTypeDonor(donorBloodType);
+						pool.setPairBloodTypes(vp, vp.getBloodTypePatient(), donorBloodType);
 					}
 				}
 
@@ -194,7 +205,8 @@ public class UNOSLoader {
 			IOUtil.closeIgnoreExceptions(reader);
 		}
 
-		// Add dummy edges from every candidate-donor pair to every altruist
+		// Add dummy edges from every candidate-donor pair to every altruist (unless they're implicit)
+		if(pool.hasImplicitAltruistEdges()) { return; }
 		for(VertexAltruist altruist : pool.getAltruists()) {
 			for(VertexPair pair : pool.getPairs()) {
 				pool.setEdgeWeight(pool.addEdge(pair, altruist), 0.0);
@@ -210,6 +222,7 @@ public class UNOSLoader {
 
 		IOUtil.dPrintln("Loading UNOS graph (donor file: " + donorFilePath + ")");
 		Pool pool = new Pool(Edge.class);
+		pool.setImplicitAltruistEdges(implicitAltruistEdges);
 
 		// Read in the recipients, make vertex pairs for each of them (note: no altruists until donor file read)
 		Map<Integer, Vertex> idToVertex = new HashMap<Integer, Vertex>();
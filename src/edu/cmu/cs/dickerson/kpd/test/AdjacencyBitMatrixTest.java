@@ -0,0 +1,84 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.structure.AdjacencyBitMatrix;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+
+public class AdjacencyBitMatrixTest {
+
+	@Test
+	public void testMatchesPool() {
+
+		Pool pool = new SaidmanPoolGenerator(new Random(777)).generate(100, 5);
+		int n = pool.vertexSet().size();
+		AdjacencyBitMatrix adj = pool.getAdjacencyBitMatrix();
+		assertEquals(n, adj.size());
+
+		// Build the old boolean matrix by hand and compare cell-by-cell
+		boolean[][] dense = new boolean[n][n];
+		long numNonDummyEdges = 0;
+		for(Edge e : pool.edgeSet()) {
+			if(pool.getEdgeTarget(e).isAltruist()) { continue; }
+			dense[pool.getEdgeSource(e).getID()][pool.getEdgeTarget(e).getID()] = true;
+			numNonDummyEdges++;
+		}
+		assertEquals(numNonDummyEdges, adj.numEdges());
+
+		for(int i=0; i<n; i++) {
+			int outDeg = 0, inDeg = 0;
+			for(int j=0; j<n; j++) {
+				assertEquals(dense[i][j], adj.get(i, j));
+				if(dense[i][j]) { outDeg++; }
+				if(dense[j][i]) { inDeg++; }
+			}
+			assertEquals(outDeg, adj.outDegree(i));
+			assertEquals(inDeg, adj.inDegree(i));
+		}
+	}
+
+	@Test
+	public void testBulkOperations() {
+
+		// 130 spans three words, exercising the partial last word
+		AdjacencyBitMatrix adj = new AdjacencyBitMatrix(130);
+		int[] targetsA = {0, 63, 64, 100, 129};
+		int[] targetsB = {1, 63, 100, 128};
+		for(int j : targetsA) { adj.set(5, j); }
+		for(int j : targetsB) { adj.set(7, j); }
+
+		assertEquals(2, adj.commonOutNeighbors(5, 7));
+
+		long[] acc = adj.getRow(5);
+		adj.andRow(7, acc);
+		assertEquals(2, Long.bitCount(acc[0]) + Long.bitCount(acc[1]) + Long.bitCount(acc[2]));
+
+		acc = new long[adj.getWordsPerRow()];
+		adj.orRow(5, acc);
+		adj.orRow(7, acc);
+		assertEquals(7, Long.bitCount(acc[0]) + Long.bitCount(acc[1]) + Long.bitCount(acc[2]));
+
+		// Iterate a row in order
+		int idx = 0;
+		for(int j=adj.nextSetInRow(5, 0); j>=0; j=adj.nextSetInRow(5, j+1)) {
+			assertEquals(targetsA[idx++], j);
+		}
+		assertEquals(targetsA.length, idx);
+
+		// Column view agrees with rows, and clears are reflected in both
+		assertEquals(2, adj.inDegree(63));
+		assertEquals(5, adj.nextSetInColumn(63, 0));
+		assertEquals(7, adj.nextSetInColumn(63, 6));
+		adj.clear(5, 63);
+		assertFalse(adj.get(5, 63));
+		assertEquals(1, adj.inDegree(63));
+		assertEquals(4, adj.outDegree(5));
+		assertEquals(-1, adj.nextSetInRow(5, 130));
+	}
+}
@@ -0,0 +1,125 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.structure.BinaryPoolFile;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.VertexAltruist;
+import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.types.BloodType;
+
+public class BinaryPoolFileTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+
+		Random r = new Random(1123);
+		Pool pool = new SaidmanPoolGenerator(r).generate(60, 4);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+		PoolSnapshot orig = new PoolSnapshot(pool);
+
+		File file = File.createTempFile("pool", ".kpdb");
+		file.deleteOnExit();
+		BinaryPoolFile.write(orig, file);
+		PoolSnapshot loaded = BinaryPoolFile.read(file);
+		assertFalse(loaded.isPoolBacked());
+
+		assertEquals(orig.getNumVertices(), loaded.getNumVertices());
+		assertEquals(orig.getNumEdges(), loaded.getNumEdges());
+		for(int vIdx=0; vIdx<orig.getNumVertices(); vIdx++) {
+			Vertex v = orig.getVertex(vIdx);
+			Vertex w = loaded.getVertex(vIdx);
+			assertEquals(v.getID(), w.getID());
+			assertEquals(v.isAltruist(), w.isAltruist());
+			if(v.isAltruist()) {
+				assertEquals(((VertexAltruist) v).getBloodTypeDonor(), ((VertexAltruist) w).getBloodTypeDonor());
+			} else {
+				VertexPair vp = (VertexPair) v, wp = (VertexPair) w;
+				assertEquals(vp.getBloodTypePatient(), wp.getBloodTypePatient());
+				assertEquals(vp.getBloodTypeDonor(), wp.getBloodTypeDonor());
+				assertEquals(vp.getPatientCPRA(), wp.getPatientCPRA(), 0.0);
+				assertEquals(vp.isWifePatient(), wp.isWifePatient());
+				assertEquals(vp.isCompatible(), wp.isCompatible());
+			}
+			assertEquals(orig.getOutStart(vIdx), loaded.getOutStart(vIdx));
+			assertEquals(orig.getInDegree(vIdx), loaded.getInDegree(vIdx));
+		}
+		for(int eIdx=0; eIdx<orig.getNumEdges(); eIdx++) {
+			assertEquals(orig.getEdgeTarget(eIdx), loaded.getEdgeTarget(eIdx));
+			assertEquals(orig.getEdgeWeight(eIdx), loaded.getEdgeWeight(eIdx), 0.0);
+			assertEquals(orig.getEdgeFailureProbability(eIdx), loaded.getEdgeFailureProbability(eIdx), 0.0);
+			assertEquals(orig.getEdgeFailureProbability(eIdx), loaded.getEdge(eIdx).getFailureProbability(), 0.0);
+			assertSame(loaded.getEdge(eIdx), loaded.getEdge(eIdx));
+		}
+
+		// Enumeration over the loaded snapshot and over its materialized Pool matches the original
+		List<Cycle> fromOrig = new CycleGenerator(pool).generateCyclesAndChains(3, 3, true);
+		List<Cycle> fromLoaded = new CycleGenerator(loaded).generateCyclesAndChains(3, 3, true);
+		Pool loadedPool = loaded.toPool();
+		List<Cycle> fromLoadedPool = new CycleGenerator(loadedPool).generateCyclesAndChains(3, 3, true);
+		assertEquals(fromOrig.size(), fromLoaded.size());
+		assertEquals(fromOrig.size(), fromLoadedPool.size());
+		for(int cIdx=0; cIdx<fromOrig.size(); cIdx++) {
+			assertEquals(fromOrig.get(cIdx).getWeight(), fromLoaded.get(cIdx).getWeight(), 1e-9);
+			assertEquals(fromOrig.get(cIdx).getWeight(), fromLoadedPool.get(cIdx).getWeight(), 1e-9);
+			List<Edge> origEdges = fromOrig.get(cIdx).getEdges();
+			List<Edge> loadedEdges = fromLoadedPool.get(cIdx).getEdges();
+			for(int eIdx=0; eIdx<origEdges.size(); eIdx++) {
+				assertEquals(pool.getEdgeTarget(origEdges.get(eIdx)).getID(), loadedPool.getEdgeTarget(loadedEdges.get(eIdx)).getID());
+				assertEquals(pool.getEdgeWeight(origEdges.get(eIdx)), loadedPool.getEdgeWeight(loadedEdges.get(eIdx)), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testRejectsGarbage() throws IOException {
+		File file = File.createTempFile("garbage", ".kpdb");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[64]);
+		out.close();
+		try {
+			BinaryPoolFile.read(file);
+			fail("Should not read a file with a bad magic number");
+		} catch(IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRejectsBadBloodType() throws IOException {
+		Pool pool = new SaidmanPoolGenerator(new Random(1123)).generate(10, 1);
+		File file = File.createTempFile("badblood", ".kpdb");
+		file.deleteOnExit();
+		BinaryPoolFile.write(new PoolSnapshot(pool), file);
+
+		// Last vertex's donor blood type: after the 20-byte header, IDs, CPRAs, flags, and patient types
+		int n = pool.vertexSet().size();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(20 + 4*n + 8*n + n + n + (n-1));
+		raf.writeByte(BloodType.values().length);
+		raf.close();
+		try {
+			BinaryPoolFile.read(file);
+			fail("Should not read a file with an out-of-range blood type");
+		} catch(IOException e) {
+			// expected
+		}
+	}
+}
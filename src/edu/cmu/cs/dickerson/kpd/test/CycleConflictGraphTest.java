@@ -0,0 +1,123 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.solver.approx.CycleShufflePacker;
+import edu.cmu.cs.dickerson.kpd.solver.approx.VertexShufflePacker;
+import edu.cmu.cs.dickerson.kpd.solver.approx.VertexShufflePacker.ShuffleType;
+import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleConflictGraph;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+
+public class CycleConflictGraphTest {
+
+	@Test
+	public void testConflicts() {
+
+		Pool pool = new SaidmanPoolGenerator(new Random(4242)).generate(40, 4);
+		List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 3, false);
+		CycleConflictGraph conflicts = new CycleConflictGraph(new CycleMembership(pool, cycles));
+		assertEquals(cycles.size(), conflicts.getNumCycles());
+
+		List<Set<Vertex>> cycleVerts = new ArrayList<Set<Vertex>>();
+		for(Cycle c : cycles) {
+			cycleVerts.add(Cycle.getConstituentVertices(c, pool));
+		}
+		for(int col=0; col<cycles.size(); col++) {
+			Set<Vertex> verts = new HashSet<Vertex>();
+			for(int i=0; i<conflicts.getLength(col); i++) {
+				verts.add(conflicts.getVertex(col, i));
+			}
+			assertEquals(cycleVerts.get(col), verts);
+		}
+
+		// Adjacency agrees with pairwise vertex-set intersection, with and without masks
+		for(int pass=0; pass<2; pass++) {
+			for(int colA=0; colA<cycles.size(); colA++) {
+				List<Integer> expected = new ArrayList<Integer>();
+				for(int colB=0; colB<cycles.size(); colB++) {
+					boolean shares = !Collections.disjoint(cycleVerts.get(colA), cycleVerts.get(colB));
+					if(colA != colB && shares) {
+						expected.add(colB);
+					}
+					assertEquals(colA != colB && shares, conflicts.conflicts(colA, colB));
+					assertEquals(shares, conflicts.sharesVertex(colA, colB));
+				}
+				List<Integer> actual = new ArrayList<Integer>();
+				for(int pos=conflicts.getStart(colA); pos<conflicts.getEnd(colA); pos++) {
+					actual.add(conflicts.getConflictAt(pos));
+				}
+				Collections.sort(actual);
+				assertEquals(expected, actual);
+				assertEquals(expected.size(), conflicts.getDegree(colA));
+			}
+			conflicts.buildVertexMasks();
+			assertTrue(conflicts.hasVertexMasks());
+		}
+
+		// Matched-vertex masks
+		long[] matched = new long[conflicts.getMaskWords()];
+		conflicts.addToMask(0, matched);
+		for(int col=0; col<cycles.size(); col++) {
+			assertEquals(!conflicts.sharesVertex(0, col), conflicts.isDisjoint(col, matched));
+		}
+	}
+
+	@Test
+	public void testPackers() {
+
+		Pool pool = new SaidmanPoolGenerator(new Random(8675309)).generate(60, 6);
+		List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 3, false);
+		CycleMembership membership = new CycleMembership(pool, cycles);
+		CycleConflictGraph conflicts = new CycleConflictGraph(membership);
+
+		Set<Vertex> forbiddenVerts = new HashSet<Vertex>();
+		for(Vertex v : pool.getPairs()) {
+			if(forbiddenVerts.size() < 5) { forbiddenVerts.add(v); }
+		}
+
+		for(int rep=0; rep<5; rep++) {
+			assertMaximalMatching(pool, cycles, new HashSet<Vertex>(), new CycleShufflePacker(pool, cycles, conflicts).pack());
+			assertMaximalMatching(pool, cycles, new HashSet<Vertex>(), new VertexShufflePacker(pool, cycles, conflicts, ShuffleType.UNIFORM_RANDOM, new HashSet<Vertex>()).pack());
+			assertMaximalMatching(pool, cycles, forbiddenVerts, new VertexShufflePacker(pool, cycles, conflicts, ShuffleType.INVERSE_PROP_CYCLE_COUNT, forbiddenVerts).pack());
+		}
+	}
+
+	/**
+	 * Packed cycles are disjoint and avoid forbidden vertices, the objective is their
+	 * weight, and every cycle left out hits a matched or forbidden vertex
+	 */
+	private static void assertMaximalMatching(Pool pool, List<Cycle> cycles, Set<Vertex> forbiddenVerts, Solution sol) {
+		Set<Vertex> matchedVerts = new HashSet<Vertex>();
+		double objVal = 0.0;
+		for(Cycle c : sol.getMatching()) {
+			Set<Vertex> cVerts = Cycle.getConstituentVertices(c, pool);
+			assertTrue(Collections.disjoint(cVerts, matchedVerts));
+			assertTrue(Collections.disjoint(cVerts, forbiddenVerts));
+			matchedVerts.addAll(cVerts);
+			objVal += c.getWeight();
+		}
+		assertEquals(objVal, sol.getObjectiveValue(), 1e-6);
+		assertFalse(sol.getMatching().isEmpty());
+		matchedVerts.addAll(forbiddenVerts);
+		for(Cycle c : cycles) {
+			assertFalse(Collections.disjoint(Cycle.getConstituentVertices(c, pool), matchedVerts));
+		}
+	}
+}
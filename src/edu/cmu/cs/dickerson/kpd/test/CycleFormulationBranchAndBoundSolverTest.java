@@ -0,0 +1,151 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.solver.CycleFormulationBranchAndBoundSolver;
+import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
+import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+
+public class CycleFormulationBranchAndBoundSolverTest {
+
+	@Test
+	public void testMatchesExhaustiveSearch() {
+
+		// Small pools, so every packing can be enumerated
+		Random r = new Random(31337);
+		for(int repeatIdx=0; repeatIdx<10; repeatIdx++) {
+			Pool pool = new SaidmanPoolGenerator(r).generate(12, 2);
+			List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 3, false);
+			if(repeatIdx % 2 == 1) {
+				// Fractional weights, so bounds can't be rounded
+				for(Cycle c : cycles) {
+					c.setWeight(c.getWeight() * (0.5 + r.nextDouble()));
+				}
+			}
+			CycleMembership membership = new CycleMembership(pool, cycles);
+
+			List<Set<Vertex>> cycleVerts = new ArrayList<Set<Vertex>>();
+			for(Cycle c : cycles) {
+				cycleVerts.add(Cycle.getConstituentVertices(c, pool));
+			}
+			double optimal = bestPacking(cycles, cycleVerts, 0, new HashSet<Vertex>());
+
+			for(int numThreads : new int[] {1, 4}) {
+				try {
+					CycleFormulationBranchAndBoundSolver solver = new CycleFormulationBranchAndBoundSolver(pool, cycles, membership);
+					solver.setMaxCPUThreads(numThreads);
+					Solution sol = solver.solve();
+					assertTrue(solver.isProvenOptimal());
+					assertEquals(optimal, sol.getObjectiveValue(), 1e-6);
+					assertLegal(pool, sol);
+				} catch(SolverException e) {
+					fail(e.getMessage());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLargerPool() {
+
+		// Too big to enumerate; the single- and multi-threaded searches must agree, and the bound must hold
+		Pool pool = new SaidmanPoolGenerator(new Random(8675309)).generate(60, 6);
+		List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 2, false);
+		CycleMembership membership = new CycleMembership(pool, cycles);
+		try {
+			CycleFormulationBranchAndBoundSolver seq = new CycleFormulationBranchAndBoundSolver(pool, cycles, membership);
+			seq.setMaxCPUThreads(1);
+			Solution seqSol = seq.solve();
+			assertLegal(pool, seqSol);
+
+			CycleFormulationBranchAndBoundSolver par = new CycleFormulationBranchAndBoundSolver(pool, cycles, membership);
+			par.setMaxCPUThreads(4);
+			Solution parSol = par.solve();
+			assertLegal(pool, parSol);
+
+			assertTrue(seq.isProvenOptimal() && par.isProvenOptimal());
+			assertEquals(seqSol.getObjectiveValue(), parSol.getObjectiveValue(), 1e-6);
+			assertTrue(seq.getUpperBound() >= seqSol.getObjectiveValue() - 1e-6);
+		} catch(SolverException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testDeadlineDuringParallelSplit() {
+
+		// Out of time before the tree is even split across threads: still a legal (greedy) matching
+		Pool pool = new SaidmanPoolGenerator(new Random(8675309)).generate(60, 6);
+		List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 2, false);
+		try {
+			CycleFormulationBranchAndBoundSolver solver = new CycleFormulationBranchAndBoundSolver(pool, cycles, new CycleMembership(pool, cycles));
+			solver.setMaxCPUThreads(4);
+			solver.setMaxSolveSeconds(1e-9);
+			Solution sol = solver.solve();
+			assertLegal(pool, sol);
+			assertFalse(solver.isProvenOptimal());
+			assertTrue(sol.getObjectiveValue() > 0.0);
+			assertTrue(solver.getUpperBound() >= sol.getObjectiveValue() - 1e-6);
+		} catch(SolverException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNoCycles() {
+		Pool pool = new SaidmanPoolGenerator(new Random(1)).generate(5, 0);
+		try {
+			Solution sol = new CycleFormulationBranchAndBoundSolver(pool, new ArrayList<Cycle>(), new CycleMembership(pool)).solve();
+			assertEquals(0.0, sol.getObjectiveValue(), 1e-9);
+			assertTrue(sol.getMatching().isEmpty());
+		} catch(SolverException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * @return best weight of vertex-disjoint cycles from cycles[idx..], avoiding used
+	 */
+	private static double bestPacking(List<Cycle> cycles, List<Set<Vertex>> cycleVerts, int idx, Set<Vertex> used) {
+		if(idx == cycles.size()) {
+			return 0.0;
+		}
+		double best = bestPacking(cycles, cycleVerts, idx+1, used);
+		if(Collections.disjoint(cycleVerts.get(idx), used)) {
+			used.addAll(cycleVerts.get(idx));
+			best = Math.max(best, cycles.get(idx).getWeight() + bestPacking(cycles, cycleVerts, idx+1, used));
+			used.removeAll(cycleVerts.get(idx));
+		}
+		return best;
+	}
+
+	private static void assertLegal(Pool pool, Solution sol) {
+		Set<Vertex> matchedVerts = new HashSet<Vertex>();
+		double objVal = 0.0;
+		for(Cycle c : sol.getMatching()) {
+			Set<Vertex> cVerts = Cycle.getConstituentVertices(c, pool);
+			assertTrue(Collections.disjoint(cVerts, matchedVerts));
+			matchedVerts.addAll(cVerts);
+			objVal += c.getWeight();
+		}
+		assertEquals(objVal, sol.getObjectiveValue(), 1e-6);
+	}
+}
@@ -0,0 +1,151 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.helper.Pair;
+import edu.cmu.cs.dickerson.kpd.solver.CycleFormulationBranchAndBoundSolver;
+import edu.cmu.cs.dickerson.kpd.solver.CycleFormulationLPRelaxSolver;
+import edu.cmu.cs.dickerson.kpd.solver.approx.CycleLPRelaxationPacker;
+import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
+import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleConflictGraph;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.types.BloodType;
+
+public class CycleFormulationLPRelaxSolverTest {
+
+	@Test
+	public void testFractionalOptimum() {
+
+		// Three pairs, each compatible with both others; with only 2-cycles, the LP puts 1/2 on each
+		Pool pool = new Pool(Edge.class);
+		List<Vertex> pairs = new ArrayList<Vertex>();
+		for(int ID=0; ID<3; ID++) {
+			VertexPair vp = new VertexPair(ID, BloodType.O, BloodType.O, false, 0.0, false);
+			pool.addPair(vp);
+			pairs.add(vp);
+		}
+		for(Vertex src : pairs) {
+			for(Vertex sink : pairs) {
+				if(src != sink) { pool.setEdgeWeight(pool.addEdge(src, sink), 1.0); }
+			}
+		}
+		List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(2, 0);
+		assertEquals(3, cycles.size());
+
+		try {
+			CycleFormulationLPRelaxSolver solver = new CycleFormulationLPRelaxSolver(pool, cycles, new CycleMembership(pool, cycles));
+			Pair<Solution, Map<Integer, Double>> solPair = solver.solve();
+			assertEquals(3.0, solPair.getLeft().getObjectiveValue(), 3.0*solver.getRelativeMipGap());
+			assertTrue(solver.getDualBound() >= 3.0 - 1e-9);
+			for(double val : solPair.getRight().values()) {
+				assertEquals(0.5, val, 0.01);
+			}
+		} catch(SolverException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testBoundsAndFeasibility() {
+
+		Random r = new Random(271828);
+		for(int repeatIdx=0; repeatIdx<6; repeatIdx++) {
+			Pool pool = new SaidmanPoolGenerator(r).generate(40, 4);
+			List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 3, false);
+			if(repeatIdx % 2 == 1) {
+				for(Cycle c : cycles) {
+					c.setWeight(c.getWeight() * (0.5 + r.nextDouble()));
+				}
+			}
+			CycleMembership membership = new CycleMembership(pool, cycles);
+
+			try {
+				double ipObjVal = new CycleFormulationBranchAndBoundSolver(pool, cycles, membership).solve().getObjectiveValue();
+
+				for(int numThreads : new int[] {1, 4}) {
+					CycleFormulationLPRelaxSolver solver = new CycleFormulationLPRelaxSolver(pool, cycles, membership);
+					solver.setMaxCPUThreads(numThreads);
+					Pair<Solution, Map<Integer, Double>> solPair = solver.solve();
+					double lpObjVal = solPair.getLeft().getObjectiveValue();
+					Map<Integer, Double> vals = solPair.getRight();
+					assertEquals(cycles.size(), vals.size());
+
+					// Feasible, and its value is what's reported
+					double objVal = 0.0;
+					for(int cIdx=0; cIdx<cycles.size(); cIdx++) {
+						assertTrue(vals.get(cIdx) >= 0.0 && vals.get(cIdx) <= 1.0);
+						objVal += vals.get(cIdx) * cycles.get(cIdx).getWeight();
+					}
+					assertEquals(objVal, lpObjVal, 1e-6);
+					for(Vertex v : pool.vertexSet()) {
+						double load = 0.0;
+						for(int cIdx=0; cIdx<cycles.size(); cIdx++) {
+							if(Cycle.getConstituentVertices(cycles.get(cIdx), pool).contains(v)) {
+								load += vals.get(cIdx);
+							}
+						}
+						assertTrue(load <= 1.0 + 1e-9);
+					}
+
+					// primal <= LP <= dual bound, within the tolerance; the IP can't beat the LP
+					double dualBound = solver.getDualBound();
+					assertTrue(lpObjVal <= dualBound + 1e-9);
+					assertTrue(dualBound - lpObjVal <= solver.getRelativeMipGap() * dualBound + 1e-9);
+					assertTrue(ipObjVal <= dualBound + 1e-6);
+				}
+			} catch(SolverException e) {
+				fail(e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testPackerWithoutCPLEX() {
+
+		Pool pool = new SaidmanPoolGenerator(new Random(1618)).generate(60, 6);
+		List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 3, false);
+		CycleMembership membership = new CycleMembership(pool, cycles);
+
+		boolean writeStats = CycleLPRelaxationPacker.WRITE_STATISTICS_TO_FILE;
+		CycleLPRelaxationPacker.WRITE_STATISTICS_TO_FILE = false;
+		try {
+			// Legality by vertex sets, and by the conflict graph
+			List<CycleLPRelaxationPacker> packers = new ArrayList<CycleLPRelaxationPacker>();
+			packers.add(new CycleLPRelaxationPacker(pool, cycles, membership, true, false));
+			packers.add(new CycleLPRelaxationPacker(pool, cycles, new CycleConflictGraph(membership), true, false));
+			for(CycleLPRelaxationPacker packer : packers) {
+				Solution sol = packer.pack(Double.MAX_VALUE);
+				assertFalse(sol.getMatching().isEmpty());
+				Set<Vertex> matchedVerts = new HashSet<Vertex>();
+				for(Cycle c : sol.getMatching()) {
+					Set<Vertex> cVerts = Cycle.getConstituentVertices(c, pool);
+					assertTrue(Collections.disjoint(cVerts, matchedVerts));
+					matchedVerts.addAll(cVerts);
+				}
+			}
+		} finally {
+			CycleLPRelaxationPacker.WRITE_STATISTICS_TO_FILE = writeStats;
+		}
+	}
+}
@@ -1,11 +1,18 @@
 package edu.cmu.cs.dickerson.kpd.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import org.jgrapht.generate.CompleteGraphGenerator;
 import org.jgrapht.generate.GraphGenerator;
@@ -14,14 +21,26 @@ import org.junit.Test;
 import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
 import edu.cmu.cs.dickerson.kpd.structure.VertexAltruist;
 import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
+import edu.cmu.cs.dickerson.kpd.structure.alg.ChainTrie;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleCache;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleCounts;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleEnumerator;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleSink;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleSpliterator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleStore;
 import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
 import edu.cmu.cs.dickerson.kpd.structure.generator.PoolGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.generator.factories.AllMatchVertexPairFactory;
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSDonor;
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSPair;
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSRecipient;
 import edu.cmu.cs.dickerson.kpd.structure.types.BloodType;
 
 public class CycleGeneratorTest {
@@ -176,4 +195,617 @@ public class CycleGeneratorTest {
 		}
 		
 	}
+
+	@Test
+	public void testImplicitAltruistEdges() {
+
+		// Same seed, so both generators draw the exact same pool; one materializes the dummy edges, one does not
+		PoolGenerator explicitGen = new SaidmanPoolGenerator(new Random(98765));
+		Pool explicitPool = explicitGen.generate(30, 3);
+		PoolGenerator implicitGen = new SaidmanPoolGenerator(new Random(98765));
+		implicitGen.setImplicitAltruistEdges(true);
+		Pool implicitPool = implicitGen.generate(30, 3);
+
+		assertTrue(implicitPool.hasImplicitAltruistEdges());
+		assertEquals(explicitPool.vertexSet().size(), implicitPool.vertexSet().size());
+		assertEquals(explicitPool.edgeSet().size() - 30*3, implicitPool.edgeSet().size());
+
+		List<Cycle> explicitCycles = new CycleGenerator(explicitPool).generateCyclesAndChains(3, 4);
+		List<Cycle> implicitCycles = new CycleGenerator(implicitPool).generateCyclesAndChains(3, 4);
+		assertEquals(explicitCycles.size(), implicitCycles.size());
+		for(int cIdx=0; cIdx<explicitCycles.size(); cIdx++) {
+			Cycle explicitC = explicitCycles.get(cIdx);
+			Cycle implicitC = implicitCycles.get(cIdx);
+			assertEquals(explicitC.getWeight(), implicitC.getWeight(), 1e-9);
+			assertEquals(Cycle.isAChain(explicitC, explicitPool), Cycle.isAChain(implicitC, implicitPool));
+			assertEquals(Cycle.getConstituentVertices(explicitC, explicitPool), Cycle.getConstituentVertices(implicitC, implicitPool));
+		}
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+
+		Random r = new Random(97531);
+		Pool pool = new SaidmanPoolGenerator(r).generate(80, 8);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+
+		CycleGenerator cg = new CycleGenerator(pool);
+		List<Cycle> sequential = cg.generateCyclesAndChains(3, 4, true);
+		for(int numThreads : new int[] {2, 3, 8}) {
+			cg.setMaxCPUThreads(numThreads);
+			List<Cycle> parallel = cg.generateCyclesAndChains(3, 4, true);
+
+			// Same cycles and chains, in the same order, regardless of thread count
+			assertEquals(sequential.size(), parallel.size());
+			for(int cIdx=0; cIdx<sequential.size(); cIdx++) {
+				assertEquals(sequential.get(cIdx).getEdges(), parallel.get(cIdx).getEdges());
+				assertEquals(sequential.get(cIdx).getWeight(), parallel.get(cIdx).getWeight(), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testEnumeratorSink() {
+
+		Random r = new Random(24680);
+		Pool pool = new SaidmanPoolGenerator(r).generate(50, 5);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+		pool.setImplicitAltruistEdges(true);
+		final PoolSnapshot snapshot = new PoolSnapshot(pool);
+		List<Cycle> cycles = new CycleGenerator(snapshot).generateCyclesAndChains(3, 4, true);
+
+		// The sink sees every cycle and chain, in the same order and with the same weight,
+		// as a path of edge indices leaving and returning to its start vertex
+		final List<Double> weights = new ArrayList<Double>();
+		final int[] numChains = new int[1];
+		new CycleEnumerator(snapshot, 3, 4, true, false, 0.5).enumerateAll(new CycleEnumerator.PathSink() {
+			@Override
+			public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+				int startIdx = snapshot.getEdgeSource(edgePath[0]);
+				assertEquals(isChain, snapshot.isAltruist(startIdx));
+				for(int eIdx=1; eIdx<numEdges; eIdx++) {
+					if(CycleEnumerator.IMPLICIT_EDGE == edgePath[eIdx]) {
+						assertTrue(isChain && eIdx == numEdges-1);
+					} else {
+						assertEquals(snapshot.getEdgeTarget(edgePath[eIdx-1]), snapshot.getEdgeSource(edgePath[eIdx]));
+					}
+				}
+				if(CycleEnumerator.IMPLICIT_EDGE != edgePath[numEdges-1]) {
+					assertEquals(startIdx, snapshot.getEdgeTarget(edgePath[numEdges-1]));
+				}
+				weights.add(weight);
+				if(isChain) { numChains[0]++; }
+				return true;
+			}
+		});
+
+		assertEquals(cycles.size(), weights.size());
+		int expectedChains = 0;
+		for(int cIdx=0; cIdx<cycles.size(); cIdx++) {
+			assertEquals(cycles.get(cIdx).getWeight(), weights.get(cIdx), 0.0);
+			if(Cycle.isAChain(cycles.get(cIdx), pool)) { expectedChains++; }
+		}
+		assertEquals(expectedChains, numChains[0]);
+		assertTrue(numChains[0] > 0);
+	}
+
+	@Test
+	public void testPruningKeepsAllCycles() {
+
+		// Only every fourth pair can give back to an altruist, so chains have dead ends worth pruning
+		Pool pool = new SaidmanPoolGenerator(new Random(11235)).generate(40, 4);
+		List<Edge> toRemove = new ArrayList<Edge>();
+		for(Edge e : pool.edgeSet()) {
+			Vertex src = pool.getEdgeSource(e);
+			if(!src.isAltruist() && pool.getEdgeTarget(e).isAltruist() && src.getID() % 4 != 0) {
+				toRemove.add(e);
+			}
+		}
+		for(Edge e : toRemove) {
+			pool.removeEdge(e);
+		}
+
+		final PoolSnapshot snapshot = new PoolSnapshot(pool);
+		for(int[] caps : new int[][] { {3, 3}, {4, 4}, {5, 2} }) {
+			long[] expected = new long[2*snapshot.getNumVertices()+2];
+			for(int vIdx=0; vIdx<snapshot.getNumVertices(); vIdx++) {
+				boolean[] inPath = new boolean[snapshot.getNumVertices()];
+				inPath[vIdx] = true;
+				countPaths(snapshot, vIdx, vIdx, 0, caps[0], caps[1], inPath, expected);
+			}
+			final long[] actual = new long[expected.length];
+			new CycleEnumerator(snapshot, caps[0], caps[1], false, false, 0.5).enumerateAll(new CycleEnumerator.PathSink() {
+				@Override
+				public boolean accept(int[] edgePath, int numEdges, double weight, boolean isChain) {
+					actual[2*numEdges + (isChain ? 1 : 0)]++;
+					return true;
+				}
+			});
+			for(int idx=0; idx<expected.length; idx++) {
+				assertEquals(expected[idx], actual[idx]);
+			}
+		}
+	}
+
+	/**
+	 * Exhaustive, unpruned count of cycles (by lowest vertex ID) and chains, by number of edges
+	 */
+	private static void countPaths(PoolSnapshot snapshot, int startIdx, int lastIdx, int pathLength, int maxCycleSize, int maxChainSize, boolean[] inPath, long[] counts) {
+		boolean isChain = snapshot.isAltruist(startIdx);
+		for(int eIdx=snapshot.getOutStart(lastIdx); eIdx<snapshot.getOutEnd(lastIdx); eIdx++) {
+			int nextIdx = snapshot.getEdgeTarget(eIdx);
+			if(nextIdx == startIdx) {
+				if(pathLength+1 <= (isChain ? maxChainSize+1 : maxCycleSize) && pathLength > 0) {
+					counts[2*(pathLength+1) + (isChain ? 1 : 0)]++;
+				}
+			} else if(!inPath[nextIdx] && !snapshot.isAltruist(nextIdx)
+					&& pathLength+1 < (isChain ? maxChainSize+1 : maxCycleSize)
+					&& (isChain || snapshot.getVertexID(nextIdx) > snapshot.getVertexID(startIdx))) {
+				inPath[nextIdx] = true;
+				countPaths(snapshot, startIdx, nextIdx, pathLength+1, maxCycleSize, maxChainSize, inPath, counts);
+				inPath[nextIdx] = false;
+			}
+		}
+	}
+
+	@Test
+	public void testStreamingAndPull() {
+
+		Random r = new Random(13579);
+		Pool pool = new SaidmanPoolGenerator(r).generate(50, 5);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+		CycleGenerator cg = new CycleGenerator(pool);
+		final List<Cycle> expected = cg.generateCyclesAndChains(3, 3, true);
+		assertTrue(expected.size() > 100);
+
+		// Push: same cycles in the same order; membership can be built on the fly
+		final List<Cycle> pushed = new ArrayList<Cycle>();
+		assertTrue(cg.generateCyclesAndChains(3, 3, true, new CycleSink() {
+			@Override
+			public boolean accept(Cycle cycle) {
+				pushed.add(cycle);
+				return true;
+			}
+		}));
+		assertSameCycles(expected, pushed);
+
+		CycleMembership streamed = new CycleMembership(pool);
+		assertTrue(cg.generateCyclesAndChains(3, 3, true, streamed));
+		CycleMembership fromList = new CycleMembership(pool, expected);
+		assertEquals(expected.size(), streamed.getNumCycles());
+		for(Vertex v : pool.vertexSet()) {
+			assertEquals(fromList.getMembershipSet(v), streamed.getMembershipSet(v));
+		}
+
+		// Early termination
+		final int budget = 17;
+		final List<Cycle> firstFew = new ArrayList<Cycle>();
+		assertFalse(cg.generateCyclesAndChains(3, 3, true, new CycleSink() {
+			@Override
+			public boolean accept(Cycle cycle) {
+				firstFew.add(cycle);
+				return firstFew.size() < budget;
+			}
+		}));
+		assertSameCycles(expected.subList(0, budget), firstFew);
+
+		// Pull, with a split: front part then split-off part is enumeration order
+		CycleSpliterator front = cg.spliterator(3, 3, true);
+		List<Cycle> pulled = new ArrayList<Cycle>();
+		for(int i=0; i<5 && front.hasNext(); i++) {
+			pulled.add(front.next());
+		}
+		CycleSpliterator back = front.trySplit();
+		assertNotNull(back);
+		while(front.hasNext()) {
+			pulled.add(front.next());
+		}
+		final List<Cycle> rest = new ArrayList<Cycle>();
+		assertTrue(back.drainTo(new CycleSink() {
+			@Override
+			public boolean accept(Cycle cycle) {
+				rest.add(cycle);
+				return true;
+			}
+		}));
+		assertFalse(back.hasNext());
+		pulled.addAll(rest);
+		assertSameCycles(expected, pulled);
+	}
+
+	@Test
+	public void testMembershipIndex() {
+
+		Random r = new Random(86420);
+		Pool pool = new SaidmanPoolGenerator(r).generate(60, 6);
+		CycleGenerator cg = new CycleGenerator(pool);
+		List<Cycle> cycles = cg.generateCyclesAndChains(3, 4, false);
+		CycleStore store = cg.generateCycleStore(3, 4, false);
+
+		// Built in one go, from a store on any number of threads, or a cycle at a time with
+		// reads in between, every vertex gets exactly its cycles' columns in increasing order
+		CycleMembership streamed = new CycleMembership(pool);
+		for(int cIdx=0; cIdx<cycles.size(); cIdx++) {
+			assertEquals(cIdx, streamed.addCycle(cycles.get(cIdx)));
+			if(cIdx % 97 == 0) {
+				streamed.getMembershipSet(pool.vertexSet().iterator().next());
+			}
+		}
+		List<CycleMembership> memberships = new ArrayList<CycleMembership>();
+		memberships.add(new CycleMembership(pool, cycles));
+		memberships.add(new CycleMembership(pool, store));
+		memberships.add(new CycleMembership(pool, store, 3));
+		memberships.add(new CycleMembership(pool, store, 0));
+		memberships.add(streamed);
+		for(CycleMembership membership : memberships) {
+			assertEquals(cycles.size(), membership.getNumCycles());
+			assertEquals(pool.vertexSet().size(), membership.getNumVertices());
+			for(Vertex v : pool.vertexSet()) {
+				List<Integer> expected = new ArrayList<Integer>();
+				for(int cIdx=0; cIdx<cycles.size(); cIdx++) {
+					if(Cycle.getConstituentVertices(cycles.get(cIdx), pool).contains(v)) {
+						expected.add(cIdx);
+					}
+				}
+				int vIdx = membership.indexOf(v);
+				assertEquals(v, membership.getVertex(vIdx));
+				List<Integer> actual = new ArrayList<Integer>();
+				for(int pos=membership.getStart(vIdx); pos<membership.getEnd(vIdx); pos++) {
+					actual.add(membership.getColumnAt(pos));
+				}
+				assertEquals(expected, actual);
+				assertEquals(expected.size(), membership.getNumMemberships(v));
+				assertEquals(new HashSet<Integer>(expected), membership.getMembershipSet(v));
+				assertEquals(expected, new ArrayList<Integer>(membership.getMembershipSet(v)));
+			}
+		}
+		assertEquals(-1, memberships.get(0).indexOf(new VertexPair(-1, BloodType.O, BloodType.O, false, 0.0, true)));
+	}
+
+	@Test
+	public void testMembershipBase() {
+
+		Random r = new Random(13579);
+		Pool pool = new SaidmanPoolGenerator(r).generate(40, 5);
+		List<Cycle> cycles = new CycleGenerator(pool).generateCyclesAndChains(3, 0, false);
+		List<Cycle> chains = new CycleGenerator(pool).generateCyclesAndChains(0, 4, false);
+		assertTrue(cycles.size() > 0 && chains.size() > 10);
+
+		// A copy shares the cycles as its base; appended chains never show up in the original
+		CycleMembership original = new CycleMembership(pool, cycles);
+		CycleMembership overlay = new CycleMembership(original);
+		CycleMembership frozen = new CycleMembership(pool, cycles);
+		frozen.freezeBase();
+		for(CycleMembership membership : new CycleMembership[] {overlay, frozen}) {
+			assertEquals(cycles.size(), membership.getNumBaseCycles());
+			for(int round=0; round<3; round++) {
+				membership.resetToBase();
+				List<Cycle> all = new ArrayList<Cycle>(cycles);
+				for(Cycle chain : chains) {
+					if(r.nextInt(3) == round) {
+						assertEquals(all.size(), membership.addCycle(chain));
+						all.add(chain);
+					}
+				}
+				CycleMembership expected = new CycleMembership(pool, all);
+				assertEquals(all.size(), membership.getNumCycles());
+				for(Vertex v : pool.vertexSet()) {
+					assertEquals(expected.getMembershipSet(v), membership.getMembershipSet(v));
+				}
+			}
+		}
+		CycleMembership expected = new CycleMembership(pool, cycles);
+		assertEquals(cycles.size(), original.getNumCycles());
+		for(Vertex v : pool.vertexSet()) {
+			assertEquals(expected.getMembershipSet(v), original.getMembershipSet(v));
+		}
+
+		// Never frozen: reset empties it
+		expected.resetToBase();
+		assertEquals(0, expected.getNumCycles());
+		assertEquals(0, expected.getNumMemberships(pool.vertexSet().iterator().next()));
+	}
+
+	@Test
+	public void testCycleStore() {
+
+		Random r = new Random(24680);
+		Pool pool = new SaidmanPoolGenerator(r).generate(50, 5);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+		CycleGenerator cg = new CycleGenerator(pool);
+		List<Cycle> expected = cg.generateCyclesAndChains(3, 3, true);
+		CycleStore store = cg.generateCycleStore(3, 3, true);
+		assertEquals(expected.size(), store.getNumCycles());
+
+		// Materialized columns are the generated cycles, edge for edge
+		assertSameCycles(expected, store.asList());
+		CycleStore packed = CycleStore.fromCycles(store.getSnapshot(), pool, expected);
+		assertSameCycles(expected, packed.asList());
+
+		CycleMembership fromList = new CycleMembership(pool, expected);
+		CycleMembership fromStore = new CycleMembership(pool, store);
+		assertEquals(fromList.getNumCycles(), fromStore.getNumCycles());
+		for(Vertex v : pool.vertexSet()) {
+			assertEquals(fromList.getMembershipSet(v), fromStore.getMembershipSet(v));
+		}
+
+		PoolSnapshot snapshot = store.getSnapshot();
+		for(int col=0; col<store.getNumCycles(); col++) {
+			assertEquals(Cycle.isAChain(expected.get(col), pool), store.isChain(col));
+			assertEquals(expected.get(col).getEdges().size(), store.getLength(col));
+		}
+
+		// Vertex masks agree with scanning the vertex lists
+		int numChecked = Math.min(200, store.getNumCycles());
+		boolean[] scanContains = new boolean[numChecked * snapshot.getNumVertices()];
+		boolean[] scanShares = new boolean[numChecked * numChecked];
+		for(int a=0; a<numChecked; a++) {
+			for(int vIdx=0; vIdx<snapshot.getNumVertices(); vIdx++) {
+				scanContains[a*snapshot.getNumVertices() + vIdx] = store.containsVertex(a, vIdx);
+			}
+			for(int b=0; b<numChecked; b++) {
+				scanShares[a*numChecked + b] = store.sharesVertex(a, b);
+			}
+		}
+		store.buildVertexMasks();
+		assertTrue(store.hasVertexMasks());
+		for(int a=0; a<numChecked; a++) {
+			for(int vIdx=0; vIdx<snapshot.getNumVertices(); vIdx++) {
+				assertEquals(scanContains[a*snapshot.getNumVertices() + vIdx], store.containsVertex(a, vIdx));
+			}
+			for(int b=0; b<numChecked; b++) {
+				assertEquals(scanShares[a*numChecked + b], store.sharesVertex(a, b));
+			}
+			assertTrue(store.sharesVertex(a, a));
+		}
+
+		// Chains closed by implicit altruist edges come back out of the store too
+		PoolGenerator implicitGen = new SaidmanPoolGenerator(new Random(98765));
+		implicitGen.setImplicitAltruistEdges(true);
+		Pool implicitPool = implicitGen.generate(30, 3);
+		CycleGenerator implicitCG = new CycleGenerator(implicitPool);
+		List<Cycle> implicitCycles = implicitCG.generateCyclesAndChains(3, 4);
+		List<Cycle> implicitStored = implicitCG.generateCycleStore(3, 4, false).asList();
+		assertEquals(implicitCycles.size(), implicitStored.size());
+		for(int cIdx=0; cIdx<implicitCycles.size(); cIdx++) {
+			assertEquals(implicitCycles.get(cIdx).getWeight(), implicitStored.get(cIdx).getWeight(), 0.0);
+			assertEquals(Cycle.getConstituentVertices(implicitCycles.get(cIdx), implicitPool), Cycle.getConstituentVertices(implicitStored.get(cIdx), implicitPool));
+		}
+	}
+
+	@Test
+	public void testChainTrie() {
+
+		Random r = new Random(4242);
+		Pool pool = new SaidmanPoolGenerator(r).generate(40, 4);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+		CycleGenerator cg = new CycleGenerator(pool);
+
+		// Same chains, edges and weights as the List version; far fewer nodes than chain edges
+		List<Cycle> expected = cg.generateCyclesAndChains(0, 4, true, true, 0.3);
+		ChainTrie trie = cg.generateChainTrie(4, true, true, 0.3);
+		assertSameCycles(expected, trie.asList());
+		int totalLength = 0;
+		for(int chain=0; chain<trie.getNumChains(); chain++) {
+			assertEquals(expected.get(chain).getEdges().size(), trie.getLength(chain));
+			totalLength += trie.getLength(chain) - 1;
+		}
+		assertTrue(trie.getNumNodes() <= trie.getNumChains());
+		assertTrue(3*trie.getNumNodes() < totalLength);
+
+		// Reweighing with the snapshot's own probabilities changes nothing ...
+		PoolSnapshot snapshot = trie.getSnapshot();
+		double[] failureProbs = new double[snapshot.getNumEdges()];
+		for(int eIdx=0; eIdx<failureProbs.length; eIdx++) {
+			failureProbs[eIdx] = snapshot.getEdgeFailureProbability(eIdx);
+		}
+		trie.reweigh(failureProbs);
+		assertSameCycles(expected, trie.asList());
+
+		// ... and reweighing for new probabilities matches regenerating with them
+		for(int eIdx=0; eIdx<failureProbs.length; eIdx++) {
+			failureProbs[eIdx] = 0.5 * failureProbs[eIdx];
+			snapshot.getEdge(eIdx).setFailureProbability(failureProbs[eIdx]);
+		}
+		trie.reweigh(failureProbs);
+		List<Cycle> reweighed = cg.generateCyclesAndChains(0, 4, true, true, 0.3);
+		assertSameCycles(reweighed, trie.asList());
+
+		// Implicit altruist edges close chains too
+		pool.setImplicitAltruistEdges(true);
+		assertSameCycles(cg.generateCyclesAndChains(0, 3, false), cg.generateChainTrie(3, false).asList());
+
+		// A trie trimmed while empty can still grow
+		PoolSnapshot implicitSnapshot = new PoolSnapshot(pool);
+		ChainTrie empty = new ChainTrie(implicitSnapshot, 3, false, false, 0.5);
+		empty.trimToSize();
+		new CycleEnumerator(implicitSnapshot, 0, 3, false, false, 0.5).enumerateAll(empty);
+		assertSameCycles(cg.generateCyclesAndChains(0, 3, false), empty.asList());
+	}
+
+	@Test
+	public void testCountAndBudget() {
+
+		Random r = new Random(31337);
+		Pool pool = new SaidmanPoolGenerator(r).generate(60, 4);
+		CycleGenerator cg = new CycleGenerator(pool);
+		List<Cycle> all = cg.generateCyclesAndChains(3, 4, false);
+
+		// Exact counts by length, without generating anything
+		CycleCounts counts = cg.countCyclesAndChains(3, 4);
+		assertTrue(counts.isCompleted());
+		assertFalse(counts.isEstimate());
+		assertEquals(all.size(), counts.getNumColumns());
+		long[] cycleCounts = new long[6], chainCounts = new long[6];
+		for(Cycle c : all) {
+			if(Cycle.isAChain(c, pool)) {
+				chainCounts[c.getEdges().size()]++;
+			} else {
+				cycleCounts[c.getEdges().size()]++;
+			}
+		}
+		for(int numEdges=0; numEdges<6; numEdges++) {
+			assertEquals(cycleCounts[numEdges], counts.getNumCycles(numEdges));
+			assertEquals(chainCounts[numEdges], counts.getNumChains(numEdges));
+		}
+		assertEquals(5, counts.getMaxLength());
+
+		// Column budget: a prefix of the full enumeration, flagged as incomplete
+		List<Cycle> some = new ArrayList<Cycle>();
+		CycleCounts budgeted = cg.generateCyclesAndChains(3, 4, false, false, 0.5, 100, Long.MAX_VALUE, some);
+		assertFalse(budgeted.isCompleted());
+		assertFalse(budgeted.isStoppedOnTime());
+		assertEquals(100, budgeted.getNumColumns());
+		assertSameCycles(all.subList(0, 100), some);
+		assertTrue(cg.countCyclesAndChains(3, 4, all.size(), Long.MAX_VALUE).isCompleted());
+		assertFalse(cg.countCyclesAndChains(3, 4, all.size()-1, Long.MAX_VALUE).isCompleted());
+
+		// Time budget
+		assertTrue(all.size() > 2048);
+		CycleCounts timed = cg.countCyclesAndChains(3, 4, Long.MAX_VALUE, 0);
+		assertFalse(timed.isCompleted());
+		assertTrue(timed.isStoppedOnTime());
+		assertTrue(timed.getNumColumns() < all.size());
+
+		// Sampling every first edge is exact; sampling some is roughly right
+		CycleCounts full = cg.estimateCyclesAndChains(3, 4, 1.0, new Random(1));
+		assertEquals(all.size(), full.getNumColumns());
+		assertEquals(all.size(), full.estimateNumColumns(), 0.0);
+		CycleCounts sampled = cg.estimateCyclesAndChains(3, 4, 0.5, new Random(2));
+		assertTrue(sampled.isEstimate());
+		assertEquals(2.0, sampled.getScale(), 0.0);
+		assertEquals(all.size(), sampled.estimateNumColumns(), 0.3*all.size());
+	}
+
+	@Test
+	public void testVertexCaps() {
+
+		// Real-data vertices whose donors each cap the cycles and chains they'll join
+		Random r = new Random(24601);
+		Pool pool = new Pool(Edge.class);
+		List<Vertex> vertices = new ArrayList<Vertex>();
+		for(int vID=0; vID<36; vID++) {
+			Set<UNOSDonor> donors = new HashSet<UNOSDonor>();
+			for(int dIdx=0; dIdx < (vID % 5 == 0 ? 2 : 1); dIdx++) {
+				UNOSDonor d = new UNOSDonor("D" + vID + "-" + dIdx);
+				d.maxPairsCycle = 2 + r.nextInt(3);
+				d.maxPairsChain = r.nextInt(6);
+				donors.add(d);
+			}
+			Vertex v;
+			if(vID < 32) {
+				v = new VertexPair(vID, UNOSPair.makeUNOSPair(donors, new UNOSRecipient("R" + vID)));
+				pool.addPair((VertexPair) v);
+			} else {
+				v = new VertexAltruist(vID, UNOSPair.makeUNOSAltruist(donors.iterator().next()));
+				pool.addAltruist((VertexAltruist) v);
+			}
+			vertices.add(v);
+		}
+		for(Vertex src : vertices) {
+			for(Vertex tgt : vertices) {
+				if(src != tgt && !(src.isAltruist() && tgt.isAltruist()) && r.nextDouble() < 0.15) {
+					pool.setEdgeWeight(pool.addEdge(src, tgt), 1.0 + r.nextDouble());
+				}
+			}
+		}
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+		assertTrue(new PoolSnapshot(pool).hasVertexLengthCaps());
+
+		// Honoring caps during the search == generating everything, then filtering
+		CycleGenerator cg = new CycleGenerator(pool);
+		List<Cycle> all = cg.generateCyclesAndChains(4, 5, true);
+		List<Cycle> expected = new ArrayList<Cycle>();
+		for(Cycle c : all) {
+			boolean isChain = Cycle.isAChain(c, pool);
+			int numPairs = c.getEdges().size() - (isChain ? 1 : 0);
+			boolean allowed = true;
+			for(Vertex v : Cycle.getConstituentVertices(c, pool)) {
+				for(UNOSDonor d : v.getUnderlyingPair().getDonors()) {
+					allowed &= numPairs <= (isChain ? d.maxPairsChain : d.maxPairsCycle);
+				}
+			}
+			if(allowed) {
+				expected.add(c);
+			}
+		}
+		assertTrue(expected.size() > 0 && expected.size() < all.size());
+
+		cg.setUsingVertexCaps(true);
+		assertSameCycles(expected, cg.generateCyclesAndChains(4, 5, true));
+		assertEquals(expected.size(), cg.countCyclesAndChains(4, 5).getNumColumns());
+		cg.setMaxCPUThreads(3);
+		assertSameCycles(expected, cg.generateCyclesAndChains(4, 5, true));
+	}
+
+	@Test
+	public void testCycleCache() throws IOException {
+
+		Random r = new Random(31337);
+		Pool pool = new SaidmanPoolGenerator(r).generate(40, 4);
+		pool.setImplicitAltruistEdges(true);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+		String fingerprint = pool.getStructuralFingerprint();
+
+		File dir = File.createTempFile("cycles", "");
+		assertTrue(dir.delete());
+		CycleCache cache = new CycleCache(dir);
+		try {
+			// First generation enumerates and saves
+			CycleGenerator cg = new CycleGenerator(pool);
+			cg.setCycleCache(cache);
+			List<Cycle> first = cg.generateCyclesAndChains(3, 4, true);
+			assertEquals(0, cache.getNumHits());
+			assertEquals(1, cache.getNumMisses());
+			assertTrue(cache.contains(new PoolSnapshot(pool), 3, 4, false));
+
+			// New failure probabilities don't change the structure, so later generations only reweight
+			FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.CONSTANT, r);
+			assertEquals(fingerprint, pool.getStructuralFingerprint());
+			assertSameCycles(new CycleGenerator(pool).generateCyclesAndChains(3, 4, true), cg.generateCyclesAndChains(3, 4, true));
+			assertSameCycles(new CycleGenerator(pool).generateCyclesAndChains(3, 4, true, true, 0.3), cg.generateCyclesAndChains(3, 4, true, true, 0.3));
+			assertEquals(2, cache.getNumHits());
+			assertEquals(first.size(), cg.generateCycleStore(3, 4, false).getNumCycles());
+			CycleStore expectedStore = new CycleGenerator(pool).generateCycleStore(3, 4, true, true, 0.3);
+			CycleStore cachedStore = cg.generateCycleStore(3, 4, true, true, 0.3);
+			assertSameCycles(expectedStore.asList(), cachedStore.asList());
+			assertEquals(4, cache.getNumHits());
+
+			// Different caps are a different entry
+			cg.generateCyclesAndChains(3, 5, true);
+			assertEquals(2, cache.getNumMisses());
+
+			// A corrupt file is a miss, not an error
+			File file = cache.getFile(CycleCache.getKey(new PoolSnapshot(pool), 3, 4, false));
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(new byte[64]);
+			out.close();
+			assertSameCycles(new CycleGenerator(pool).generateCyclesAndChains(3, 4, true), cg.generateCyclesAndChains(3, 4, true));
+			assertEquals(3, cache.getNumMisses());
+
+			// Structural changes do change the fingerprint
+			VertexPair src = pool.getPairs().first();
+			for(VertexPair tgt : pool.getPairs()) {
+				if(src != tgt && !pool.containsEdge(src, tgt)) {
+					pool.addEdge(src, tgt);
+					break;
+				}
+			}
+			assertFalse(fingerprint.equals(pool.getStructuralFingerprint()));
+			assertFalse(cache.contains(new PoolSnapshot(pool), 3, 4, false));
+		} finally {
+			for(File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static void assertSameCycles(List<Cycle> expected, List<Cycle> actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int cIdx=0; cIdx<expected.size(); cIdx++) {
+			assertEquals(expected.get(cIdx).getEdges(), actual.get(cIdx).getEdges());
+			assertEquals(expected.get(cIdx).getWeight(), actual.get(cIdx).getWeight(), 0.0);
+		}
+	}
 }
@@ -0,0 +1,199 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.VertexAltruist;
+import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
+import edu.cmu.cs.dickerson.kpd.structure.alg.IncrementalCycleIndex;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSDonor;
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSPair;
+import edu.cmu.cs.dickerson.kpd.structure.real.UNOSRecipient;
+
+public class IncrementalCycleIndexTest {
+
+	@Test
+	public void testMatchesFullGeneration() {
+		runPeriods(false);
+	}
+
+	@Test
+	public void testMatchesFullGenerationImplicitAltruistEdges() {
+		runPeriods(true);
+	}
+
+	@Test
+	public void testMatchesFullGenerationVertexCaps() {
+
+		// Real-data vertices whose donors each cap the cycles and chains they'll join
+		Random r = new Random(4242);
+		Pool pool = new Pool(Edge.class);
+		List<Vertex> vertices = new ArrayList<Vertex>();
+		for(int vID=0; vID<30; vID++) {
+			vertices.add(addCappedVertex(pool, vID, vID >= 26, r));
+		}
+		addRandomEdges(pool, vertices, vertices, r);
+
+		IncrementalCycleIndex index = new IncrementalCycleIndex(pool, 4, 4, false, false, 0.5, true);
+		assertTrue(index.isUsingVertexCaps());
+		assertSameCappedCycles(pool, index.getCycles());
+		int numUncapped = new CycleGenerator(pool).generateCyclesAndChains(4, 4, false).size();
+		assertTrue(index.getNumCycles() > 0 && index.getNumCycles() < numUncapped);
+
+		int nextID = vertices.size();
+		for(int period=0; period<4; period++) {
+			List<Vertex> departing = new ArrayList<Vertex>();
+			for(Vertex v : pool.vertexSet()) {
+				if(r.nextDouble() < 0.1) { departing.add(v); }
+			}
+			pool.removeAllVertices(departing);
+
+			List<Vertex> arriving = new ArrayList<Vertex>();
+			for(int aIdx=0; aIdx<5; aIdx++) {
+				arriving.add(addCappedVertex(pool, nextID++, aIdx == 0, r));
+			}
+			List<Vertex> all = new ArrayList<Vertex>(pool.vertexSet());
+			addRandomEdges(pool, arriving, all, r);
+			addRandomEdges(pool, all, arriving, r);
+
+			index.sync();
+			assertSameCappedCycles(pool, index.getCycles());
+		}
+	}
+
+	private static Vertex addCappedVertex(Pool pool, int vID, boolean isAltruist, Random r) {
+		Set<UNOSDonor> donors = new HashSet<UNOSDonor>();
+		UNOSDonor d = new UNOSDonor("D" + vID);
+		d.maxPairsCycle = 2 + r.nextInt(3);
+		d.maxPairsChain = r.nextInt(5);
+		donors.add(d);
+		if(isAltruist) {
+			VertexAltruist alt = new VertexAltruist(vID, UNOSPair.makeUNOSAltruist(d));
+			pool.addAltruist(alt);
+			return alt;
+		}
+		VertexPair vp = new VertexPair(vID, UNOSPair.makeUNOSPair(donors, new UNOSRecipient("R" + vID)));
+		pool.addPair(vp);
+		return vp;
+	}
+
+	private static void addRandomEdges(Pool pool, List<Vertex> sources, List<Vertex> targets, Random r) {
+		for(Vertex src : sources) {
+			for(Vertex tgt : targets) {
+				if(src != tgt && !(src.isAltruist() && tgt.isAltruist()) && !pool.containsEdge(src, tgt) && r.nextDouble() < 0.15) {
+					pool.setEdgeWeight(pool.addEdge(src, tgt), 1.0);
+				}
+			}
+		}
+	}
+
+	private static void assertSameCappedCycles(Pool pool, List<Cycle> actual) {
+		CycleGenerator cg = new CycleGenerator(pool);
+		cg.setUsingVertexCaps(true);
+		assertEquals(keys(pool, cg.generateCyclesAndChains(4, 4, false)), keys(pool, actual));
+	}
+
+	private void runPeriods(boolean implicitAltruistEdges) {
+
+		Random r = new Random(8675309);
+		SaidmanPoolGenerator gen = new SaidmanPoolGenerator(r);
+		gen.setImplicitAltruistEdges(implicitAltruistEdges);
+		Pool pool = gen.generate(40, 3);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+
+		IncrementalCycleIndex index = new IncrementalCycleIndex(pool, 3, 3, true);
+		assertSameCycles(pool, index.getCycles());
+
+		for(int period=0; period<6; period++) {
+
+			List<Cycle> before = new ArrayList<Cycle>(index.getCycles());
+
+			// Arrivals
+			gen.addVerticesToPool(pool, 6, period % 2);
+
+			// Departures
+			List<Vertex> departing = new ArrayList<Vertex>();
+			for(Vertex v : pool.vertexSet()) {
+				if(r.nextDouble() < 0.1) { departing.add(v); }
+			}
+			pool.removeAllVertices(departing);
+
+			// Edge changes between older vertices, including a reweighting that is undone
+			List<VertexPair> pairs = new ArrayList<VertexPair>(pool.getPairs());
+			Collections.shuffle(pairs, r);
+			Edge e = pool.getEdge(pairs.get(0), pairs.get(1));
+			if(null == e) {
+				e = pool.addEdge(pairs.get(0), pairs.get(1));
+				pool.setEdgeWeight(e, 1.0);
+			} else {
+				pool.removeEdge(e);
+			}
+			for(Edge reweighted : pool.outgoingEdgesOf(pairs.get(2))) {
+				double w = pool.getEdgeWeight(reweighted);
+				pool.setEdgeWeight(reweighted, w + 1.0);
+				pool.setEdgeWeight(reweighted, w);
+				break;
+			}
+			for(Edge reweighted : pool.outgoingEdgesOf(pairs.get(3))) {
+				pool.setEdgeWeight(reweighted, pool.getEdgeWeight(reweighted) + 0.5);
+			}
+
+			int[] remap = index.sync();
+			assertTrue(index.isSynced());
+			assertSameCycles(pool, index.getCycles());
+
+			// Surviving columns moved where the remapping says, in the same relative order
+			assertEquals(before.size(), remap.length);
+			int lastNewCol = -1;
+			int numSurvived = 0;
+			for(int oldCol=0; oldCol<remap.length; oldCol++) {
+				if(remap[oldCol] < 0) { continue; }
+				assertSame(before.get(oldCol), index.getCycles().get(remap[oldCol]));
+				assertTrue(remap[oldCol] > lastNewCol);
+				lastNewCol = remap[oldCol];
+				numSurvived++;
+			}
+			assertEquals(before.size() - index.getNumDroppedLastSync(), numSurvived);
+			assertEquals(index.getNumCycles(), numSurvived + index.getNumAddedLastSync());
+		}
+	}
+
+	/**
+	 * Same cycles (edge for edge) and weights as a fresh generation, in any order
+	 */
+	private static void assertSameCycles(Pool pool, List<Cycle> actual) {
+		List<Cycle> expected = new CycleGenerator(pool).generateCyclesAndChains(3, 3, true);
+		assertEquals(keys(pool, expected), keys(pool, actual));
+	}
+
+	private static List<String> keys(Pool pool, List<Cycle> cycles) {
+		List<String> keys = new ArrayList<String>();
+		for(Cycle c : cycles) {
+			StringBuilder sb = new StringBuilder();
+			for(Edge e : c.getEdges()) {
+				sb.append(pool.getEdgeSource(e).getID()).append('>').append(pool.getEdgeTarget(e).getID()).append(',');
+			}
+			sb.append(Double.doubleToLongBits(c.getWeight()));
+			keys.add(sb.toString());
+		}
+		Collections.sort(keys);
+		return keys;
+	}
+}
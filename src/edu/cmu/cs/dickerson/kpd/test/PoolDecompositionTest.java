@@ -0,0 +1,137 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.solver.DecompositionSolver;
+import edu.cmu.cs.dickerson.kpd.solver.approx.CycleShufflePacker;
+import edu.cmu.cs.dickerson.kpd.solver.exception.SolverException;
+import edu.cmu.cs.dickerson.kpd.solver.solution.Solution;
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleMembership;
+import edu.cmu.cs.dickerson.kpd.structure.alg.PoolDecomposition;
+import edu.cmu.cs.dickerson.kpd.structure.alg.StronglyConnectedComponents;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SparseUNOSSaidmanPoolGenerator;
+
+public class PoolDecompositionTest {
+
+	/**
+	 * Generated pools are usually one giant component, so cut every edge between
+	 * vertices in different ID classes mod 5 to get a pool with several components
+	 */
+	private Pool makeBlockPool(Random r) {
+		Pool pool = new SaidmanPoolGenerator(r).generate(100, 10);
+		List<Edge> crossEdges = new ArrayList<Edge>();
+		for(Edge e : pool.edgeSet()) {
+			if(pool.getEdgeSource(e).getID() % 5 != pool.getEdgeTarget(e).getID() % 5) {
+				crossEdges.add(e);
+			}
+		}
+		pool.removeAllEdges(crossEdges);
+		return pool;
+	}
+
+	@Test
+	public void testSCCMatchesReachability() {
+
+		Pool pool = new SparseUNOSSaidmanPoolGenerator(new Random(31337)).generate(80, 0);
+		PoolSnapshot snapshot = new PoolSnapshot(pool);
+		StronglyConnectedComponents scc = new StronglyConnectedComponents(snapshot, true);
+		int n = snapshot.getNumVertices();
+
+		// Brute-force transitive closure
+		boolean[][] reach = new boolean[n][n];
+		for(int v=0; v<n; v++) {
+			reach[v][v] = true;
+			for(int e=snapshot.getOutStart(v); e<snapshot.getOutEnd(v); e++) {
+				reach[v][snapshot.getEdgeTarget(e)] = true;
+			}
+		}
+		for(int k=0; k<n; k++) {
+			for(int i=0; i<n; i++) {
+				if(!reach[i][k]) { continue; }
+				for(int j=0; j<n; j++) {
+					if(reach[k][j]) { reach[i][j] = true; }
+				}
+			}
+		}
+
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++) {
+				boolean sameSCC = scc.getComponent(i) == scc.getComponent(j);
+				assertEquals(reach[i][j] && reach[j][i], sameSCC);
+			}
+		}
+		int totalSize = 0;
+		for(int c=0; c<scc.getNumComponents(); c++) {
+			totalSize += scc.getComponentSize(c);
+		}
+		assertEquals(n, totalSize);
+	}
+
+	@Test
+	public void testComponentsPreserveCyclesAndChains() {
+
+		Pool pool = makeBlockPool(new Random(8675309));
+		int maxCycleSize = 3, maxChainSize = 3;
+
+		Set<List<Edge>> expected = new HashSet<List<Edge>>();
+		for(Cycle c : new CycleGenerator(pool).generateCyclesAndChains(maxCycleSize, maxChainSize)) {
+			expected.add(c.getEdges());
+		}
+
+		// Every cycle and chain must show up in exactly one component, and nowhere else
+		PoolDecomposition decomp = new PoolDecomposition(pool, maxCycleSize, maxChainSize);
+		assertTrue(decomp.getNumComponents() >= 5);
+		Set<List<Edge>> found = new HashSet<List<Edge>>();
+		Set<Vertex> seen = new HashSet<Vertex>();
+		for(List<Vertex> component : decomp.getComponents()) {
+			for(Vertex v : component) {
+				assertTrue(seen.add(v));  // components are disjoint
+			}
+			Pool subPool = pool.makeSubPool(new HashSet<Vertex>(component));
+			for(Cycle c : new CycleGenerator(subPool).generateCyclesAndChains(maxCycleSize, maxChainSize)) {
+				assertTrue(found.add(c.getEdges()));
+			}
+		}
+		assertEquals(expected, found);
+	}
+
+	@Test
+	public void testDecompositionSolver() throws SolverException {
+
+		Pool pool = makeBlockPool(new Random(2718));
+		DecompositionSolver solver = new DecompositionSolver(pool, 3, 3, false);
+		solver.setMaxCPUThreads(4);
+		Solution sol = solver.solve(new DecompositionSolver.ComponentSolver() {
+			@Override
+			public Solution solve(Pool componentPool, List<Cycle> cycles, CycleMembership membership) {
+				return new CycleShufflePacker(componentPool, cycles).pack();
+			}
+		});
+
+		// Merged matching is vertex-disjoint, and its objective is the sum of its parts
+		Set<Vertex> matched = new HashSet<Vertex>();
+		double objective = 0.0;
+		for(Cycle c : sol.getMatching()) {
+			for(Vertex v : Cycle.getConstituentVertices(c, pool)) {
+				assertTrue(matched.add(v));
+			}
+			objective += c.getWeight();
+		}
+		assertEquals(objective, sol.getObjectiveValue(), 1e-6);
+	}
+}
@@ -0,0 +1,81 @@
+package edu.cmu.cs.dickerson.kpd.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
+import edu.cmu.cs.dickerson.kpd.structure.Edge;
+import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+import edu.cmu.cs.dickerson.kpd.structure.Vertex;
+import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
+import edu.cmu.cs.dickerson.kpd.structure.generator.PoolGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
+
+public class PoolSnapshotTest {
+
+	@Test
+	public void testMatchesPool() {
+
+		Random r = new Random(12345);
+		PoolGenerator gen = new SaidmanPoolGenerator(r);
+		Pool pool = gen.generate(40, 4);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+
+		PoolSnapshot snapshot = new PoolSnapshot(pool);
+		assertEquals(pool.vertexSet().size(), snapshot.getNumVertices());
+		assertEquals(pool.edgeSet().size(), snapshot.getNumEdges());
+
+		int vIdx = 0;
+		for(Vertex v : pool.vertexSet()) {
+			// Dense indices follow the Pool's iteration order
+			assertEquals(v, snapshot.getVertex(vIdx));
+			assertEquals(vIdx, snapshot.indexOf(v));
+			assertEquals(v.getID().intValue(), snapshot.getVertexID(vIdx));
+			assertEquals(v.isAltruist(), snapshot.isAltruist(vIdx));
+			assertEquals(pool.outDegreeOf(v), snapshot.getOutDegree(vIdx));
+			assertEquals(pool.inDegreeOf(v), snapshot.getInDegree(vIdx));
+
+			int eIdx = snapshot.getOutStart(vIdx);
+			for(Edge e : pool.outgoingEdgesOf(v)) {
+				assertSame(e, snapshot.getEdge(eIdx));
+				assertEquals(eIdx, snapshot.indexOf(e));
+				assertEquals(vIdx, snapshot.getEdgeSource(eIdx));
+				assertEquals(pool.getEdgeTarget(e), snapshot.getVertex(snapshot.getEdgeTarget(eIdx)));
+				assertEquals(pool.getEdgeWeight(e), snapshot.getEdgeWeight(eIdx), 1e-9);
+				assertEquals(e.getFailureProbability(), snapshot.getEdgeFailureProbability(eIdx), 1e-9);
+				assertEquals(eIdx, snapshot.findEdge(vIdx, snapshot.getEdgeTarget(eIdx)));
+				eIdx++;
+			}
+			assertEquals(snapshot.getOutEnd(vIdx), eIdx);
+
+			for(int inPos=snapshot.getInStart(vIdx); inPos<snapshot.getInEnd(vIdx); inPos++) {
+				assertEquals(vIdx, snapshot.getEdgeTarget(snapshot.getInEdge(inPos)));
+			}
+			vIdx++;
+		}
+	}
+
+	@Test
+	public void testCycleGeneratorOnSnapshot() {
+
+		Random r = new Random(54321);
+		PoolGenerator gen = new SaidmanPoolGenerator(r);
+		Pool pool = gen.generate(60, 5);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.CONSTANT, r);
+
+		// Enumerating over the Pool and over a fixed snapshot must give identical, identically-ordered results
+		List<Cycle> fromPool = new CycleGenerator(pool).generateCyclesAndChains(3, 4, true);
+		List<Cycle> fromSnapshot = new CycleGenerator(new PoolSnapshot(pool)).generateCyclesAndChains(3, 4, true);
+		assertEquals(fromPool.size(), fromSnapshot.size());
+		for(int cIdx=0; cIdx<fromPool.size(); cIdx++) {
+			assertEquals(fromPool.get(cIdx).getEdges(), fromSnapshot.get(cIdx).getEdges());
+			assertEquals(fromPool.get(cIdx).getWeight(), fromSnapshot.get(cIdx).getWeight(), 1e-9);
+		}
+	}
+}
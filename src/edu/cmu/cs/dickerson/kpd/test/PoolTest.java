@@ -2,7 +2,11 @@ package edu.cmu.cs.dickerson.kpd.test;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
@@ -12,16 +16,23 @@ import org.jgrapht.generate.CompleteGraphGenerator;
 import org.jgrapht.generate.GraphGenerator;
 import org.junit.Test;
 
+import edu.cmu.cs.dickerson.kpd.structure.Cycle;
 import edu.cmu.cs.dickerson.kpd.structure.Edge;
 import edu.cmu.cs.dickerson.kpd.structure.Pool;
+import edu.cmu.cs.dickerson.kpd.structure.PoolChangeEvent;
+import edu.cmu.cs.dickerson.kpd.structure.PoolChangeLog;
+import edu.cmu.cs.dickerson.kpd.structure.PoolSnapshot;
+import edu.cmu.cs.dickerson.kpd.structure.PoolVersion;
 import edu.cmu.cs.dickerson.kpd.structure.Vertex;
 import edu.cmu.cs.dickerson.kpd.structure.VertexAltruist;
 import edu.cmu.cs.dickerson.kpd.structure.VertexPair;
 import edu.cmu.cs.dickerson.kpd.structure.alg.CycleGenerator;
+import edu.cmu.cs.dickerson.kpd.structure.alg.FailureProbabilityUtil;
 import edu.cmu.cs.dickerson.kpd.structure.generator.PoolGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.generator.SaidmanPoolGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.generator.UNOSGenerator;
 import edu.cmu.cs.dickerson.kpd.structure.generator.factories.AllMatchVertexPairFactory;
+import edu.cmu.cs.dickerson.kpd.structure.types.BloodType;
 
 public class PoolTest {
 
@@ -99,6 +110,360 @@ public class PoolTest {
 		System.out.println( p.getKTClusters(2, 1).size() );
 	}
 	
+	@Test
+	public void testSubPoolView() {
+
+		Random r = new Random(2468);
+		Pool pool = new SaidmanPoolGenerator(r).generate(50, 5);
+
+		Set<Vertex> subsetV = new HashSet<Vertex>();
+		for(Vertex v : pool.vertexSet()) {
+			if(r.nextBoolean()) { subsetV.add(v); }
+		}
+		Pool subPool = pool.makeSubPool(subsetV);
+		PoolSnapshot view = new PoolSnapshot(pool, subsetV);
+
+		// Induced subgraph: exactly the edges between subset vertices
+		int expectedEdges = 0;
+		for(Edge e : pool.edgeSet()) {
+			if(subsetV.contains(pool.getEdgeSource(e)) && subsetV.contains(pool.getEdgeTarget(e))) { expectedEdges++; }
+		}
+		assertEquals(subsetV.size(), subPool.vertexSet().size());
+		assertEquals(expectedEdges, subPool.edgeSet().size());
+		assertEquals(subsetV.size(), view.getNumVertices());
+		assertEquals(expectedEdges, view.getNumEdges());
+
+		// The view and the copied subpool enumerate identically
+		List<Cycle> fromSubPool = new CycleGenerator(subPool).generateCyclesAndChains(3, 3);
+		List<Cycle> fromView = new CycleGenerator(view).generateCyclesAndChains(3, 3);
+		assertEquals(fromSubPool.size(), fromView.size());
+		for(int cIdx=0; cIdx<fromSubPool.size(); cIdx++) {
+			assertEquals(fromSubPool.get(cIdx).getEdges(), fromView.get(cIdx).getEdges());
+		}
+	}
+
+	@Test
+	public void testChangeEvents() {
+
+		Pool pool = new Pool(Edge.class);
+		PoolChangeLog log = new PoolChangeLog(pool);
+		long startVersion = pool.getVersion();
+
+		VertexPair vp0 = new VertexPair(0, BloodType.O, BloodType.O, false, 0.0, false);
+		VertexPair vp1 = new VertexPair(1, BloodType.O, BloodType.O, false, 0.0, false);
+		pool.addPair(vp0);
+		pool.addPair(vp1);
+		assertFalse(pool.addPair(vp1));  // no change, no event
+		Edge e01 = pool.addEdge(vp0, vp1);
+		Edge e10 = pool.addEdge(vp1, vp0);
+		pool.setEdgeWeight(e01, 1.0);    // default weight is already 1.0, so no event
+		pool.setEdgeWeight(e10, 2.0);
+		pool.setEdgeFailureProbability(e10, 0.5);
+		assertEquals(6, log.size());
+		assertEquals(startVersion + 6, pool.getVersion());
+
+		long midVersion = pool.getVersion();
+		pool.removeVertex(vp0);
+
+		// Removing a vertex reports its incident edges first, then the vertex itself
+		List<PoolChangeEvent> events = log.getEventsSince(midVersion);
+		assertEquals(3, events.size());
+		assertEquals(PoolChangeEvent.Type.EDGE_REMOVED, events.get(0).getType());
+		assertEquals(PoolChangeEvent.Type.EDGE_REMOVED, events.get(1).getType());
+		assertEquals(PoolChangeEvent.Type.VERTEX_REMOVED, events.get(2).getType());
+		assertEquals(vp0, events.get(2).getVertex());
+
+		// Versions strictly increase
+		long lastVersion = -1;
+		for(PoolChangeEvent event : log.getEvents()) {
+			assertTrue(event.getVersion() > lastVersion);
+			lastVersion = event.getVersion();
+		}
+		assertEquals(pool.getVersion(), log.getLastVersion());
+
+		// Weight change events carry old and new values
+		PoolChangeEvent weightEvent = log.getEvents().get(4);
+		assertEquals(PoolChangeEvent.Type.EDGE_WEIGHT_CHANGED, weightEvent.getType());
+		assertEquals(1.0, weightEvent.getOldValue(), 0.0);
+		assertEquals(2.0, weightEvent.getNewValue(), 0.0);
+		assertEquals(vp1, weightEvent.getEdgeSource());
+
+		Set<Vertex> touched = log.getTouchedVerticesSince(midVersion);
+		assertTrue(touched.contains(vp0) && touched.contains(vp1));
+
+		log.discardThrough(midVersion);
+		assertEquals(3, log.size());
+		pool.removePoolChangeListener(log);
+		pool.removeVertex(vp1);
+		assertEquals(3, log.size());
+	}
+
+	@Test
+	public void testImplicitAltruistEdges() {
+
+		Pool pool = new Pool(Edge.class);
+		VertexPair vp0 = new VertexPair(0, BloodType.O, BloodType.O, false, 0.0, false);
+		VertexPair vp1 = new VertexPair(1, BloodType.O, BloodType.O, false, 0.0, false);
+		VertexAltruist alt = new VertexAltruist(2, BloodType.O);
+		pool.addPair(vp0);
+		pool.addPair(vp1);
+		pool.addAltruist(alt);
+		pool.setEdgeWeight(pool.addEdge(alt, vp0), 1.0);
+		pool.setEdgeWeight(pool.addEdge(vp0, vp1), 1.0);
+		pool.setEdgeWeight(pool.addEdge(vp0, alt), 0.0);
+		pool.setEdgeWeight(pool.addEdge(vp1, alt), 0.0);
+		assertEquals(4, pool.edgeSet().size());
+
+		// Going implicit drops the stored dummy edges, but they can still be looked up
+		pool.setImplicitAltruistEdges(true);
+		assertEquals(2, pool.edgeSet().size());
+		assertTrue(pool.containsEdge(vp1, alt));
+		assertFalse(pool.containsEdge(alt, vp1));
+		Edge dummy = pool.getEdge(vp1, alt);
+		assertNotNull(dummy);
+		assertTrue(Pool.isImplicitAltruistEdge(dummy));
+		assertEquals(dummy, pool.getEdge(vp1, alt));
+		assertEquals(vp1, pool.getEdgeSource(dummy));
+		assertEquals(alt, pool.getEdgeTarget(dummy));
+		assertEquals(0.0, pool.getEdgeWeight(dummy), 0.0);
+		assertEquals(0.0, dummy.getFailureProbability(), 0.0);
+
+		// Chains alt->0->alt and alt->0->1->alt
+		List<Cycle> chains = new CycleGenerator(pool).generateCyclesAndChains(3, 3);
+		assertEquals(2, chains.size());
+		for(Cycle c : chains) {
+			assertTrue(Cycle.isAChain(c, pool));
+		}
+
+		// Cannot add explicit dummy edges to an implicit pool
+		try {
+			pool.addEdge(vp0, alt);
+			fail("Should not be able to add an explicit pair->altruist edge");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+
+		// Going back materializes them again
+		pool.setImplicitAltruistEdges(false);
+		assertEquals(4, pool.edgeSet().size());
+		assertFalse(Pool.isImplicitAltruistEdge(pool.getEdge(vp1, alt)));
+		assertEquals(2, new CycleGenerator(pool).generateCyclesAndChains(3, 3).size());
+	}
+
+	@Test
+	public void testBulkRemoveVertices() {
+
+		// Same seed, so both pools are identical
+		Pool bulkPool = new SaidmanPoolGenerator(new Random(1357)).generate(60, 5);
+		Pool seqPool = new SaidmanPoolGenerator(new Random(1357)).generate(60, 5);
+		PoolChangeLog bulkLog = new PoolChangeLog(bulkPool);
+		PoolChangeLog seqLog = new PoolChangeLog(seqPool);
+
+		List<Vertex> toRemove = new ArrayList<Vertex>();
+		int vIdx = 0;
+		for(Vertex v : bulkPool.vertexSet()) {
+			if(vIdx++ % 4 == 0) { toRemove.add(v); }
+		}
+		toRemove.add(toRemove.get(0));  // duplicates are ignored
+		assertTrue(bulkPool.removeAllVertices(toRemove));
+		for(Vertex v : toRemove) {
+			seqPool.removeVertex(v);
+		}
+		assertFalse(bulkPool.removeAllVertices(toRemove));
+
+		// Bulk removal reports every EDGE_REMOVED first (the same edges a removeVertex
+		// loop reports), then one VERTEX_REMOVED per vertex in request order
+		assertEquals(seqLog.size(), bulkLog.size());
+		List<PoolChangeEvent> bulkEvents = bulkLog.getEvents();
+		int numEdgeEvents = bulkEvents.size() - (toRemove.size() - 1);
+		List<String> seqEdges = new ArrayList<String>();
+		for(PoolChangeEvent event : seqLog.getEvents()) {
+			if(!event.isVertexEvent()) { seqEdges.add(event.getEdgeSource().getID() + "->" + event.getEdgeTarget().getID()); }
+		}
+		List<String> bulkEdges = new ArrayList<String>();
+		long lastVersion = -1;
+		for(int eIdx=0; eIdx<bulkEvents.size(); eIdx++) {
+			PoolChangeEvent event = bulkEvents.get(eIdx);
+			assertTrue(event.getVersion() > lastVersion);
+			lastVersion = event.getVersion();
+			if(eIdx < numEdgeEvents) {
+				assertEquals(PoolChangeEvent.Type.EDGE_REMOVED, event.getType());
+				bulkEdges.add(event.getEdgeSource().getID() + "->" + event.getEdgeTarget().getID());
+			} else {
+				assertEquals(PoolChangeEvent.Type.VERTEX_REMOVED, event.getType());
+				assertEquals(toRemove.get(eIdx - numEdgeEvents), event.getVertex());
+			}
+		}
+		Collections.sort(seqEdges);
+		Collections.sort(bulkEdges);
+		assertEquals(seqEdges, bulkEdges);
+		assertEquals(seqPool.getPairs(), bulkPool.getPairs());
+		assertEquals(seqPool.getAltruists(), bulkPool.getAltruists());
+		assertEquals(seqPool.edgeSet().size(), bulkPool.edgeSet().size());
+
+		// Surviving edge lists keep their order
+		Iterator<Vertex> seqIt = seqPool.vertexSet().iterator();
+		for(Vertex v : bulkPool.vertexSet()) {
+			Vertex w = seqIt.next();
+			assertEquals(w, v);
+			assertEquals(seqPool.outDegreeOf(w), bulkPool.outDegreeOf(v));
+			assertEquals(seqPool.inDegreeOf(w), bulkPool.inDegreeOf(v));
+			Iterator<Edge> seqEdgeIt = seqPool.outgoingEdgesOf(w).iterator();
+			for(Edge e : bulkPool.outgoingEdgesOf(v)) {
+				assertEquals(seqPool.getEdgeTarget(seqEdgeIt.next()), bulkPool.getEdgeTarget(e));
+			}
+		}
+		assertEquals(new CycleGenerator(seqPool).generateCyclesAndChains(3, 3).size(),
+				new CycleGenerator(bulkPool).generateCyclesAndChains(3, 3).size());
+
+		// The pool is still fully usable afterwards
+		VertexPair vp = bulkPool.getPairs().first();
+		VertexPair vp2 = bulkPool.getPairs().last();
+		if(!bulkPool.containsEdge(vp, vp2)) {
+			Edge e = bulkPool.addEdge(vp, vp2);
+			assertTrue(bulkPool.outgoingEdgesOf(vp).contains(e));
+			assertTrue(bulkPool.removeEdge(e));
+			assertFalse(bulkPool.outgoingEdgesOf(vp).contains(e));
+		}
+		bulkPool.removeVertex(vp);
+		assertFalse(bulkPool.containsVertex(vp));
+	}
+
+	@Test
+	public void testFrozenVersions() {
+
+		Random r = new Random(4242);
+		Pool pool = new SaidmanPoolGenerator(r).generate(40, 4);
+		FailureProbabilityUtil.setFailureProbability(pool, FailureProbabilityUtil.ProbabilityDistribution.BIMODAL_CORRELATED, r);
+
+		// Unchanged pool hands out the same version
+		PoolVersion v1 = pool.freeze();
+		assertSame(v1, pool.freeze());
+		assertEquals(pool.getVersion(), v1.getVersion());
+		List<Cycle> before = new CycleGenerator(pool).generateCyclesAndChains(3, 3, true);
+
+		// Mutate the live pool every way we can
+		Edge liveEdge = pool.edgeSet().iterator().next();
+		Vertex liveSrc = pool.getEdgeSource(liveEdge);
+		double liveWeight = pool.getEdgeWeight(liveEdge);
+		double liveFailureProb = liveEdge.getFailureProbability();
+		pool.setEdgeWeight(liveEdge, liveWeight + 10.0);
+		pool.setEdgeFailureProbability(liveEdge, 0.5 * liveFailureProb + 0.25);
+		pool.removeVertex(pool.getPairs().first());
+		PoolVersion v2 = pool.freeze();
+		assertNotSame(v1, v2);
+		assertTrue(v2.getVersion() > v1.getVersion());
+
+		// The old version still sees the pool exactly as it was
+		PoolSnapshot frozen = v1.getSnapshot();
+		int eIdx = -1;
+		for(int i=0; i<frozen.getNumEdges(); i++) {
+			if(v1.getSourceEdge(i) == liveEdge) { eIdx = i; }
+		}
+		assertTrue(eIdx >= 0);
+		assertEquals(liveSrc, frozen.getVertex(frozen.getEdgeSource(eIdx)));
+		assertEquals(liveWeight, frozen.getEdgeWeight(eIdx), 0.0);
+		assertEquals(liveFailureProb, frozen.getEdge(eIdx).getFailureProbability(), 0.0);
+		Pool frozenPool = v1.getPool();
+		assertSame(frozenPool, v1.getPool());
+		assertEquals(liveWeight, frozenPool.getEdgeWeight(frozen.getEdge(eIdx)), 0.0);
+		assertSame(liveEdge, v1.getSourceEdge(frozen.getEdge(eIdx)));
+
+		List<Cycle> after = new CycleGenerator(frozenPool).generateCyclesAndChains(3, 3, true);
+		assertEquals(before.size(), after.size());
+		for(int cIdx=0; cIdx<before.size(); cIdx++) {
+			assertEquals(before.get(cIdx).getWeight(), after.get(cIdx).getWeight(), 1e-9);
+		}
+
+		// Frozen pools can't be changed
+		assertTrue(frozenPool.isReadOnly());
+		assertFalse(pool.isReadOnly());
+		try {
+			frozenPool.removeVertex(frozen.getVertex(0));
+			fail("Frozen pool should reject changes");
+		} catch(UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			frozenPool.setEdgeWeight(frozen.getEdge(0), 3.0);
+			fail("Frozen pool should reject changes");
+		} catch(UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(frozen.getNumVertices(), frozenPool.vertexSet().size());
+	}
+
+	@Test
+	public void testVertexIndexes() {
+
+		Pool pool = new SaidmanPoolGenerator(new Random(4242)).generate(200, 10);
+
+		// Every index must agree with a brute-force scan, including after removals
+		List<Vertex> toRemove = new ArrayList<Vertex>();
+		int vIdx = 0;
+		for(Vertex v : pool.vertexSet()) {
+			if(vIdx++ % 7 == 0) { toRemove.add(v); }
+		}
+		for(int pass=0; pass<2; pass++) {
+			for(BloodType btP : BloodType.values()) {
+				for(BloodType btD : BloodType.values()) {
+					Set<VertexPair> expected = new HashSet<VertexPair>();
+					for(VertexPair vp : pool.getPairs()) {
+						if(vp.getBloodTypePatient() == btP && vp.getBloodTypeDonor() == btD) { expected.add(vp); }
+					}
+					assertEquals(expected, new HashSet<VertexPair>(pool.getPairsOfType(btP, btD)));
+				}
+				Set<VertexAltruist> expectedAlts = new HashSet<VertexAltruist>();
+				for(VertexAltruist alt : pool.getAltruists()) {
+					if(alt.getBloodTypeDonor() == btP) { expectedAlts.add(alt); }
+				}
+				assertEquals(expectedAlts, new HashSet<VertexAltruist>(pool.getAltruistsOfType(btP)));
+			}
+			for(double thresh : new double[] {0.0, 0.05, 0.1, 0.45, 0.8, 0.9, 1.0}) {
+				Set<VertexPair> expected = new HashSet<VertexPair>();
+				for(VertexPair vp : pool.getPairs()) {
+					if(vp.getPatientCPRA() >= thresh) { expected.add(vp); }
+				}
+				assertEquals(expected, pool.getPairsWithCPRAAtLeast(thresh));
+			}
+			int numBucketed = 0;
+			for(int bucket=0; bucket<Pool.getNumCPRABuckets(); bucket++) {
+				numBucketed += pool.getPairsInCPRABucket(bucket).size();
+			}
+			assertEquals(pool.getNumPairs(), numBucketed);
+			pool.removeAllVertices(toRemove);
+		}
+
+		// A threshold's set is a live, read-only view
+		Set<VertexPair> atLeastHalf = pool.getPairsWithCPRAAtLeast(0.5);
+		VertexPair highCPRA = null;
+		for(VertexPair candidate : pool.getPairs()) {
+			if(candidate.getPatientCPRA() >= 0.5) { highCPRA = candidate; break; }
+		}
+		if(null != highCPRA) {
+			pool.removeVertex(highCPRA);
+			assertFalse(atLeastHalf.contains(highCPRA));
+		}
+		try {
+			atLeastHalf.clear();
+			fail("CPRA threshold view should be read-only");
+		} catch(UnsupportedOperationException e) {}
+
+		// Re-typing a pair moves it between buckets
+		VertexPair vp = pool.getPairs().first();
+		BloodType newDonor = (vp.getBloodTypeDonor() == BloodType.AB) ? BloodType.O : BloodType.AB;
+		pool.setPairBloodTypes(vp, vp.getBloodTypePatient(), newDonor);
+		assertTrue(pool.getPairsOfType(vp.getBloodTypePatient(), newDonor).contains(vp));
+		int numContaining = 0;
+		for(BloodType btD : BloodType.values()) {
+			if(pool.getPairsOfType(vp.getBloodTypePatient(), btD).contains(vp)) { numContaining++; }
+		}
+		assertEquals(1, numContaining);
+
+		// Simulated pools have no UNOS-marginalized vertices
+		assertTrue(pool.getMarginalizedPairs().isEmpty());
+	}
+
 	@Test
 	public void test() {
 		